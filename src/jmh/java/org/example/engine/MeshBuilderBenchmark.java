@@ -0,0 +1,95 @@
+package org.example.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark dựng một lưới quad (vị trí + màu, index u32) rồi lấy mảng kết quả:
+ * List&lt;Float&gt;/List&lt;Integer&gt; rồi copy sang mảng (cách cũ của TreeSystem) so với {@link MeshBuilder}
+ * tự giãn và cấp sẵn đúng kích thước. Chạy với -prof gc, xem gc.alloc.rate.norm (byte/lần).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MeshBuilderBenchmark {
+
+    @Param({"1000", "100000"})
+    int quads;
+
+    @Benchmark
+    public Object boxedLists() {
+        List<Float> vertices = new ArrayList<>();
+        List<Float> colors = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        for (int q = 0; q < quads; q++) {
+            float x = q;
+            int base = q * 4;
+            for (int corner = 0; corner < 4; corner++) {
+                vertices.add(x + (corner & 1));
+                vertices.add(0.5f);
+                vertices.add((float) (corner >> 1));
+                colors.add(0.1f);
+                colors.add(0.6f);
+                colors.add(0.1f);
+            }
+            indices.add(base);
+            indices.add(base + 1);
+            indices.add(base + 3);
+            indices.add(base + 3);
+            indices.add(base + 2);
+            indices.add(base);
+        }
+
+        float[] vertexArray = new float[vertices.size()];
+        float[] colorArray = new float[colors.size()];
+        int[] indexArray = new int[indices.size()];
+        for (int i = 0; i < vertexArray.length; i++) {
+            vertexArray[i] = vertices.get(i);
+            colorArray[i] = colors.get(i);
+        }
+        for (int i = 0; i < indexArray.length; i++) {
+            indexArray[i] = indices.get(i);
+        }
+        return new Object[] {vertexArray, colorArray, indexArray};
+    }
+
+    @Benchmark
+    public Object meshBuilderGrowing() {
+        return build(new MeshBuilder(0, 0, 3, 3));
+    }
+
+    @Benchmark
+    public Object meshBuilderPresized() {
+        return build(new MeshBuilder(quads * 4, quads * 6, 3, 3));
+    }
+
+    private Object build(MeshBuilder mesh) {
+        MeshBuilder.Attribute vertices = mesh.attribute(0);
+        MeshBuilder.Attribute colors = mesh.attribute(1);
+        for (int q = 0; q < quads; q++) {
+            float x = q;
+            int base = mesh.getVertexCount();
+            for (int corner = 0; corner < 4; corner++) {
+                vertices.put(x + (corner & 1), 0.5f, corner >> 1);
+                colors.put(0.1f, 0.6f, 0.1f);
+            }
+            mesh.quad(base, base + 1, base + 3, base + 2);
+        }
+        return new Object[] {vertices.getData(), colors.getData(), mesh.getIndices()};
+    }
+}
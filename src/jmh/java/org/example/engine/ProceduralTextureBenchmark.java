@@ -0,0 +1,53 @@
+package org.example.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+/**
+ * Benchmark sinh dữ liệu texture procedural (không upload lên GPU)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProceduralTextureBenchmark {
+
+    @Param({"256", "1024"})
+    int size;
+
+    @Benchmark
+    public int grassTexture() {
+        return consume(ProceduralTexture.generateGrassTexture(size));
+    }
+
+    @Benchmark
+    public int rockTexture() {
+        return consume(ProceduralTexture.generateRockTexture(size));
+    }
+
+    @Benchmark
+    public int snowTexture() {
+        return consume(ProceduralTexture.generateSnowTexture(size));
+    }
+
+    private static int consume(ByteBuffer buffer) {
+        int value = buffer.get(buffer.limit() - 1);
+        memFree(buffer);
+        return value;
+    }
+}
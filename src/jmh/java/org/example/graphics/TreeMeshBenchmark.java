@@ -0,0 +1,50 @@
+package org.example.graphics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark dựng dữ liệu cây với số lượng cây khác nhau: mesh nướng sẵn (TreeSystem.buildMesh)
+ * so với buffer instance (TreeSystem.buildInstances); xem gc.alloc.rate.norm để so sánh bộ nhớ
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TreeMeshBenchmark {
+
+    @Param({"300", "10000", "100000"})
+    int treeCount;
+
+    private TreeSystem treeSystem;
+
+    @Setup
+    public void setup() {
+        treeSystem = new TreeSystem();
+        // Địa hình phẳng cao 10 -> mọi vị trí đều hợp lệ
+        treeSystem.placeTrees(treeCount, 0, 1000, 0, 1000, 5.0f, (x, z) -> 10.0f, 42L, null);
+    }
+
+    @Benchmark
+    public TreeSystem.TreeMeshData buildMesh() {
+        return treeSystem.buildMesh();
+    }
+
+    @Benchmark
+    public VegetationGrid buildInstances() {
+        return treeSystem.buildInstances();
+    }
+}
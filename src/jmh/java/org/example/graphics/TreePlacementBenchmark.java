@@ -0,0 +1,62 @@
+package org.example.graphics;
+
+import org.example.terrain.HeightProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark rải cây Poisson-disk ({@link TreeSystem#placeTrees}) trên vùng 4000 x 4000 đồi thoải
+ * (~80% diện tích hợp lệ): tuần tự (threads = 0) so với pool fork-join
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class TreePlacementBenchmark {
+    private static final float EXTENT = 4000.0f;
+    private static final HeightProvider HILLS =
+            (x, z) -> 12.0f + 10.0f * (float) (Math.sin(x * 0.01) * Math.cos(z * 0.013));
+
+    @Param({"100000", "1000000"})
+    int treeCount;
+
+    @Param({"0", "4"})
+    int threads;
+
+    private ForkJoinPool pool;
+    private TreeSystem treeSystem;
+
+    @Setup
+    public void setup() {
+        pool = threads > 0 ? new ForkJoinPool(threads) : null;
+        treeSystem = new TreeSystem();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public int place() {
+        treeSystem.placeTrees(treeCount, 0, EXTENT, 0, EXTENT, 5.0f, HILLS, 42L, pool);
+        return treeSystem.getTreeCount();
+    }
+}
@@ -0,0 +1,121 @@
+package org.example.graphics;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark {@link VegetationGrid} với số instance khác nhau rải trên vùng 4000 x 4000 (ô 32):
+ * truy vấn frustum (camera nhìn ngang, tầm xa 1000) và bán kính 100 so với quét tuyến tính
+ * mọi instance, cùng thời gian dựng lưới và chi phí 3 truy vấn theo dải khoảng cách (LOD cây)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class VegetationGridBenchmark {
+    private static final float EXTENT = 4000.0f;
+
+    @Param({"100000", "1000000"})
+    int instanceCount;
+
+    private float[] data;
+    private VegetationGrid grid;
+    private FrustumIntersection frustum;
+    private int[] rangeStart;
+    private int[] rangeCount;
+    private int[] found;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        data = new float[instanceCount * TreeSystem.INSTANCE_FLOATS];
+        for (int i = 0; i < instanceCount; i++) {
+            int o = i * TreeSystem.INSTANCE_FLOATS;
+            data[o] = random.nextFloat() * EXTENT;
+            data[o + 1] = random.nextFloat() * 20;
+            data[o + 2] = random.nextFloat() * EXTENT;
+            data[o + 3] = 3.0f + random.nextFloat() * 4.0f;
+            data[o + 4] = 0.3f + random.nextFloat() * 0.4f;
+            data[o + 5] = 1.0f;
+        }
+        grid = VegetationGrid.build(data, instanceCount, TreeSystem.INSTANCE_FLOATS, TreeSystem.CROWN_SCALE, 32.0f);
+        rangeStart = new int[grid.getNonEmptyCellCount()];
+        rangeCount = new int[grid.getNonEmptyCellCount()];
+        found = new int[instanceCount];
+
+        Matrix4f viewProjection = new Matrix4f()
+                .perspective((float) Math.toRadians(70), 16.0f / 9.0f, 0.1f, 1000.0f)
+                .lookAt(EXTENT / 2, 40, EXTENT / 2, EXTENT / 2 + 100, 20, EXTENT / 2 + 60, 0, 1, 0);
+        frustum = new FrustumIntersection(viewProjection);
+    }
+
+    @Benchmark
+    public VegetationGrid build() {
+        return VegetationGrid.build(data, instanceCount, TreeSystem.INSTANCE_FLOATS, TreeSystem.CROWN_SCALE, 32.0f);
+    }
+
+    @Benchmark
+    public int gridFrustum() {
+        return grid.queryFrustum(frustum, null, rangeStart, rangeCount);
+    }
+
+    @Benchmark
+    public int gridLodBands() {
+        float x = EXTENT / 2;
+        float z = EXTENT / 2;
+        return grid.queryFrustum(frustum, null, x, 40, z, 0, 54, rangeStart, rangeCount)
+                + grid.queryFrustum(frustum, null, x, 40, z, 46, 124, rangeStart, rangeCount)
+                + grid.queryFrustum(frustum, null, x, 40, z, 116, Float.POSITIVE_INFINITY, rangeStart, rangeCount);
+    }
+
+    @Benchmark
+    public int linearFrustum() {
+        int visible = 0;
+        for (int i = 0; i < instanceCount; i++) {
+            int o = i * TreeSystem.INSTANCE_FLOATS;
+            float radius = data[o + 4] * TreeSystem.CROWN_SCALE;
+            if (frustum.testAab(data[o] - radius, data[o + 1], data[o + 2] - radius,
+                                data[o] + radius, data[o + 1] + data[o + 3], data[o + 2] + radius)) {
+                visible++;
+            }
+        }
+        return visible;
+    }
+
+    @Benchmark
+    public int gridRadius() {
+        return grid.queryRadius(EXTENT / 2, EXTENT / 2, 100.0f, found);
+    }
+
+    @Benchmark
+    public int linearRadius() {
+        int count = 0;
+        float x = EXTENT / 2;
+        float z = EXTENT / 2;
+        for (int i = 0; i < instanceCount; i++) {
+            int o = i * TreeSystem.INSTANCE_FLOATS;
+            float dx = data[o] - x;
+            float dz = data[o + 2] - z;
+            if (dx * dx + dz * dz <= 100.0f * 100.0f) {
+                found[count++] = i;
+            }
+        }
+        return count;
+    }
+}
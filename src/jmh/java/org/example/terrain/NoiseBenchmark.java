@@ -0,0 +1,61 @@
+package org.example.terrain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark sinh fractal noise trên lưới: từng điểm (fractalNoise) so với theo hàng (fill)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class NoiseBenchmark {
+
+    @Param({"64", "256", "1024"})
+    int gridSize;
+
+    @Param({"1", "4", "6", "8"})
+    int octaves;
+
+    private PerlinNoise noise;
+    private float[] out;
+    private double step;
+
+    @Setup
+    public void setup() {
+        noise = new PerlinNoise(42);
+        out = new float[gridSize * gridSize];
+        step = Terrain.NOISE_FREQUENCY / gridSize;
+    }
+
+    @Benchmark
+    public float[] fractalNoisePerSample() {
+        for (int z = 0; z < gridSize; z++) {
+            for (int x = 0; x < gridSize; x++) {
+                out[z * gridSize + x] = (float) noise.fractalNoise(x * step, z * step,
+                                                                   octaves, Terrain.NOISE_PERSISTENCE);
+            }
+        }
+        return out;
+    }
+
+    @Benchmark
+    public float[] fillRows() {
+        noise.fill(out, 0, 0, step, gridSize, gridSize, octaves, Terrain.NOISE_PERSISTENCE);
+        return out;
+    }
+}
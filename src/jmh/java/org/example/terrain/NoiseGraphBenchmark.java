@@ -0,0 +1,101 @@
+package org.example.terrain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark noise graph: duyệt cây (evaluate) so với bản biên dịch (MethodHandle + hidden class),
+ * tính theo từng mẫu. Graph gồm fBm + ridged (được gộp một vòng octave khi biên dịch), domain warp,
+ * clamp và đường cong.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class NoiseGraphBenchmark {
+    private static final int SAMPLES = 256;
+    private static final double STEP = 0.0137;
+
+    @Param({"PERLIN", "SIMPLEX"})
+    NoiseSource.Type type;
+
+    private NoiseSource noise;
+    private NoiseGraph graph;
+    private NoiseFunction compiled;
+    private float[] out;
+    private double z;
+
+    @Setup
+    public void setup() {
+        noise = type.create(42);
+        graph = NoiseGraph.fbm(4, 0.5)
+                .add(NoiseGraph.ridged(3, 0.5).mul(0.5))
+                .warp(NoiseGraph.fbm(2, 0.5).frequency(0.5), NoiseGraph.billow(2, 0.5).frequency(0.5), 0.4)
+                .clamp(-1, 1)
+                .curve(new double[] {-1, 0, 0.5, 1}, new double[] {-1, -0.2, 0.3, 1});
+        compiled = graph.compile(noise);
+        out = new float[SAMPLES];
+
+        // Ứng dụng thật có nhiều graph (vùng sinh thái...): chạy thêm vài graph khác để các lời gọi
+        // evaluate() trong cây không còn đơn hình như khi chỉ có một graph
+        NoiseGraph[] others = {
+            NoiseGraph.billow(3, 0.5).mul(NoiseGraph.fbm(2, 0.5)).frequency(2),
+            NoiseGraph.ridged(2, 0.5).curve(new double[] {0, 1}, new double[] {1, 0}).clamp(0, 0.8),
+            NoiseGraph.constant(0.2).add(NoiseGraph.fbm(3, 0.5).warp(NoiseGraph.constant(0.1),
+                                                                      NoiseGraph.ridged(1, 0.5), 1)),
+        };
+        double sink = 0;
+        for (NoiseGraph other : others) {
+            for (int i = 0; i < 20_000; i++) {
+                sink += other.evaluate(noise, i * STEP, i * 0.5 * STEP);
+            }
+        }
+        out[0] = (float) sink;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float[] interpreted() {
+        double row = nextRow();
+        for (int i = 0; i < SAMPLES; i++) {
+            out[i] = (float) graph.evaluate(noise, i * STEP, row);
+        }
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float[] compiledSample() {
+        double row = nextRow();
+        for (int i = 0; i < SAMPLES; i++) {
+            out[i] = (float) compiled.sample(i * STEP, row);
+        }
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float[] compiledFill() {
+        compiled.fill(out, 0, 0, nextRow(), STEP, SAMPLES, 1);
+        return out;
+    }
+
+    private double nextRow() {
+        z += STEP;
+        return z;
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.terrain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark thông lượng (mẫu / micro giây) của các loại noise: Perlin (bảng hoán vị) so với
+ * Simplex (hash 64-bit). Mỗi lần gọi tính SAMPLES mẫu trên một hàng nên kết quả là theo từng mẫu.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class NoiseSourceBenchmark {
+    private static final int SAMPLES = 1024;
+    private static final double STEP = 0.0137;
+
+    @Param({"PERLIN", "SIMPLEX"})
+    NoiseSource.Type type;
+
+    @Param({"1", "6"})
+    int octaves;
+
+    private NoiseSource noise;
+    private float[] out;
+    private double z;
+
+    @Setup
+    public void setup() {
+        noise = type.create(42);
+        out = new float[SAMPLES];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float[] noisePerSample() {
+        double row = nextRow();
+        for (int i = 0; i < SAMPLES; i++) {
+            out[i] = (float) noise.noise(i * STEP, row);
+        }
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float[] fractalNoisePerSample() {
+        double row = nextRow();
+        for (int i = 0; i < SAMPLES; i++) {
+            out[i] = (float) noise.fractalNoise(i * STEP, row, octaves, Terrain.NOISE_PERSISTENCE);
+        }
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float[] fillRow() {
+        noise.fill(out, 0, nextRow(), STEP, SAMPLES, 1, octaves, Terrain.NOISE_PERSISTENCE);
+        return out;
+    }
+
+    /**
+     * Đổi hàng mỗi lần gọi để không đo lặp lại cùng một dãy tọa độ
+     */
+    private double nextRow() {
+        z += STEP;
+        return z;
+    }
+}
@@ -0,0 +1,94 @@
+package org.example.terrain;
+
+import org.example.engine.VertexCacheOptimizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark phần CPU của Terrain: sinh độ cao, tính normal, dựng vertices/indices
+ * (không upload lên GPU nên chạy được headless)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class TerrainMeshBenchmark {
+
+    @Param({"128", "512", "2048"})
+    int gridSize;
+
+    private PerlinNoise noise;
+    private HeightField heights;
+    private float[] normals;
+    private float[] tangents;
+    private int[] rowOrderIndices;
+
+    @Setup
+    public void setup() {
+        noise = new PerlinNoise(42);
+        heights = HeightGenerator.serial().generate(noise, 0, 0, gridSize, gridSize, 30.0f, 2.0f);
+        normals = new float[gridSize * gridSize * 3];
+        tangents = new float[gridSize * gridSize * 3];
+        rowOrderIndices = new int[(gridSize - 1) * (gridSize - 1) * 6];
+        int pointer = 0;
+        for (int z = 0; z < gridSize - 1; z++) {
+            for (int x = 0; x < gridSize - 1; x++) {
+                int topLeft = z * gridSize + x;
+                rowOrderIndices[pointer++] = topLeft;
+                rowOrderIndices[pointer++] = topLeft + gridSize;
+                rowOrderIndices[pointer++] = topLeft + 1;
+                rowOrderIndices[pointer++] = topLeft + 1;
+                rowOrderIndices[pointer++] = topLeft + gridSize;
+                rowOrderIndices[pointer++] = topLeft + gridSize + 1;
+            }
+        }
+    }
+
+    @Benchmark
+    public HeightField generateHeights() {
+        return HeightGenerator.serial().generate(noise, 0, 0, gridSize, gridSize, 30.0f, 2.0f);
+    }
+
+    @Benchmark
+    public float[] computeNormals() {
+        NormalGenerator.compute(heights, 0, gridSize, normals, null, null);
+        return normals;
+    }
+
+    @Benchmark
+    public float[] computeNormalsAndTangentsParallel() {
+        NormalGenerator.compute(heights, 0, gridSize, normals, tangents, ForkJoinPool.commonPool());
+        return normals;
+    }
+
+    @Benchmark
+    public TerrainMeshData buildMesh() {
+        return TerrainMeshData.build(heights, 0, gridSize, 0, 0, gridSize - 1, false, null);
+    }
+
+    @Benchmark
+    public TerrainMeshData buildPackedMesh() {
+        return TerrainMeshData.build(heights, 0, gridSize, 0, 0, gridSize - 1, true, null);
+    }
+
+    @Benchmark
+    public int[] optimizeIndices() {
+        int[] indices = rowOrderIndices.clone();
+        VertexCacheOptimizer.optimize(indices, gridSize * gridSize);
+        return indices;
+    }
+}
@@ -0,0 +1,134 @@
+package org.example.terrain;
+
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark giao tia với địa hình 4k (4097 x 4097 đỉnh), tính theo từng tia:
+ * cây min/max ({@link TerrainRaycaster}) so với cách bước dọc tia từng nửa ô (cách chọn điểm cũ trong Main)
+ *
+ * - PICK: tia từ trên cao chếch xuống 10-60° (chọn điểm bằng chuột/hướng nhìn)
+ * - GRAZING: tia sát mặt đất gần như nằm ngang (kiểm tra tầm nhìn), đi xa trước khi chạm hoặc hết tầm
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "--add-modules=jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class TerrainRaycastBenchmark {
+    private static final int GRID_SIZE = 4097;
+    private static final float SCALE = 2.0f;
+    private static final float HEIGHT_SCALE = 30.0f;
+    private static final float MAX_DISTANCE = 2000.0f;
+    private static final int RAYS = 1024;
+
+    public enum RayKind { PICK, GRAZING }
+
+    @Param({"PICK", "GRAZING"})
+    RayKind kind;
+
+    private HeightField heights;
+    private TerrainRaycaster raycaster;
+    private float[] origins;
+    private float[] directions;
+    private float[] distances;
+    private final Vector3f origin = new Vector3f();
+    private final Vector3f direction = new Vector3f();
+    private final Vector3f point = new Vector3f();
+
+    @Setup
+    public void setup() {
+        HeightGenerator generator = new HeightGenerator(Runtime.getRuntime().availableProcessors());
+        heights = generator.generate(new PerlinNoise(42), 0, 0, GRID_SIZE, 200, HEIGHT_SCALE, SCALE);
+        generator.shutdown();
+        raycaster = new TerrainRaycaster(heights);
+
+        Random random = new Random(7);
+        origins = new float[RAYS * 3];
+        directions = new float[RAYS * 3];
+        distances = new float[RAYS];
+        float extent = (GRID_SIZE - 1) * SCALE;
+        for (int i = 0; i < RAYS; i++) {
+            float x = extent * (0.1f + 0.8f * random.nextFloat());
+            float z = extent * (0.1f + 0.8f * random.nextFloat());
+            double yaw = random.nextDouble() * Math.PI * 2;
+            double pitch;
+            float y;
+            if (kind == RayKind.PICK) {
+                y = heights.sample(x, z) + 20 + random.nextFloat() * 80;
+                pitch = Math.toRadians(-10 - random.nextDouble() * 50);
+            } else {
+                y = heights.sample(x, z) + 2;
+                pitch = Math.toRadians(random.nextDouble() * 2 - 1);
+            }
+            origins[i * 3] = x;
+            origins[i * 3 + 1] = y;
+            origins[i * 3 + 2] = z;
+            directions[i * 3] = (float) (Math.cos(pitch) * Math.cos(yaw));
+            directions[i * 3 + 1] = (float) Math.sin(pitch);
+            directions[i * 3 + 2] = (float) (Math.cos(pitch) * Math.sin(yaw));
+        }
+    }
+
+    @TearDown
+    public void report() {
+        int hits = raycaster.raycast(origins, directions, MAX_DISTANCE, distances);
+        System.out.printf("%n→ %s: %d/%d tia chạm địa hình%n", kind, hits, RAYS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public float quadTree() {
+        float sum = 0;
+        for (int i = 0; i < RAYS; i++) {
+            int j = i * 3;
+            origin.set(origins[j], origins[j + 1], origins[j + 2]);
+            direction.set(directions[j], directions[j + 1], directions[j + 2]);
+            sum += raycaster.raycast(origin, direction, MAX_DISTANCE);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public float[] quadTreeBatch() {
+        raycaster.raycast(origins, directions, MAX_DISTANCE, distances);
+        return distances;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public float march() {
+        float sum = 0;
+        float step = SCALE * 0.5f;
+        for (int i = 0; i < RAYS; i++) {
+            int j = i * 3;
+            origin.set(origins[j], origins[j + 1], origins[j + 2]);
+            direction.set(directions[j], directions[j + 1], directions[j + 2]);
+            for (float t = step; t <= MAX_DISTANCE; t += step) {
+                point.set(direction).mul(t).add(origin);
+                if (point.y <= heights.sample(point.x, point.z)) {
+                    sum += t;
+                    break;
+                }
+            }
+        }
+        return sum;
+    }
+}
@@ -3,20 +3,36 @@ package org.example;
 import org.example.engine.*;
 import org.example.graphics.Skybox;
 import org.example.graphics.TreeSystem;
-import org.example.terrain.PerlinNoise;
+import org.example.terrain.CdlodTerrain;
+import org.example.terrain.ChunkManager;
+import org.example.terrain.ClipmapTerrain;
+import org.example.terrain.GpuHeightGenerator;
+import org.example.terrain.HeightField;
+import org.example.terrain.HeightGenerator;
+import org.example.terrain.HeightProvider;
+import org.example.terrain.HorizonCuller;
+import org.example.terrain.NoiseSource;
 import org.example.terrain.Terrain;
+import org.example.terrain.TerrainBrush;
+import org.example.terrain.TerrainCache;
+import org.example.terrain.TerrainRaycaster;
+import org.example.terrain.TileCache;
+import org.joml.FrustumIntersection;
 import org.joml.Matrix4f;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
 
 import java.io.InputStream;
-import java.util.Random;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL13.GL_TEXTURE_CUBE_MAP;
 import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
 import static org.lwjgl.opengl.GL13C.glActiveTexture;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.GL_PRIMITIVES_GENERATED;
 
 public class Main {
     // Window settings
@@ -28,23 +44,99 @@ public class Main {
     private static final int TERRAIN_SIZE = 200;
     private static final float TERRAIN_SCALE = 2.0f;
     private static final float HEIGHT_SCALE = 30.0f;
+    // Số luồng sinh độ cao (giới hạn bằng -Dterrain.parallelism=N trên máy dùng chung)
+    private static final int GENERATION_PARALLELISM =
+            Integer.getInteger("terrain.parallelism", Runtime.getRuntime().availableProcessors());
+    // Seed cố định (-Dterrain.seed=N) để tái tạo cùng địa hình và dùng lại cache
+    private static final long TERRAIN_SEED = Long.getLong("terrain.seed", System.currentTimeMillis());
+    // Cache địa hình trên đĩa (tắt bằng -Dterrain.cache=false, đổi thư mục bằng -Dterrain.cacheDir)
+    private static final boolean TERRAIN_CACHE = !"false".equals(System.getProperty("terrain.cache"));
+    private static final String TERRAIN_CACHE_DIR = System.getProperty("terrain.cacheDir", "terrain-cache");
+    // Loại noise: perlin (bảng 256, lặp sau 256 đơn vị, có fill SIMD và đường GPU) hoặc simplex (hash 64-bit, không lặp)
+    private static final NoiseSource.Type NOISE_TYPE =
+            NoiseSource.Type.parse(System.getProperty("terrain.noise", "perlin"));
+    
+    // Cách vẽ địa hình: -Dterrain.mode=mesh|lod|clipmap|streaming (mặc định lod)
+    private static final TerrainMode TERRAIN_MODE = TerrainMode.parse(System.getProperty("terrain.mode", "lod"));
+    
+    // LOD settings (CDLOD: node xa dùng lưới thô hơn, morph để tránh popping)
+    private static final int LOD_PATCH_CELLS = 32;                     // Số ô mỗi cạnh của patch/node lá
+    // Sinh heightmap bằng shader (-Dterrain.gpu=true, chỉ Perlin noise), kiểm tra lệch so với CPU
+    private static final boolean TERRAIN_GPU = Boolean.getBoolean("terrain.gpu");
+    private static final int GPU_PARITY_SAMPLES = 4096;
+    private static final float GPU_PARITY_TOLERANCE = 1e-3f * HEIGHT_SCALE;
+    
+    // Geometry clipmap (các lưới vành lồng nhau quanh camera, heightmap cập nhật toroidal)
+    private static final int CLIPMAP_LEVELS = 6;                       // Số cấp (mỗi cấp thô gấp đôi)
+    private static final int CLIPMAP_RING_CELLS = 64;                  // Số ô mỗi cạnh của một cấp
+    
+    // Streaming terrain settings (chia thế giới thành các chunk quanh camera)
+    private static final int CHUNK_SIZE = 64;                          // Số ô lưới mỗi cạnh chunk
+    private static final int CHUNK_VIEW_RADIUS = 6;                    // Bán kính nạp (tính theo chunk)
+    private static final long CHUNK_UPLOAD_BUDGET_NANOS = 2_000_000L;  // 2ms upload mỗi frame
+    // Ngân sách cache lưới độ cao chunk (-Dterrain.tileCacheMB=N, 0 = tắt)
+    private static final long TILE_CACHE_BYTES = Long.getLong("terrain.tileCacheMB", 32) * 1024 * 1024;
+    
+    // Số cây cần sinh (-Dtrees.count=N, vẽ bằng instancing nên chịu được 100k+ cây)
+    private static final int TREE_COUNT = Integer.getInteger("trees.count", 300);
+    private static final long TREE_SEED = Long.getLong("trees.seed", System.currentTimeMillis());
+    
+    // Occlusion culling theo chân trời (phím H bật/tắt để so sánh số draw/tam giác/fragment)
+    private static final int HORIZON_TILE_CELLS = 8;                   // Số ô mỗi cạnh tile chắn
+    private static final float HORIZON_OCCLUDER_RADIUS = 400.0f;       // Bán kính lấy tile chắn (world)
+    
+    // Ring upload dùng chung cho mọi buffer đỉnh/index (worker ghi thẳng vào vùng nhớ đã map)
+    private static final int UPLOAD_RING_BYTES = 8 * 1024 * 1024;
+    
+    // Sửa địa hình bằng brush (chuột trái nâng, chuột phải hạ, F làm phẳng, G làm mịn)
+    private static final float BRUSH_RADIUS = 12.0f;                   // Bán kính brush (world)
+    private static final float BRUSH_HEIGHT_RATE = 15.0f;              // Nâng/hạ ở tâm mỗi giây (world)
+    private static final float BRUSH_BLEND_RATE = 3.0f;                // Hệ số làm phẳng/mịn mỗi giây
+    private static final float BRUSH_PICK_DISTANCE = 500.0f;           // Tầm chọn điểm sửa theo hướng nhìn
     
     // Fog settings
     private static final Vector3f FOG_COLOR = new Vector3f(0.7f, 0.8f, 0.9f);
     private static final float FOG_DENSITY = 0.007f;
     private static final float FOG_GRADIENT = 1.5f;
     
+    /**
+     * Cách vẽ địa hình (chọn bằng -Dterrain.mode)
+     */
+    private enum TerrainMode {
+        MESH,       // Terrain: mesh đầy đủ độ phân giải (định dạng nén, cull theo khối, cache mesh)
+        LOD,        // CdlodTerrain: quadtree CDLOD trên heightmap
+        CLIPMAP,    // ClipmapTerrain: geometry clipmap quanh camera
+        STREAMING;  // ChunkManager: chunk sinh trên worker quanh camera
+
+        /**
+         * Đọc tên chế độ (không phân biệt hoa thường)
+         */
+        static TerrainMode parse(String name) {
+            for (TerrainMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name.trim())) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException("Chế độ địa hình không hợp lệ: " + name);
+        }
+    }
+    
     private Window window;
     private Camera camera;
     private InputHandler inputHandler;
+    private UploadRing uploadRing;
     
     // Shaders
     private ShaderProgram terrainShader;
     private ShaderProgram skyboxShader;
     private ShaderProgram treeShader;
+    private ShaderProgram impostorShader;
     
     // Objects
     private Terrain terrain;
+    private CdlodTerrain lodTerrain;
+    private ClipmapTerrain clipmapTerrain;
+    private ChunkManager chunkManager;
     private Skybox skybox;
     private TreeSystem treeSystem;
     
@@ -53,9 +145,24 @@ public class Main {
     private Texture snowTexture;
     
     private Matrix4f projectionMatrix;
+    private final Matrix4f viewProjection = new Matrix4f();
+    private final FrustumIntersection frustum = new FrustumIntersection();
     private Vector3f lightPos;
     
     private float lastFrame = 0.0f;
+    private float lastStatsTime = 0.0f;
+    
+    private final HorizonCuller horizonCuller = new HorizonCuller(HORIZON_TILE_CELLS, HORIZON_OCCLUDER_RADIUS);
+    private boolean horizonCulling = true;
+    private boolean horizonKeyDown;
+    private final Vector3f brushPoint = new Vector3f();
+    private final Vector3f viewDirection = new Vector3f();
+    
+    // Query đếm tam giác / sample của pass địa hình + cây (chỉ chạy ở frame cập nhật thống kê)
+    private int primitivesQuery;
+    private int samplesQuery;
+    private boolean statsQueryPending;
+    private String cullingStats = "";
 
     public static void main(String[] args) {
         try {
@@ -80,6 +187,10 @@ public class Main {
         window = new Window(TITLE, WIDTH, HEIGHT, true);
         window.init();
         
+        uploadRing = new UploadRing(UPLOAD_RING_BYTES);
+        System.out.println("→ Upload ring " + UPLOAD_RING_BYTES / (1024 * 1024) + " MB: "
+                           + (uploadRing.isPersistent() ? "persistent mapped (ARB_buffer_storage)" : "orphaning"));
+        
         // Khởi tạo camera ở giữa địa hình
         System.out.println("→ Đang khởi tạo camera...");
         float centerX = (TERRAIN_SIZE * TERRAIN_SCALE) / 2.0f;
@@ -113,31 +224,103 @@ public class Main {
         treeShader.createFragmentShader(loadResource("/shaders/tree.frag"));
         treeShader.link();
         
+        // Impostor shader (cây ở xa: quad hướng camera lấy hình từ atlas)
+        impostorShader = new ShaderProgram();
+        impostorShader.createVertexShader(loadResource("/shaders/impostor.vert"));
+        impostorShader.createFragmentShader(loadResource("/shaders/impostor.frag"));
+        impostorShader.link();
+        
         // Tạo texture cho địa hình
         System.out.println("→ Đang tạo texture (cỏ, đá, tuyết)...");
         grassTexture = ProceduralTexture.createGrassTexture(256);
         rockTexture = ProceduralTexture.createRockTexture(256);
         snowTexture = ProceduralTexture.createSnowTexture(256);
         
-        // Sinh địa hình bằng Perlin Noise
+        // Sinh địa hình bằng noise (Simplex hoặc Perlin)
         System.out.println("→ Đang sinh địa hình ngẫu nhiên...");
-        PerlinNoise noise = new PerlinNoise(System.currentTimeMillis());
-        terrain = new Terrain(TERRAIN_SIZE, TERRAIN_SCALE, HEIGHT_SCALE, noise);
+        NoiseSource noise = NOISE_TYPE.create(TERRAIN_SEED);
+        System.out.println("→ Seed: " + TERRAIN_SEED + " (noise: " + NOISE_TYPE.name().toLowerCase() + ")");
+        System.out.println("→ Chế độ địa hình: " + TERRAIN_MODE.name().toLowerCase() + " (-Dterrain.mode)");
+        TerrainCache cache = TERRAIN_CACHE ? new TerrainCache(Paths.get(TERRAIN_CACHE_DIR)) : null;
+        HeightProvider heights;
+        if (TERRAIN_MODE == TerrainMode.STREAMING) {
+            int workerThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            TileCache<HeightField> tileCache = TILE_CACHE_BYTES > 0
+                    ? new TileCache<>(TILE_CACHE_BYTES, HeightField::getDataBytes) : null;
+            chunkManager = new ChunkManager(noise, CHUNK_SIZE, TERRAIN_SCALE, HEIGHT_SCALE,
+                                            TERRAIN_SIZE, CHUNK_VIEW_RADIUS, workerThreads, uploadRing, tileCache);
+            chunkManager.update(camera.getPosition());
+            heights = chunkManager;
+        } else if (TERRAIN_MODE == TerrainMode.CLIPMAP) {
+            clipmapTerrain = new ClipmapTerrain(noise, TERRAIN_SCALE, HEIGHT_SCALE, TERRAIN_SIZE,
+                                                CLIPMAP_LEVELS, CLIPMAP_RING_CELLS, TERRAIN_SIZE - 1);
+            clipmapTerrain.update(camera.getPosition());
+            heights = clipmapTerrain;
+            System.out.printf("→ ACMR index clipmap: %.3f → %.3f%n",
+                              clipmapTerrain.getAcmrBefore(), clipmapTerrain.getAcmrAfter());
+        } else if (TERRAIN_MODE == TerrainMode.LOD) {
+            HeightField heightField = cache != null
+                    ? cache.loadHeights(noise, TERRAIN_SIZE, TERRAIN_SCALE, HEIGHT_SCALE) : null;
+            int heightMapId = 0;
+            if (heightField != null) {
+                System.out.println("→ Đọc độ cao từ cache");
+            } else if (TERRAIN_GPU && GpuHeightGenerator.supports(noise)) {
+                GpuHeightGenerator.Result result = generateHeightsOnGpu(noise);
+                if (result != null) {
+                    heightField = result.getHeights();
+                    heightMapId = result.getTextureId();
+                }
+            } else if (TERRAIN_GPU) {
+                System.out.println("→ GPU chỉ sinh được Perlin noise (-Dterrain.noise=perlin), dùng CPU");
+            }
+            if (heightField == null) {
+                HeightGenerator generator = new HeightGenerator(GENERATION_PARALLELISM);
+                heightField = generator.generate(noise, 0, 0, TERRAIN_SIZE, TERRAIN_SIZE,
+                                                 HEIGHT_SCALE, TERRAIN_SCALE);
+                generator.shutdown();
+                if (cache != null) {
+                    cache.storeHeights(noise, HEIGHT_SCALE, heightField);
+                }
+            }
+            lodTerrain = new CdlodTerrain(heightField, heightMapId, LOD_PATCH_CELLS, TERRAIN_SIZE - 1);
+            heights = heightField;
+            System.out.printf("→ ACMR index patch CDLOD: %.3f → %.3f%n",
+                              lodTerrain.getAcmrBefore(), lodTerrain.getAcmrAfter());
+        } else {
+            HeightGenerator generator = new HeightGenerator(GENERATION_PARALLELISM);
+            terrain = new Terrain(TERRAIN_SIZE, TERRAIN_SCALE, HEIGHT_SCALE, noise, generator, cache, uploadRing);
+            generator.shutdown();
+            heights = terrain.getHeightField();
+            if (terrain.isLoadedFromCache()) {
+                System.out.println("→ Đọc mesh địa hình từ cache");
+            }
+            System.out.printf("→ Mesh địa hình: %d KB vertex + %d KB index (%s)%n",
+                              terrain.getVertexBytes() / 1024, terrain.getIndexBytes() / 1024,
+                              Terrain.PACKED_VERTICES ? "định dạng nén" : "float");
+            System.out.printf("→ ACMR index địa hình: %.3f → %.3f%n",
+                              terrain.getAcmrBefore(), terrain.getAcmrAfter());
+        }
         
         // Gắn terrain vào camera để kiểm tra va chạm
-        camera.setTerrain(terrain);
+        camera.setTerrain(heights);
         
         // Tạo Skybox
         System.out.println("→ Đang tạo skybox...");
-        skybox = new Skybox();
+        skybox = new Skybox(uploadRing);
         
         // Tạo cây cối
         System.out.println("→ Đang sinh cây cối...");
-        treeSystem = new TreeSystem();
-        Random random = new Random(System.currentTimeMillis());
+        treeSystem = new TreeSystem(uploadRing);
         float terrainSize = TERRAIN_SIZE * TERRAIN_SCALE;
+        // Rải cây song song khi độ cao là HeightField (chỉ đọc); chunk/clipmap chỉ truy vấn từ GL thread
+        ForkJoinPool placementPool = heights instanceof HeightField && GENERATION_PARALLELISM > 1
+                ? new ForkJoinPool(GENERATION_PARALLELISM) : null;
         // Sinh cây trên toàn bộ địa hình, tránh vùng thấp
-        treeSystem.generateTrees(300, 0, terrainSize, 0, terrainSize, 5.0f, terrain, random);
+        treeSystem.generateTrees(TREE_COUNT, 0, terrainSize, 0, terrainSize, 5.0f, heights, TREE_SEED, placementPool);
+        if (placementPool != null) {
+            placementPool.shutdown();
+        }
+        bakeTreeImpostors();
         
         // Thiết lập ma trận phép chiếu (projection)
         System.out.println("→ Đang thiết lập camera projection...");
@@ -145,6 +328,9 @@ public class Main {
         float aspectRatio = (float) window.getWidth() / window.getHeight();
         projectionMatrix.perspective((float) Math.toRadians(60.0f), aspectRatio, 0.1f, 1000.0f);
         
+        primitivesQuery = glGenQueries();
+        samplesQuery = glGenQueries();
+        
         // Thiết lập nguồn sáng
         lightPos = new Vector3f(centerX + 100, 150, centerZ + 100);
         
@@ -156,6 +342,9 @@ public class Main {
         System.out.println("║  Space      - Bay lên              ║");
         System.out.println("║  Shift      - Bay xuống            ║");
         System.out.println("║  Chuột      - Xoay góc nhìn        ║");
+        System.out.println("║  H          - Bật/tắt horizon cull ║");
+        System.out.println("║  Chuột T/P  - Nâng/hạ địa hình     ║");
+        System.out.println("║  F / G      - Làm phẳng / làm mịn  ║");
         System.out.println("║  ESC        - Thoát                ║");
         System.out.println("╚════════════════════════════════════╝\n");
     }
@@ -174,6 +363,7 @@ public class Main {
             
             // Render
             render();
+            uploadRing.endFrame();
             
             // Swap buffers và poll events
             window.update();
@@ -205,6 +395,14 @@ public class Main {
             camera.moveDown(speed);  // Bay xuống
         }
         
+        // Bật/tắt occlusion culling theo chân trời (debug)
+        boolean horizonKey = inputHandler.isKeyPressed(window, GLFW_KEY_H);
+        if (horizonKey && !horizonKeyDown) {
+            horizonCulling = !horizonCulling;
+            System.out.println("→ Horizon culling: " + (horizonCulling ? "bật" : "tắt"));
+        }
+        horizonKeyDown = horizonKey;
+        
         // Xử lý xoay camera bằng chuột
         Vector2f mouseMovement = inputHandler.getDisplayVector();
         if (mouseMovement.lengthSquared() > 0) {
@@ -221,6 +419,56 @@ public class Main {
             projectionMatrix.perspective((float) Math.toRadians(60.0f), aspectRatio, 0.1f, 1000.0f);
             window.setResized(false);
         }
+        
+        // Nạp/giải phóng chunk quanh camera và upload trong giới hạn thời gian
+        if (chunkManager != null) {
+            chunkManager.update(camera.getPosition());
+            chunkManager.uploadPending(CHUNK_UPLOAD_BUDGET_NANOS);
+        }
+        
+        // Dời clipmap theo camera (chỉ upload phần heightmap mới lộ ra)
+        if (clipmapTerrain != null) {
+            clipmapTerrain.update(camera.getPosition());
+        }
+        
+        // Sửa địa hình, upload các vùng đã đổi một lần mỗi frame
+        editTerrain(deltaTime);
+        if (terrain != null) {
+            terrain.flushEdits(horizonCuller);
+        } else if (lodTerrain != null) {
+            lodTerrain.flushEdits(horizonCuller);
+        }
+    }
+
+    /**
+     * Áp dụng brush tại điểm địa hình ở giữa màn hình khi giữ nút chuột / phím sửa
+     */
+    private void editTerrain(float deltaTime) {
+        TerrainBrush.Mode mode = null;
+        if (inputHandler.isLeftButtonPressed()) {
+            mode = TerrainBrush.Mode.RAISE;
+        } else if (inputHandler.isRightButtonPressed()) {
+            mode = TerrainBrush.Mode.LOWER;
+        } else if (inputHandler.isKeyPressed(window, GLFW_KEY_F)) {
+            mode = TerrainBrush.Mode.FLATTEN;
+        } else if (inputHandler.isKeyPressed(window, GLFW_KEY_G)) {
+            mode = TerrainBrush.Mode.SMOOTH;
+        }
+        if (mode == null || (terrain == null && lodTerrain == null)) {
+            return;
+        }
+        TerrainRaycaster raycaster = terrain != null ? terrain.getRaycaster() : lodTerrain.getRaycaster();
+        camera.getViewDirection(viewDirection);
+        if (!raycaster.raycast(camera.getPosition(), viewDirection, BRUSH_PICK_DISTANCE, brushPoint)) {
+            return;
+        }
+        float strength = mode == TerrainBrush.Mode.RAISE || mode == TerrainBrush.Mode.LOWER
+                ? BRUSH_HEIGHT_RATE * deltaTime : BRUSH_BLEND_RATE * deltaTime;
+        if (terrain != null) {
+            terrain.applyBrush(mode, brushPoint.x, brushPoint.z, BRUSH_RADIUS, strength);
+        } else {
+            lodTerrain.applyBrush(mode, brushPoint.x, brushPoint.z, BRUSH_RADIUS, strength);
+        }
     }
 
     private void render() {
@@ -230,6 +478,19 @@ public class Main {
         Matrix4f modelMatrix = new Matrix4f().identity();
         Matrix4f viewMatrix = camera.getViewMatrix();
         
+        // Frustum của camera để loại bỏ khối địa hình / ô cây nằm ngoài tầm nhìn
+        frustum.set(projectionMatrix.mul(viewMatrix, viewProjection));
+        
+        // Chân trời từ các tile địa hình gần camera để loại phần bị sườn núi che
+        HorizonCuller horizon = horizonCulling ? buildHorizon() : null;
+        
+        float now = (float) glfwGetTime();
+        boolean measure = !statsQueryPending && now - lastStatsTime >= 1.0f;
+        if (measure) {
+            glBeginQuery(GL_PRIMITIVES_GENERATED, primitivesQuery);
+            glBeginQuery(GL_SAMPLES_PASSED, samplesQuery);
+        }
+        
         // 1. Render Skybox (vẽ trước, ở xa nhất)
         skyboxShader.bind();
         skyboxShader.setUniform("view", viewMatrix);
@@ -261,22 +522,115 @@ public class Main {
         rockTexture.bind(1);
         snowTexture.bind(2);
         
-        terrain.render();
+        if (chunkManager != null) {
+            chunkManager.render(terrainShader, frustum, horizon);
+        } else if (clipmapTerrain != null) {
+            clipmapTerrain.render(terrainShader);
+        } else if (lodTerrain != null) {
+            lodTerrain.render(terrainShader, camera.getPosition(), frustum, horizon);
+        } else {
+            terrain.render(terrainShader, frustum, horizon);
+        }
         terrainShader.unbind();
         
         // 3. Render Trees
         treeShader.bind();
         treeShader.setUniform("model", modelMatrix);
-        treeShader.setUniform("view", viewMatrix);
-        treeShader.setUniform("projection", projectionMatrix);
-        treeShader.setUniform("lightPos", lightPos);
-        treeShader.setUniform("viewPos", camera.getPosition());
-        treeShader.setUniform("fogColor", FOG_COLOR);
-        treeShader.setUniform("fogDensity", FOG_DENSITY);
-        treeShader.setUniform("fogGradient", FOG_GRADIENT);
-        
-        treeSystem.render();
+        setTreeUniforms(treeShader, viewMatrix);
+        treeShader.setUniform("instanced", treeSystem.isInstanced() ? 1 : 0);
+        
+        treeSystem.render(treeShader, camera.getPosition(), frustum, horizon);
         treeShader.unbind();
+        
+        // Cây ở xa: impostor (các đoạn cây đã chọn trong treeSystem.render)
+        if (treeSystem.hasImpostors()) {
+            impostorShader.bind();
+            setTreeUniforms(impostorShader, viewMatrix);
+            treeSystem.renderImpostors(impostorShader);
+            impostorShader.unbind();
+        }
+        
+        if (measure) {
+            glEndQuery(GL_PRIMITIVES_GENERATED);
+            glEndQuery(GL_SAMPLES_PASSED);
+            lastStatsTime = now;
+            statsQueryPending = true;
+            cullingStats = buildCullingStats(horizon);
+        }
+        updateStats();
+    }
+
+    /**
+     * Uniform chung của shader cây và shader impostor (camera, ánh sáng, fog)
+     */
+    private void setTreeUniforms(ShaderProgram shader, Matrix4f viewMatrix) {
+        shader.setUniform("view", viewMatrix);
+        shader.setUniform("projection", projectionMatrix);
+        shader.setUniform("lightPos", lightPos);
+        shader.setUniform("viewPos", camera.getPosition());
+        shader.setUniform("fogColor", FOG_COLOR);
+        shader.setUniform("fogDensity", FOG_DENSITY);
+        shader.setUniform("fogGradient", FOG_GRADIENT);
+    }
+    
+    private HorizonCuller buildHorizon() {
+        horizonCuller.begin(camera.getPosition());
+        if (chunkManager != null) {
+            chunkManager.addOccluders(horizonCuller);
+        } else if (lodTerrain != null) {
+            horizonCuller.addOccluders(lodTerrain.getQuadTree().getHeightField());
+        } else if (terrain != null) {
+            horizonCuller.addOccluders(terrain.getHeightField());
+        }
+        horizonCuller.end();
+        return horizonCuller;
+    }
+
+    /**
+     * Hiển thị thống kê culling và số tam giác / sample trên tiêu đề cửa sổ khi query có kết quả
+     * (không chờ GPU, đọc ở frame sau)
+     */
+    private void updateStats() {
+        if (!statsQueryPending || glGetQueryObjecti(samplesQuery, GL_QUERY_RESULT_AVAILABLE) == GL_FALSE) {
+            return;
+        }
+        statsQueryPending = false;
+        int primitives = glGetQueryObjecti(primitivesQuery, GL_QUERY_RESULT);
+        int samples = glGetQueryObjecti(samplesQuery, GL_QUERY_RESULT);
+        window.setTitle(TITLE + " | " + cullingStats + " | " + primitives / 1000 + "k tam giác, "
+                        + samples / 1000 + "k sample");
+    }
+
+    /**
+     * Số phần tử được vẽ / bị loại bởi frustum + horizon culling
+     */
+    private String buildCullingStats(HorizonCuller horizon) {
+        String terrainStats;
+        if (chunkManager != null) {
+            terrainStats = "chunk " + chunkManager.getVisibleChunkCount() + "/"
+                    + (chunkManager.getVisibleChunkCount() + chunkManager.getCulledChunkCount());
+            TileCache<HeightField> tileCache = chunkManager.getTileCache();
+            if (tileCache != null) {
+                terrainStats += String.format(" (cache %.0f%%)", tileCache.getHitRate() * 100);
+            }
+        } else if (clipmapTerrain != null) {
+            terrainStats = "clipmap";
+        } else if (lodTerrain != null) {
+            terrainStats = "node " + lodTerrain.getRenderedNodeCount() + " (loại " + lodTerrain.getCulledNodeCount() + ")";
+        } else {
+            terrainStats = "khối " + terrain.getVisibleBlockCount() + "/"
+                    + (terrain.getVisibleBlockCount() + terrain.getCulledBlockCount());
+        }
+        int treeCells = treeSystem.getVisibleCellCount() + treeSystem.getCulledCellCount();
+        String horizonStats = horizon == null ? "horizon tắt"
+                : "horizon che " + horizon.getOccludedCount() + "/" + horizon.getTestedCount();
+        String lodStats = TreeSystem.LOD && treeSystem.isInstanced()
+                ? String.format(" (gần/vừa/xa %d/%d/%d)", treeSystem.getLodInstanceCount(TreeSystem.LOD_FULL),
+                                treeSystem.getLodInstanceCount(TreeSystem.LOD_REDUCED),
+                                treeSystem.getLodInstanceCount(TreeSystem.LOD_IMPOSTOR))
+                : "";
+        return terrainStats + " | cây " + treeSystem.getVisibleCellCount() + "/" + treeCells + " ô" + lodStats
+                + " | " + horizonStats;
     }
 
     private void cleanup() {
@@ -285,12 +639,35 @@ public class Main {
         if (terrain != null) {
             terrain.cleanup();
         }
+        if (lodTerrain != null) {
+            lodTerrain.cleanup();
+        }
+        if (clipmapTerrain != null) {
+            clipmapTerrain.cleanup();
+        }
+        if (chunkManager != null) {
+            TileCache<HeightField> tileCache = chunkManager.getTileCache();
+            if (tileCache != null) {
+                System.out.printf("→ Cache độ cao chunk: %d hit, %d miss, %d chờ chung, %d bị loại, %d/%d KB%n",
+                                  tileCache.getHitCount(), tileCache.getMissCount(), tileCache.getSharedLoadCount(),
+                                  tileCache.getEvictionCount(), tileCache.getBytes() / 1024,
+                                  tileCache.getBudgetBytes() / 1024);
+            }
+            chunkManager.cleanup();
+        }
         if (skybox != null) {
             skybox.cleanup();
         }
         if (treeSystem != null) {
             treeSystem.cleanup();
         }
+        if (uploadRing != null) {
+            uploadRing.cleanup();
+        }
+        if (primitivesQuery != 0) {
+            glDeleteQueries(primitivesQuery);
+            glDeleteQueries(samplesQuery);
+        }
         if (terrainShader != null) {
             terrainShader.cleanup();
         }
@@ -300,6 +677,9 @@ public class Main {
         if (treeShader != null) {
             treeShader.cleanup();
         }
+        if (impostorShader != null) {
+            impostorShader.cleanup();
+        }
         if (grassTexture != null) {
             grassTexture.cleanup();
         }
@@ -319,6 +699,60 @@ public class Main {
         System.out.println("╚════════════════════════════════════╝");
     }
 
+    /**
+     * Sinh heightmap trên GPU và so với CPU tại các điểm ngẫu nhiên
+     * @return null nếu GPU lỗi hoặc lệch quá ngưỡng (người gọi sinh lại bằng CPU)
+     */
+    private GpuHeightGenerator.Result generateHeightsOnGpu(NoiseSource noise) throws Exception {
+        ShaderProgram heightShader = new ShaderProgram();
+        heightShader.createVertexShader(loadResource("/shaders/heightgen.vert"));
+        heightShader.createFragmentShader(loadResource("/shaders/heightgen.frag"));
+        heightShader.link();
+        GpuHeightGenerator generator = new GpuHeightGenerator(heightShader);
+        try {
+            long start = System.nanoTime();
+            GpuHeightGenerator.Result result = generator.generate(noise, 0, 0, TERRAIN_SIZE, TERRAIN_SIZE,
+                                                                  HEIGHT_SCALE, TERRAIN_SCALE);
+            long elapsed = System.nanoTime() - start;
+            float error = GpuHeightGenerator.verify(noise, result.getHeights(), 0, 0, TERRAIN_SIZE,
+                                                    HEIGHT_SCALE, GPU_PARITY_SAMPLES, TERRAIN_SEED);
+            System.out.printf("→ Sinh độ cao trên GPU: %.1f ms, lệch tối đa so với CPU %.2e (%d điểm)%n",
+                              elapsed / 1e6, error, GPU_PARITY_SAMPLES + 4);
+            if (error > GPU_PARITY_TOLERANCE) {
+                System.out.println("→ GPU lệch quá ngưỡng " + GPU_PARITY_TOLERANCE + ", dùng CPU");
+                glDeleteTextures(result.getTextureId());
+                return null;
+            }
+            return result;
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println("→ Không sinh được độ cao trên GPU (" + e.getMessage() + "), dùng CPU");
+            return null;
+        } finally {
+            generator.cleanup();
+            heightShader.cleanup();
+        }
+    }
+
+    /**
+     * Nướng atlas impostor cho cây ở xa từ mesh mẫu; lỗi thì cây xa vẫn vẽ bằng mesh rút gọn
+     */
+    private void bakeTreeImpostors() throws Exception {
+        if (!TreeSystem.LOD || !treeSystem.isInstanced()) {
+            return;
+        }
+        ShaderProgram bakeShader = new ShaderProgram();
+        bakeShader.createVertexShader(loadResource("/shaders/tree.vert"));
+        bakeShader.createFragmentShader(loadResource("/shaders/treebake.frag"));
+        bakeShader.link();
+        try {
+            treeSystem.bakeImpostors(bakeShader);
+        } catch (IllegalStateException e) {
+            System.out.println("→ Không nướng được atlas impostor (" + e.getMessage() + "), cây xa dùng mesh rút gọn");
+        } finally {
+            bakeShader.cleanup();
+        }
+    }
+
     private String loadResource(String path) throws Exception {
         try (InputStream is = getClass().getResourceAsStream(path)) {
             if (is == null) {
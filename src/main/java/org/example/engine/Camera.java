@@ -2,7 +2,7 @@ package org.example.engine;
 
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
-import org.example.terrain.Terrain;
+import org.example.terrain.HeightProvider;
 
 public class Camera {
     private final Vector3f position;  // Vị trí camera
@@ -11,7 +11,7 @@ public class Camera {
     private float moveSpeed = 20.0f;           // Tốc độ di chuyển (đơn vị/giây)
     private float mouseSensitivity = 0.12f;    // Độ nhạy chuột vừa phải
     
-    private Terrain terrain;                   // Địa hình để kiểm tra va chạm
+    private HeightProvider terrain;            // Địa hình để kiểm tra va chạm
     private float minHeightAboveTerrain = 2.0f; // Khoảng cách tối thiểu phía trên địa hình
 
     public Camera() {
@@ -24,7 +24,7 @@ public class Camera {
         this.rotation = rotation;
     }
     
-    public void setTerrain(Terrain terrain) {
+    public void setTerrain(HeightProvider terrain) {
         this.terrain = terrain;
     }
 
@@ -109,6 +109,13 @@ public class Camera {
         return viewMatrix;
     }
 
+    /**
+     * Hướng nhìn của camera (vector đơn vị, world space)
+     */
+    public Vector3f getViewDirection(Vector3f dest) {
+        return getViewMatrix().positiveZ(dest).negate();
+    }
+
     public Vector3f getPosition() {
         return position;
     }
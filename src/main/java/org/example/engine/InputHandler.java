@@ -35,8 +35,12 @@ public class InputHandler {
 
         // Callback cho nút chuột
         glfwSetMouseButtonCallback(windowHandle, (handle, button, action, mods) -> {
-            leftButtonPressed = button == GLFW_MOUSE_BUTTON_1 && action == GLFW_PRESS;
-            rightButtonPressed = button == GLFW_MOUSE_BUTTON_2 && action == GLFW_PRESS;
+            // Chỉ cập nhật nút vừa đổi trạng thái (giữ được cả hai nút cùng lúc)
+            if (button == GLFW_MOUSE_BUTTON_1) {
+                leftButtonPressed = action == GLFW_PRESS;
+            } else if (button == GLFW_MOUSE_BUTTON_2) {
+                rightButtonPressed = action == GLFW_PRESS;
+            }
         });
 
         // Callback khi chuột vào/ra cửa sổ
@@ -81,6 +85,14 @@ public class InputHandler {
         return displayVector;
     }
 
+    public boolean isLeftButtonPressed() {
+        return leftButtonPressed;
+    }
+
+    public boolean isRightButtonPressed() {
+        return rightButtonPressed;
+    }
+
     public boolean isKeyPressed(Window window, int keyCode) {
         return glfwGetKey(window.getWindowHandle(), keyCode) == GLFW_PRESS;
     }
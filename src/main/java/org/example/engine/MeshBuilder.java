@@ -0,0 +1,248 @@
+package org.example.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+
+/**
+ * Dựng mesh phía CPU bằng mảng nguyên thủy tự giãn (không boxing như List&lt;Float&gt;)
+ *
+ * Mỗi thuộc tính đỉnh là một luồng float riêng ({@link Attribute}, số thành phần cố định),
+ * index là một luồng int. Biết trước kích thước thì truyền vào constructor: mảng được cấp đúng
+ * một lần và dùng thẳng làm kết quả, không copy. Dữ liệu được ghi thẳng từ mảng vào buffer
+ * upload ({@link #uploadAttribute}, {@link #uploadVertices}, {@link #uploadIndices}).
+ *
+ * Bố cục GPU khi ghi tất cả thuộc tính vào một buffer: các luồng nối tiếp nhau
+ * (toàn bộ thuộc tính 0, rồi toàn bộ thuộc tính 1, ...), xem {@link #getAttributeOffset}.
+ * Không thread-safe; dựng xong trên worker thread rồi upload ở GL thread là được.
+ */
+public final class MeshBuilder {
+    private static final int MIN_CAPACITY = 16;
+
+    private final Attribute[] attributes;
+    private int[] indices;
+    private int indexCount;
+
+    /**
+     * Một luồng thuộc tính đỉnh: {@code components} float mỗi đỉnh
+     */
+    public static final class Attribute {
+        private final int components;
+        private float[] data;
+        private int size;  // Số float đã ghi
+
+        private Attribute(int components, int vertexCapacity) {
+            this.components = components;
+            this.data = new float[components * vertexCapacity];
+        }
+
+        public Attribute put(float a) {
+            ensureCapacity(size + 1);
+            data[size++] = a;
+            return this;
+        }
+
+        public Attribute put(float a, float b) {
+            ensureCapacity(size + 2);
+            data[size] = a;
+            data[size + 1] = b;
+            size += 2;
+            return this;
+        }
+
+        public Attribute put(float a, float b, float c) {
+            ensureCapacity(size + 3);
+            data[size] = a;
+            data[size + 1] = b;
+            data[size + 2] = c;
+            size += 3;
+            return this;
+        }
+
+        /**
+         * Thêm {@code vertices} đỉnh chưa ghi vào cuối luồng
+         * @return Mảng nền để người gọi ghi trực tiếp, đỉnh mới bắt đầu tại (số đỉnh cũ) * components
+         */
+        public float[] append(int vertices) {
+            ensureCapacity(size + vertices * components);
+            size += vertices * components;
+            return data;
+        }
+
+        /**
+         * Mảng nền cắt đúng kích thước (chỉ copy khi còn dư dung lượng); sửa mảng là sửa luồng
+         */
+        public float[] getData() {
+            if (data.length != size) {
+                data = Arrays.copyOf(data, size);
+            }
+            return data;
+        }
+
+        public int getComponents() {
+            return components;
+        }
+
+        public int getVertexCount() {
+            return size / components;
+        }
+
+        public int getBytes() {
+            return size * Float.BYTES;
+        }
+
+        /**
+         * Ghi luồng vào {@code out} (thứ tự byte của máy), tăng position
+         */
+        public void writeTo(ByteBuffer out) {
+            ByteBuffer target = out.duplicate().order(ByteOrder.nativeOrder());
+            target.asFloatBuffer().put(data, 0, size);
+            out.position(out.position() + getBytes());
+        }
+
+        private void ensureCapacity(int required) {
+            if (required > data.length) {
+                data = Arrays.copyOf(data, Math.max(required, Math.max(MIN_CAPACITY, data.length * 2)));
+            }
+        }
+    }
+
+    /**
+     * @param vertexCapacity Số đỉnh dự kiến (cấp sẵn, vượt quá thì mảng tự giãn)
+     * @param indexCapacity Số index dự kiến
+     * @param components Số thành phần float của từng thuộc tính, ví dụ (3, 3, 2) = vị trí, normal, UV
+     */
+    public MeshBuilder(int vertexCapacity, int indexCapacity, int... components) {
+        if (components.length == 0) {
+            throw new IllegalArgumentException("Mesh cần ít nhất một thuộc tính đỉnh");
+        }
+        attributes = new Attribute[components.length];
+        for (int i = 0; i < components.length; i++) {
+            attributes[i] = new Attribute(components[i], vertexCapacity);
+        }
+        indices = new int[indexCapacity];
+    }
+
+    public Attribute attribute(int index) {
+        return attributes[index];
+    }
+
+    public int getAttributeCount() {
+        return attributes.length;
+    }
+
+    /**
+     * Số đỉnh (theo thuộc tính 0); dùng làm đỉnh gốc cho index của phần sắp thêm
+     */
+    public int getVertexCount() {
+        return attributes[0].getVertexCount();
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    public MeshBuilder index(int a) {
+        ensureIndexCapacity(indexCount + 1);
+        indices[indexCount++] = a;
+        return this;
+    }
+
+    public MeshBuilder triangle(int a, int b, int c) {
+        ensureIndexCapacity(indexCount + 3);
+        indices[indexCount] = a;
+        indices[indexCount + 1] = b;
+        indices[indexCount + 2] = c;
+        indexCount += 3;
+        return this;
+    }
+
+    /**
+     * Tứ giác a-b-c-d thành 2 tam giác (a, b, c) và (c, d, a), giữ chiều quay
+     */
+    public MeshBuilder quad(int a, int b, int c, int d) {
+        return triangle(a, b, c).triangle(c, d, a);
+    }
+
+    /**
+     * Mảng index nền cắt đúng kích thước (chỉ copy khi còn dư dung lượng); sửa mảng là sửa mesh
+     */
+    public int[] getIndices() {
+        if (indices.length != indexCount) {
+            indices = Arrays.copyOf(indices, indexCount);
+        }
+        return indices;
+    }
+
+    /**
+     * Vị trí (byte) của thuộc tính {@code index} trong buffer do {@link #writeVertices} ghi
+     */
+    public long getAttributeOffset(int index) {
+        long offset = 0;
+        for (int i = 0; i < index; i++) {
+            offset += attributes[i].getBytes();
+        }
+        return offset;
+    }
+
+    /**
+     * Dung lượng tất cả thuộc tính đỉnh (byte)
+     */
+    public int getVertexBytes() {
+        return (int) getAttributeOffset(attributes.length);
+    }
+
+    public int getIndexBytes() {
+        return indexCount * Integer.BYTES;
+    }
+
+    /**
+     * Ghi các luồng thuộc tính nối tiếp nhau vào {@code out} (thứ tự byte của máy), tăng position
+     */
+    public void writeVertices(ByteBuffer out) {
+        for (Attribute attribute : attributes) {
+            attribute.writeTo(out);
+        }
+    }
+
+    /**
+     * Ghi index (u32, thứ tự byte của máy) vào {@code out}, tăng position
+     */
+    public void writeIndices(ByteBuffer out) {
+        ByteBuffer target = out.duplicate().order(ByteOrder.nativeOrder());
+        target.asIntBuffer().put(indices, 0, indexCount);
+        out.position(out.position() + getIndexBytes());
+    }
+
+    /**
+     * Tạo storage cho buffer đang bind ở {@code target} từ một thuộc tính (GL thread)
+     * @param ring Ring upload dùng chung (null = vùng nhớ tạm)
+     */
+    public void uploadAttribute(UploadRing ring, int index, int target, int usage) {
+        Attribute attribute = attributes[index];
+        UploadRing.bufferData(ring, target, attribute.getBytes(), usage, attribute::writeTo);
+    }
+
+    /**
+     * Tạo storage cho GL_ARRAY_BUFFER đang bind từ tất cả thuộc tính nối tiếp nhau (GL thread)
+     */
+    public void uploadVertices(UploadRing ring, int usage) {
+        UploadRing.bufferData(ring, GL_ARRAY_BUFFER, getVertexBytes(), usage, this::writeVertices);
+    }
+
+    /**
+     * Tạo storage cho GL_ELEMENT_ARRAY_BUFFER đang bind từ index (GL thread)
+     */
+    public void uploadIndices(UploadRing ring, int usage) {
+        UploadRing.bufferData(ring, GL_ELEMENT_ARRAY_BUFFER, getIndexBytes(), usage, this::writeIndices);
+    }
+
+    private void ensureIndexCapacity(int required) {
+        if (required > indices.length) {
+            indices = Arrays.copyOf(indices, Math.max(required, Math.max(MIN_CAPACITY, indices.length * 2)));
+        }
+    }
+}
@@ -30,7 +30,7 @@ public class ProceduralTexture {
         return new TextureWrapper(textureId, size);
     }
     
-    private static ByteBuffer generateGrassTexture(int size) {
+    static ByteBuffer generateGrassTexture(int size) {
         ByteBuffer buffer = memAlloc(size * size * 4);
         Random random = new Random(123);
         
@@ -54,7 +54,7 @@ public class ProceduralTexture {
         return buffer;
     }
     
-    private static ByteBuffer generateRockTexture(int size) {
+    static ByteBuffer generateRockTexture(int size) {
         ByteBuffer buffer = memAlloc(size * size * 4);
         Random random = new Random(456);
         
@@ -79,7 +79,7 @@ public class ProceduralTexture {
         return buffer;
     }
     
-    private static ByteBuffer generateSnowTexture(int size) {
+    static ByteBuffer generateSnowTexture(int size) {
         ByteBuffer buffer = memAlloc(size * size * 4);
         Random random = new Random(789);
         
@@ -1,12 +1,15 @@
 package org.example.engine;
 
 import org.joml.Matrix4f;
+import org.joml.Vector2f;
 import org.joml.Vector3f;
 import org.lwjgl.system.MemoryStack;
 
 import java.nio.FloatBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.lwjgl.opengl.GL20.*;
 
@@ -14,6 +17,8 @@ public class ShaderProgram {
     private final int programId;
     private int vertexShaderId;
     private int fragmentShaderId;
+    // Cache vị trí uniform (tránh gọi glGetUniformLocation mỗi lần set, ví dụ khi vẽ từng node LOD)
+    private final Map<String, Integer> uniformLocations = new HashMap<>();
 
     public ShaderProgram() {
         programId = glCreateProgram();
@@ -86,26 +91,60 @@ public class ShaderProgram {
         try (MemoryStack stack = MemoryStack.stackPush()) {
             FloatBuffer fb = stack.mallocFloat(16);
             value.get(fb);
-            int location = glGetUniformLocation(programId, uniformName);
+            int location = getUniformLocation(uniformName);
             glUniformMatrix4fv(location, false, fb);
         }
     }
 
+    public void setUniform(String uniformName, Vector2f value) {
+        int location = getUniformLocation(uniformName);
+        glUniform2f(location, value.x, value.y);
+    }
+
     public void setUniform(String uniformName, Vector3f value) {
-        int location = glGetUniformLocation(programId, uniformName);
+        int location = getUniformLocation(uniformName);
         glUniform3f(location, value.x, value.y, value.z);
     }
 
     public void setUniform(String uniformName, float value) {
-        int location = glGetUniformLocation(programId, uniformName);
+        int location = getUniformLocation(uniformName);
         glUniform1f(location, value);
     }
 
     public void setUniform(String uniformName, int value) {
-        int location = glGetUniformLocation(programId, uniformName);
+        int location = getUniformLocation(uniformName);
         glUniform1i(location, value);
     }
 
+    public void setUniform(String uniformName, float x, float y) {
+        int location = getUniformLocation(uniformName);
+        glUniform2f(location, x, y);
+    }
+
+    public void setUniform(String uniformName, float x, float y, float z) {
+        int location = getUniformLocation(uniformName);
+        glUniform3f(location, x, y, z);
+    }
+
+    public void setUniform(String uniformName, int x, int y) {
+        int location = getUniformLocation(uniformName);
+        glUniform2i(location, x, y);
+    }
+
+    public void setUniform(String uniformName, int[] values) {
+        int location = getUniformLocation(uniformName);
+        glUniform1iv(location, values);
+    }
+
+    private int getUniformLocation(String uniformName) {
+        Integer location = uniformLocations.get(uniformName);
+        if (location == null) {
+            location = glGetUniformLocation(programId, uniformName);
+            uniformLocations.put(uniformName, location);
+        }
+        return location;
+    }
+
     public static String loadShaderFile(String filePath) throws Exception {
         return new String(Files.readAllBytes(Paths.get(filePath)));
     }
@@ -0,0 +1,361 @@
+package org.example.engine;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.lwjgl.opengl.ARBBufferStorage.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.ARBBufferStorage.GL_MAP_PERSISTENT_BIT;
+import static org.lwjgl.opengl.ARBBufferStorage.glBufferStorage;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.GL_MAP_WRITE_BIT;
+import static org.lwjgl.opengl.GL30.glMapBufferRange;
+import static org.lwjgl.opengl.GL31.GL_COPY_READ_BUFFER;
+import static org.lwjgl.opengl.GL31.glCopyBufferSubData;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+/**
+ * Vùng nhớ trung gian dạng vòng (ring buffer) cho việc upload đỉnh/index lên GPU
+ *
+ * - Có ARB_buffer_storage: một buffer được map cố định (persistent + coherent). Worker thread
+ *   ghi thẳng vào vùng nhớ đã map, GL thread chỉ gọi glCopyBufferSubData sang buffer đích.
+ *   Vùng đã copy được dùng lại khi fence của frame đó báo GPU đã xong.
+ * - Không có (hoặc -Dupload.persistent=false): ring nằm trong bộ nhớ native thường, GL thread đưa
+ *   dữ liệu bằng glBufferData lên buffer đích (driver cấp storage mới thay vì chờ GPU - orphaning),
+ *   vùng nhớ được trả lại ngay vì driver đã copy xong khi hàm trả về.
+ *
+ * {@link #allocate} gọi được từ mọi thread (worker chờ khi ring đầy); các phương thức còn lại
+ * chỉ gọi từ GL thread. Mỗi frame gọi {@link #endFrame} một lần sau các lệnh upload.
+ */
+public class UploadRing {
+    private static final int ALIGNMENT = 16;
+    private static final long FENCE_TIMEOUT_NANOS = 1_000_000_000L;
+
+    private final int capacity;
+    private final boolean persistent;
+    private final int bufferId;        // Buffer được map (0 nếu không persistent)
+    private final ByteBuffer memory;
+    private final Thread glThread;
+
+    // Truy cập trong synchronized (this)
+    private long head;                 // Tổng số byte đã cấp (vị trí trong ring = head % capacity)
+    private long tail;                 // Tổng số byte đã trả lại
+    private final ArrayDeque<Allocation> inFlight = new ArrayDeque<>();  // Theo thứ tự cấp phát
+    private int waitCount;
+
+    // Chỉ GL thread
+    private final List<Allocation> copiedThisFrame = new ArrayList<>();
+    private final ArrayDeque<Fence> fences = new ArrayDeque<>();
+
+    /**
+     * Một vùng trong ring. Ghi dữ liệu vào {@link #data()}, upload, rồi {@link #release()}.
+     */
+    public final class Allocation {
+        private final long end;        // Vị trí kết thúc trong ring (kể cả phần đệm khi quay vòng)
+        private final int offset;      // Vị trí dữ liệu trong ring
+        private final int size;
+        private final ByteBuffer data;
+        private boolean copied;        // Đã có lệnh copy trên GPU (chỉ persistent)
+        private boolean released;
+        private Fence fence;
+
+        private Allocation(long end, int offset, int size) {
+            this.end = end;
+            this.offset = offset;
+            this.size = size;
+            this.data = memory.slice(offset, size).order(ByteOrder.nativeOrder());
+        }
+
+        /**
+         * Vùng nhớ để ghi (position = 0, limit = size, thứ tự byte của máy)
+         */
+        public ByteBuffer data() {
+            return data.duplicate().order(ByteOrder.nativeOrder());
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Vị trí dữ liệu trong ring (byte)
+         */
+        int offset() {
+            return offset;
+        }
+
+        /**
+         * Tạo storage mới cho buffer đang bind ở {@code target} và chép đoạn [from, from + length)
+         * của vùng này vào đầu buffer (GL thread)
+         */
+        public void uploadNew(int target, int usage, int from, int length) {
+            if (persistent) {
+                glBufferData(target, length, usage);
+                glBindBuffer(GL_COPY_READ_BUFFER, bufferId);
+                glCopyBufferSubData(GL_COPY_READ_BUFFER, target, offset + from, 0, length);
+                glBindBuffer(GL_COPY_READ_BUFFER, 0);
+                copied = true;
+            } else {
+                glBufferData(target, data.duplicate().position(from).limit(from + length), usage);
+            }
+        }
+
+        /**
+         * Trả vùng nhớ lại cho ring (GL thread). Vùng đã copy chỉ được dùng lại sau fence của frame.
+         */
+        public void release() {
+            synchronized (UploadRing.this) {
+                released = true;
+            }
+            if (copied) {
+                copiedThisFrame.add(this);
+            }
+        }
+    }
+
+    /**
+     * Fence của một frame, dùng chung cho mọi vùng đã copy trong frame đó
+     */
+    private static final class Fence {
+        private long sync;
+
+        Fence(long sync) {
+            this.sync = sync;
+        }
+
+        boolean isSignaled(long timeoutNanos) {
+            if (sync == 0) {
+                return true;
+            }
+            int status = glClientWaitSync(sync, timeoutNanos > 0 ? GL_SYNC_FLUSH_COMMANDS_BIT : 0, timeoutNanos);
+            if (status == GL_ALREADY_SIGNALED || status == GL_CONDITION_SATISFIED) {
+                glDeleteSync(sync);
+                sync = 0;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Tạo ring (GL thread, sau khi đã có context)
+     * @param capacity Dung lượng (byte)
+     */
+    public UploadRing(int capacity) {
+        this(capacity, supportsPersistent());
+    }
+
+    /**
+     * @param persistent false = ring trong bộ nhớ native thường (không cần context OpenGL tới khi upload)
+     */
+    UploadRing(int capacity, boolean persistent) {
+        this.capacity = align(capacity);
+        this.glThread = Thread.currentThread();
+        this.persistent = persistent;
+
+        if (persistent) {
+            int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+            bufferId = glGenBuffers();
+            glBindBuffer(GL_COPY_READ_BUFFER, bufferId);
+            glBufferStorage(GL_COPY_READ_BUFFER, this.capacity, flags);
+            memory = glMapBufferRange(GL_COPY_READ_BUFFER, 0, this.capacity, flags);
+            glBindBuffer(GL_COPY_READ_BUFFER, 0);
+        } else {
+            bufferId = 0;
+            memory = memAlloc(this.capacity);
+        }
+    }
+
+    /**
+     * Cấp một vùng {@code size} byte. Worker thread chờ tới khi ring đủ chỗ;
+     * GL thread chờ fence của vùng cũ nhất thay vì chờ chính nó.
+     * @return null nếu vùng lớn hơn ring, thread bị ngắt, hoặc (GL thread) ring đầy các vùng
+     *         worker chưa ghi xong - khi đó người gọi tự upload theo cách thường
+     */
+    public Allocation allocate(int size) {
+        int aligned = align(Math.max(1, size));
+        if (aligned > capacity) {
+            return null;
+        }
+        boolean onGlThread = Thread.currentThread() == glThread;
+        synchronized (this) {
+            while (true) {
+                if (head == tail) {
+                    // Ring rỗng: cấp lại từ đầu, nếu không vùng lớn hơn nửa ring sẽ không bao giờ vừa
+                    head = 0;
+                    tail = 0;
+                }
+                int position = (int) (head % capacity);
+                // Không đủ chỗ tới cuối ring: bỏ qua phần còn lại, cấp từ đầu
+                int padding = position + aligned > capacity ? capacity - position : 0;
+                long end = head + padding + aligned;
+                if (end - tail <= capacity) {
+                    Allocation allocation = new Allocation(end, padding > 0 ? 0 : position, size);
+                    head = end;
+                    inFlight.addLast(allocation);
+                    return allocation;
+                }
+
+                waitCount++;
+                if (onGlThread) {
+                    if (!retireOldest()) {
+                        return null;
+                    }
+                } else {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return null;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tạo storage cho buffer đang bind ở {@code target} với {@code size} byte do {@code writer} ghi
+     * (GL thread). Ghi thẳng vào ring nếu còn chỗ, nếu không thì dùng vùng nhớ tạm.
+     */
+    public void bufferData(int target, int size, int usage, Consumer<ByteBuffer> writer) {
+        bufferData(this, target, size, usage, writer);
+    }
+
+    /**
+     * Như {@link #bufferData(int, int, int, Consumer)}, {@code ring} = null thì luôn dùng vùng nhớ tạm
+     */
+    public static void bufferData(UploadRing ring, int target, int size, int usage, Consumer<ByteBuffer> writer) {
+        Allocation allocation = ring != null ? ring.allocate(size) : null;
+        if (allocation != null) {
+            writer.accept(allocation.data());
+            allocation.uploadNew(target, usage, 0, size);
+            allocation.release();
+            return;
+        }
+        ByteBuffer buffer = memAlloc(size);
+        writer.accept(buffer.duplicate().order(ByteOrder.nativeOrder()));
+        glBufferData(target, buffer, usage);
+        memFree(buffer);
+    }
+
+    /**
+     * Kết thúc frame (GL thread): đặt fence cho các vùng đã copy, trả lại các vùng GPU đã dùng xong
+     */
+    public void endFrame() {
+        fenceCopies();
+        synchronized (this) {
+            retire(0);
+        }
+    }
+
+    /**
+     * true nếu đang dùng buffer map cố định (ARB_buffer_storage)
+     */
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * Số lần cấp phát phải chờ vì ring đầy (để chỉnh dung lượng)
+     */
+    public synchronized int getWaitCount() {
+        return waitCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void cleanup() {
+        for (Fence fence : fences) {
+            if (fence.sync != 0) {
+                glDeleteSync(fence.sync);
+            }
+        }
+        fences.clear();
+        if (persistent) {
+            glBindBuffer(GL_COPY_READ_BUFFER, bufferId);
+            glUnmapBuffer(GL_COPY_READ_BUFFER);
+            glBindBuffer(GL_COPY_READ_BUFFER, 0);
+            glDeleteBuffers(bufferId);
+        } else {
+            memFree(memory);
+        }
+    }
+
+    private static boolean supportsPersistent() {
+        GLCapabilities caps = GL.getCapabilities();
+        return (caps.OpenGL44 || caps.GL_ARB_buffer_storage)
+                && !"false".equals(System.getProperty("upload.persistent"));
+    }
+
+    private void fenceCopies() {
+        if (copiedThisFrame.isEmpty()) {
+            return;
+        }
+        Fence fence = new Fence(glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0));
+        synchronized (this) {
+            for (Allocation allocation : copiedThisFrame) {
+                allocation.fence = fence;
+            }
+        }
+        copiedThisFrame.clear();
+        fences.addLast(fence);
+    }
+
+    /**
+     * Trả lại các vùng đầu hàng đợi đã xong (theo thứ tự cấp phát), đánh thức worker đang chờ
+     * @param timeoutNanos Thời gian tối đa chờ fence của vùng đầu tiên (0 = không chờ)
+     */
+    private void retire(long timeoutNanos) {
+        boolean freed = false;
+        while (!inFlight.isEmpty()) {
+            Allocation allocation = inFlight.peekFirst();
+            if (!allocation.released || (allocation.copied && allocation.fence == null)) {
+                break;
+            }
+            if (allocation.fence != null && !allocation.fence.isSignaled(timeoutNanos)) {
+                break;
+            }
+            inFlight.pollFirst();
+            tail = allocation.end;
+            freed = true;
+            timeoutNanos = 0;  // Chỉ chờ cho vùng đầu tiên
+        }
+        while (!fences.isEmpty() && fences.peekFirst().sync == 0) {
+            fences.pollFirst();
+        }
+        if (freed) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Chờ vùng cũ nhất xong (GL thread, đang giữ khóa)
+     * @return false nếu vùng đó chưa được trả lại (worker còn đang ghi / chưa upload)
+     */
+    private boolean retireOldest() {
+        Allocation oldest = inFlight.peekFirst();
+        if (oldest == null || !oldest.released) {
+            return false;
+        }
+        if (oldest.copied && oldest.fence == null) {
+            fenceCopies();
+        }
+        long before = tail;
+        retire(FENCE_TIMEOUT_NANOS);
+        return tail != before;
+    }
+
+    private static int align(int size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+}
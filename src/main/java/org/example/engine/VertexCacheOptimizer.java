@@ -0,0 +1,268 @@
+package org.example.engine;
+
+import java.util.Arrays;
+
+/**
+ * Sắp xếp lại thứ tự tam giác để tận dụng post-transform vertex cache của GPU
+ * (thuật toán của Tom Forsyth, "Linear-Speed Vertex Cache Optimisation")
+ *
+ * Chỉ đổi thứ tự tam giác, không đổi đỉnh nên dùng được cho mọi mảng index đã sinh.
+ * ACMR (average cache miss ratio) = số lần vertex shader chạy / số tam giác,
+ * tối thiểu ~0.5 với lưới đều, thứ tự theo hàng trên lưới rộng thường ~1.0.
+ */
+public final class VertexCacheOptimizer {
+    /** Kích thước cache FIFO dùng để đo ACMR (gần với GPU thực tế) */
+    public static final int DEFAULT_FIFO_SIZE = 16;
+
+    // Tham số chấm điểm của Forsyth
+    private static final int CACHE_SIZE = 32;
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRI_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+    private static final int MAX_VALENCE_TABLE = 32;
+
+    private static final float[] CACHE_SCORES = new float[CACHE_SIZE];
+    private static final float[] VALENCE_SCORES = new float[MAX_VALENCE_TABLE];
+
+    static {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (i < 3) {
+                // 3 đỉnh của tam giác vừa vẽ: điểm cố định để tránh ưu tiên tam giác kề quá mức
+                CACHE_SCORES[i] = LAST_TRI_SCORE;
+            } else {
+                float scaler = 1.0f - (float) (i - 3) / (CACHE_SIZE - 3);
+                CACHE_SCORES[i] = (float) Math.pow(scaler, CACHE_DECAY_POWER);
+            }
+        }
+        for (int i = 1; i < MAX_VALENCE_TABLE; i++) {
+            VALENCE_SCORES[i] = VALENCE_BOOST_SCALE * (float) Math.pow(i, -VALENCE_BOOST_POWER);
+        }
+    }
+
+    private VertexCacheOptimizer() {
+    }
+
+    /**
+     * Sắp xếp lại tại chỗ các tam giác trong indices[offset, offset + count)
+     * @param vertexCount Số đỉnh (mọi index phải nhỏ hơn giá trị này)
+     */
+    public static void optimize(int[] indices, int offset, int count, int vertexCount) {
+        int[] result = reorder(indices, offset, count, vertexCount);
+        System.arraycopy(result, 0, indices, offset, count);
+    }
+
+    public static void optimize(int[] indices, int vertexCount) {
+        optimize(indices, 0, indices.length, vertexCount);
+    }
+
+    /**
+     * Như {@link #optimize(int[], int, int, int)} cho index 16 bit (không dấu)
+     */
+    public static void optimize(short[] indices, int offset, int count, int vertexCount) {
+        int[] wide = new int[count];
+        for (int i = 0; i < count; i++) {
+            wide[i] = indices[offset + i] & 0xFFFF;
+        }
+        int[] result = reorder(wide, 0, count, vertexCount);
+        for (int i = 0; i < count; i++) {
+            indices[offset + i] = (short) result[i];
+        }
+    }
+
+    /**
+     * Số lần cache miss khi vẽ indices[offset, offset + count) với cache FIFO {@code cacheSize} đỉnh
+     */
+    public static int countCacheMisses(int[] indices, int offset, int count, int vertexCount, int cacheSize) {
+        // Đỉnh còn trong cache nếu từ lúc được nạp có không quá cacheSize lần miss khác
+        int[] loadedAt = new int[vertexCount];
+        Arrays.fill(loadedAt, -cacheSize - 1);
+        int misses = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int vertex = indices[i];
+            if (misses - loadedAt[vertex] > cacheSize) {
+                loadedAt[vertex] = misses;
+                misses++;
+            }
+        }
+        return misses;
+    }
+
+    public static int countCacheMisses(short[] indices, int offset, int count, int vertexCount, int cacheSize) {
+        int[] loadedAt = new int[vertexCount];
+        Arrays.fill(loadedAt, -cacheSize - 1);
+        int misses = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int vertex = indices[i] & 0xFFFF;
+            if (misses - loadedAt[vertex] > cacheSize) {
+                loadedAt[vertex] = misses;
+                misses++;
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * ACMR của toàn bộ mảng index với cache FIFO {@link #DEFAULT_FIFO_SIZE} đỉnh
+     */
+    public static float computeAcmr(int[] indices, int vertexCount) {
+        if (indices.length < 3) {
+            return 0;
+        }
+        int misses = countCacheMisses(indices, 0, indices.length, vertexCount, DEFAULT_FIFO_SIZE);
+        return (float) misses / (indices.length / 3);
+    }
+
+    private static int[] reorder(int[] indices, int offset, int count, int vertexCount) {
+        int triCount = count / 3;
+        int[] output = new int[count];
+        if (triCount == 0) {
+            return output;
+        }
+
+        // Danh sách tam giác kề của từng đỉnh (phần đầu [0, activeCount) là các tam giác chưa vẽ)
+        int[] activeCount = new int[vertexCount];
+        for (int i = 0; i < triCount * 3; i++) {
+            activeCount[indices[offset + i]]++;
+        }
+        int[] adjacencyStart = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) {
+            adjacencyStart[v + 1] = adjacencyStart[v] + activeCount[v];
+        }
+        int[] adjacency = new int[triCount * 3];
+        int[] fill = new int[vertexCount];
+        for (int t = 0; t < triCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                int v = indices[offset + t * 3 + k];
+                adjacency[adjacencyStart[v] + fill[v]++] = t;
+            }
+        }
+
+        int[] cachePosition = new int[vertexCount];
+        Arrays.fill(cachePosition, -1);
+        float[] vertexScore = new float[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            vertexScore[v] = score(-1, activeCount[v]);
+        }
+
+        boolean[] emitted = new boolean[triCount];
+        int bestTri = 0;
+        float bestInitial = -1;
+        for (int t = 0; t < triCount; t++) {
+            float s = vertexScore[indices[offset + t * 3]]
+                    + vertexScore[indices[offset + t * 3 + 1]]
+                    + vertexScore[indices[offset + t * 3 + 2]];
+            if (s > bestInitial) {
+                bestInitial = s;
+                bestTri = t;
+            }
+        }
+
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] nextCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+        int scanStart = 0;
+
+        for (int out = 0; out < triCount; out++) {
+            if (bestTri < 0) {
+                // Không còn tam giác nào kề cache: lấy tam giác chưa vẽ đầu tiên
+                while (emitted[scanStart]) {
+                    scanStart++;
+                }
+                bestTri = scanStart;
+            }
+
+            emitted[bestTri] = true;
+            for (int k = 0; k < 3; k++) {
+                int v = indices[offset + bestTri * 3 + k];
+                output[out * 3 + k] = v;
+
+                // Bỏ tam giác khỏi danh sách đang hoạt động của đỉnh
+                int start = adjacencyStart[v];
+                int last = start + activeCount[v] - 1;
+                for (int a = start; a <= last; a++) {
+                    if (adjacency[a] == bestTri) {
+                        adjacency[a] = adjacency[last];
+                        adjacency[last] = bestTri;
+                        activeCount[v]--;
+                        break;
+                    }
+                }
+            }
+
+            // Cache mới: 3 đỉnh vừa dùng lên đầu, sau đó các đỉnh cũ còn lại
+            int nextCount = 0;
+            for (int k = 0; k < 3; k++) {
+                int v = indices[offset + bestTri * 3 + k];
+                boolean duplicate = false;
+                for (int j = 0; j < nextCount; j++) {
+                    if (nextCache[j] == v) {
+                        duplicate = true;
+                        break;
+                    }
+                }
+                if (!duplicate) {
+                    nextCache[nextCount++] = v;
+                }
+            }
+            for (int j = 0; j < cacheCount; j++) {
+                int v = cache[j];
+                boolean inTri = false;
+                for (int k = 0; k < nextCount && k < 3; k++) {
+                    if (nextCache[k] == v) {
+                        inTri = true;
+                        break;
+                    }
+                }
+                if (!inTri) {
+                    nextCache[nextCount++] = v;
+                }
+            }
+
+            // Cập nhật điểm các đỉnh trong cache (đỉnh bị đẩy ra ngoài mất điểm cache)
+            for (int j = 0; j < nextCount; j++) {
+                int v = nextCache[j];
+                cachePosition[v] = j < CACHE_SIZE ? j : -1;
+                vertexScore[v] = score(cachePosition[v], activeCount[v]);
+            }
+
+            // Tính lại điểm các tam giác kề cache và chọn tam giác tốt nhất
+            bestTri = -1;
+            float bestScore = -1;
+            for (int j = 0; j < nextCount; j++) {
+                int v = nextCache[j];
+                int start = adjacencyStart[v];
+                for (int a = start; a < start + activeCount[v]; a++) {
+                    int t = adjacency[a];
+                    float s = vertexScore[indices[offset + t * 3]]
+                            + vertexScore[indices[offset + t * 3 + 1]]
+                            + vertexScore[indices[offset + t * 3 + 2]];
+                    if (s > bestScore) {
+                        bestScore = s;
+                        bestTri = t;
+                    }
+                }
+            }
+
+            int[] swap = cache;
+            cache = nextCache;
+            nextCache = swap;
+            cacheCount = Math.min(nextCount, CACHE_SIZE);
+        }
+
+        return output;
+    }
+
+    private static float score(int cachePosition, int activeTris) {
+        if (activeTris == 0) {
+            return -1.0f;  // Không còn tam giác nào dùng đỉnh này
+        }
+        float score = cachePosition < 0 ? 0.0f : CACHE_SCORES[cachePosition];
+        if (activeTris < MAX_VALENCE_TABLE) {
+            score += VALENCE_SCORES[activeTris];
+        } else {
+            score += VALENCE_BOOST_SCALE * (float) Math.pow(activeTris, -VALENCE_BOOST_POWER);
+        }
+        return score;
+    }
+}
@@ -117,6 +117,13 @@ public class Window {
         glfwSetErrorCallback(null).free();
     }
 
+    /**
+     * Đổi tiêu đề cửa sổ (dùng để hiển thị thống kê render)
+     */
+    public void setTitle(String text) {
+        glfwSetWindowTitle(windowHandle, text);
+    }
+
     public boolean isResized() {
         return resized;
     }
@@ -0,0 +1,384 @@
+package org.example.graphics;
+
+import org.example.terrain.HeightProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.random.RandomGenerator;
+
+/**
+ * Rải điểm blue noise (Poisson-disk: mọi cặp điểm cách nhau ít nhất {@code radius}) trên một vùng XZ,
+ * chia thành các tile xử lý song song
+ *
+ * - Mỗi tile chạy thuật toán Bridson trên lưới nền dùng chung (ô radius / √2, mỗi ô tối đa 1 điểm),
+ *   kiểm tra khoảng cách cả với điểm của tile lân cận đã xong.
+ * - Tile được chia 4 pha theo tính chẵn lẻ (tx, tz): các tile cùng pha cách nhau ít nhất một tile
+ *   (≥ radius) nên chạy song song không ảnh hưởng nhau; kết quả chỉ phụ thuộc seed, không phụ thuộc
+ *   số thread hay thứ tự chạy.
+ * - Mỗi tile có SplittableRandom riêng (seed trộn từ seed chung và tọa độ tile, không CAS như Random), lọc điểm theo độ cao/độ dốc
+ *   địa hình (truy vấn độ cao theo lô) rồi ghi thẳng bản ghi instance ({@code stride} float mỗi điểm).
+ *
+ * Khi chạy song song, {@code terrain.getHeightsAt} được gọi đồng thời từ nhiều thread.
+ */
+public class PoissonDiskSampler {
+    private static final int CANDIDATES = 20;         // Số điểm thử quanh mỗi điểm đang hoạt động (Bridson k)
+    private static final float TILE_RADII = 32.0f;    // Cạnh tile (theo số lần radius)
+    private static final float SLOPE_STEP = 0.5f;     // Khoảng lấy sai phân độ dốc (world)
+
+    /**
+     * Điều kiện giữ điểm theo địa hình
+     */
+    @FunctionalInterface
+    public interface Filter {
+        /**
+         * @param height Độ cao địa hình tại điểm
+         * @param slope Độ dốc (độ lớn gradient, dy / dxz)
+         */
+        boolean accept(float height, float slope);
+    }
+
+    /**
+     * Ghi bản ghi instance cho một điểm đã giữ
+     */
+    @FunctionalInterface
+    public interface InstanceWriter {
+        /**
+         * Ghi {@code stride} float vào data[offset ...]
+         * @param random Bộ sinh số ngẫu nhiên của tile (dùng cho thuộc tính ngẫu nhiên như kích thước, màu)
+         */
+        void write(float[] data, int offset, float x, float y, float z, RandomGenerator random);
+    }
+
+    /**
+     * Kết quả: {@link #getCount()} bản ghi liên tục trong {@link #getData()}, theo thứ tự tile
+     */
+    public static final class Result {
+        private final float[] data;
+        private final int count;
+        private final int candidates;
+
+        Result(float[] data, int count, int candidates) {
+            this.data = data;
+            this.count = count;
+            this.candidates = candidates;
+        }
+
+        public float[] getData() {
+            return data;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Số điểm Poisson đã sinh (trước khi lọc theo địa hình)
+         */
+        public int getCandidateCount() {
+            return candidates;
+        }
+    }
+
+    private final float minX;
+    private final float minZ;
+    private final float maxX;
+    private final float maxZ;
+    private final float radius;
+    private final float cellSize;
+    private final int cellsX;
+    private final int cellsZ;
+    private final int tilesX;
+    private final int tilesZ;
+    private final int tileCells;   // Cạnh tile theo số ô lưới nền
+    private final long seed;
+
+    /**
+     * @param radius Khoảng cách tối thiểu giữa hai điểm
+     */
+    public PoissonDiskSampler(float minX, float maxX, float minZ, float maxZ, float radius, long seed) {
+        if (!(radius > 0) || !(maxX > minX) || !(maxZ > minZ)) {
+            throw new IllegalArgumentException("Vùng hoặc bán kính không hợp lệ: " + radius);
+        }
+        this.minX = minX;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxZ = maxZ;
+        this.radius = radius;
+        this.cellSize = radius / (float) Math.sqrt(2);
+        this.cellsX = Math.max(1, (int) Math.ceil((maxX - minX) / cellSize));
+        this.cellsZ = Math.max(1, (int) Math.ceil((maxZ - minZ) / cellSize));
+        this.tileCells = Math.max(2, (int) (TILE_RADII * radius / cellSize));
+        this.tilesX = (cellsX + tileCells - 1) / tileCells;
+        this.tilesZ = (cellsZ + tileCells - 1) / tileCells;
+        this.seed = seed;
+    }
+
+    /**
+     * Rải điểm trên toàn vùng, giữ các điểm thỏa {@code filter}
+     * @param pool Pool chạy các tile song song, null = tuần tự
+     */
+    public Result sample(HeightProvider terrain, Filter filter, int stride, InstanceWriter writer, ForkJoinPool pool) {
+        // Lưới nền: x, z của điểm trong ô (NaN = trống)
+        float[] grid = new float[cellsX * cellsZ * 2];
+        Arrays.fill(grid, Float.NaN);
+        float[][] tileData = new float[tilesX * tilesZ][];
+        int[] tileCounts = new int[tilesX * tilesZ];
+        int[] tileCandidates = new int[tilesX * tilesZ];
+
+        for (int phase = 0; phase < 4; phase++) {
+            List<Integer> tiles = new ArrayList<>();
+            for (int tz = phase >> 1; tz < tilesZ; tz += 2) {
+                for (int tx = phase & 1; tx < tilesX; tx += 2) {
+                    tiles.add(tz * tilesX + tx);
+                }
+            }
+            if (pool == null || tiles.size() < 2) {
+                for (int tile : tiles) {
+                    sampleTile(tile, grid, terrain, filter, stride, writer, tileData, tileCounts, tileCandidates);
+                }
+            } else {
+                List<ForkJoinTask<?>> tasks = new ArrayList<>(tiles.size());
+                for (int tile : tiles) {
+                    tasks.add(pool.submit(() -> sampleTile(tile, grid, terrain, filter, stride, writer,
+                                                           tileData, tileCounts, tileCandidates)));
+                }
+                for (ForkJoinTask<?> task : tasks) {
+                    task.join();
+                }
+            }
+        }
+
+        // Nối bản ghi của các tile
+        int count = 0;
+        int candidates = 0;
+        for (int tile = 0; tile < tileData.length; tile++) {
+            count += tileCounts[tile];
+            candidates += tileCandidates[tile];
+        }
+        float[] data = new float[count * stride];
+        int offset = 0;
+        for (int tile = 0; tile < tileData.length; tile++) {
+            System.arraycopy(tileData[tile], 0, data, offset, tileCounts[tile] * stride);
+            offset += tileCounts[tile] * stride;
+        }
+        return new Result(data, count, candidates);
+    }
+
+    /**
+     * Bridson trong một tile, rồi lọc theo địa hình và ghi bản ghi instance
+     */
+    private void sampleTile(int tile, float[] grid, HeightProvider terrain, Filter filter, int stride,
+                            InstanceWriter writer, float[][] tileData, int[] tileCounts, int[] tileCandidates) {
+        int tx = tile % tilesX;
+        int tz = tile / tilesX;
+        int cellX0 = tx * tileCells;
+        int cellZ0 = tz * tileCells;
+        int cellX1 = Math.min(cellsX, cellX0 + tileCells);
+        int cellZ1 = Math.min(cellsZ, cellZ0 + tileCells);
+        float x0 = minX + cellX0 * cellSize;
+        float z0 = minZ + cellZ0 * cellSize;
+        // Ô cuối có thể vượt ra ngoài vùng: cắt tile theo maxX/maxZ
+        float x1 = Math.min(maxX, minX + cellX1 * cellSize);
+        float z1 = Math.min(maxZ, minZ + cellZ1 * cellSize);
+        SplittableRandom random = new SplittableRandom(tileSeed(seed, tx, tz));
+
+        // Điểm của tile (x, z) và danh sách điểm đang hoạt động
+        float[] points = new float[64];
+        int pointCount = 0;
+        float radiusSquared = radius * radius;
+        int[] active = new int[32];
+        int activeCount = 0;
+
+        // Điểm khởi đầu: thử vài vị trí ngẫu nhiên (tile lân cận có thể đã phủ chỗ thử đầu tiên)
+        for (int k = 0; k < CANDIDATES && activeCount == 0; k++) {
+            float startX = x0 + random.nextFloat() * (x1 - x0);
+            float startZ = z0 + random.nextFloat() * (z1 - z0);
+            if (isFree(grid, startX, startZ)) {
+                points = insert(grid, points, pointCount, startX, startZ);
+                active[activeCount++] = pointCount++;
+            }
+        }
+
+        while (activeCount > 0) {
+            int slot = random.nextInt(activeCount);
+            int point = active[slot];
+            float px = points[point * 2];
+            float pz = points[point * 2 + 1];
+            boolean placed = false;
+            for (int k = 0; k < CANDIDATES; k++) {
+                // Điểm thử đều trong vành [radius, 2 * radius]: lấy mẫu loại bỏ trong hình vuông cạnh
+                // 4 * radius (trúng ~59%), rẻ hơn sin/cos + sqrt
+                float ox;
+                float oz;
+                float distanceSquared;
+                do {
+                    ox = (random.nextFloat() * 4 - 2) * radius;
+                    oz = (random.nextFloat() * 4 - 2) * radius;
+                    distanceSquared = ox * ox + oz * oz;
+                } while (distanceSquared < radiusSquared || distanceSquared > 4 * radiusSquared);
+                float cx = px + ox;
+                float cz = pz + oz;
+                if (cx < x0 || cx >= x1 || cz < z0 || cz >= z1 || !isFree(grid, cx, cz)) {
+                    continue;
+                }
+                points = insert(grid, points, pointCount, cx, cz);
+                if (activeCount == active.length) {
+                    active = Arrays.copyOf(active, activeCount * 2);
+                }
+                active[activeCount++] = pointCount++;
+                placed = true;
+                break;
+            }
+            if (!placed) {
+                active[slot] = active[--activeCount];
+            }
+        }
+
+        float[] terrainSamples = sampleTerrain(terrain, points, pointCount);
+
+        float[] data = new float[pointCount * stride];
+        int kept = 0;
+        for (int i = 0; i < pointCount; i++) {
+            float height = terrainSamples[i * 2];
+            if (filter.accept(height, terrainSamples[i * 2 + 1])) {
+                writer.write(data, kept * stride, points[i * 2], height, points[i * 2 + 1], random);
+                kept++;
+            }
+        }
+        tileData[tile] = data;
+        tileCounts[tile] = kept;
+        tileCandidates[tile] = pointCount;
+    }
+
+    /**
+     * Ước lượng tỉ lệ diện tích thỏa {@code filter} bằng lưới {@code resolution} x {@code resolution}
+     * điểm lệch ngẫu nhiên (rẻ, dùng để chọn radius trước khi rải)
+     */
+    public float estimateAcceptance(HeightProvider terrain, Filter filter, int resolution) {
+        SplittableRandom random = new SplittableRandom(seed);
+        float stepX = cellsX * cellSize / resolution;
+        float stepZ = cellsZ * cellSize / resolution;
+        float[] points = new float[resolution * resolution * 2];
+        for (int z = 0; z < resolution; z++) {
+            for (int x = 0; x < resolution; x++) {
+                int i = (z * resolution + x) * 2;
+                points[i] = minX + (x + random.nextFloat()) * stepX;
+                points[i + 1] = minZ + (z + random.nextFloat()) * stepZ;
+            }
+        }
+        int count = resolution * resolution;
+        float[] terrainSamples = sampleTerrain(terrain, points, count);
+        int accepted = 0;
+        for (int i = 0; i < count; i++) {
+            if (filter.accept(terrainSamples[i * 2], terrainSamples[i * 2 + 1])) {
+                accepted++;
+            }
+        }
+        return (float) accepted / count;
+    }
+
+    /**
+     * Độ cao và độ dốc tại các điểm (x, z): lấy độ cao tại điểm và 4 điểm lân cận (độ dốc bằng sai phân
+     * trung tâm) trong một lần truy vấn theo lô
+     * @return Mảng (height, slope) mỗi điểm
+     */
+    private static float[] sampleTerrain(HeightProvider terrain, float[] points, int count) {
+        float[] xs = new float[count * 5];
+        float[] zs = new float[count * 5];
+        float[] heights = new float[count * 5];
+        for (int i = 0; i < count; i++) {
+            float x = points[i * 2];
+            float z = points[i * 2 + 1];
+            int j = i * 5;
+            xs[j] = x;
+            zs[j] = z;
+            xs[j + 1] = x - SLOPE_STEP;
+            zs[j + 1] = z;
+            xs[j + 2] = x + SLOPE_STEP;
+            zs[j + 2] = z;
+            xs[j + 3] = x;
+            zs[j + 3] = z - SLOPE_STEP;
+            xs[j + 4] = x;
+            zs[j + 4] = z + SLOPE_STEP;
+        }
+        terrain.getHeightsAt(xs, zs, heights);
+
+        float[] result = new float[count * 2];
+        for (int i = 0; i < count; i++) {
+            int j = i * 5;
+            float dx = (heights[j + 2] - heights[j + 1]) / (2 * SLOPE_STEP);
+            float dz = (heights[j + 4] - heights[j + 3]) / (2 * SLOPE_STEP);
+            result[i * 2] = heights[j];
+            result[i * 2 + 1] = (float) Math.sqrt(dx * dx + dz * dz);
+        }
+        return result;
+    }
+
+    /**
+     * Không có điểm nào trong lưới nền cách (x, z) dưới radius
+     */
+    private boolean isFree(float[] grid, float x, float z) {
+        int cx = (int) ((x - minX) / cellSize);
+        int cz = (int) ((z - minZ) / cellSize);
+        if (cx < 0 || cz < 0 || cx >= cellsX || cz >= cellsZ) {
+            return false;
+        }
+        // Ô chứa (x, z) đã có điểm thì chắc chắn gần hơn radius (đường chéo ô = radius): loại sớm,
+        // đa số điểm thử bị loại ở đây khi tile đã gần đầy
+        if (!Float.isNaN(grid[(cz * cellsX + cx) * 2])) {
+            return false;
+        }
+        float radiusSquared = radius * radius;
+        // Ô radius / √2: điểm trong bán kính radius nằm trong 5 x 5 ô quanh ô chứa (x, z),
+        // trừ 4 ô góc (cách ô giữa ít nhất một đường chéo ô = radius)
+        for (int gz = Math.max(0, cz - 2); gz <= Math.min(cellsZ - 1, cz + 2); gz++) {
+            boolean edgeRow = gz == cz - 2 || gz == cz + 2;
+            for (int gx = Math.max(0, cx - 2); gx <= Math.min(cellsX - 1, cx + 2); gx++) {
+                if (edgeRow && (gx == cx - 2 || gx == cx + 2)) {
+                    continue;
+                }
+                int cell = (gz * cellsX + gx) * 2;
+                float dx = grid[cell] - x;
+                float dz = grid[cell + 1] - z;
+                // Ô trống (NaN) không thỏa điều kiện so sánh
+                if (dx * dx + dz * dz < radiusSquared) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ghi điểm vào lưới nền và vào mảng điểm của tile (giãn mảng nếu cần)
+     */
+    private float[] insert(float[] grid, float[] points, int pointCount, float x, float z) {
+        int cell = ((int) ((z - minZ) / cellSize) * cellsX + (int) ((x - minX) / cellSize)) * 2;
+        grid[cell] = x;
+        grid[cell + 1] = z;
+        if (pointCount * 2 + 2 > points.length) {
+            points = Arrays.copyOf(points, points.length * 2);
+        }
+        points[pointCount * 2] = x;
+        points[pointCount * 2 + 1] = z;
+        return points;
+    }
+
+    /**
+     * Seed riêng của tile (trộn kiểu SplitMix64 để các tile kề nhau không tương quan)
+     */
+    static long tileSeed(long seed, int tx, int tz) {
+        long h = seed ^ ((long) tx * 0x9E3779B97F4A7C15L) ^ ((long) tz * 0xC2B2AE3D27D4EB4FL);
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    public float getRadius() {
+        return radius;
+    }
+}
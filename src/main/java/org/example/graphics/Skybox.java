@@ -1,5 +1,7 @@
 package org.example.graphics;
 
+import org.example.engine.MeshBuilder;
+import org.example.engine.UploadRing;
 import org.lwjgl.system.MemoryUtil;
 
 import java.nio.FloatBuffer;
@@ -15,76 +17,60 @@ import static org.lwjgl.opengl.GL30.*;
 public class Skybox {
     private int vaoId;
     private int vboId;
+    private int indicesVboId;
+    private int indexCount;
     private int textureId;
     
-    // Vertices của cube (chỉ cần vị trí, không cần normal/texcoord)
-    private static final float[] SKYBOX_VERTICES = {
-        // Positions          
-        -1.0f,  1.0f, -1.0f,
-        -1.0f, -1.0f, -1.0f,
-         1.0f, -1.0f, -1.0f,
-         1.0f, -1.0f, -1.0f,
-         1.0f,  1.0f, -1.0f,
-        -1.0f,  1.0f, -1.0f,
-
-        -1.0f, -1.0f,  1.0f,
-        -1.0f, -1.0f, -1.0f,
-        -1.0f,  1.0f, -1.0f,
-        -1.0f,  1.0f, -1.0f,
-        -1.0f,  1.0f,  1.0f,
-        -1.0f, -1.0f,  1.0f,
-
-         1.0f, -1.0f, -1.0f,
-         1.0f, -1.0f,  1.0f,
-         1.0f,  1.0f,  1.0f,
-         1.0f,  1.0f,  1.0f,
-         1.0f,  1.0f, -1.0f,
-         1.0f, -1.0f, -1.0f,
-
-        -1.0f, -1.0f,  1.0f,
-        -1.0f,  1.0f,  1.0f,
-         1.0f,  1.0f,  1.0f,
-         1.0f,  1.0f,  1.0f,
-         1.0f, -1.0f,  1.0f,
-        -1.0f, -1.0f,  1.0f,
-
-        -1.0f,  1.0f, -1.0f,
-         1.0f,  1.0f, -1.0f,
-         1.0f,  1.0f,  1.0f,
-         1.0f,  1.0f,  1.0f,
-        -1.0f,  1.0f,  1.0f,
-        -1.0f,  1.0f, -1.0f,
-
-        -1.0f, -1.0f, -1.0f,
-        -1.0f, -1.0f,  1.0f,
-         1.0f, -1.0f, -1.0f,
-         1.0f, -1.0f, -1.0f,
-        -1.0f, -1.0f,  1.0f,
-         1.0f, -1.0f,  1.0f
+    // Mỗi mặt cube là một tứ giác trên 8 góc (bit 0/1/2 của chỉ số góc = dấu x/y/z)
+    private static final int[][] SKYBOX_FACES = {
+        {2, 0, 1, 3},  // -Z
+        {4, 0, 2, 6},  // -X
+        {1, 5, 7, 3},  // +X
+        {4, 6, 7, 5},  // +Z
+        {2, 3, 7, 6},  // +Y
+        {0, 4, 5, 1}   // -Y
     };
 
     public Skybox() {
-        setupMesh();
+        this(null);
+    }
+
+    /**
+     * @param uploadRing Ring upload dùng chung (null = vùng nhớ tạm)
+     */
+    public Skybox(UploadRing uploadRing) {
+        setupMesh(uploadRing);
         textureId = createProceduralSkyboxTexture();
     }
 
-    private void setupMesh() {
+    private void setupMesh(UploadRing uploadRing) {
         // Tạo VAO
         vaoId = glGenVertexArrays();
         glBindVertexArray(vaoId);
 
+        // Cube [-1, 1]^3: chỉ cần vị trí, không cần normal/texcoord
+        MeshBuilder cube = new MeshBuilder(8, SKYBOX_FACES.length * 6, 3);
+        for (int corner = 0; corner < 8; corner++) {
+            cube.attribute(0).put((corner & 1) != 0 ? 1.0f : -1.0f,
+                                  (corner & 2) != 0 ? 1.0f : -1.0f,
+                                  (corner & 4) != 0 ? 1.0f : -1.0f);
+        }
+        for (int[] face : SKYBOX_FACES) {
+            cube.quad(face[0], face[1], face[2], face[3]);
+        }
+        indexCount = cube.getIndexCount();
+
         // Upload vertices
-        FloatBuffer verticesBuffer = MemoryUtil.memAllocFloat(SKYBOX_VERTICES.length);
-        verticesBuffer.put(SKYBOX_VERTICES).flip();
-        
         vboId = glGenBuffers();
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
-        glBufferData(GL_ARRAY_BUFFER, verticesBuffer, GL_STATIC_DRAW);
+        cube.uploadVertices(uploadRing, GL_STATIC_DRAW);
         
         glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
         glEnableVertexAttribArray(0);
-        
-        MemoryUtil.memFree(verticesBuffer);
+
+        indicesVboId = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indicesVboId);
+        cube.uploadIndices(uploadRing, GL_STATIC_DRAW);
         
         glBindBuffer(GL_ARRAY_BUFFER, 0);
         glBindVertexArray(0);
@@ -165,7 +151,7 @@ public class Skybox {
         glBindVertexArray(vaoId);
         glActiveTexture(GL_TEXTURE0);
         glBindTexture(GL_TEXTURE_CUBE_MAP, textureId);
-        glDrawArrays(GL_TRIANGLES, 0, 36);
+        glDrawElements(GL_TRIANGLES, indexCount, GL_UNSIGNED_INT, 0);
         glBindVertexArray(0);
         glDepthFunc(GL_LESS); // Reset về default
     }
@@ -173,6 +159,7 @@ public class Skybox {
     public void cleanup() {
         glDeleteVertexArrays(vaoId);
         glDeleteBuffers(vboId);
+        glDeleteBuffers(indicesVboId);
         glDeleteTextures(textureId);
     }
 
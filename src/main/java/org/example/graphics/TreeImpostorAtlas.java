@@ -0,0 +1,162 @@
+package org.example.graphics;
+
+import org.example.engine.ShaderProgram;
+import org.joml.Matrix4f;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL14.GL_DEPTH_COMPONENT24;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Atlas impostor cho cây ở xa: mesh cây mẫu được vẽ một lần lúc khởi động từ nhiều hướng nhìn
+ * (chiếu song song) vào các khung của một texture RGBA8
+ *
+ * Khung ở cột a, hàng e nhìn từ hướng (sin φ cos θ, sin θ, cos φ cos θ) với φ = a * 2π / AZIMUTHS,
+ * θ = e * ELEVATION_STEP, và bao trọn hình cầu bán kính {@link #getRadius()} quanh tâm cây mẫu;
+ * impostor.vert chọn khung gần nhất theo hướng từ cây tới camera. Nền trong suốt (alpha 0) và màu
+ * nhân sẵn alpha nên mipmap không bị viền tối. Phải gọi trên thread có GL context.
+ */
+public class TreeImpostorAtlas {
+    public static final int AZIMUTHS = 8;
+    public static final int ELEVATIONS = 4;
+    public static final float ELEVATION_STEP = (float) Math.toRadians(22.5);
+    private static final int FRAME_SIZE = 64;    // Pixel mỗi cạnh khung
+    private static final int MAX_MIP_LEVEL = 4;  // Mip cuối còn 4 x 4 pixel mỗi khung, chưa lẫn khung bên cạnh
+
+    private final int textureId;
+    private final float radius;
+    private final float width;
+    private final float height;
+
+    private TreeImpostorAtlas(int textureId, float radius, float width, float height) {
+        this.textureId = textureId;
+        this.radius = radius;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Vẽ cây mẫu (mesh rộng 1, cao 1 nhân với width, height) vào tất cả khung
+     * @param shader Shader đã link từ tree.vert/treebake.frag
+     * @param horizontalExtent Bán kính ngang lớn nhất của mesh rộng 1 (góc tán lá)
+     * @param drawTemplate Vẽ mesh mẫu bằng VAO của người gọi (không instancing)
+     */
+    public static TreeImpostorAtlas bake(ShaderProgram shader, float width, float height, float horizontalExtent,
+                                         Runnable drawTemplate) {
+        int atlasWidth = AZIMUTHS * FRAME_SIZE;
+        int atlasHeight = ELEVATIONS * FRAME_SIZE;
+        float halfHeight = height * 0.5f;
+        float extent = horizontalExtent * width;
+        float radius = (float) Math.sqrt(halfHeight * halfHeight + extent * extent);
+
+        int textureId = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, textureId);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, MAX_MIP_LEVEL);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, atlasWidth, atlasHeight, 0, GL_RGBA, GL_UNSIGNED_BYTE,
+                     (ByteBuffer) null);
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        int depthId = glGenRenderbuffers();
+        glBindRenderbuffer(GL_RENDERBUFFER, depthId);
+        glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT24, atlasWidth, atlasHeight);
+        glBindRenderbuffer(GL_RENDERBUFFER, 0);
+
+        int framebufferId = glGenFramebuffers();
+        glBindFramebuffer(GL_FRAMEBUFFER, framebufferId);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, textureId, 0);
+        glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, depthId);
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        if (status != GL_FRAMEBUFFER_COMPLETE) {
+            glBindFramebuffer(GL_FRAMEBUFFER, 0);
+            glDeleteFramebuffers(framebufferId);
+            glDeleteRenderbuffers(depthId);
+            glDeleteTextures(textureId);
+            throw new IllegalStateException("Framebuffer atlas impostor không hoàn chỉnh: 0x"
+                                            + Integer.toHexString(status));
+        }
+
+        int[] viewport = new int[4];
+        glGetIntegerv(GL_VIEWPORT, viewport);
+        float[] clearColor = new float[4];
+        glGetFloatv(GL_COLOR_CLEAR_VALUE, clearColor);
+        boolean depthTest = glIsEnabled(GL_DEPTH_TEST);
+        glEnable(GL_DEPTH_TEST);
+        glViewport(0, 0, atlasWidth, atlasHeight);
+        glClearColor(0, 0, 0, 0);
+        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+
+        shader.bind();
+        shader.setUniform("instanced", 0);
+        shader.setUniform("model", new Matrix4f().scaling(width, height, width));
+        shader.setUniform("projection", new Matrix4f().setOrtho(-radius, radius, -radius, radius, radius, 3 * radius));
+        Matrix4f view = new Matrix4f();
+        for (int row = 0; row < ELEVATIONS; row++) {
+            double elevation = row * ELEVATION_STEP;
+            for (int column = 0; column < AZIMUTHS; column++) {
+                double azimuth = column * 2 * Math.PI / AZIMUTHS;
+                float dx = (float) (Math.sin(azimuth) * Math.cos(elevation));
+                float dy = (float) Math.sin(elevation);
+                float dz = (float) (Math.cos(azimuth) * Math.cos(elevation));
+                view.setLookAt(dx * 2 * radius, halfHeight + dy * 2 * radius, dz * 2 * radius,
+                               0, halfHeight, 0, 0, 1, 0);
+                shader.setUniform("view", view);
+                glViewport(column * FRAME_SIZE, row * FRAME_SIZE, FRAME_SIZE, FRAME_SIZE);
+                drawTemplate.run();
+            }
+        }
+        shader.unbind();
+
+        glBindTexture(GL_TEXTURE_2D, textureId);
+        glGenerateMipmap(GL_TEXTURE_2D);
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        glDeleteFramebuffers(framebufferId);
+        glDeleteRenderbuffers(depthId);
+        glViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+        glClearColor(clearColor[0], clearColor[1], clearColor[2], clearColor[3]);
+        if (!depthTest) {
+            glDisable(GL_DEPTH_TEST);
+        }
+
+        return new TreeImpostorAtlas(textureId, radius, width, height);
+    }
+
+    /**
+     * Bind atlas vào texture unit {@code unit} và đặt các uniform khung của impostor.vert/impostor.frag
+     * (shader đã bind)
+     */
+    public void bind(ShaderProgram shader, int unit) {
+        glActiveTexture(GL_TEXTURE0 + unit);
+        glBindTexture(GL_TEXTURE_2D, textureId);
+        shader.setUniform("atlas", unit);
+        shader.setUniform("atlasFrames", AZIMUTHS, ELEVATIONS);
+        shader.setUniform("elevationStep", ELEVATION_STEP);
+        shader.setUniform("impostorShape", radius, width, height);
+    }
+
+    /**
+     * Bán kính hình cầu bao cây mẫu (nửa cạnh khung, world)
+     */
+    public float getRadius() {
+        return radius;
+    }
+
+    public int getTextureId() {
+        return textureId;
+    }
+
+    public void cleanup() {
+        glDeleteTextures(textureId);
+    }
+}
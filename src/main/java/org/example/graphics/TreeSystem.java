@@ -1,284 +1,700 @@
 package org.example.graphics;
 
-import org.example.terrain.Terrain;
+import org.example.engine.MeshBuilder;
+import org.example.engine.ShaderProgram;
+import org.example.engine.UploadRing;
+import org.example.engine.VertexCacheOptimizer;
+import org.example.terrain.HeightProvider;
+import org.example.terrain.HorizonCuller;
+import org.joml.FrustumIntersection;
 import org.joml.Vector3f;
-import org.lwjgl.system.MemoryUtil;
-
-import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
 
 /**
  * Hệ thống tạo và render cây cối procedural
+ *
+ * Mặc định vẽ bằng instancing: một mesh mẫu thân + tán (13 đỉnh, 12 tam giác) và một buffer
+ * 6 float mỗi cây (vị trí gốc, chiều cao, độ rộng, hệ số màu), vẽ bằng glDrawElementsInstanced.
+ * Buffer instance được xếp theo {@link VegetationGrid}: mỗi frame lưới trả về các đoạn cây thấy được.
+ * Chạy với -Dtrees.instanced=false để dùng cách cũ (mỗi cây được nướng thành 13 đỉnh riêng).
+ *
+ * LOD theo khoảng cách (khi instancing): gần vẽ mesh đầy đủ, vừa vẽ mesh rút gọn (6 tam giác), xa vẽ
+ * impostor 2 tam giác lấy hình từ {@link TreeImpostorAtlas} (nướng một lần từ mesh mẫu). Mỗi cấp là một
+ * truy vấn lưới theo dải khoảng cách; hai cấp kề nhau chuyển dần bằng dither trong dải LOD_FADE quanh biên.
  */
 public class TreeSystem {
+    // Vẽ bằng instancing (tắt bằng -Dtrees.instanced=false để so sánh với mesh nướng sẵn)
+    public static final boolean INSTANCED = !"false".equals(System.getProperty("trees.instanced"));
+    
+    private static final float CULL_CELL_SIZE = 32.0f;  // Kích thước ô lưới culling (world)
+    static final int INSTANCE_FLOATS = 6;               // x, y, z, chiều cao, độ rộng, hệ số màu
+    private static final int INSTANCE_STRIDE = INSTANCE_FLOATS * Float.BYTES;
+    private static final int TREE_VERTICES = 13;        // 8 đỉnh thân + 5 đỉnh tán
+    private static final int TREE_INDICES = 36;         // 8 tam giác thân + 4 tam giác tán
+    private static final int REDUCED_SIDES = 3;         // Mesh rút gọn: thân và tán là chóp 3 mặt
+    private static final float REDUCED_RADIUS = 1.75f;  // Tam giác đều bán kính 1.75 ≈ diện tích hình vuông cạnh 2
+    static final int POSITION = 0;                      // Thuộc tính của mesh cây trong MeshBuilder
+    static final int COLOR = 1;
+    static final float CROWN_SCALE = 2.5f;              // Bán kính tán lá = độ rộng x 2.5
+    static final float MAX_SLOPE = 0.7f;                // Độ dốc tối đa để mọc cây (~35°)
+    private static final float POISSON_AREA = 1.65f;    // Diện tích trung bình mỗi điểm Poisson (x radius^2)
+    private static final float PLACEMENT_MARGIN = 1.05f; // Rải dư 5% so với ước lượng để thường chỉ cần một lượt
+    private static final int ACCEPTANCE_RESOLUTION = 64; // Lưới ước lượng tỉ lệ đất hợp lệ
+    private static final int MAX_PLACEMENT_PASSES = 4;
+    
+    // LOD theo khoảng cách (tắt bằng -Dtrees.lod=false để so sánh: mọi cây vẽ mesh đầy đủ)
+    public static final boolean LOD = !"false".equals(System.getProperty("trees.lod"));
+    public static final int LOD_FULL = 0;
+    public static final int LOD_REDUCED = 1;
+    public static final int LOD_IMPOSTOR = 2;
+    private static final int LOD_LEVELS = 3;
+    private static final float[] LOD_DISTANCES = {0.0f, 50.0f, 120.0f};  // Khoảng cách bắt đầu mỗi cấp (world)
+    private static final float LOD_FADE = 8.0f;           // Độ rộng dải chuyển cấp (world)
+    private static final float LOD_FAR = 1e30f;           // "Vô cực" cho cấp cuối (uniform shader)
+    private static final float IMPOSTOR_WIDTH = 0.5f;     // Cây mẫu nướng vào atlas: độ rộng, chiều cao trung bình
+    private static final float IMPOSTOR_HEIGHT = 5.0f;
+    
     private int vaoId;
     private int vertexVboId;
     private int colorVboId;
     private int indicesVboId;
-    private int vertexCount;
+    private int instanceVboId;
+    private int vertexCount;      // Số index cần vẽ: toàn bộ mesh nướng, hoặc của mesh mẫu khi instancing
+    private TreeMeshData mesh;    // Mesh nướng, hoặc mesh mẫu khi instancing (mỗi cấp LOD một đoạn index)
+    private VegetationGrid instances;
+    private int[][] runStart;     // Đoạn instance thấy được của từng cấp LOD ở frame hiện tại (instancing)
+    private int[][] runCount;
+    private final int[] runs = new int[LOD_LEVELS];
+    private final int[] lodInstances = new int[LOD_LEVELS];
+    private TreeImpostorAtlas impostorAtlas;
+    private int visibleCells;
+    private int culledCells;
     
-    private List<TreeInstance> trees;
+    // Các cây, INSTANCE_FLOATS float mỗi cây: x, y, z (gốc), chiều cao, độ rộng, hệ số màu
+    private float[] trees = new float[0];
+    private int treeCount;
+    private final UploadRing uploadRing;
     
     /**
-     * Thông tin một cây
+     * Dữ liệu mesh cây phía CPU (chưa upload lên GPU)
+     *
+     * Cây được xếp theo ô lưới CULL_CELL_SIZE: index của mỗi ô (không rỗng) là một đoạn
+     * liên tục, kèm AABB của các cây trong ô để culling theo frustum
+     * (khi instancing, {@link VegetationGrid} giữ vai trò này).
      */
-    private static class TreeInstance {
-        Vector3f position;
-        float height;
-        float width;
-        
-        TreeInstance(Vector3f position, float height, float width) {
-            this.position = position;
-            this.height = height;
-            this.width = width;
+    static final class TreeMeshData {
+        final MeshBuilder geometry;  // Vị trí (POSITION) và màu (COLOR), index u32
+        final int cellCount;
+        final int[] cellIndexOffset;
+        final int[] cellIndexCount;
+        final float[] cellBounds;  // minX, minY, minZ, maxX, maxY, maxZ cho mỗi ô
+        
+        TreeMeshData(MeshBuilder geometry, int cellCount,
+                     int[] cellIndexOffset, int[] cellIndexCount, float[] cellBounds) {
+            this.geometry = geometry;
+            this.cellCount = cellCount;
+            this.cellIndexOffset = cellIndexOffset;
+            this.cellIndexCount = cellIndexCount;
+            this.cellBounds = cellBounds;
         }
     }
     
     public TreeSystem() {
-        trees = new ArrayList<>();
+        this(null);
+    }
+    
+    /**
+     * @param uploadRing Ring upload dùng chung (null = vùng nhớ tạm cho mỗi lần upload)
+     */
+    public TreeSystem(UploadRing uploadRing) {
+        this.uploadRing = uploadRing;
     }
     
     /**
      * Sinh cây ngẫu nhiên trên địa hình (sử dụng độ cao thực tế từ terrain)
+     * @param pool Pool rải cây song song (null = tuần tự); terrain phải đọc được từ nhiều thread
      */
     public void generateTrees(int count, float minX, float maxX, float minZ, float maxZ, 
-                             float waterHeight, Terrain terrain, Random random) {
-        trees.clear();
+                             float waterHeight, HeightProvider terrain, long seed, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        placeTrees(count, minX, maxX, minZ, maxZ, waterHeight, terrain, seed, pool);
         
-        int attempts = 0;
-        int maxAttempts = count * 3; // Cho phép thử nhiều lần để tìm vị trí phù hợp
+        System.out.printf("→ Đã sinh %d cây trên địa hình (đất khô, Poisson-disk) trong %.1f ms%n",
+                          treeCount, (System.nanoTime() - start) / 1e6);
         
-        while (trees.size() < count && attempts < maxAttempts) {
-            float x = minX + random.nextFloat() * (maxX - minX);
-            float z = minZ + random.nextFloat() * (maxZ - minZ);
-            
-            // Lấy độ cao thực tế từ địa hình
-            float terrainHeight = terrain.getHeightAt(x, z);
-            
-            // Chỉ sinh cây trên đất khô (cao hơn mực nước + buffer)
-            // và không quá cao (tránh vùng tuyết)
-            if (terrainHeight > waterHeight + 0.5f && terrainHeight < 20.0f) {
-                float treeHeight = 3.0f + random.nextFloat() * 4.0f;
-                float treeWidth = 0.3f + random.nextFloat() * 0.4f;
-                
-                // Đặt cây đúng trên bề mặt địa hình
-                trees.add(new TreeInstance(new Vector3f(x, terrainHeight, z), treeHeight, treeWidth));
-            }
-            
-            attempts++;
+        if (INSTANCED) {
+            generateInstances();
+        } else {
+            generateMesh();
         }
-        
-        System.out.println("→ Đã sinh " + trees.size() + " cây trên địa hình (đất khô)");
-        
-        generateMesh();
     }
     
     /**
-     * Tạo mesh cho tất cả cây
+     * Chọn vị trí và kích thước cây (chỉ tính toán CPU, không cần OpenGL)
+     *
+     * Rải điểm Poisson-disk ({@link PoissonDiskSampler}) với bán kính ước lượng từ số cây và diện tích
+     * hợp lệ (lấy mẫu thưa trước), giữ điểm trên đất khô, dưới vùng tuyết và không quá dốc. Vùng hợp lệ nhỏ hơn dự kiến thì thu nhỏ
+     * bán kính và rải lại; thừa thì chọn ngẫu nhiên đúng {@code count} cây. Độ rộng cây bị giới hạn để
+     * tán lá (CROWN_SCALE x độ rộng) của hai cây không chồng lên nhau.
      */
-    private void generateMesh() {
-        List<Float> vertices = new ArrayList<>();
-        List<Float> colors = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
-        
-        int indexOffset = 0;
-        
-        for (TreeInstance tree : trees) {
-            // Tạo thân cây (cylinder đơn giản)
-            addTrunk(vertices, colors, indices, tree, indexOffset);
-            indexOffset += 8; // 8 vertices cho thân cây
-            
-            // Tạo lá cây (cone đơn giản)
-            addLeaves(vertices, colors, indices, tree, indexOffset);
-            indexOffset += 5; // 5 vertices cho lá
+    void placeTrees(int count, float minX, float maxX, float minZ, float maxZ,
+                    float waterHeight, HeightProvider terrain, long seed, ForkJoinPool pool) {
+        trees = new float[0];
+        treeCount = 0;
+        if (count <= 0) {
+            return;
         }
         
-        // Chuyển List sang array
-        float[] vertexArray = new float[vertices.size()];
-        for (int i = 0; i < vertices.size(); i++) {
-            vertexArray[i] = vertices.get(i);
+        // Chỉ sinh cây trên đất khô (cao hơn mực nước + buffer), không quá cao (tránh vùng tuyết), không quá dốc
+        PoissonDiskSampler.Filter filter = (height, slope) ->
+                height > waterHeight + 0.5f && height < 20.0f && slope < MAX_SLOPE;
+        // Radius sao cho số điểm rơi vào vùng hợp lệ ≈ count (dư một chút)
+        float area = (maxX - minX) * (maxZ - minZ);
+        float acceptance = new PoissonDiskSampler(minX, maxX, minZ, maxZ, (float) Math.sqrt(area / count), seed)
+                .estimateAcceptance(terrain, filter, ACCEPTANCE_RESOLUTION);
+        float radius = (float) Math.sqrt(area * Math.max(acceptance, 0.01f) / (count * POISSON_AREA * PLACEMENT_MARGIN));
+        PoissonDiskSampler.Result result = null;
+        for (int pass = 0; pass < MAX_PLACEMENT_PASSES; pass++) {
+            float maxWidth = radius / (2 * CROWN_SCALE);
+            PoissonDiskSampler sampler = new PoissonDiskSampler(minX, maxX, minZ, maxZ, radius, seed);
+            result = sampler.sample(terrain, filter, INSTANCE_FLOATS, (data, offset, x, y, z, random) -> {
+                data[offset] = x;
+                data[offset + 1] = y;  // Đặt cây đúng trên bề mặt địa hình
+                data[offset + 2] = z;
+                data[offset + 3] = 3.0f + random.nextFloat() * 4.0f;
+                data[offset + 4] = Math.min(maxWidth, 0.3f + random.nextFloat() * 0.4f);
+                data[offset + 5] = 0.85f + random.nextFloat() * 0.3f;
+            }, pool);
+            if (result.getCount() >= count || result.getCount() == 0) {
+                break;
+            }
+            // Thiếu cây: mật độ tỉ lệ nghịch với radius^2
+            radius *= (float) Math.sqrt((double) result.getCount() / count) * 0.95f;
         }
         
-        float[] colorArray = new float[colors.size()];
-        for (int i = 0; i < colors.size(); i++) {
-            colorArray[i] = colors.get(i);
+        trees = result.getData();
+        treeCount = Math.min(count, result.getCount());
+        if (result.getCount() > count) {
+            // Chọn ngẫu nhiên count cây đưa lên đầu mảng (Fisher-Yates dừng sớm)
+            Random random = new Random(seed);
+            float[] swap = new float[INSTANCE_FLOATS];
+            for (int i = 0; i < count; i++) {
+                int j = i + random.nextInt(result.getCount() - i);
+                System.arraycopy(trees, i * INSTANCE_FLOATS, swap, 0, INSTANCE_FLOATS);
+                System.arraycopy(trees, j * INSTANCE_FLOATS, trees, i * INSTANCE_FLOATS, INSTANCE_FLOATS);
+                System.arraycopy(swap, 0, trees, j * INSTANCE_FLOATS, INSTANCE_FLOATS);
+            }
         }
-        
-        int[] indexArray = new int[indices.size()];
-        for (int i = 0; i < indices.size(); i++) {
-            indexArray[i] = indices.get(i);
+    }
+    
+    /**
+     * Tạo mesh cho tất cả cây và upload lên GPU
+     */
+    private void generateMesh() {
+        mesh = buildMesh();
+        
+        // Sắp xếp lại tam giác cho vertex cache (trong từng ô để giữ đoạn index của ô)
+        int[] indices = mesh.geometry.getIndices();
+        int meshVertices = mesh.geometry.getVertexCount();
+        float acmrBefore = VertexCacheOptimizer.computeAcmr(indices, meshVertices);
+        for (int c = 0; c < mesh.cellCount; c++) {
+            VertexCacheOptimizer.optimize(indices, mesh.cellIndexOffset[c], mesh.cellIndexCount[c], meshVertices);
         }
+        System.out.printf("→ ACMR index cây: %.3f → %.3f%n", acmrBefore,
+                          VertexCacheOptimizer.computeAcmr(indices, meshVertices));
         
-        vertexCount = indexArray.length;
+        vertexCount = indices.length;
         
         // Upload lên GPU
-        uploadToGPU(vertexArray, colorArray, indexArray);
+        uploadToGPU(mesh.geometry);
     }
     
     /**
-     * Thêm thân cây (cylinder)
+     * Tạo mesh mẫu và buffer instance cho tất cả cây rồi upload lên GPU
      */
-    private void addTrunk(List<Float> vertices, List<Float> colors, List<Integer> indices, 
-                         TreeInstance tree, int offset) {
-        float x = tree.position.x;
-        float y = tree.position.y;
-        float z = tree.position.z;
-        float w = tree.width;
-        float h = tree.height * 0.6f; // Thân chiếm 60% chiều cao
-        
-        // Màu nâu cho thân
-        float r = 0.4f, g = 0.25f, b = 0.1f;
+    private void generateInstances() {
+        instances = buildInstances();
+        runStart = new int[LOD_LEVELS][instances.getNonEmptyCellCount()];
+        runCount = new int[LOD_LEVELS][instances.getNonEmptyCellCount()];
+        
+        mesh = buildTemplate();
+        MeshBuilder template = mesh.geometry;
+        for (int level = 0; level < mesh.cellCount; level++) {
+            VertexCacheOptimizer.optimize(template.getIndices(), mesh.cellIndexOffset[level],
+                                          mesh.cellIndexCount[level], template.getVertexCount());
+        }
+        vertexCount = template.getIndexCount();
         
-        // 8 vertices cho cylinder đơn giản (4 dưới, 4 trên)
-        // Dưới
-        vertices.add(x - w); vertices.add(y); vertices.add(z - w);
-        colors.add(r); colors.add(g); colors.add(b);
+        uploadToGPU(template);
+        uploadInstances(instances.getInstances());
         
-        vertices.add(x + w); vertices.add(y); vertices.add(z - w);
-        colors.add(r); colors.add(g); colors.add(b);
+        int meshBytes = template.getVertexBytes() + template.getIndexBytes();
+        System.out.printf("→ Cây (instancing): %d KB instance + %d byte mesh mẫu, %d ô%n",
+                          instances.getInstances().length * Float.BYTES / 1024, meshBytes,
+                          instances.getNonEmptyCellCount());
+    }
+    
+    /**
+     * Mesh mẫu của một cây rộng 1, cao 1, gốc tại (0, 0, 0): đỉnh được nhân với
+     * (độ rộng, chiều cao, độ rộng) và cộng vị trí gốc của từng instance trong tree.vert
+     *
+     * Mỗi cấp LOD là một đoạn index (cellIndexOffset/cellIndexCount theo chỉ số cấp): LOD_FULL cùng hình
+     * dạng với mesh nướng sẵn, LOD_REDUCED là chóp 3 mặt, LOD_IMPOSTOR là quad góc (±1, ±1) cho impostor.vert.
+     */
+    static TreeMeshData buildTemplate() {
+        MeshBuilder geometry = new MeshBuilder(TREE_VERTICES + 2 * (REDUCED_SIDES + 1) + 4,
+                                               TREE_INDICES + 2 * REDUCED_SIDES * 3 + 6, 3, 3);
+        int[] offsets = new int[LOD_LEVELS];
+        int[] counts = new int[LOD_LEVELS];
+        
+        addTrunk(geometry, 0, 0, 0, 1.0f, 1.0f);
+        addLeaves(geometry, 0, 0, 0, 1.0f, 1.0f);
+        counts[LOD_FULL] = geometry.getIndexCount();
+        
+        offsets[LOD_REDUCED] = geometry.getIndexCount();
+        // Thân nhọn dần tới 60% chiều cao (phần trên khuất trong tán), tán như mesh đầy đủ
+        addCone(geometry, 0.0f, 0.6f, REDUCED_RADIUS, 0.4f, 0.25f, 0.1f, 1.0f);
+        addCone(geometry, 0.5f, 1.0f, REDUCED_RADIUS * CROWN_SCALE, 0.1f, 0.6f, 0.1f, 0.8f);
+        counts[LOD_REDUCED] = geometry.getIndexCount() - offsets[LOD_REDUCED];
+        
+        offsets[LOD_IMPOSTOR] = geometry.getIndexCount();
+        int corner = geometry.getVertexCount();
+        geometry.attribute(POSITION).put(-1, -1, 0).put(1, -1, 0).put(1, 1, 0).put(-1, 1, 0);
+        geometry.attribute(COLOR).put(0, 0, 0).put(0, 0, 0).put(0, 0, 0).put(0, 0, 0);
+        geometry.quad(corner, corner + 1, corner + 2, corner + 3);
+        counts[LOD_IMPOSTOR] = geometry.getIndexCount() - offsets[LOD_IMPOSTOR];
+        
+        return new TreeMeshData(geometry, LOD_LEVELS, offsets, counts, new float[6]);
+    }
+    
+    /**
+     * Dữ liệu instance cho tất cả cây, xếp vào lưới ô CULL_CELL_SIZE (chỉ tính toán CPU, không cần OpenGL)
+     */
+    VegetationGrid buildInstances() {
+        return VegetationGrid.build(trees, treeCount, INSTANCE_FLOATS, CROWN_SCALE, CULL_CELL_SIZE);
+    }
+    
+    /**
+     * Tạo mesh cho tất cả cây (chỉ tính toán CPU, không cần OpenGL)
+     */
+    TreeMeshData buildMesh() {
+        // Xếp cây theo ô lưới culling để mỗi ô là một đoạn index liên tục
+        VegetationGrid grid = buildInstances();
+        float[] data = grid.getInstances();
+        int cellCount = grid.getNonEmptyCellCount();
+        MeshBuilder geometry = new MeshBuilder(treeCount * TREE_VERTICES, treeCount * TREE_INDICES, 3, 3);
+        int[] cellOffsets = new int[cellCount];
+        int[] cellCounts = new int[cellCount];
+        float[] cellBounds = new float[cellCount * 6];
+        
+        int c = 0;
+        for (int cell = 0; cell < grid.getCellCount(); cell++) {
+            if (grid.getCellStart(cell) == grid.getCellEnd(cell)) {
+                continue;
+            }
+            cellOffsets[c] = geometry.getIndexCount();
+            int box = c * 6;
+            cellBounds[box] = cellBounds[box + 1] = cellBounds[box + 2] = Float.POSITIVE_INFINITY;
+            cellBounds[box + 3] = cellBounds[box + 4] = cellBounds[box + 5] = Float.NEGATIVE_INFINITY;
+            
+            for (int i = grid.getCellStart(cell); i < grid.getCellEnd(cell); i++) {
+                int o = i * INSTANCE_FLOATS;
+                float x = data[o], y = data[o + 1], z = data[o + 2];
+                float height = data[o + 3], width = data[o + 4];
+                
+                // Thân cây (cylinder đơn giản) và lá cây (cone đơn giản)
+                addTrunk(geometry, x, y, z, height, width);
+                addLeaves(geometry, x, y, z, height, width);
+                
+                // AABB của cây: tán lá rộng nhất (CROWN_SCALE x width), cao từ gốc tới ngọn
+                float radius = width * CROWN_SCALE;
+                cellBounds[box] = Math.min(cellBounds[box], x - radius);
+                cellBounds[box + 1] = Math.min(cellBounds[box + 1], y);
+                cellBounds[box + 2] = Math.min(cellBounds[box + 2], z - radius);
+                cellBounds[box + 3] = Math.max(cellBounds[box + 3], x + radius);
+                cellBounds[box + 4] = Math.max(cellBounds[box + 4], y + height);
+                cellBounds[box + 5] = Math.max(cellBounds[box + 5], z + radius);
+            }
+            cellCounts[c] = geometry.getIndexCount() - cellOffsets[c];
+            c++;
+        }
         
-        vertices.add(x + w); vertices.add(y); vertices.add(z + w);
-        colors.add(r); colors.add(g); colors.add(b);
+        return new TreeMeshData(geometry, cellCount, cellOffsets, cellCounts, cellBounds);
+    }
+    
+    /**
+     * Thêm thân cây (cylinder): 8 đỉnh, 8 tam giác
+     */
+    private static void addTrunk(MeshBuilder geometry, float x, float y, float z, float height, float width) {
+        float w = width;
+        float h = height * 0.6f; // Thân chiếm 60% chiều cao
+        int offset = geometry.getVertexCount();
+        MeshBuilder.Attribute vertices = geometry.attribute(POSITION);
+        MeshBuilder.Attribute colors = geometry.attribute(COLOR);
         
-        vertices.add(x - w); vertices.add(y); vertices.add(z + w);
-        colors.add(r); colors.add(g); colors.add(b);
+        // 8 vertices cho cylinder đơn giản (4 dưới, 4 trên)
+        // Dưới
+        vertices.put(x - w, y, z - w);
+        vertices.put(x + w, y, z - w);
+        vertices.put(x + w, y, z + w);
+        vertices.put(x - w, y, z + w);
         
         // Trên
-        vertices.add(x - w * 0.8f); vertices.add(y + h); vertices.add(z - w * 0.8f);
-        colors.add(r); colors.add(g); colors.add(b);
-        
-        vertices.add(x + w * 0.8f); vertices.add(y + h); vertices.add(z - w * 0.8f);
-        colors.add(r); colors.add(g); colors.add(b);
+        vertices.put(x - w * 0.8f, y + h, z - w * 0.8f);
+        vertices.put(x + w * 0.8f, y + h, z - w * 0.8f);
+        vertices.put(x + w * 0.8f, y + h, z + w * 0.8f);
+        vertices.put(x - w * 0.8f, y + h, z + w * 0.8f);
         
-        vertices.add(x + w * 0.8f); vertices.add(y + h); vertices.add(z + w * 0.8f);
-        colors.add(r); colors.add(g); colors.add(b);
-        
-        vertices.add(x - w * 0.8f); vertices.add(y + h); vertices.add(z + w * 0.8f);
-        colors.add(r); colors.add(g); colors.add(b);
+        // Màu nâu cho thân
+        for (int i = 0; i < 8; i++) {
+            colors.put(0.4f, 0.25f, 0.1f);
+        }
         
         // Indices cho 4 mặt
-        // Mặt 1
-        indices.add(offset + 0); indices.add(offset + 1); indices.add(offset + 5);
-        indices.add(offset + 5); indices.add(offset + 4); indices.add(offset + 0);
-        
-        // Mặt 2
-        indices.add(offset + 1); indices.add(offset + 2); indices.add(offset + 6);
-        indices.add(offset + 6); indices.add(offset + 5); indices.add(offset + 1);
-        
-        // Mặt 3
-        indices.add(offset + 2); indices.add(offset + 3); indices.add(offset + 7);
-        indices.add(offset + 7); indices.add(offset + 6); indices.add(offset + 2);
-        
-        // Mặt 4
-        indices.add(offset + 3); indices.add(offset + 0); indices.add(offset + 4);
-        indices.add(offset + 4); indices.add(offset + 7); indices.add(offset + 3);
+        geometry.quad(offset + 0, offset + 1, offset + 5, offset + 4);
+        geometry.quad(offset + 1, offset + 2, offset + 6, offset + 5);
+        geometry.quad(offset + 2, offset + 3, offset + 7, offset + 6);
+        geometry.quad(offset + 3, offset + 0, offset + 4, offset + 7);
     }
     
     /**
-     * Thêm lá cây (cone)
+     * Thêm lá cây (cone): 5 đỉnh, 4 tam giác
      */
-    private void addLeaves(List<Float> vertices, List<Float> colors, List<Integer> indices,
-                          TreeInstance tree, int offset) {
-        float x = tree.position.x;
-        float y = tree.position.y + tree.height * 0.5f;
-        float z = tree.position.z;
-        float w = tree.width * 2.5f;
-        float h = tree.height * 0.5f;
+    private static void addLeaves(MeshBuilder geometry, float x, float baseY, float z, float height, float width) {
+        float y = baseY + height * 0.5f;
+        float w = width * CROWN_SCALE;
+        float h = height * 0.5f;
+        int offset = geometry.getVertexCount();
+        MeshBuilder.Attribute vertices = geometry.attribute(POSITION);
+        MeshBuilder.Attribute colors = geometry.attribute(COLOR);
         
         // Màu xanh lá
         float r = 0.1f, g = 0.6f, b = 0.1f;
         
         // Đỉnh (1 vertex)
-        vertices.add(x); vertices.add(y + h); vertices.add(z);
-        colors.add(r * 0.8f); colors.add(g * 0.8f); colors.add(b * 0.8f);
+        vertices.put(x, y + h, z);
+        colors.put(r * 0.8f, g * 0.8f, b * 0.8f);
         
         // Đáy (4 vertices)
-        vertices.add(x - w); vertices.add(y); vertices.add(z - w);
-        colors.add(r); colors.add(g); colors.add(b);
-        
-        vertices.add(x + w); vertices.add(y); vertices.add(z - w);
-        colors.add(r); colors.add(g); colors.add(b);
-        
-        vertices.add(x + w); vertices.add(y); vertices.add(z + w);
-        colors.add(r); colors.add(g); colors.add(b);
-        
-        vertices.add(x - w); vertices.add(y); vertices.add(z + w);
-        colors.add(r); colors.add(g); colors.add(b);
+        vertices.put(x - w, y, z - w);
+        vertices.put(x + w, y, z - w);
+        vertices.put(x + w, y, z + w);
+        vertices.put(x - w, y, z + w);
+        for (int i = 0; i < 4; i++) {
+            colors.put(r, g, b);
+        }
         
         // Indices cho 4 mặt tam giác
-        indices.add(offset + 0); indices.add(offset + 1); indices.add(offset + 2);
-        indices.add(offset + 0); indices.add(offset + 2); indices.add(offset + 3);
-        indices.add(offset + 0); indices.add(offset + 3); indices.add(offset + 4);
-        indices.add(offset + 0); indices.add(offset + 4); indices.add(offset + 1);
+        geometry.triangle(offset + 0, offset + 1, offset + 2);
+        geometry.triangle(offset + 0, offset + 2, offset + 3);
+        geometry.triangle(offset + 0, offset + 3, offset + 4);
+        geometry.triangle(offset + 0, offset + 4, offset + 1);
     }
     
-    private void uploadToGPU(float[] vertices, float[] colors, int[] indices) {
+    /**
+     * Chóp REDUCED_SIDES mặt (không đáy) cho mesh rút gọn: đáy ở baseY, đỉnh ở topY, cùng chiều quay
+     * tam giác với {@link #addLeaves}
+     * @param apexShade Hệ số màu của đỉnh chóp
+     */
+    private static void addCone(MeshBuilder geometry, float baseY, float topY, float radius,
+                                float r, float g, float b, float apexShade) {
+        int offset = geometry.getVertexCount();
+        MeshBuilder.Attribute vertices = geometry.attribute(POSITION);
+        MeshBuilder.Attribute colors = geometry.attribute(COLOR);
+        
+        vertices.put(0, topY, 0);
+        colors.put(r * apexShade, g * apexShade, b * apexShade);
+        for (int i = 0; i < REDUCED_SIDES; i++) {
+            double angle = Math.PI / 2 + i * 2 * Math.PI / REDUCED_SIDES;
+            vertices.put((float) Math.cos(angle) * radius, baseY, (float) Math.sin(angle) * radius);
+            colors.put(r, g, b);
+        }
+        for (int i = 0; i < REDUCED_SIDES; i++) {
+            geometry.triangle(offset, offset + 1 + i, offset + 1 + (i + 1) % REDUCED_SIDES);
+        }
+    }
+    
+    private void uploadToGPU(MeshBuilder geometry) {
         // Tạo VAO
         vaoId = glGenVertexArrays();
         glBindVertexArray(vaoId);
         
         // Upload vertices
-        FloatBuffer verticesBuffer = MemoryUtil.memAllocFloat(vertices.length);
-        verticesBuffer.put(vertices).flip();
         vertexVboId = glGenBuffers();
         glBindBuffer(GL_ARRAY_BUFFER, vertexVboId);
-        glBufferData(GL_ARRAY_BUFFER, verticesBuffer, GL_STATIC_DRAW);
+        geometry.uploadAttribute(uploadRing, POSITION, GL_ARRAY_BUFFER, GL_STATIC_DRAW);
         glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-        MemoryUtil.memFree(verticesBuffer);
         
         // Upload colors
-        FloatBuffer colorsBuffer = MemoryUtil.memAllocFloat(colors.length);
-        colorsBuffer.put(colors).flip();
         colorVboId = glGenBuffers();
         glBindBuffer(GL_ARRAY_BUFFER, colorVboId);
-        glBufferData(GL_ARRAY_BUFFER, colorsBuffer, GL_STATIC_DRAW);
+        geometry.uploadAttribute(uploadRing, COLOR, GL_ARRAY_BUFFER, GL_STATIC_DRAW);
         glVertexAttribPointer(1, 3, GL_FLOAT, false, 0, 0);
-        MemoryUtil.memFree(colorsBuffer);
         
         // Upload indices
-        IntBuffer indicesBuffer = MemoryUtil.memAllocInt(indices.length);
-        indicesBuffer.put(indices).flip();
         indicesVboId = glGenBuffers();
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indicesVboId);
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
-        MemoryUtil.memFree(indicesBuffer);
+        geometry.uploadIndices(uploadRing, GL_STATIC_DRAW);
+        
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+    }
+    
+    /**
+     * Buffer instance (vị trí + chiều cao ở location 2, độ rộng + hệ số màu ở location 3, mỗi cây một lần)
+     */
+    private void uploadInstances(float[] data) {
+        glBindVertexArray(vaoId);
+        
+        instanceVboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, instanceVboId);
+        UploadRing.bufferData(uploadRing, GL_ARRAY_BUFFER, data.length * Float.BYTES, GL_STATIC_DRAW,
+                              buffer -> buffer.asFloatBuffer().put(data));
+        bindInstanceAttributes(0);
+        glVertexAttribDivisor(2, 1);
+        glVertexAttribDivisor(3, 1);
         
         glBindBuffer(GL_ARRAY_BUFFER, 0);
         glBindVertexArray(0);
     }
     
-    public void render() {
+    /**
+     * Trỏ thuộc tính instance tới cây thứ {@code firstInstance} (GL 3.3 chưa có base instance,
+     * nên mỗi đoạn ô liên tục được vẽ bằng cách dời offset của thuộc tính)
+     */
+    private static void bindInstanceAttributes(int firstInstance) {
+        long offset = (long) firstInstance * INSTANCE_STRIDE;
+        glVertexAttribPointer(2, 4, GL_FLOAT, false, INSTANCE_STRIDE, offset);
+        glVertexAttribPointer(3, 2, GL_FLOAT, false, INSTANCE_STRIDE, offset + 4 * Float.BYTES);
+    }
+    
+    /**
+     * Nướng atlas impostor từ mesh mẫu (GL thread, sau {@link #generateTrees}); không gọi thì cây xa
+     * vẫn vẽ bằng mesh rút gọn
+     * @param bakeShader Shader đã link từ tree.vert/treebake.frag
+     */
+    public void bakeImpostors(ShaderProgram bakeShader) {
+        if (instances == null || !LOD) {
+            return;
+        }
+        long start = System.nanoTime();
+        float extent = CROWN_SCALE * (float) Math.sqrt(2);  // Góc đáy tán lá của mesh rộng 1
+        impostorAtlas = TreeImpostorAtlas.bake(bakeShader, IMPOSTOR_WIDTH, IMPOSTOR_HEIGHT, extent, () -> {
+            glBindVertexArray(vaoId);
+            glEnableVertexAttribArray(0);
+            glEnableVertexAttribArray(1);
+            glDrawElements(GL_TRIANGLES, mesh.cellIndexCount[LOD_FULL], GL_UNSIGNED_INT,
+                           (long) mesh.cellIndexOffset[LOD_FULL] * Integer.BYTES);
+            glDisableVertexAttribArray(0);
+            glDisableVertexAttribArray(1);
+            glBindVertexArray(0);
+        });
+        System.out.printf("→ Atlas impostor cây: %d x %d khung trong %.1f ms%n", TreeImpostorAtlas.AZIMUTHS,
+                          TreeImpostorAtlas.ELEVATIONS, (System.nanoTime() - start) / 1e6);
+    }
+    
+    /**
+     * Vẽ cây bằng mesh (cấp gần và vừa khi có LOD), bỏ qua các ô lưới có AABB nằm ngoài frustum
+     * hoặc bị che sau chân trời; đồng thời chọn các đoạn cây cho {@link #renderImpostors}
+     * @param shader Shader cây đã bind (tree.vert/tree.frag), nhận dải khoảng cách của từng cấp
+     * @param eye Vị trí camera (chọn cấp LOD)
+     * @param frustum Frustum của camera (null = không frustum culling)
+     * @param horizon Chân trời đã dựng cho frame này (null = không occlusion culling)
+     */
+    public void render(ShaderProgram shader, Vector3f eye, FrustumIntersection frustum, HorizonCuller horizon) {
+        visibleCells = 0;
+        culledCells = 0;
+        Arrays.fill(runs, 0);
+        Arrays.fill(lodInstances, 0);
         if (vertexCount == 0) return;
         
         glBindVertexArray(vaoId);
         glEnableVertexAttribArray(0);
         glEnableVertexAttribArray(1);
+        if (instances != null) {
+            glEnableVertexAttribArray(2);
+            glEnableVertexAttribArray(3);
+            glBindBuffer(GL_ARRAY_BUFFER, instanceVboId);
+        }
         
-        glDrawElements(GL_TRIANGLES, vertexCount, GL_UNSIGNED_INT, 0);
+        if (instances != null) {
+            // Mỗi cấp một truy vấn lưới theo dải khoảng cách (nới nửa dải chuyển cấp mỗi bên);
+            // shader loại từng cây không thuộc cấp và dither trong dải chuyển
+            int levels = getLodLevelCount();
+            for (int level = 0; level < levels; level++) {
+                float near = level == 0 ? 0.0f : LOD_DISTANCES[level] - LOD_FADE / 2;
+                float far = level == levels - 1 ? Float.POSITIVE_INFINITY : LOD_DISTANCES[level + 1] + LOD_FADE / 2;
+                runs[level] = instances.queryFrustum(frustum, horizon, eye.x, eye.y, eye.z, near, far,
+                                                     runStart[level], runCount[level]);
+                for (int r = 0; r < runs[level]; r++) {
+                    lodInstances[level] += runCount[level][r];
+                }
+                visibleCells += instances.getVisibleCellCount();
+                culledCells += instances.getCulledCellCount();
+            }
+            
+            shader.setUniform("lodFade", LOD_FADE);
+            for (int level = 0; level < Math.min(levels, LOD_IMPOSTOR); level++) {
+                shader.setUniform("lodRange", LOD_DISTANCES[level],
+                                  level == levels - 1 ? LOD_FAR : LOD_DISTANCES[level + 1]);
+                for (int r = 0; r < runs[level]; r++) {
+                    drawRun(level, runStart[level][r], runCount[level][r]);
+                }
+            }
+        } else {
+            renderMeshCells(frustum, horizon);
+        }
         
         glDisableVertexAttribArray(0);
         glDisableVertexAttribArray(1);
+        if (instances != null) {
+            glDisableVertexAttribArray(2);
+            glDisableVertexAttribArray(3);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+        }
         glBindVertexArray(0);
     }
     
+    /**
+     * Vẽ impostor cho các cây ở xa đã chọn ở lần {@link #render} gần nhất
+     * @param shader Shader impostor đã bind (impostor.vert/impostor.frag)
+     */
+    public void renderImpostors(ShaderProgram shader) {
+        if (impostorAtlas == null || runs[LOD_IMPOSTOR] == 0) {
+            return;
+        }
+        impostorAtlas.bind(shader, 0);
+        shader.setUniform("lodRange", LOD_DISTANCES[LOD_IMPOSTOR], LOD_FAR);
+        shader.setUniform("lodFade", LOD_FADE);
+        
+        glBindVertexArray(vaoId);
+        glEnableVertexAttribArray(0);
+        glEnableVertexAttribArray(2);
+        glEnableVertexAttribArray(3);
+        glBindBuffer(GL_ARRAY_BUFFER, instanceVboId);
+        for (int r = 0; r < runs[LOD_IMPOSTOR]; r++) {
+            drawRun(LOD_IMPOSTOR, runStart[LOD_IMPOSTOR][r], runCount[LOD_IMPOSTOR][r]);
+        }
+        glDisableVertexAttribArray(0);
+        glDisableVertexAttribArray(2);
+        glDisableVertexAttribArray(3);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+    }
+    
+    /**
+     * Số cấp LOD đang dùng: 1 khi tắt LOD, 2 khi chưa có atlas impostor, 3 khi đủ
+     */
+    private int getLodLevelCount() {
+        if (!LOD) {
+            return 1;
+        }
+        return impostorAtlas != null ? LOD_LEVELS : LOD_IMPOSTOR;
+    }
+    
+    /**
+     * Mesh nướng sẵn: kiểm tra AABB từng ô, các ô thấy được liền nhau được gộp thành một lệnh vẽ
+     */
+    private void renderMeshCells(FrustumIntersection frustum, HorizonCuller horizon) {
+        float[] bounds = mesh.cellBounds;
+        int start = 0;
+        int count = 0;
+        for (int c = 0; c < mesh.cellCount; c++) {
+            float minX = bounds[c * 6], minY = bounds[c * 6 + 1], minZ = bounds[c * 6 + 2];
+            float maxX = bounds[c * 6 + 3], maxY = bounds[c * 6 + 4], maxZ = bounds[c * 6 + 5];
+            if ((frustum != null && !frustum.testAab(minX, minY, minZ, maxX, maxY, maxZ))
+                    || (horizon != null && horizon.isOccluded(minX, minY, minZ, maxX, maxY, maxZ))) {
+                culledCells++;
+                continue;
+            }
+            visibleCells++;
+            if (count > 0 && start + count == mesh.cellIndexOffset[c]) {
+                count += mesh.cellIndexCount[c];
+                continue;
+            }
+            if (count > 0) {
+                drawRun(LOD_FULL, start, count);
+            }
+            start = mesh.cellIndexOffset[c];
+            count = mesh.cellIndexCount[c];
+        }
+        if (count > 0) {
+            drawRun(LOD_FULL, start, count);
+        }
+    }
+    
+    /**
+     * Vẽ một đoạn liên tục: [start, start + count) là instance (vẽ bằng mesh mẫu của cấp {@code level})
+     * khi instancing, là index khi dùng mesh nướng
+     */
+    private void drawRun(int level, int start, int count) {
+        if (instances != null) {
+            bindInstanceAttributes(start);
+            glDrawElementsInstanced(GL_TRIANGLES, mesh.cellIndexCount[level], GL_UNSIGNED_INT,
+                                    (long) mesh.cellIndexOffset[level] * Integer.BYTES, count);
+        } else {
+            glDrawElements(GL_TRIANGLES, count, GL_UNSIGNED_INT, (long) start * Integer.BYTES);
+        }
+    }
+    
     public void cleanup() {
         if (vaoId != 0) {
             glDeleteBuffers(vertexVboId);
             glDeleteBuffers(colorVboId);
             glDeleteBuffers(indicesVboId);
+            if (instanceVboId != 0) {
+                glDeleteBuffers(instanceVboId);
+            }
+            if (impostorAtlas != null) {
+                impostorAtlas.cleanup();
+            }
             glDeleteVertexArrays(vaoId);
         }
     }
     
+    /**
+     * Có đang vẽ bằng instancing không (shader cây cần uniform instanced tương ứng)
+     */
+    public boolean isInstanced() {
+        return instances != null;
+    }
+    
     public int getTreeCount() {
-        return trees.size();
+        return treeCount;
+    }
+    
+    /**
+     * Có atlas impostor không (cần vẽ thêm {@link #renderImpostors} bằng shader impostor)
+     */
+    public boolean hasImpostors() {
+        return impostorAtlas != null;
+    }
+    
+    /**
+     * Số cây gửi đi vẽ ở cấp LOD {@code level} ở lần render gần nhất (cây ở ô vắt ngang biên được tính
+     * ở cả hai cấp, shader bỏ cây không thuộc cấp)
+     */
+    public int getLodInstanceCount(int level) {
+        return lodInstances[level];
+    }
+    
+    /**
+     * Số ô cây được vẽ / bị loại ở lần render gần nhất (cộng qua các cấp LOD, ô vắt ngang biên tính hai lần)
+     */
+    public int getVisibleCellCount() {
+        return visibleCells;
+    }
+    
+    public int getCulledCellCount() {
+        return culledCells;
     }
 }
@@ -0,0 +1,375 @@
+package org.example.graphics;
+
+import org.example.terrain.HorizonCuller;
+import org.joml.FrustumIntersection;
+
+/**
+ * Chỉ mục không gian cho thực vật: lưới đều trên mặt phẳng XZ, instance của mỗi ô nằm liên tục
+ * trong một mảng float duy nhất
+ *
+ * Ô được xếp theo thứ tự Morton (Z-order) trên lưới 2^k x 2^k, nên mỗi node của cây tứ phân dựng
+ * trên lưới (2x2 ô, 4x4 ô, ...) cũng là một đoạn instance liên tục. Truy vấn frustum đi từ gốc xuống:
+ * node ngoài frustum (hoặc sau chân trời) bị bỏ cả cây con, node nằm trọn trong frustum trả về luôn
+ * đoạn của nó mà không xét từng ô, nên chi phí phụ thuộc vào số ô thấy được (và viền frustum),
+ * không phụ thuộc tổng số instance hay tổng số ô. Truy vấn có thể giới hạn thêm theo dải khoảng cách
+ * tới camera (mỗi cấp LOD một lần truy vấn).
+ *
+ * Mỗi instance có {@code stride} float, bắt đầu bằng x, y, z (gốc), chiều cao, độ rộng;
+ * AABB của instance là (x ± độ rộng * extentScale, y .. y + chiều cao, z ± độ rộng * extentScale).
+ * Truy vấn không cấp phát và không thread-safe.
+ */
+public class VegetationGrid {
+    private static final int MAX_LEVELS = 13;  // Tối đa 4096 x 4096 ô (chỉ số Morton vừa int)
+    // Cờ trong phần tử cấp của ngăn xếp duyệt: node cha nằm trọn trong frustum / trong dải khoảng cách
+    private static final int INSIDE_FRUSTUM = Integer.MIN_VALUE;
+    private static final int INSIDE_BAND = 1 << 30;
+    private static final int LEVEL_MASK = INSIDE_BAND - 1;
+
+    private final float[] instances;  // Đã xếp theo ô (thứ tự Morton)
+    private final int count;
+    private final int stride;
+    private final float originX;
+    private final float originZ;
+    private final float cellSize;
+    private final int levels;         // Cấp 0 = ô, cấp levels - 1 = gốc (1 node)
+    private final int side;           // Số ô mỗi cạnh (2^(levels - 1))
+    private final int[] cellStart;    // Đoạn instance của ô m: [cellStart[m], cellStart[m + 1])
+    private final float[][] nodeBounds;  // AABB mỗi node theo cấp: minX, minY, minZ, maxX, maxY, maxZ
+    private final int[][] nodeCells;     // Số ô không rỗng trong mỗi node theo cấp
+    private final int[] stack;        // Ngăn xếp duyệt (cấp, chỉ số Morton)
+
+    private int visibleCells;
+    private int culledCells;
+    private int visitedNodes;
+
+    private VegetationGrid(float[] instances, int count, int stride, float originX, float originZ,
+                           float cellSize, int levels, int[] cellStart, float[][] nodeBounds, int[][] nodeCells) {
+        this.instances = instances;
+        this.count = count;
+        this.stride = stride;
+        this.originX = originX;
+        this.originZ = originZ;
+        this.cellSize = cellSize;
+        this.levels = levels;
+        this.side = 1 << (levels - 1);
+        this.cellStart = cellStart;
+        this.nodeBounds = nodeBounds;
+        this.nodeCells = nodeCells;
+        this.stack = new int[levels * 3 * 2 + 2];
+    }
+
+    /**
+     * Xếp {@code count} instance vào lưới (counting sort theo ô, O(n))
+     * @param data Instance chưa sắp xếp ({@code stride} float mỗi instance), không bị sửa
+     * @param extentScale Bán kính ngang của instance = độ rộng * extentScale
+     * @param cellSize Kích thước ô (world); tự nhân đôi nếu vùng cần quá 4096 ô mỗi cạnh
+     */
+    public static VegetationGrid build(float[] data, int count, int stride, float extentScale, float cellSize) {
+        if (stride < 5) {
+            throw new IllegalArgumentException("Instance cần ít nhất 5 float (x, y, z, chiều cao, độ rộng): " + stride);
+        }
+        float minX = Float.POSITIVE_INFINITY;
+        float minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            float x = data[i * stride];
+            float z = data[i * stride + 2];
+            minX = Math.min(minX, x);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxZ = Math.max(maxZ, z);
+        }
+        if (count == 0) {
+            minX = minZ = maxX = maxZ = 0;
+        }
+
+        // Lưới 2^k ô mỗi cạnh phủ vùng chứa gốc của mọi instance
+        int levels = 1;
+        float extent = Math.max(maxX - minX, maxZ - minZ);
+        while ((1 << (levels - 1)) * cellSize <= extent) {
+            if (levels == MAX_LEVELS) {
+                cellSize *= 2;
+            } else {
+                levels++;
+            }
+        }
+        int side = 1 << (levels - 1);
+        int cells = side * side;
+
+        // Đếm số instance mỗi ô rồi rải vào vị trí theo tổng tiền tố
+        int[] cellOf = new int[count];
+        int[] cellStart = new int[cells + 1];
+        for (int i = 0; i < count; i++) {
+            int cx = cellIndex(data[i * stride], minX, cellSize, side);
+            int cz = cellIndex(data[i * stride + 2], minZ, cellSize, side);
+            int cell = interleave(cx) | (interleave(cz) << 1);
+            cellOf[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        int[][] nodeCells = new int[levels][];
+        nodeCells[0] = new int[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            nodeCells[0][cell] = cellStart[cell + 1] > 0 ? 1 : 0;
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        float[] sorted = new float[count * stride];
+        int[] cursor = cellStart.clone();
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(data, i * stride, sorted, cursor[cellOf[i]]++ * stride, stride);
+        }
+
+        // AABB và số ô không rỗng của ô từ instance, các cấp trên gộp 4 node con
+        float[][] nodeBounds = new float[levels][];
+        float[] bounds = new float[cells * 6];
+        for (int cell = 0; cell < cells; cell++) {
+            int box = cell * 6;
+            bounds[box] = bounds[box + 1] = bounds[box + 2] = Float.POSITIVE_INFINITY;
+            bounds[box + 3] = bounds[box + 4] = bounds[box + 5] = Float.NEGATIVE_INFINITY;
+            for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                int o = i * stride;
+                float radius = sorted[o + 4] * extentScale;
+                bounds[box] = Math.min(bounds[box], sorted[o] - radius);
+                bounds[box + 1] = Math.min(bounds[box + 1], sorted[o + 1]);
+                bounds[box + 2] = Math.min(bounds[box + 2], sorted[o + 2] - radius);
+                bounds[box + 3] = Math.max(bounds[box + 3], sorted[o] + radius);
+                bounds[box + 4] = Math.max(bounds[box + 4], sorted[o + 1] + sorted[o + 3]);
+                bounds[box + 5] = Math.max(bounds[box + 5], sorted[o + 2] + radius);
+            }
+        }
+        nodeBounds[0] = bounds;
+        for (int level = 1; level < levels; level++) {
+            float[] children = nodeBounds[level - 1];
+            int nodes = children.length / 24;
+            float[] parents = new float[nodes * 6];
+            for (int node = 0; node < nodes; node++) {
+                int box = node * 6;
+                for (int k = 0; k < 3; k++) {
+                    int c = node * 24 + k;
+                    parents[box + k] = Math.min(Math.min(children[c], children[c + 6]),
+                                                Math.min(children[c + 12], children[c + 18]));
+                    parents[box + 3 + k] = Math.max(Math.max(children[c + 3], children[c + 9]),
+                                                    Math.max(children[c + 15], children[c + 21]));
+                }
+            }
+            nodeBounds[level] = parents;
+            int[] childCells = nodeCells[level - 1];
+            int[] parentCells = new int[nodes];
+            for (int node = 0; node < nodes; node++) {
+                parentCells[node] = childCells[node * 4] + childCells[node * 4 + 1]
+                        + childCells[node * 4 + 2] + childCells[node * 4 + 3];
+            }
+            nodeCells[level] = parentCells;
+        }
+
+        return new VegetationGrid(sorted, count, stride, minX, minZ, cellSize, levels, cellStart, nodeBounds,
+                                  nodeCells);
+    }
+
+    /**
+     * Các đoạn instance thấy được, đoạn liền nhau được gộp (sẵn sàng cho một lệnh vẽ mỗi đoạn)
+     * @param frustum Frustum của camera (null = không frustum culling)
+     * @param horizon Chân trời đã dựng cho frame này (null = không occlusion culling)
+     * @param rangeStart Chỉ số instance đầu của mỗi đoạn, cần ít nhất {@link #getNonEmptyCellCount()} phần tử
+     * @param rangeCount Số instance của mỗi đoạn
+     * @return Số đoạn
+     */
+    public int queryFrustum(FrustumIntersection frustum, HorizonCuller horizon, int[] rangeStart, int[] rangeCount) {
+        return queryFrustum(frustum, horizon, 0, 0, 0, 0, Float.POSITIVE_INFINITY, rangeStart, rangeCount);
+    }
+
+    /**
+     * Như {@link #queryFrustum(FrustumIntersection, HorizonCuller, int[], int[])}, chỉ lấy các node có AABB
+     * cách (eyeX, eyeY, eyeZ) trong dải [minDistance, maxDistance] (chọn cây cho một cấp LOD)
+     *
+     * Ô vắt ngang biên dải vẫn được trả về nguyên đoạn, người gọi tự lọc từng instance theo khoảng cách.
+     * Node ngoài dải bị bỏ mà không tính vào số ô bị loại.
+     */
+    public int queryFrustum(FrustumIntersection frustum, HorizonCuller horizon, float eyeX, float eyeY, float eyeZ,
+                            float minDistance, float maxDistance, int[] rangeStart, int[] rangeCount) {
+        visibleCells = 0;
+        culledCells = 0;
+        visitedNodes = 0;
+        float minSquared = minDistance * minDistance;
+        float maxSquared = maxDistance * maxDistance;
+        int ranges = 0;
+        int top = 0;
+        stack[top++] = levels - 1;
+        stack[top++] = 0;
+        while (top > 0) {
+            int morton = stack[--top];
+            int entry = stack[--top];
+            int level = entry & LEVEL_MASK;
+            boolean inside = (entry & INSIDE_FRUSTUM) != 0;
+            boolean inBand = (entry & INSIDE_BAND) != 0;
+            int cells = nodeCells[level][morton];
+            if (cells == 0) {
+                continue;
+            }
+            visitedNodes++;
+
+            float[] bounds = nodeBounds[level];
+            int box = morton * 6;
+            float minX = bounds[box], minY = bounds[box + 1], minZ = bounds[box + 2];
+            float maxX = bounds[box + 3], maxY = bounds[box + 4], maxZ = bounds[box + 5];
+            if (!inBand) {
+                // Khoảng cách tới điểm gần nhất và góc xa nhất của AABB
+                float nearX = Math.max(0, Math.max(minX - eyeX, eyeX - maxX));
+                float nearY = Math.max(0, Math.max(minY - eyeY, eyeY - maxY));
+                float nearZ = Math.max(0, Math.max(minZ - eyeZ, eyeZ - maxZ));
+                float near = nearX * nearX + nearY * nearY + nearZ * nearZ;
+                float farX = Math.max(eyeX - minX, maxX - eyeX);
+                float farY = Math.max(eyeY - minY, maxY - eyeY);
+                float farZ = Math.max(eyeZ - minZ, maxZ - eyeZ);
+                float far = farX * farX + farY * farY + farZ * farZ;
+                if (near > maxSquared || far < minSquared) {
+                    continue;
+                }
+                inBand = near >= minSquared && far <= maxSquared;
+            }
+            if (!inside) {
+                int result = frustum != null ? frustum.intersectAab(minX, minY, minZ, maxX, maxY, maxZ)
+                                             : FrustumIntersection.INSIDE;
+                if (result != FrustumIntersection.INSIDE && result != FrustumIntersection.INTERSECT) {
+                    culledCells += cells;
+                    continue;
+                }
+                inside = result == FrustumIntersection.INSIDE;
+            }
+            if (horizon != null && horizon.isOccluded(minX, minY, minZ, maxX, maxY, maxZ)) {
+                culledCells += cells;
+                continue;
+            }
+
+            // Trọn trong frustum và trong dải (và không cần xét chân trời cho từng phần): lấy cả đoạn của node
+            if (level == 0 || (inside && inBand && horizon == null)) {
+                int start = cellStart[morton << (level * 2)];
+                int end = cellStart[(morton + 1) << (level * 2)];
+                visibleCells += cells;
+                if (ranges > 0 && rangeStart[ranges - 1] + rangeCount[ranges - 1] == start) {
+                    rangeCount[ranges - 1] += end - start;
+                } else {
+                    rangeStart[ranges] = start;
+                    rangeCount[ranges] = end - start;
+                    ranges++;
+                }
+                continue;
+            }
+
+            // Đẩy 4 con theo thứ tự ngược để lấy ra theo thứ tự Morton (đoạn tăng dần, gộp được)
+            int childEntry = (level - 1) | (inside ? INSIDE_FRUSTUM : 0) | (inBand ? INSIDE_BAND : 0);
+            for (int child = 3; child >= 0; child--) {
+                stack[top++] = childEntry;
+                stack[top++] = morton * 4 + child;
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Các instance có gốc cách (x, z) không quá {@code radius} theo phương ngang
+     * @param out Chỉ số instance (trong {@link #getInstances()}), chỉ ghi tối đa out.length phần tử
+     * @return Tổng số instance trong bán kính (có thể lớn hơn out.length)
+     */
+    public int queryRadius(float x, float z, float radius, int[] out) {
+        int cx0 = cellIndex(x - radius, originX, cellSize, side);
+        int cz0 = cellIndex(z - radius, originZ, cellSize, side);
+        int cx1 = cellIndex(x + radius, originX, cellSize, side);
+        int cz1 = cellIndex(z + radius, originZ, cellSize, side);
+        float radiusSquared = radius * radius;
+        int found = 0;
+        for (int cz = cz0; cz <= cz1; cz++) {
+            int rowBits = interleave(cz) << 1;
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int cell = interleave(cx) | rowBits;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    float dx = instances[i * stride] - x;
+                    float dz = instances[i * stride + 2] - z;
+                    if (dx * dx + dz * dz <= radiusSquared) {
+                        if (found < out.length) {
+                            out[found] = i;
+                        }
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private static int cellIndex(float coordinate, float origin, float cellSize, int side) {
+        int cell = (int) Math.floor((coordinate - origin) / cellSize);
+        return Math.max(0, Math.min(side - 1, cell));
+    }
+
+    /**
+     * Chèn một bit 0 giữa các bit của {@code v} (16 bit thấp) - nửa của chỉ số Morton
+     */
+    private static int interleave(int v) {
+        v &= 0xFFFF;
+        v = (v | (v << 8)) & 0x00FF00FF;
+        v = (v | (v << 4)) & 0x0F0F0F0F;
+        v = (v | (v << 2)) & 0x33333333;
+        v = (v | (v << 1)) & 0x55555555;
+        return v;
+    }
+
+    /**
+     * Instance đã xếp theo ô ({@link #getStride()} float mỗi instance); đúng thứ tự cần upload lên GPU
+     */
+    public float[] getInstances() {
+        return instances;
+    }
+
+    public int getInstanceCount() {
+        return count;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Số ô của lưới (kể cả ô rỗng); ô được đánh số theo thứ tự Morton
+     */
+    public int getCellCount() {
+        return side * side;
+    }
+
+    /**
+     * Đoạn instance của ô {@code cell}: [getCellStart(cell), getCellEnd(cell))
+     */
+    public int getCellStart(int cell) {
+        return cellStart[cell];
+    }
+
+    public int getCellEnd(int cell) {
+        return cellStart[cell + 1];
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Số ô có ít nhất một instance (số đoạn tối đa mà {@link #queryFrustum} trả về)
+     */
+    public int getNonEmptyCellCount() {
+        return nodeCells[levels - 1][0];
+    }
+
+    /**
+     * Số ô (không rỗng) được giữ / bị loại và số node đã duyệt ở lần {@link #queryFrustum} gần nhất
+     */
+    public int getVisibleCellCount() {
+        return visibleCells;
+    }
+
+    public int getCulledCellCount() {
+        return culledCells;
+    }
+
+    public int getVisitedNodeCount() {
+        return visitedNodes;
+    }
+}
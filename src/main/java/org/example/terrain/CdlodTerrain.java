@@ -0,0 +1,352 @@
+package org.example.terrain;
+
+import org.example.engine.ShaderProgram;
+import org.example.engine.VertexCacheOptimizer;
+import org.joml.FrustumIntersection;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Render địa hình bằng CDLOD (Continuous Distance-Dependent LOD)
+ *
+ * Chỉ có một patch lưới dùng chung trên GPU; độ cao được đọc từ heightmap texture
+ * trong vertex shader. Mỗi node được chọn bởi {@link LodQuadTree} vẽ lại patch này
+ * với vị trí/kích thước riêng, đỉnh morph dần sang cấp thô hơn theo khoảng cách
+ * để không bị "popping" khi đổi cấp.
+ */
+public class CdlodTerrain {
+    public static final int HEIGHTMAP_TEXTURE_UNIT = 3;
+
+    private final LodQuadTree quadTree;
+    private final HeightField heights;
+    private final int patchCells;
+    private final float uvCells;
+
+    private int vaoId;
+    private int vertexVboId;
+    private int indicesVboId;
+    private int heightMapId;
+    private final int quadrantIndexCount;
+    private float acmrBefore;
+    private float acmrAfter;
+
+    private final Vector2f uniformValue = new Vector2f();
+    private int renderedTriangles;
+
+    // Sửa độ cao: vùng đỉnh cần upload lại từ lần flush trước
+    private final DirtyRegions dirtyRegions = new DirtyRegions();
+    private final int[] brushBounds = new int[4];
+    private TerrainRaycaster raycaster;  // Tạo khi cần (lần truy vấn tia đầu tiên)
+
+    /**
+     * @param heights Lưới độ cao
+     * @param patchCells Số ô mỗi cạnh của patch (số chẵn, cũng là kích thước node lá)
+     * @param uvCells Số ô lưới ứng với một chu kỳ UV (khớp với {@link Terrain})
+     */
+    public CdlodTerrain(HeightField heights, int patchCells, float uvCells) {
+        this(heights, 0, patchCells, uvCells);
+    }
+
+    /**
+     * Dùng heightmap texture có sẵn (vd. sinh bằng {@link GpuHeightGenerator}) thay vì upload từ {@code heights}
+     * @param heightMapId Texture R32F cùng kích thước và nội dung với {@code heights} (0 = tự upload),
+     *                    CdlodTerrain nhận quyền sở hữu và xóa khi cleanup
+     */
+    public CdlodTerrain(HeightField heights, int heightMapId, int patchCells, float uvCells) {
+        this.heights = heights;
+        this.patchCells = patchCells;
+        this.uvCells = uvCells;
+        this.quadTree = new LodQuadTree(heights, patchCells);
+        this.quadrantIndexCount = (patchCells / 2) * (patchCells / 2) * 6;
+
+        if (heightMapId != 0) {
+            this.heightMapId = heightMapId;
+        } else {
+            uploadHeightMap();
+        }
+        uploadPatch();
+    }
+
+    private void uploadHeightMap() {
+        FloatBuffer buffer = memAllocFloat(heights.getWidth() * heights.getDepth());
+        buffer.put(heights.getData(), 0, heights.getWidth() * heights.getDepth()).flip();
+
+        heightMapId = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, heightMapId);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_R32F, heights.getWidth(), heights.getDepth(), 0,
+                     GL_RED, GL_FLOAT, buffer);
+        glBindTexture(GL_TEXTURE_2D, 0);
+        memFree(buffer);
+    }
+
+    /**
+     * Patch (patchCells + 1)^2 đỉnh, tọa độ là chỉ số ô (x, 0, z).
+     * Indices được xếp theo từng góc phần tư để có thể vẽ riêng một phần node;
+     * thứ tự tam giác trong mỗi góc phần tư được sắp lại cho vertex cache
+     * (tắt bằng {@link Terrain#OPTIMIZE_INDICES}).
+     */
+    private void uploadPatch() {
+        int side = patchCells + 1;
+        FloatBuffer vertices = memAllocFloat(side * side * 3);
+        for (int z = 0; z < side; z++) {
+            for (int x = 0; x < side; x++) {
+                vertices.put(x).put(0).put(z);
+            }
+        }
+        vertices.flip();
+
+        int half = patchCells / 2;
+        int vertexCount = side * side;
+        short[] patchIndices = new short[quadrantIndexCount * 4];
+        int pointer = 0;
+        int missesBefore = 0;
+        int missesAfter = 0;
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            int startX = (quadrant & 1) * half;
+            int startZ = (quadrant >> 1) * half;
+            int quadrantOffset = pointer;
+            for (int z = startZ; z < startZ + half; z++) {
+                for (int x = startX; x < startX + half; x++) {
+                    int topLeft = z * side + x;
+                    int topRight = topLeft + 1;
+                    int bottomLeft = topLeft + side;
+                    int bottomRight = bottomLeft + 1;
+
+                    patchIndices[pointer++] = (short) topLeft;
+                    patchIndices[pointer++] = (short) bottomLeft;
+                    patchIndices[pointer++] = (short) topRight;
+
+                    patchIndices[pointer++] = (short) topRight;
+                    patchIndices[pointer++] = (short) bottomLeft;
+                    patchIndices[pointer++] = (short) bottomRight;
+                }
+            }
+
+            // Chỉ đổi thứ tự bên trong góc phần tư nên vẫn vẽ riêng từng phần hoặc cả node được
+            missesBefore += VertexCacheOptimizer.countCacheMisses(patchIndices, quadrantOffset, quadrantIndexCount,
+                                                                  vertexCount, VertexCacheOptimizer.DEFAULT_FIFO_SIZE);
+            if (Terrain.OPTIMIZE_INDICES) {
+                VertexCacheOptimizer.optimize(patchIndices, quadrantOffset, quadrantIndexCount, vertexCount);
+            }
+            missesAfter += VertexCacheOptimizer.countCacheMisses(patchIndices, quadrantOffset, quadrantIndexCount,
+                                                                 vertexCount, VertexCacheOptimizer.DEFAULT_FIFO_SIZE);
+        }
+        float triangles = quadrantIndexCount * 4 / 3.0f;
+        acmrBefore = missesBefore / triangles;
+        acmrAfter = missesAfter / triangles;
+
+        ShortBuffer indices = memAllocShort(patchIndices.length);
+        indices.put(patchIndices).flip();
+
+        vaoId = glGenVertexArrays();
+        glBindVertexArray(vaoId);
+
+        vertexVboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vertexVboId);
+        glBufferData(GL_ARRAY_BUFFER, vertices, GL_STATIC_DRAW);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+
+        indicesVboId = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indicesVboId);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+
+        memFree(vertices);
+        memFree(indices);
+    }
+
+    /**
+     * Chọn node theo vị trí camera và vẽ (shader địa hình phải đang được bind)
+     */
+    public void render(ShaderProgram shader, Vector3f cameraPos) {
+        render(shader, cameraPos, null, null);
+    }
+
+    /**
+     * Như {@link #render(ShaderProgram, Vector3f)}, bỏ qua các node nằm ngoài frustum
+     * hoặc bị che sau chân trời
+     * @param frustum Frustum của camera (null = không frustum culling)
+     * @param horizon Chân trời đã dựng cho frame này (null = không occlusion culling)
+     */
+    public void render(ShaderProgram shader, Vector3f cameraPos, FrustumIntersection frustum,
+                       HorizonCuller horizon) {
+        int count = quadTree.select(cameraPos, frustum, horizon);
+
+        shader.setUniform("lodMode", 1);
+        shader.setUniform("heightMap", HEIGHTMAP_TEXTURE_UNIT);
+        shader.setUniform("terrainOrigin", uniformValue.set(heights.getOriginX(), heights.getOriginZ()));
+        shader.setUniform("terrainCells", uniformValue.set(heights.getWidth() - 1, heights.getDepth() - 1));
+        shader.setUniform("terrainScale", heights.getScale());
+        shader.setUniform("uvCells", uvCells);
+        shader.setUniform("patchCells", (float) patchCells);
+
+        glActiveTexture(GL_TEXTURE0 + HEIGHTMAP_TEXTURE_UNIT);
+        glBindTexture(GL_TEXTURE_2D, heightMapId);
+
+        glBindVertexArray(vaoId);
+        glEnableVertexAttribArray(0);
+
+        renderedTriangles = 0;
+        for (int i = 0; i < count; i++) {
+            int level = quadTree.getSelectedLevel(i);
+            int mask = quadTree.getSelectedMask(i);
+
+            shader.setUniform("nodeOffset", uniformValue.set(quadTree.getSelectedCellX(i), quadTree.getSelectedCellZ(i)));
+            shader.setUniform("nodeCells", (float) quadTree.getNodeCells(level));
+            shader.setUniform("morphRange", uniformValue.set(quadTree.getMorphStart(level), quadTree.getMorphEnd(level)));
+
+            if (mask == 0xF) {
+                glDrawElements(GL_TRIANGLES, quadrantIndexCount * 4, GL_UNSIGNED_SHORT, 0);
+                renderedTriangles += quadrantIndexCount * 4 / 3;
+            } else {
+                for (int quadrant = 0; quadrant < 4; quadrant++) {
+                    if ((mask & (1 << quadrant)) != 0) {
+                        glDrawElements(GL_TRIANGLES, quadrantIndexCount, GL_UNSIGNED_SHORT,
+                                       (long) quadrant * quadrantIndexCount * Short.BYTES);
+                        renderedTriangles += quadrantIndexCount / 3;
+                    }
+                }
+            }
+        }
+
+        glDisableVertexAttribArray(0);
+        glBindVertexArray(0);
+        glBindTexture(GL_TEXTURE_2D, 0);
+        glActiveTexture(GL_TEXTURE0);
+        shader.setUniform("lodMode", 0);
+    }
+
+    /**
+     * Sửa độ cao bằng brush. Chỉ đổi dữ liệu CPU, heightmap được cập nhật ở {@link #flushEdits}.
+     * @see TerrainBrush#apply
+     * @return false nếu brush nằm ngoài địa hình
+     */
+    public boolean applyBrush(TerrainBrush.Mode mode, float x, float z, float radius, float strength) {
+        if (!TerrainBrush.apply(heights, mode, x, z, radius, strength, brushBounds)) {
+            return false;
+        }
+        if (raycaster != null) {
+            raycaster.updateBounds(brushBounds[0], brushBounds[1], brushBounds[2], brushBounds[3]);
+        }
+        dirtyRegions.add(brushBounds[0], brushBounds[1], brushBounds[2], brushBounds[3]);
+        return true;
+    }
+
+    /**
+     * Đưa các vùng đã sửa lên heightmap (GL thread, gọi một lần mỗi frame) bằng glTexSubImage2D
+     * và cập nhật min/max của các node chứa vùng đó. Normal được tính trong shader nên không cần viền.
+     * @param horizon Chân trời cần cập nhật min độ cao theo vùng (null = bỏ qua)
+     * @return Số byte đã upload
+     */
+    public int flushEdits(HorizonCuller horizon) {
+        if (dirtyRegions.isEmpty()) {
+            return 0;
+        }
+        dirtyRegions.merge();
+
+        glBindTexture(GL_TEXTURE_2D, heightMapId);
+        int uploaded = 0;
+        int width = heights.getWidth();
+        float[] data = heights.getData();
+        for (int i = 0; i < dirtyRegions.size(); i++) {
+            int x0 = dirtyRegions.x0(i);
+            int z0 = dirtyRegions.z0(i);
+            int x1 = dirtyRegions.x1(i);
+            int z1 = dirtyRegions.z1(i);
+            heights.updateBlockBounds(x0, z0, x1, z1);
+            quadTree.refreshBounds(x0, z0, x1, z1);
+            if (horizon != null) {
+                horizon.invalidate(heights, x0, z0, x1, z1);
+            }
+
+            int columns = x1 - x0 + 1;
+            int rows = z1 - z0 + 1;
+            FloatBuffer buffer = memAllocFloat(columns * rows);
+            for (int z = z0; z <= z1; z++) {
+                buffer.put(data, z * width + x0, columns);
+            }
+            buffer.flip();
+            glTexSubImage2D(GL_TEXTURE_2D, 0, x0, z0, columns, rows, GL_RED, GL_FLOAT, buffer);
+            memFree(buffer);
+            uploaded += columns * rows * Float.BYTES;
+        }
+        glBindTexture(GL_TEXTURE_2D, 0);
+        dirtyRegions.clear();
+        return uploaded;
+    }
+
+    /**
+     * Số node đã vẽ ở frame gần nhất
+     */
+    public int getRenderedNodeCount() {
+        return quadTree.getSelectedCount();
+    }
+
+    /**
+     * Số node bị loại (ngoài frustum hoặc bị che) ở frame gần nhất
+     */
+    public int getCulledNodeCount() {
+        return quadTree.getCulledCount();
+    }
+
+    /**
+     * Số tam giác đã vẽ ở frame gần nhất
+     */
+    public int getRenderedTriangleCount() {
+        return renderedTriangles;
+    }
+
+    /**
+     * Truy vấn giao điểm tia với địa hình (dựng cây min/max ở lần gọi đầu, tự cập nhật khi sửa bằng brush)
+     */
+    public TerrainRaycaster getRaycaster() {
+        if (raycaster == null) {
+            raycaster = new TerrainRaycaster(heights);
+        }
+        return raycaster;
+    }
+
+    /**
+     * ACMR của index patch theo thứ tự hàng ban đầu
+     */
+    public float getAcmrBefore() {
+        return acmrBefore;
+    }
+
+    /**
+     * ACMR của index patch đã upload (sau khi tối ưu nếu bật {@link Terrain#OPTIMIZE_INDICES})
+     */
+    public float getAcmrAfter() {
+        return acmrAfter;
+    }
+
+    public LodQuadTree getQuadTree() {
+        return quadTree;
+    }
+
+    public void cleanup() {
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glDeleteBuffers(vertexVboId);
+        glDeleteBuffers(indicesVboId);
+        glBindVertexArray(0);
+        glDeleteVertexArrays(vaoId);
+        glDeleteTextures(heightMapId);
+    }
+}
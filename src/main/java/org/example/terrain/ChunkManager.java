@@ -0,0 +1,322 @@
+package org.example.terrain;
+
+import org.example.engine.ShaderProgram;
+import org.example.engine.UploadRing;
+import org.joml.FrustumIntersection;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Quản lý địa hình streaming theo từng chunk (ô vuông kích thước cố định) quanh camera
+ *
+ * - Chunk mới được sinh độ cao + mesh trên worker pool (không chặn GL thread),
+ *   worker ghi thẳng đỉnh/index vào {@link UploadRing}
+ * - GL thread chỉ copy sang buffer của chunk, giới hạn thời gian mỗi frame để tránh giật
+ * - Chunk ra khỏi bán kính nhìn sẽ được giải phóng; lưới độ cao của chunk được giữ trong
+ *   {@link TileCache} nên khi camera quay lại không phải sinh noise lại
+ *
+ * Mọi phương thức public (kể cả {@link #getHeightAt}, vì đọc danh sách chunk đã nạp mà GL thread
+ * thay đổi khi update/uploadPending) phải được gọi từ GL thread.
+ */
+public class ChunkManager implements HeightProvider {
+    private final NoiseSource noise;
+    private final int chunkSize;      // Số ô lưới mỗi cạnh chunk
+    private final float scale;
+    private final float heightScale;
+    private final int noiseSpan;      // Số ô lưới ứng với NOISE_FREQUENCY đơn vị noise
+    private final int viewRadius;     // Bán kính nạp chunk (tính theo chunk)
+    private final UploadRing uploadRing;
+    private final TileCache<HeightField> tileCache;  // null = không cache
+
+    private final HeightGenerator generator = HeightGenerator.serial();  // Song song theo chunk
+    private final ExecutorService workers;
+    private final Map<Long, Terrain> loaded = new HashMap<>();           // Chunk đã upload
+    private final Map<Long, Future<?>> pending = new HashMap<>();        // Chunk đang sinh
+    private final ConcurrentLinkedQueue<GeneratedChunk> ready = new ConcurrentLinkedQueue<>();
+
+    private int centerChunkX = Integer.MIN_VALUE;
+    private int centerChunkZ = Integer.MIN_VALUE;
+    private int visibleChunks;
+    private int culledChunks;
+
+    /**
+     * Kết quả sinh chunk từ worker thread, chờ upload
+     */
+    private static class GeneratedChunk {
+        final int chunkX;
+        final int chunkZ;
+        final TerrainMeshData data;
+
+        GeneratedChunk(int chunkX, int chunkZ, TerrainMeshData data) {
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.data = data;
+        }
+    }
+
+    /**
+     * @param chunkSize Số ô lưới mỗi cạnh chunk
+     * @param noiseSpan Số ô lưới ứng với NOISE_FREQUENCY đơn vị noise
+     *                  (bằng TERRAIN_SIZE để giữ cùng hình dạng với Terrain một khối)
+     * @param viewRadius Bán kính nạp chunk quanh camera (tính theo chunk)
+     * @param workerThreads Số worker thread sinh chunk
+     * @param uploadRing Ring upload để worker ghi sẵn dữ liệu chunk (null = upload từ mảng trên GL thread)
+     * @param tileCache Cache lưới độ cao theo chunk, dùng chung giữa các worker (null = luôn sinh lại)
+     */
+    public ChunkManager(NoiseSource noise, int chunkSize, float scale, float heightScale,
+                        int noiseSpan, int viewRadius, int workerThreads, UploadRing uploadRing,
+                        TileCache<HeightField> tileCache) {
+        this.noise = noise;
+        this.chunkSize = chunkSize;
+        this.scale = scale;
+        this.heightScale = heightScale;
+        this.noiseSpan = noiseSpan;
+        this.viewRadius = viewRadius;
+        this.uploadRing = uploadRing;
+        this.tileCache = tileCache;
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "chunk-worker-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
+    /**
+     * Cập nhật tập chunk cần có theo vị trí camera: gửi yêu cầu sinh chunk mới
+     * và giải phóng chunk đã ra khỏi bán kính nhìn
+     */
+    public void update(Vector3f cameraPosition) {
+        int cx = (int) Math.floor(cameraPosition.x / (chunkSize * scale));
+        int cz = (int) Math.floor(cameraPosition.z / (chunkSize * scale));
+        if (cx == centerChunkX && cz == centerChunkZ) {
+            return;
+        }
+        centerChunkX = cx;
+        centerChunkZ = cz;
+
+        // Giải phóng chunk ngoài bán kính (+1 để tránh nạp/xóa liên tục ở biên)
+        int unloadRadius = viewRadius + 1;
+        Iterator<Map.Entry<Long, Terrain>> it = loaded.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Terrain> entry = it.next();
+            if (!isInRadius(entry.getKey(), unloadRadius)) {
+                entry.getValue().cleanup();
+                it.remove();
+            }
+        }
+        Iterator<Map.Entry<Long, Future<?>>> pendingIt = pending.entrySet().iterator();
+        while (pendingIt.hasNext()) {
+            Map.Entry<Long, Future<?>> entry = pendingIt.next();
+            if (!isInRadius(entry.getKey(), unloadRadius)) {
+                entry.getValue().cancel(false);
+                pendingIt.remove();
+            }
+        }
+
+        // Gửi yêu cầu sinh chunk còn thiếu, gần camera trước
+        List<long[]> missing = new ArrayList<>();
+        for (int dz = -viewRadius; dz <= viewRadius; dz++) {
+            for (int dx = -viewRadius; dx <= viewRadius; dx++) {
+                if (dx * dx + dz * dz > viewRadius * viewRadius) {
+                    continue;
+                }
+                long key = key(cx + dx, cz + dz);
+                if (!loaded.containsKey(key) && !pending.containsKey(key)) {
+                    missing.add(new long[]{key, dx * dx + dz * dz});
+                }
+            }
+        }
+        missing.sort((a, b) -> Long.compare(a[1], b[1]));
+
+        for (long[] entry : missing) {
+            long key = entry[0];
+            int chunkX = keyX(key);
+            int chunkZ = keyZ(key);
+            pending.put(key, workers.submit(() ->
+                ready.add(new GeneratedChunk(chunkX, chunkZ, generateChunk(chunkX, chunkZ)))));
+        }
+    }
+
+    /**
+     * Upload các chunk đã sinh xong lên GPU, dừng khi vượt quá ngân sách thời gian
+     * @param budgetNanos Thời gian tối đa dành cho upload trong frame này (nano giây)
+     * @return Số chunk đã upload
+     */
+    public int uploadPending(long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        int uploaded = 0;
+
+        GeneratedChunk chunk;
+        while (System.nanoTime() < deadline && (chunk = ready.poll()) != null) {
+            long key = key(chunk.chunkX, chunk.chunkZ);
+            // Bỏ qua chunk đã bị hủy (camera đã đi xa trong lúc đang sinh)
+            if (pending.remove(key) == null || loaded.containsKey(key)) {
+                chunk.data.discardStaged();
+                continue;
+            }
+
+            Terrain terrain = new Terrain(chunkSize + 1, scale, heightScale, chunk.data);
+            terrain.uploadToGPU(chunk.data, uploadRing);
+            loaded.put(key, terrain);
+            uploaded++;
+        }
+
+        return uploaded;
+    }
+
+    /**
+     * Sinh dữ liệu một chunk (chạy trên worker thread)
+     */
+    private TerrainMeshData generateChunk(int chunkX, int chunkZ) {
+        int startX = chunkX * chunkSize;
+        int startZ = chunkZ * chunkSize;
+
+        // Sinh thêm 1 ô viền mỗi phía để normal ở biên khớp với chunk bên cạnh
+        // (build() chỉ đọc lưới này nên dùng chung được bản trong cache)
+        HeightField paddedHeights = tileCache != null
+                ? tileCache.get(noise.getSeed(), chunkX, chunkZ, 0, () -> generateHeights(startX, startZ))
+                : generateHeights(startX, startZ);
+        TerrainMeshData data = TerrainMeshData.build(paddedHeights, 1, chunkSize + 1, startX, startZ, noiseSpan,
+                                                     Terrain.PACKED_VERTICES, null);
+        if (uploadRing != null) {
+            data.stage(uploadRing);
+        }
+        return data;
+    }
+
+    private HeightField generateHeights(int startX, int startZ) {
+        return generator.generate(noise, startX - 1, startZ - 1, chunkSize + 3, noiseSpan, heightScale, scale);
+    }
+
+    public void render(ShaderProgram shader) {
+        render(shader, null, null);
+    }
+
+    /**
+     * Vẽ các chunk đã nạp, bỏ qua chunk nằm ngoài frustum hoặc bị che sau chân trời
+     * @param frustum Frustum của camera (null = không frustum culling)
+     * @param horizon Chân trời đã dựng cho frame này (null = không occlusion culling)
+     */
+    public void render(ShaderProgram shader, FrustumIntersection frustum, HorizonCuller horizon) {
+        visibleChunks = 0;
+        culledChunks = 0;
+        for (Terrain terrain : loaded.values()) {
+            if (!terrain.isVisible(frustum, horizon)) {
+                culledChunks++;
+                continue;
+            }
+            visibleChunks++;
+            terrain.render(shader, frustum, horizon);
+        }
+    }
+
+    /**
+     * Thêm lưới độ cao của các chunk đã nạp làm vật chắn cho chân trời
+     */
+    public void addOccluders(HorizonCuller horizon) {
+        for (Terrain terrain : loaded.values()) {
+            horizon.addOccluders(terrain.getHeightField());
+        }
+    }
+
+    /**
+     * Lấy độ cao (nội suy bilinear) tại (x, z). Nếu chunk chưa được nạp thì tính trực tiếp
+     * từ noise tại 4 đỉnh lưới xung quanh (cùng công thức với HeightGenerator).
+     * Chỉ gọi từ GL thread
+     */
+    @Override
+    public float getHeightAt(float x, float z) {
+        float gx = x / scale;
+        float gz = z / scale;
+        int gridX = (int) Math.floor(gx);
+        int gridZ = (int) Math.floor(gz);
+
+        int chunkX = Math.floorDiv(gridX, chunkSize);
+        int chunkZ = Math.floorDiv(gridZ, chunkSize);
+        Terrain terrain = loaded.get(key(chunkX, chunkZ));
+        if (terrain != null) {
+            return terrain.getHeightAt(x, z);
+        }
+
+        // Cùng gốc lưới (có viền) với generateHeights để đỉnh lưới khớp với chunk khi được nạp
+        return HeightGenerator.sampleHeightBilinear(noise, x, z, scale, noiseSpan, heightScale,
+                                                    chunkX * chunkSize - 1, chunkZ * chunkSize - 1);
+    }
+
+    public int getLoadedChunkCount() {
+        return loaded.size();
+    }
+
+    /**
+     * Cache lưới độ cao (null nếu không dùng)
+     */
+    public TileCache<HeightField> getTileCache() {
+        return tileCache;
+    }
+
+    public int getPendingChunkCount() {
+        return pending.size();
+    }
+
+    /**
+     * Số chunk được vẽ / bị loại ở lần render gần nhất
+     */
+    public int getVisibleChunkCount() {
+        return visibleChunks;
+    }
+
+    public int getCulledChunkCount() {
+        return culledChunks;
+    }
+
+    public void cleanup() {
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Terrain terrain : loaded.values()) {
+            terrain.cleanup();
+        }
+        GeneratedChunk chunk;
+        while ((chunk = ready.poll()) != null) {
+            chunk.data.discardStaged();
+        }
+        loaded.clear();
+        pending.clear();
+    }
+
+    private boolean isInRadius(long key, int radius) {
+        int dx = keyX(key) - centerChunkX;
+        int dz = keyZ(key) - centerChunkZ;
+        return dx * dx + dz * dz <= radius * radius;
+    }
+
+    private static long key(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    private static int keyX(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int keyZ(long key) {
+        return (int) key;
+    }
+}
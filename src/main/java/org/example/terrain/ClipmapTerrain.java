@@ -0,0 +1,367 @@
+package org.example.terrain;
+
+import org.example.engine.ShaderProgram;
+import org.example.engine.VertexCacheOptimizer;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.glTexImage3D;
+import static org.lwjgl.opengl.GL12.glTexSubImage3D;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Render địa hình bằng geometry clipmap
+ *
+ * Mỗi cấp l là một lưới vành (ring) ringCells x ringCells ô, mỗi ô rộng 2^l ô lưới gốc,
+ * đặt quanh camera; cấp 0 là lưới đặc ở giữa. Độ cao của từng cấp nằm trong một lớp
+ * của texture array (R32F) kích thước cố định, cập nhật kiểu toroidal: khi camera di chuyển
+ * chỉ các hàng/cột mới lộ ra được sinh và upload bằng glTexSubImage3D.
+ * Bộ nhớ GPU và chi phí upload không phụ thuộc kích thước bản đồ.
+ */
+public class ClipmapTerrain implements HeightProvider {
+    public static final int HEIGHTMAP_TEXTURE_UNIT = 4;
+    private static final int TEXTURE_MARGIN = 4;  // Số texel dư mỗi phía (cho normal và mẫu cấp thô)
+
+    private final NoiseSource noise;
+    private final float scale;
+    private final float heightScale;
+    private final int noiseSpan;
+    private final int levels;
+    private final int ringCells;
+    private final int textureSize;
+    private final float uvCells;
+
+    // Ô bắt đầu (theo đơn vị ô của cấp) của lưới và của cửa sổ texture mỗi cấp
+    private final int[] originX;
+    private final int[] originZ;
+    private final int[] windowX;
+    private final int[] windowZ;
+    private boolean initialized;
+
+    private int vaoId;
+    private int vertexVboId;
+    private int indicesVboId;
+    private int heightMapId;
+    private final int fullIndexCount;
+    private final int ringIndexCount;
+    private float acmrBefore;
+    private float acmrAfter;
+
+    private float[] scratch = new float[0];
+    private final Vector2f uniformValue = new Vector2f();
+    private int uploadedTexels;
+
+    /**
+     * @param noiseSpan Số ô lưới ứng với NOISE_FREQUENCY đơn vị noise (khớp với {@link Terrain})
+     * @param levels Số cấp clipmap
+     * @param ringCells Số ô mỗi cạnh của một cấp (chia hết cho 4)
+     * @param uvCells Số ô lưới ứng với một chu kỳ UV
+     */
+    public ClipmapTerrain(NoiseSource noise, float scale, float heightScale, int noiseSpan,
+                          int levels, int ringCells, float uvCells) {
+        if (ringCells < 8 || ringCells % 4 != 0) {
+            throw new IllegalArgumentException("ringCells phải chia hết cho 4 và >= 8: " + ringCells);
+        }
+        this.noise = noise;
+        this.scale = scale;
+        this.heightScale = heightScale;
+        this.noiseSpan = noiseSpan;
+        this.levels = levels;
+        this.ringCells = ringCells;
+        this.uvCells = uvCells;
+        this.textureSize = ringCells + 1 + TEXTURE_MARGIN * 2;
+        this.originX = new int[levels];
+        this.originZ = new int[levels];
+        this.windowX = new int[levels];
+        this.windowZ = new int[levels];
+
+        int half = ringCells / 2;
+        this.fullIndexCount = ringCells * ringCells * 6;
+        this.ringIndexCount = (ringCells * ringCells - half * half) * 6;
+
+        createHeightMap();
+        uploadMesh();
+    }
+
+    private void createHeightMap() {
+        heightMapId = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D_ARRAY, heightMapId);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        // REPEAT để địa chỉ toroidal: texel = tọa độ toàn cục mod textureSize
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_S, GL_REPEAT);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_T, GL_REPEAT);
+        glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_R32F, textureSize, textureSize, levels, 0,
+                     GL_RED, GL_FLOAT, (FloatBuffer) null);
+        glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+    }
+
+    /**
+     * Một lưới (ringCells + 1)^2 đỉnh dùng chung cho mọi cấp. Indices gồm lưới đặc (cấp 0)
+     * và 4 biến thể vành: lỗ ở giữa lệch 0 hoặc 1 ô theo X/Z để khớp với vị trí cấp mịn hơn.
+     * Thứ tự tam giác của từng phần được sắp lại cho vertex cache (tắt bằng {@link Terrain#OPTIMIZE_INDICES}).
+     */
+    private void uploadMesh() {
+        int side = ringCells + 1;
+        FloatBuffer vertices = memAllocFloat(side * side * 3);
+        for (int z = 0; z < side; z++) {
+            for (int x = 0; x < side; x++) {
+                vertices.put(x).put(0).put(z);
+            }
+        }
+        vertices.flip();
+
+        int half = ringCells / 2;
+        int vertexCount = side * side;
+        short[] meshIndices = new short[fullIndexCount + ringIndexCount * 4];
+        int pointer = putCells(meshIndices, 0, side, -1, -1, 0);
+        for (int variant = 0; variant < 4; variant++) {
+            int holeX = ringCells / 4 + (variant & 1);
+            int holeZ = ringCells / 4 + (variant >> 1);
+            pointer = putCells(meshIndices, pointer, side, holeX, holeZ, half);
+        }
+
+        // Lưới đặc và mỗi biến thể vành được vẽ bằng một lệnh riêng nên tối ưu từng đoạn
+        int missesBefore = 0;
+        int missesAfter = 0;
+        for (int part = 0; part < 5; part++) {
+            int offset = part == 0 ? 0 : fullIndexCount + (part - 1) * ringIndexCount;
+            int count = part == 0 ? fullIndexCount : ringIndexCount;
+            missesBefore += VertexCacheOptimizer.countCacheMisses(meshIndices, offset, count, vertexCount,
+                                                                  VertexCacheOptimizer.DEFAULT_FIFO_SIZE);
+            if (Terrain.OPTIMIZE_INDICES) {
+                VertexCacheOptimizer.optimize(meshIndices, offset, count, vertexCount);
+            }
+            missesAfter += VertexCacheOptimizer.countCacheMisses(meshIndices, offset, count, vertexCount,
+                                                                 VertexCacheOptimizer.DEFAULT_FIFO_SIZE);
+        }
+        float triangles = meshIndices.length / 3.0f;
+        acmrBefore = missesBefore / triangles;
+        acmrAfter = missesAfter / triangles;
+
+        ShortBuffer indices = memAllocShort(meshIndices.length);
+        indices.put(meshIndices).flip();
+
+        vaoId = glGenVertexArrays();
+        glBindVertexArray(vaoId);
+
+        vertexVboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vertexVboId);
+        glBufferData(GL_ARRAY_BUFFER, vertices, GL_STATIC_DRAW);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+
+        indicesVboId = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indicesVboId);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+
+        memFree(vertices);
+        memFree(indices);
+    }
+
+    /**
+     * Thêm 2 tam giác cho mỗi ô từ vị trí {@code pointer}, bỏ qua lỗ holeSize x holeSize ô bắt đầu tại (holeX, holeZ)
+     * @return Vị trí sau index cuối cùng đã ghi
+     */
+    private int putCells(short[] indices, int pointer, int side, int holeX, int holeZ, int holeSize) {
+        for (int z = 0; z < ringCells; z++) {
+            for (int x = 0; x < ringCells; x++) {
+                if (x >= holeX && x < holeX + holeSize && z >= holeZ && z < holeZ + holeSize) {
+                    continue;
+                }
+                int topLeft = z * side + x;
+                int topRight = topLeft + 1;
+                int bottomLeft = topLeft + side;
+                int bottomRight = bottomLeft + 1;
+
+                indices[pointer++] = (short) topLeft;
+                indices[pointer++] = (short) bottomLeft;
+                indices[pointer++] = (short) topRight;
+
+                indices[pointer++] = (short) topRight;
+                indices[pointer++] = (short) bottomLeft;
+                indices[pointer++] = (short) bottomRight;
+            }
+        }
+        return pointer;
+    }
+
+    /**
+     * Dời các cấp theo camera và upload phần heightmap mới lộ ra (gọi mỗi frame ở GL thread)
+     */
+    public void update(Vector3f cameraPos) {
+        uploadedTexels = 0;
+        glBindTexture(GL_TEXTURE_2D_ARRAY, heightMapId);
+        int baseCellX = (int) Math.floor(cameraPos.x / scale);
+        int baseCellZ = (int) Math.floor(cameraPos.z / scale);
+        for (int level = 0; level < levels; level++) {
+            // Ô của camera ở cấp này; gốc lưới luôn chẵn để khớp với lỗ của cấp thô hơn
+            int cameraCellX = baseCellX >> level;
+            int cameraCellZ = baseCellZ >> level;
+            originX[level] = Math.floorDiv(cameraCellX, 2) * 2 - ringCells / 2;
+            originZ[level] = Math.floorDiv(cameraCellZ, 2) * 2 - ringCells / 2;
+
+            int newWindowX = originX[level] - TEXTURE_MARGIN;
+            int newWindowZ = originZ[level] - TEXTURE_MARGIN;
+            int dx = newWindowX - windowX[level];
+            int dz = newWindowZ - windowZ[level];
+
+            if (!initialized || Math.abs(dx) >= textureSize || Math.abs(dz) >= textureSize) {
+                uploadRegion(level, newWindowX, newWindowZ, textureSize, textureSize);
+            } else {
+                // Cột mới lộ ra theo X (toàn bộ chiều cao cửa sổ mới)
+                if (dx > 0) {
+                    uploadRegion(level, windowX[level] + textureSize, newWindowZ, dx, textureSize);
+                } else if (dx < 0) {
+                    uploadRegion(level, newWindowX, newWindowZ, -dx, textureSize);
+                }
+                // Hàng mới lộ ra theo Z (trừ phần đã upload cùng các cột)
+                int keepX = dx > 0 ? newWindowX : newWindowX - dx;
+                int keepWidth = textureSize - Math.abs(dx);
+                if (dz > 0) {
+                    uploadRegion(level, keepX, windowZ[level] + textureSize, keepWidth, dz);
+                } else if (dz < 0) {
+                    uploadRegion(level, keepX, newWindowZ, keepWidth, -dz);
+                }
+            }
+            windowX[level] = newWindowX;
+            windowZ[level] = newWindowZ;
+        }
+        glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+        initialized = true;
+    }
+
+    /**
+     * Sinh độ cao cho vùng mẫu [startX, startX + width) x [startZ, startZ + depth) của cấp
+     * và ghi vào texture theo địa chỉ toroidal (tách thành tối đa 4 hình chữ nhật khi vắt qua biên)
+     */
+    private void uploadRegion(int level, int startX, int startZ, int width, int depth) {
+        if (width <= 0 || depth <= 0) {
+            return;
+        }
+        if (scratch.length < width * depth) {
+            scratch = new float[width * depth];
+        }
+        HeightGenerator.generateRegion(noise, startX, startZ, width, depth, 1 << level,
+                                       noiseSpan, heightScale, scratch);
+
+        FloatBuffer buffer = memAllocFloat(width * depth);
+        int texelX = Math.floorMod(startX, textureSize);
+        int texelZ = Math.floorMod(startZ, textureSize);
+        int firstWidth = Math.min(width, textureSize - texelX);
+        int firstDepth = Math.min(depth, textureSize - texelZ);
+
+        for (int part = 0; part < 4; part++) {
+            int fromX = (part & 1) == 0 ? 0 : firstWidth;
+            int fromZ = (part >> 1) == 0 ? 0 : firstDepth;
+            int partWidth = (part & 1) == 0 ? firstWidth : width - firstWidth;
+            int partDepth = (part >> 1) == 0 ? firstDepth : depth - firstDepth;
+            if (partWidth <= 0 || partDepth <= 0) {
+                continue;
+            }
+
+            buffer.clear();
+            for (int z = 0; z < partDepth; z++) {
+                buffer.put(scratch, (fromZ + z) * width + fromX, partWidth);
+            }
+            buffer.flip();
+            glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, (texelX + fromX) % textureSize,
+                            (texelZ + fromZ) % textureSize, level, partWidth, partDepth, 1,
+                            GL_RED, GL_FLOAT, buffer);
+        }
+        memFree(buffer);
+        uploadedTexels += width * depth;
+    }
+
+    /**
+     * Vẽ các cấp clipmap (shader địa hình phải đang được bind, đã gọi {@link #update})
+     */
+    public void render(ShaderProgram shader) {
+        shader.setUniform("lodMode", 2);
+        shader.setUniform("clipHeightMap", HEIGHTMAP_TEXTURE_UNIT);
+        shader.setUniform("clipTextureSize", (float) textureSize);
+        shader.setUniform("clipCells", (float) ringCells);
+        shader.setUniform("clipLevels", levels);
+        shader.setUniform("terrainScale", scale);
+        shader.setUniform("uvCells", uvCells);
+
+        glActiveTexture(GL_TEXTURE0 + HEIGHTMAP_TEXTURE_UNIT);
+        glBindTexture(GL_TEXTURE_2D_ARRAY, heightMapId);
+
+        glBindVertexArray(vaoId);
+        glEnableVertexAttribArray(0);
+
+        for (int level = 0; level < levels; level++) {
+            shader.setUniform("clipLevel", level);
+            shader.setUniform("clipOrigin", uniformValue.set(originX[level], originZ[level]));
+
+            if (level == 0) {
+                glDrawElements(GL_TRIANGLES, fullIndexCount, GL_UNSIGNED_SHORT, 0);
+            } else {
+                // Vị trí cấp mịn hơn bên trong cấp này quyết định biến thể lỗ
+                int holeX = originX[level - 1] / 2 - originX[level] - ringCells / 4;
+                int holeZ = originZ[level - 1] / 2 - originZ[level] - ringCells / 4;
+                int variant = holeX + holeZ * 2;
+                long offset = ((long) fullIndexCount + (long) variant * ringIndexCount) * Short.BYTES;
+                glDrawElements(GL_TRIANGLES, ringIndexCount, GL_UNSIGNED_SHORT, offset);
+            }
+        }
+
+        glDisableVertexAttribArray(0);
+        glBindVertexArray(0);
+        glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+        glActiveTexture(GL_TEXTURE0);
+        shader.setUniform("lodMode", 0);
+    }
+
+    @Override
+    public float getHeightAt(float x, float z) {
+        // Như lưới Terrain một khối sinh từ ô (0, 0)
+        return HeightGenerator.sampleHeightBilinear(noise, x, z, scale, noiseSpan, heightScale, 0, 0);
+    }
+
+    /**
+     * Số texel đã upload ở lần update gần nhất
+     */
+    public int getUploadedTexelCount() {
+        return uploadedTexels;
+    }
+
+    /**
+     * ACMR của index lưới clipmap theo thứ tự hàng ban đầu
+     */
+    public float getAcmrBefore() {
+        return acmrBefore;
+    }
+
+    /**
+     * ACMR của index lưới clipmap đã upload (sau khi tối ưu nếu bật {@link Terrain#OPTIMIZE_INDICES})
+     */
+    public float getAcmrAfter() {
+        return acmrAfter;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    public void cleanup() {
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glDeleteBuffers(vertexVboId);
+        glDeleteBuffers(indicesVboId);
+        glBindVertexArray(0);
+        glDeleteVertexArrays(vaoId);
+        glDeleteTextures(heightMapId);
+    }
+}
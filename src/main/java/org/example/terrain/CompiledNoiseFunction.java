@@ -0,0 +1,49 @@
+package org.example.terrain;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
+/**
+ * Lớp mẫu cho {@link NoiseGraph#compile}: mỗi graph được nạp thành một hidden class riêng từ
+ * bytecode của lớp này, với cây MethodHandle đi kèm làm class data.
+ *
+ * Vì HANDLE là static final của từng hidden class, JIT coi nó là hằng số và inline toàn bộ cây
+ * (kể cả các tham số đã bind như NoiseSource, số octave) vào sample/fill. Không dùng trực tiếp lớp này.
+ */
+final class CompiledNoiseFunction implements NoiseFunction {
+    private static final MethodHandle HANDLE = loadHandle();
+
+    private static MethodHandle loadHandle() {
+        try {
+            return MethodHandles.classData(MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME, MethodHandle.class);
+        } catch (IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public double sample(double x, double z) {
+        try {
+            return (double) HANDLE.invokeExact(x, z);
+        } catch (Throwable e) {
+            throw NoiseGraph.rethrow(e);
+        }
+    }
+
+    @Override
+    public void fill(float[] out, int outOffset, double x0, double z0, double step, int width, int height) {
+        NoiseGraph.checkFill(out, outOffset, width, height);
+        try {
+            for (int j = 0; j < height; j++) {
+                double z = z0 + j * step;
+                int offset = outOffset + j * width;
+                for (int i = 0; i < width; i++) {
+                    out[offset + i] = (float) (double) HANDLE.invokeExact(x0 + i * step, z);
+                }
+            }
+        } catch (Throwable e) {
+            throw NoiseGraph.rethrow(e);
+        }
+    }
+}
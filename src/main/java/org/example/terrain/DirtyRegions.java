@@ -0,0 +1,89 @@
+package org.example.terrain;
+
+import java.util.Arrays;
+
+/**
+ * Danh sách hình chữ nhật đỉnh đã sửa trong frame, gộp các vùng chồng/chạm nhau
+ * trước khi upload để mỗi đỉnh chỉ được gửi lên GPU một lần
+ */
+final class DirtyRegions {
+    private int[] rects = new int[16];  // x0, z0, x1, z1 (cả hai đầu)
+    private int count;
+
+    void add(int x0, int z0, int x1, int z1) {
+        if (count * 4 == rects.length) {
+            rects = Arrays.copyOf(rects, rects.length * 2);
+        }
+        int base = count * 4;
+        rects[base] = x0;
+        rects[base + 1] = z0;
+        rects[base + 2] = x1;
+        rects[base + 3] = z1;
+        count++;
+    }
+
+    /**
+     * Gộp các vùng chồng hoặc kề nhau thành hình chữ nhật bao của chúng (lặp tới khi ổn định)
+     */
+    void merge() {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < count && !merged; i++) {
+                for (int j = i + 1; j < count; j++) {
+                    if (touches(i, j)) {
+                        int a = i * 4;
+                        int b = j * 4;
+                        rects[a] = Math.min(rects[a], rects[b]);
+                        rects[a + 1] = Math.min(rects[a + 1], rects[b + 1]);
+                        rects[a + 2] = Math.max(rects[a + 2], rects[b + 2]);
+                        rects[a + 3] = Math.max(rects[a + 3], rects[b + 3]);
+                        remove(j);
+                        merged = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean touches(int i, int j) {
+        int a = i * 4;
+        int b = j * 4;
+        return rects[a] <= rects[b + 2] + 1 && rects[b] <= rects[a + 2] + 1
+            && rects[a + 1] <= rects[b + 3] + 1 && rects[b + 1] <= rects[a + 3] + 1;
+    }
+
+    private void remove(int index) {
+        count--;
+        System.arraycopy(rects, count * 4, rects, index * 4, 4);
+    }
+
+    void clear() {
+        count = 0;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    int size() {
+        return count;
+    }
+
+    int x0(int i) {
+        return rects[i * 4];
+    }
+
+    int z0(int i) {
+        return rects[i * 4 + 1];
+    }
+
+    int x1(int i) {
+        return rects[i * 4 + 2];
+    }
+
+    int z1(int i) {
+        return rects[i * 4 + 3];
+    }
+}
@@ -0,0 +1,218 @@
+package org.example.terrain;
+
+import org.example.engine.ShaderProgram;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_PACK_BUFFER;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Sinh lưới độ cao trên GPU: fragment shader (shaders/heightgen.frag) tính cùng fractal Perlin noise
+ * với {@link PerlinNoise#fractalNoise} vào một texture R32F, sau đó đọc về CPU qua 2 PBO luân phiên
+ * theo từng dải hàng (vẽ dải sau trong lúc chép dải trước).
+ *
+ * Texture kết quả dùng được ngay làm heightmap cho {@link CdlodTerrain}, bản CPU (HeightField)
+ * dùng cho va chạm/đặt cây/cache. GPU tính bằng float nên lệch nhỏ so với CPU (double);
+ * dùng {@link #verify} để so sánh trên các điểm ngẫu nhiên.
+ *
+ * Chỉ hỗ trợ PerlinNoise, NOISE_FREQUENCY nguyên và ô lưới không âm. Phải gọi trên thread có GL context.
+ */
+public class GpuHeightGenerator {
+    private static final int BAND_ROWS = 256;  // Số hàng mỗi lần đọc về
+
+    private final ShaderProgram shader;
+    private final int vaoId;
+
+    /**
+     * Kết quả: lưới độ cao trên CPU và texture R32F cùng nội dung (người nhận chịu trách nhiệm xóa texture)
+     */
+    public static final class Result {
+        private final HeightField heights;
+        private final int textureId;
+
+        Result(HeightField heights, int textureId) {
+            this.heights = heights;
+            this.textureId = textureId;
+        }
+
+        public HeightField getHeights() {
+            return heights;
+        }
+
+        public int getTextureId() {
+            return textureId;
+        }
+    }
+
+    /**
+     * @param shader Shader đã link từ heightgen.vert/heightgen.frag
+     */
+    public GpuHeightGenerator(ShaderProgram shader) {
+        this.shader = shader;
+        // Core profile cần một VAO được bind khi vẽ, dù không có vertex attribute nào
+        this.vaoId = glGenVertexArrays();
+    }
+
+    /**
+     * GPU có sinh được noise này không (chỉ PerlinNoise, tần số nguyên)
+     */
+    public static boolean supports(NoiseSource noise) {
+        return noise instanceof PerlinNoise && Terrain.NOISE_FREQUENCY == Math.rint(Terrain.NOISE_FREQUENCY);
+    }
+
+    /**
+     * Sinh lưới size x size, cùng tham số và kết quả (sai số float) với
+     * {@link HeightGenerator#generate(NoiseSource, int, int, int, int, float, float)}
+     */
+    public Result generate(NoiseSource noise, int startX, int startZ, int size,
+                           int noiseSpan, float heightScale, float scale) {
+        if (!supports(noise)) {
+            throw new IllegalArgumentException("GPU chỉ hỗ trợ Perlin noise với tần số nguyên: " + noise.getType());
+        }
+        if (startX < 0 || startZ < 0) {
+            throw new IllegalArgumentException("Ô bắt đầu phải không âm: " + startX + ", " + startZ);
+        }
+        // Tọa độ noise tính bằng số nguyên 32-bit trong shader: g * F * 2^(octaves - 1) không được tràn
+        long maxNumerator = ((long) Math.max(startX, startZ) + size - 1)
+                * (long) Terrain.NOISE_FREQUENCY << (Terrain.NOISE_OCTAVES - 1);
+        if (maxNumerator > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Lưới quá lớn cho tọa độ noise 32-bit: " + size);
+        }
+        int maxSize = glGetInteger(GL_MAX_TEXTURE_SIZE);
+        if (size > maxSize) {
+            throw new IllegalStateException("Lưới " + size + " vượt GL_MAX_TEXTURE_SIZE " + maxSize);
+        }
+
+        int textureId = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, textureId);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_R32F, size, size, 0, GL_RED, GL_FLOAT, (ByteBuffer) null);
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        int framebufferId = glGenFramebuffers();
+        glBindFramebuffer(GL_FRAMEBUFFER, framebufferId);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, textureId, 0);
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        if (status != GL_FRAMEBUFFER_COMPLETE) {
+            glBindFramebuffer(GL_FRAMEBUFFER, 0);
+            glDeleteFramebuffers(framebufferId);
+            glDeleteTextures(textureId);
+            throw new IllegalStateException("Framebuffer R32F không hoàn chỉnh: 0x" + Integer.toHexString(status));
+        }
+
+        int[] viewport = new int[4];
+        glGetIntegerv(GL_VIEWPORT, viewport);
+        boolean depthTest = glIsEnabled(GL_DEPTH_TEST);
+        boolean blend = glIsEnabled(GL_BLEND);
+        glDisable(GL_DEPTH_TEST);
+        glDisable(GL_BLEND);
+        glEnable(GL_SCISSOR_TEST);
+        glViewport(0, 0, size, size);
+        glReadBuffer(GL_COLOR_ATTACHMENT0);
+        glPixelStorei(GL_PACK_ALIGNMENT, 4);
+
+        shader.bind();
+        shader.setUniform("perm", ((PerlinNoise) noise).getPermutation());
+        shader.setUniform("noiseFrequency", (int) Terrain.NOISE_FREQUENCY);
+        shader.setUniform("noiseSpan", noiseSpan);
+        shader.setUniform("octaves", Terrain.NOISE_OCTAVES);
+        shader.setUniform("persistence", (float) Terrain.NOISE_PERSISTENCE);
+        shader.setUniform("heightScale", heightScale);
+        shader.setUniform("origin", startX, startZ);
+        glBindVertexArray(vaoId);
+
+        HeightField heights = new HeightField(size, size, scale, startX * scale, startZ * scale);
+        float[] data = heights.getData();
+        int bandRows = Math.min(BAND_ROWS, size);
+        int[] pixelBuffers = new int[2];
+        glGenBuffers(pixelBuffers);
+        for (int pixelBuffer : pixelBuffers) {
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, pixelBuffer);
+            glBufferData(GL_PIXEL_PACK_BUFFER, (long) size * bandRows * Float.BYTES, GL_STREAM_READ);
+        }
+
+        // Dải b: vẽ vào texture rồi glReadPixels bất đồng bộ vào PBO (b & 1);
+        // trong lúc đó map PBO còn lại để chép dải b - 1 về mảng
+        int previousRow = -1;
+        for (int band = 0, row = 0; row < size; band++, row += bandRows) {
+            int rows = Math.min(bandRows, size - row);
+            glScissor(0, row, size, rows);
+            glDrawArrays(GL_TRIANGLES, 0, 3);
+
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, pixelBuffers[band & 1]);
+            glReadPixels(0, row, size, rows, GL_RED, GL_FLOAT, 0L);
+
+            if (previousRow >= 0) {
+                copyBand(pixelBuffers[(band - 1) & 1], data, previousRow, bandRows, size);
+            }
+            previousRow = row;
+        }
+        int lastBand = (size - 1) / bandRows;
+        copyBand(pixelBuffers[lastBand & 1], data, previousRow, Math.min(bandRows, size - previousRow), size);
+
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+        glDeleteBuffers(pixelBuffers);
+        glBindVertexArray(0);
+        shader.unbind();
+
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        glDeleteFramebuffers(framebufferId);
+        glDisable(GL_SCISSOR_TEST);
+        glViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+        if (depthTest) {
+            glEnable(GL_DEPTH_TEST);
+        }
+        if (blend) {
+            glEnable(GL_BLEND);
+        }
+
+        return new Result(heights, textureId);
+    }
+
+    /**
+     * Chép {@code rows} hàng bắt đầu từ hàng {@code row} từ PBO về mảng độ cao
+     */
+    private static void copyBand(int pixelBuffer, float[] data, int row, int rows, int size) {
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, pixelBuffer);
+        ByteBuffer mapped = glMapBufferRange(GL_PIXEL_PACK_BUFFER, 0, (long) size * rows * Float.BYTES,
+                                             GL_MAP_READ_BIT);
+        if (mapped == null) {
+            throw new IllegalStateException("Không map được PBO để đọc heightmap");
+        }
+        mapped.asFloatBuffer().get(data, row * size, size * rows);
+        glUnmapBuffer(GL_PIXEL_PACK_BUFFER);
+    }
+
+    /**
+     * So sánh độ cao GPU với CPU ({@link HeightGenerator#sampleHeight}) tại 4 góc và {@code samples}
+     * điểm ngẫu nhiên
+     * @return Sai số tuyệt đối lớn nhất
+     */
+    public static float verify(NoiseSource noise, HeightField heights, int startX, int startZ,
+                               int noiseSpan, float heightScale, int samples, long seed) {
+        int width = heights.getWidth();
+        int depth = heights.getDepth();
+        float[] data = heights.getData();
+        Random random = new Random(seed);
+        float maxError = 0;
+        for (int i = 0; i < samples + 4; i++) {
+            // 4 mẫu đầu là 4 góc lưới
+            int x = i < 4 ? (i & 1) * (width - 1) : random.nextInt(width);
+            int z = i < 4 ? (i >> 1) * (depth - 1) : random.nextInt(depth);
+            float expected = HeightGenerator.sampleHeight(noise, startX, startZ, x, z, noiseSpan, heightScale);
+            maxError = Math.max(maxError, Math.abs(data[z * width + x] - expected));
+        }
+        return maxError;
+    }
+
+    public void cleanup() {
+        glDeleteVertexArrays(vaoId);
+    }
+}
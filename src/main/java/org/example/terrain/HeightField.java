@@ -0,0 +1,218 @@
+package org.example.terrain;
+
+/**
+ * Lưới độ cao lưu trong một mảng float liên tục (theo hàng, X chạy nhanh)
+ *
+ * Hỗ trợ truy vấn độ cao nội suy song tuyến (bilinear), truy vấn theo lô,
+ * và độ cao min/max theo từng khối (dùng cho culling, LOD, ray casting...).
+ */
+public class HeightField implements HeightProvider {
+    private final int width;     // Số đỉnh theo X
+    private final int depth;     // Số đỉnh theo Z
+    private final float scale;   // Khoảng cách giữa các đỉnh
+    private final float originX; // Vị trí world của đỉnh (0, 0)
+    private final float originZ;
+    private final float[] data;
+
+    // Min/max theo khối (tính khi gọi computeBlockBounds)
+    private int blockSize;
+    private int blocksX;
+    private int blocksZ;
+    private float[] blockMin;
+    private float[] blockMax;
+
+    public HeightField(int width, int depth, float scale, float originX, float originZ) {
+        this(width, depth, scale, originX, originZ, new float[width * depth]);
+    }
+
+    /**
+     * Bọc một mảng có sẵn (không sao chép)
+     */
+    public HeightField(int width, int depth, float scale, float originX, float originZ, float[] data) {
+        if (data.length < width * depth) {
+            throw new IllegalArgumentException("Mảng độ cao quá nhỏ: " + data.length + " < " + width * depth);
+        }
+        this.width = width;
+        this.depth = depth;
+        this.scale = scale;
+        this.originX = originX;
+        this.originZ = originZ;
+        this.data = data;
+    }
+
+    /**
+     * Độ cao tại đỉnh lưới (x, z)
+     */
+    public float get(int x, int z) {
+        return data[z * width + x];
+    }
+
+    public void set(int x, int z, float height) {
+        data[z * width + x] = height;
+    }
+
+    /**
+     * Độ cao nội suy song tuyến tại vị trí world (x, z). Ngoài phạm vi lưới trả về 0.
+     */
+    public float sample(float x, float z) {
+        float gx = (x - originX) / scale;
+        float gz = (z - originZ) / scale;
+
+        if (!(gx >= 0 && gz >= 0 && gx <= width - 1 && gz <= depth - 1)) {
+            return 0;
+        }
+
+        int ix = Math.min((int) gx, width - 2);
+        int iz = Math.min((int) gz, depth - 2);
+        float tx = gx - ix;
+        float tz = gz - iz;
+
+        int index = iz * width + ix;
+        float h00 = data[index];
+        float h10 = data[index + 1];
+        float h01 = data[index + width];
+        float h11 = data[index + width + 1];
+
+        // Dạng a * (1 - t) + b * t cho kết quả chính xác tại đỉnh lưới (t = 0 hoặc 1)
+        float top = h00 * (1 - tx) + h10 * tx;
+        float bottom = h01 * (1 - tx) + h11 * tx;
+        return top * (1 - tz) + bottom * tz;
+    }
+
+    /**
+     * Truy vấn theo lô: out[i] = sample(xs[i], zs[i])
+     */
+    public void sample(float[] xs, float[] zs, float[] out) {
+        int count = Math.min(xs.length, Math.min(zs.length, out.length));
+        for (int i = 0; i < count; i++) {
+            out[i] = sample(xs[i], zs[i]);
+        }
+    }
+
+    @Override
+    public float getHeightAt(float x, float z) {
+        return sample(x, z);
+    }
+
+    @Override
+    public void getHeightsAt(float[] xs, float[] zs, float[] out) {
+        sample(xs, zs, out);
+    }
+
+    /**
+     * Sao chép phần lưới bên trong, bỏ {@code border} đỉnh viền mỗi phía
+     */
+    public HeightField crop(int border) {
+        int innerWidth = width - border * 2;
+        int innerDepth = depth - border * 2;
+        HeightField inner = new HeightField(innerWidth, innerDepth, scale,
+                                            originX + border * scale, originZ + border * scale);
+        for (int z = 0; z < innerDepth; z++) {
+            System.arraycopy(data, (z + border) * width + border, inner.data, z * innerWidth, innerWidth);
+        }
+        return inner;
+    }
+
+    /**
+     * Tính độ cao min/max cho từng khối blockSize x blockSize ô.
+     * Khối (bx, bz) bao gồm các đỉnh [bx * blockSize, (bx + 1) * blockSize] (kể cả cạnh chung)
+     * nên bao trọn mọi tam giác trong khối.
+     */
+    public void computeBlockBounds(int blockSize) {
+        this.blockSize = blockSize;
+        this.blocksX = Math.max(1, (width - 2) / blockSize + 1);
+        this.blocksZ = Math.max(1, (depth - 2) / blockSize + 1);
+        this.blockMin = new float[blocksX * blocksZ];
+        this.blockMax = new float[blocksX * blocksZ];
+        updateBlockBounds(0, 0, width - 1, depth - 1);
+    }
+
+    /**
+     * Cập nhật min/max của các khối chứa vùng đỉnh [x0, x1] x [z0, z1] (sau khi sửa độ cao)
+     */
+    public void updateBlockBounds(int x0, int z0, int x1, int z1) {
+        if (blockMin == null) {
+            return;
+        }
+        int bx0 = Math.max(0, Math.min(blocksX - 1, (x0 - 1) / blockSize));
+        int bz0 = Math.max(0, Math.min(blocksZ - 1, (z0 - 1) / blockSize));
+        int bx1 = Math.min(blocksX - 1, x1 / blockSize);
+        int bz1 = Math.min(blocksZ - 1, z1 / blockSize);
+
+        for (int bz = bz0; bz <= bz1; bz++) {
+            for (int bx = bx0; bx <= bx1; bx++) {
+                int startX = bx * blockSize;
+                int startZ = bz * blockSize;
+                int endX = Math.min(startX + blockSize, width - 1);
+                int endZ = Math.min(startZ + blockSize, depth - 1);
+
+                float min = Float.POSITIVE_INFINITY;
+                float max = Float.NEGATIVE_INFINITY;
+                for (int z = startZ; z <= endZ; z++) {
+                    int row = z * width;
+                    for (int x = startX; x <= endX; x++) {
+                        float h = data[row + x];
+                        min = Math.min(min, h);
+                        max = Math.max(max, h);
+                    }
+                }
+                blockMin[bz * blocksX + bx] = min;
+                blockMax[bz * blocksX + bx] = max;
+            }
+        }
+    }
+
+    public float getBlockMin(int bx, int bz) {
+        return blockMin[bz * blocksX + bx];
+    }
+
+    public float getBlockMax(int bx, int bz) {
+        return blockMax[bz * blocksX + bx];
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getBlocksX() {
+        return blocksX;
+    }
+
+    public int getBlocksZ() {
+        return blocksZ;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    public float getOriginX() {
+        return originX;
+    }
+
+    public float getOriginZ() {
+        return originZ;
+    }
+
+    /**
+     * Mảng dữ liệu gốc (không sao chép) cho các thao tác hàng loạt
+     */
+    public float[] getData() {
+        return data;
+    }
+
+    /**
+     * Số byte của mảng độ cao (dùng làm trọng số trong {@link TileCache})
+     */
+    public long getDataBytes() {
+        return (long) data.length * Float.BYTES;
+    }
+}
@@ -0,0 +1,152 @@
+package org.example.terrain;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Bộ sinh lưới độ cao bằng fractal noise, hỗ trợ chạy song song (fork-join theo hàng)
+ *
+ * Mỗi ô được tính độc lập bằng cùng một công thức nên kết quả song song
+ * giống hệt từng bit so với chạy tuần tự với cùng seed.
+ */
+public class HeightGenerator {
+    private static final int ROWS_PER_TASK = 8;  // Số hàng tối thiểu của một task
+
+    private final int parallelism;
+    private final ForkJoinPool pool;  // null khi chạy tuần tự
+
+    /**
+     * @param parallelism Số luồng tối đa dùng để sinh (1 = tuần tự)
+     */
+    public HeightGenerator(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism phải >= 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * Bộ sinh tuần tự (chạy trên thread gọi)
+     */
+    public static HeightGenerator serial() {
+        return new HeightGenerator(1);
+    }
+
+    /**
+     * Sinh lưới độ cao
+     * @param startX Ô lưới toàn cục bắt đầu theo X
+     * @param startZ Ô lưới toàn cục bắt đầu theo Z
+     * @param size Số đỉnh mỗi cạnh
+     * @param noiseSpan Số ô lưới ứng với NOISE_FREQUENCY đơn vị noise
+     * @param scale Khoảng cách giữa các đỉnh (world space)
+     */
+    public HeightField generate(NoiseSource noise, int startX, int startZ, int size,
+                                int noiseSpan, float heightScale, float scale) {
+        HeightField heights = new HeightField(size, size, scale, startX * scale, startZ * scale);
+        float[] data = heights.getData();
+
+        ParallelRows.run(pool, size, ROWS_PER_TASK, (rowFrom, rowTo) ->
+            generateRows(noise, startX, startZ, size, noiseSpan, heightScale, data, rowFrom, rowTo));
+
+        return heights;
+    }
+
+    /**
+     * Sinh các hàng [rowFrom, rowTo) - kernel dùng chung cho cả chế độ tuần tự và song song
+     */
+    static void generateRows(NoiseSource noise, int startX, int startZ, int size, int noiseSpan,
+                             float heightScale, float[] data, int rowFrom, int rowTo) {
+        double step = Terrain.NOISE_FREQUENCY / noiseSpan;
+        for (int z = rowFrom; z < rowTo; z++) {
+            int offset = z * size;
+            // Sử dụng fractal noise để tạo địa hình tự nhiên hơn (sinh cả hàng một lần,
+            // mẫu thứ i của hàng có tọa độ x0 + i * step = noiseCoordinate(startX, i, step))
+            noise.fill(data, offset, noiseCoordinate(startX, 0, step), noiseCoordinate(startZ, z, step), step,
+                       size, 1, Terrain.NOISE_OCTAVES, Terrain.NOISE_PERSISTENCE);
+            for (int x = offset; x < offset + size; x++) {
+                data[x] *= heightScale;
+            }
+        }
+    }
+
+    /**
+     * Sinh vùng chữ nhật width x depth mẫu, cách nhau {@code spacing} ô lưới toàn cục
+     * (dùng cho các cấp thô của clipmap), bắt đầu từ mẫu (startX, startZ)
+     */
+    static void generateRegion(NoiseSource noise, int startX, int startZ, int width, int depth,
+                               int spacing, int noiseSpan, float heightScale, float[] out) {
+        double step = Terrain.NOISE_FREQUENCY / noiseSpan * spacing;
+        for (int z = 0; z < depth; z++) {
+            int offset = z * width;
+            noise.fill(out, offset, noiseCoordinate(startX, 0, step), noiseCoordinate(startZ, z, step), step,
+                       width, 1, Terrain.NOISE_OCTAVES, Terrain.NOISE_PERSISTENCE);
+            for (int x = offset; x < offset + width; x++) {
+                out[x] *= heightScale;
+            }
+        }
+    }
+
+    /**
+     * Tọa độ noise của mẫu thứ {@code offset} trong lưới bắt đầu từ ô {@code start}.
+     * Cùng thứ tự phép tính với NoiseSource.fill (x0 + i * step, x0 = start * step), nên mọi nơi
+     * dùng hàm này cho cùng tọa độ double với lưới sinh bởi generate()
+     */
+    static double noiseCoordinate(int start, int offset, double step) {
+        return start * step + offset * step;
+    }
+
+    /**
+     * Độ cao của mẫu (x, z) trong lưới bắt đầu từ ô toàn cục (startX, startZ),
+     * giống hệt từng bit với mẫu tương ứng của generate(noise, startX, startZ, ...)
+     */
+    static float sampleHeight(NoiseSource noise, int startX, int startZ, int x, int z,
+                              int noiseSpan, float heightScale) {
+        double step = Terrain.NOISE_FREQUENCY / noiseSpan;
+        float height = (float) noise.fractalNoise(noiseCoordinate(startX, x, step), noiseCoordinate(startZ, z, step),
+                                                  Terrain.NOISE_OCTAVES, Terrain.NOISE_PERSISTENCE);
+        return height * heightScale;
+    }
+
+    /**
+     * Độ cao nội suy bilinear tại vị trí world (x, z), tính trực tiếp từ noise tại 4 đỉnh lưới xung quanh.
+     * 4 đỉnh được lấy như trong lưới bắt đầu từ ô (startX, startZ), để khớp từng bit với lưới
+     * mà generate() sinh cho vùng chứa (x, z)
+     */
+    static float sampleHeightBilinear(NoiseSource noise, float x, float z, float scale,
+                                      int noiseSpan, float heightScale, int startX, int startZ) {
+        float gx = x / scale;
+        float gz = z / scale;
+        int gridX = (int) Math.floor(gx);
+        int gridZ = (int) Math.floor(gz);
+        float tx = gx - gridX;
+        float tz = gz - gridZ;
+        int localX = gridX - startX;
+        int localZ = gridZ - startZ;
+
+        float h00 = sampleHeight(noise, startX, startZ, localX, localZ, noiseSpan, heightScale);
+        float h10 = sampleHeight(noise, startX, startZ, localX + 1, localZ, noiseSpan, heightScale);
+        float h01 = sampleHeight(noise, startX, startZ, localX, localZ + 1, noiseSpan, heightScale);
+        float h11 = sampleHeight(noise, startX, startZ, localX + 1, localZ + 1, noiseSpan, heightScale);
+
+        float top = h00 * (1 - tx) + h10 * tx;
+        float bottom = h01 * (1 - tx) + h11 * tx;
+        return top * (1 - tz) + bottom * tz;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Pool dùng chung cho các bước song song khác (tính normal...), null khi chạy tuần tự
+     */
+    ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
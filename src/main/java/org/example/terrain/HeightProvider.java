@@ -0,0 +1,23 @@
+package org.example.terrain;
+
+/**
+ * Nguồn truy vấn độ cao địa hình theo tọa độ thế giới (world space)
+ * Dùng chung cho địa hình một khối (Terrain) và địa hình streaming (ChunkManager)
+ */
+public interface HeightProvider {
+
+    /**
+     * Lấy độ cao địa hình tại vị trí (x, z) trong world space
+     */
+    float getHeightAt(float x, float z);
+
+    /**
+     * Truy vấn theo lô: out[i] = getHeightAt(xs[i], zs[i])
+     */
+    default void getHeightsAt(float[] xs, float[] zs, float[] out) {
+        int count = Math.min(xs.length, Math.min(zs.length, out.length));
+        for (int i = 0; i < count; i++) {
+            out[i] = getHeightAt(xs[i], zs[i]);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package org.example.terrain;
+
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Occlusion culling trên CPU bằng đường chân trời (horizon) dựng từ lưới độ cao
+ *
+ * Quanh camera chia thành các góc phương vị (bin). Mỗi ô chắn (tile {@code tileCells} ô
+ * gần camera) nâng độ dốc chân trời của các bin mà nó che kín bằng độ cao thấp nhất của ô,
+ * nên kết quả luôn bảo thủ: chỉ loại vật nằm chắc chắn sau sườn núi.
+ *
+ * Chân trời được lưu theo dải khoảng cách: ô chắn chỉ có hiệu lực với vật ở xa hơn
+ * điểm xa nhất của nó (không che vật nằm cạnh hoặc trước nó).
+ *
+ * Mỗi frame: {@link #begin}, {@link #addOccluders} cho từng lưới độ cao, {@link #end},
+ * sau đó {@link #isOccluded} cho từng khối/chunk/node/ô cây.
+ */
+public class HorizonCuller {
+    private static final int BINS = 512;   // Số góc phương vị
+    private static final int BANDS = 32;   // Số dải khoảng cách
+    private static final double BIN_ANGLE = 2.0 * Math.PI / BINS;
+    private static final double SPAN_EPSILON = 1e-4;  // Bỏ bin chỉ bị che gần kín (sai số làm tròn)
+
+    private final int tileCells;
+    private final float occluderRadius;
+    private final float bandWidth;
+
+    // horizon[band * BINS + bin]: độ dốc (dy / khoảng cách ngang) lớn nhất bị che
+    private final float[] horizon = new float[(BANDS + 1) * BINS];
+    // Độ cao thấp nhất quanh từng tile (đã lấy min 3x3), tính một lần cho mỗi lưới độ cao
+    private final Map<HeightField, float[]> tileMinCache = new WeakHashMap<>();
+    // Min của riêng từng tile, giữ lại để cập nhật theo vùng khi sửa độ cao
+    private final Map<HeightField, float[]> rawTileMinCache = new WeakHashMap<>();
+
+    private final Vector3f camera = new Vector3f();
+    private final double[] span = new double[2];
+    private final float[] distances = new float[2];
+    private int occluderCount;
+    private int testedCount;
+    private int occludedCount;
+
+    /**
+     * @param tileCells Số ô mỗi cạnh của một tile chắn
+     * @param occluderRadius Chỉ dùng các tile trong bán kính này quanh camera (world)
+     */
+    public HorizonCuller(int tileCells, float occluderRadius) {
+        this.tileCells = tileCells;
+        this.occluderRadius = occluderRadius;
+        this.bandWidth = occluderRadius / BANDS;
+    }
+
+    /**
+     * Bắt đầu dựng chân trời cho vị trí camera của frame này
+     */
+    public void begin(Vector3f cameraPos) {
+        camera.set(cameraPos);
+        Arrays.fill(horizon, Float.NEGATIVE_INFINITY);
+        occluderCount = 0;
+        testedCount = 0;
+        occludedCount = 0;
+    }
+
+    /**
+     * Thêm các tile của lưới độ cao nằm trong bán kính chắn
+     */
+    public void addOccluders(HeightField heights) {
+        float[] tileMin = tileMinCache.computeIfAbsent(heights, this::computeTileMin);
+        int tilesX = tilesAlong(heights.getWidth());
+        int tilesZ = tilesAlong(heights.getDepth());
+        float tileWorld = tileCells * heights.getScale();
+        float limitX = heights.getOriginX() + (heights.getWidth() - 1) * heights.getScale();
+        float limitZ = heights.getOriginZ() + (heights.getDepth() - 1) * heights.getScale();
+
+        int tx0 = Math.max(0, (int) Math.floor((camera.x - occluderRadius - heights.getOriginX()) / tileWorld));
+        int tz0 = Math.max(0, (int) Math.floor((camera.z - occluderRadius - heights.getOriginZ()) / tileWorld));
+        int tx1 = Math.min(tilesX - 1, (int) Math.floor((camera.x + occluderRadius - heights.getOriginX()) / tileWorld));
+        int tz1 = Math.min(tilesZ - 1, (int) Math.floor((camera.z + occluderRadius - heights.getOriginZ()) / tileWorld));
+
+        for (int tz = tz0; tz <= tz1; tz++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                float minX = heights.getOriginX() + tx * tileWorld;
+                float minZ = heights.getOriginZ() + tz * tileWorld;
+                float maxX = Math.min(minX + tileWorld, limitX);
+                float maxZ = Math.min(minZ + tileWorld, limitZ);
+                float minY = tileMin[tz * tilesX + tx];
+                addOccluder(minX, minZ, maxX, maxZ, minY);
+            }
+        }
+    }
+
+    /**
+     * Thêm một ô chắn: mặt đất trong hình chữ nhật [minX, maxX] x [minZ, maxZ] cao ít nhất minY
+     */
+    public void addOccluder(float minX, float minZ, float maxX, float maxZ, float minY) {
+        rectDistances(minX, minZ, maxX, maxZ, distances);
+        float nearest = distances[0];
+        float farthest = distances[1];
+        if (nearest <= 0 || farthest > occluderRadius) {
+            return;  // Camera nằm trên ô, hoặc ô quá xa
+        }
+
+        // Độ dốc nhỏ nhất của mặt ô nhìn từ camera (bảo thủ trên mọi khoảng cách trong ô)
+        float dy = minY - camera.y;
+        float slope = dy / (dy > 0 ? farthest : nearest);
+
+        // Chỉ các bin bị ô che kín hoàn toàn
+        azimuthSpan(minX, minZ, maxX, maxZ, span);
+        int first = (int) Math.ceil(span[0] / BIN_ANGLE + SPAN_EPSILON);
+        int last = (int) Math.floor(span[1] / BIN_ANGLE - SPAN_EPSILON) - 1;
+        if (first > last) {
+            return;
+        }
+        int row = (int) Math.ceil(farthest / bandWidth) * BINS;
+        for (int b = first; b <= last; b++) {
+            int index = row + Math.floorMod(b, BINS);
+            if (slope > horizon[index]) {
+                horizon[index] = slope;
+            }
+        }
+        occluderCount++;
+    }
+
+    /**
+     * Kết thúc dựng chân trời: dải xa hơn thừa hưởng các ô chắn của dải gần hơn
+     */
+    public void end() {
+        for (int band = 1; band <= BANDS; band++) {
+            int row = band * BINS;
+            int previous = row - BINS;
+            for (int b = 0; b < BINS; b++) {
+                horizon[row + b] = Math.max(horizon[row + b], horizon[previous + b]);
+            }
+        }
+    }
+
+    /**
+     * Kiểm tra AABB có nằm hoàn toàn sau chân trời không
+     */
+    public boolean isOccluded(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        testedCount++;
+        rectDistances(minX, minZ, maxX, maxZ, distances);
+        float nearest = distances[0];
+        if (nearest <= 0) {
+            return false;  // Camera nằm trên vật
+        }
+        float dy = maxY - camera.y;
+        float slope = dy / (dy > 0 ? nearest : distances[1]);  // Độ dốc lớn nhất của AABB
+
+        azimuthSpan(minX, minZ, maxX, maxZ, span);
+        int first = (int) Math.floor(span[0] / BIN_ANGLE);
+        int last = (int) Math.floor(span[1] / BIN_ANGLE);
+        int row = Math.min((int) (nearest / bandWidth), BANDS) * BINS;
+        for (int b = first; b <= last; b++) {
+            if (!(horizon[row + Math.floorMod(b, BINS)] > slope)) {
+                return false;
+            }
+        }
+        occludedCount++;
+        return true;
+    }
+
+    /**
+     * Bỏ min độ cao đã lưu của lưới (gọi sau khi sửa độ cao)
+     */
+    public void invalidate(HeightField heights) {
+        tileMinCache.remove(heights);
+        rawTileMinCache.remove(heights);
+    }
+
+    /**
+     * Cập nhật min độ cao của các tile chứa vùng đỉnh [x0, x1] x [z0, z1] vừa sửa
+     * (chi phí theo kích thước vùng, không tính lại cả lưới)
+     */
+    public void invalidate(HeightField heights, int x0, int z0, int x1, int z1) {
+        float[] tileMin = tileMinCache.get(heights);
+        float[] rawTileMin = rawTileMinCache.get(heights);
+        if (tileMin == null || rawTileMin == null) {
+            return;  // Chưa tính, lần dùng tới sẽ tính cho cả lưới
+        }
+        int tilesX = tilesAlong(heights.getWidth());
+        int tilesZ = tilesAlong(heights.getDepth());
+        // Đỉnh trên cạnh chung thuộc cả hai tile
+        int tx0 = Math.max(0, (x0 - 1) / tileCells);
+        int tz0 = Math.max(0, (z0 - 1) / tileCells);
+        int tx1 = Math.min(tilesX - 1, x1 / tileCells);
+        int tz1 = Math.min(tilesZ - 1, z1 / tileCells);
+        computeRawTileMin(heights, rawTileMin, tx0, tz0, tx1, tz1);
+        dilate(rawTileMin, tileMin, tilesX, tilesZ, Math.max(0, tx0 - 1), Math.max(0, tz0 - 1),
+               Math.min(tilesX - 1, tx1 + 1), Math.min(tilesZ - 1, tz1 + 1));
+    }
+
+    /**
+     * Số tile chắn / số vật đã kiểm tra / số vật bị loại trong frame hiện tại
+     */
+    public int getOccluderCount() {
+        return occluderCount;
+    }
+
+    public int getTestedCount() {
+        return testedCount;
+    }
+
+    public int getOccludedCount() {
+        return occludedCount;
+    }
+
+    private int tilesAlong(int vertices) {
+        return Math.max(1, (vertices - 2) / tileCells + 1);
+    }
+
+    private float[] computeTileMin(HeightField heights) {
+        int tilesX = tilesAlong(heights.getWidth());
+        int tilesZ = tilesAlong(heights.getDepth());
+        float[] rawTileMin = new float[tilesX * tilesZ];
+        computeRawTileMin(heights, rawTileMin, 0, 0, tilesX - 1, tilesZ - 1);
+        rawTileMinCache.put(heights, rawTileMin);
+
+        float[] tileMin = new float[tilesX * tilesZ];
+        dilate(rawTileMin, tileMin, tilesX, tilesZ, 0, 0, tilesX - 1, tilesZ - 1);
+        return tileMin;
+    }
+
+    /**
+     * Min độ cao của các tile [tx0, tx1] x [tz0, tz1]. Tile bao gồm cả đỉnh trên cạnh chung,
+     * tile cuối mỗi hàng kéo dài tới đỉnh cuối của lưới.
+     */
+    private void computeRawTileMin(HeightField heights, float[] rawTileMin, int tx0, int tz0, int tx1, int tz1) {
+        int tilesX = tilesAlong(heights.getWidth());
+        int tilesZ = tilesAlong(heights.getDepth());
+        float[] data = heights.getData();
+        int width = heights.getWidth();
+        for (int tz = tz0; tz <= tz1; tz++) {
+            int startZ = tz * tileCells;
+            int endZ = tz == tilesZ - 1 ? heights.getDepth() - 1 : startZ + tileCells;
+            for (int tx = tx0; tx <= tx1; tx++) {
+                int startX = tx * tileCells;
+                int endX = tx == tilesX - 1 ? width - 1 : startX + tileCells;
+                float min = Float.POSITIVE_INFINITY;
+                for (int z = startZ; z <= endZ; z++) {
+                    int row = z * width;
+                    for (int x = startX; x <= endX; x++) {
+                        min = Math.min(min, data[row + x]);
+                    }
+                }
+                rawTileMin[tz * tilesX + tx] = min;
+            }
+        }
+    }
+
+    /**
+     * Min của 3x3 tile lân cận: lưới thô (CDLOD, cạnh tam giác tới tileCells ô) vẫn không
+     * thấp hơn giá trị dùng để chắn
+     */
+    private static void dilate(float[] rawTileMin, float[] tileMin, int tilesX, int tilesZ,
+                               int tx0, int tz0, int tx1, int tz1) {
+        for (int tz = tz0; tz <= tz1; tz++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                float min = Float.POSITIVE_INFINITY;
+                for (int nz = Math.max(0, tz - 1); nz <= Math.min(tilesZ - 1, tz + 1); nz++) {
+                    for (int nx = Math.max(0, tx - 1); nx <= Math.min(tilesX - 1, tx + 1); nx++) {
+                        min = Math.min(min, rawTileMin[nz * tilesX + nx]);
+                    }
+                }
+                tileMin[tz * tilesX + tx] = min;
+            }
+        }
+    }
+
+    /**
+     * Khoảng cách ngang gần nhất / xa nhất từ camera tới hình chữ nhật
+     */
+    private void rectDistances(float minX, float minZ, float maxX, float maxZ, float[] out) {
+        float dx = Math.max(0, Math.max(minX - camera.x, camera.x - maxX));
+        float dz = Math.max(0, Math.max(minZ - camera.z, camera.z - maxZ));
+        float fx = Math.max(Math.abs(minX - camera.x), Math.abs(maxX - camera.x));
+        float fz = Math.max(Math.abs(minZ - camera.z), Math.abs(maxZ - camera.z));
+        out[0] = (float) Math.sqrt(dx * dx + dz * dz);
+        out[1] = (float) Math.sqrt(fx * fx + fz * fz);
+    }
+
+    /**
+     * Khoảng góc phương vị [out[0], out[1]] (radian, liên tục) của hình chữ nhật
+     * không chứa camera
+     */
+    private void azimuthSpan(float minX, float minZ, float maxX, float maxZ, double[] out) {
+        double reference = Math.atan2((minZ + maxZ) * 0.5f - camera.z, (minX + maxX) * 0.5f - camera.x);
+        double low = 0;
+        double high = 0;
+        for (int corner = 0; corner < 4; corner++) {
+            float x = (corner & 1) == 0 ? minX : maxX;
+            float z = (corner & 2) == 0 ? minZ : maxZ;
+            double offset = Math.atan2(z - camera.z, x - camera.x) - reference;
+            if (offset > Math.PI) {
+                offset -= 2 * Math.PI;
+            } else if (offset < -Math.PI) {
+                offset += 2 * Math.PI;
+            }
+            low = Math.min(low, offset);
+            high = Math.max(high, offset);
+        }
+        out[0] = reference + low;
+        out[1] = reference + high;
+    }
+}
@@ -0,0 +1,321 @@
+package org.example.terrain;
+
+import org.joml.FrustumIntersection;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+
+/**
+ * Cây tứ phân LOD (CDLOD) trên lưới độ cao
+ *
+ * Node lá phủ {@code leafCells} ô ở độ phân giải đầy đủ; mỗi cấp cao hơn phủ gấp đôi
+ * diện tích với cùng số đỉnh (thưa gấp đôi). Mỗi frame chọn các node theo khoảng cách
+ * tới camera: node gần dùng cấp chi tiết, node xa dùng cấp thô, nên số tam giác
+ * tỉ lệ với phần diện tích trên màn hình thay vì kích thước thế giới.
+ */
+public final class LodQuadTree {
+    private static final float LOD_DISTANCE_RATIO = 2.0f;  // Bán kính cấp l = kích thước node cấp l * hệ số
+    private static final float MORPH_START_RATIO = 0.66f;  // Bắt đầu morph ở 66% đoạn giữa hai bán kính
+
+    private final HeightField heights;
+    private final int leafCells;
+    private final int levels;
+    private final int cellsX;
+    private final int cellsZ;
+
+    // Min/max độ cao của từng node theo cấp
+    private final int[] nodesX;
+    private final int[] nodesZ;
+    private final float[][] nodeMin;
+    private final float[][] nodeMax;
+
+    // Bán kính chọn và đoạn morph của từng cấp (world space)
+    private final float[] ranges;
+    private final float[] morphStart;
+
+    // Kết quả chọn node của frame gần nhất (tái sử dụng giữa các frame)
+    private int selectedCount;
+    private int[] selectedX = new int[64];      // Ô bắt đầu của node
+    private int[] selectedZ = new int[64];
+    private int[] selectedLevel = new int[64];
+    private int[] selectedMask = new int[64];   // Bit q = vẽ góc phần tư q (0: -X-Z, 1: +X-Z, 2: -X+Z, 3: +X+Z)
+    private int culledCount;                    // Số node bị loại vì nằm ngoài frustum / bị che
+    private HorizonCuller horizon;              // Chân trời của lần chọn hiện tại (có thể null)
+
+    /**
+     * @param heights Lưới độ cao
+     * @param leafCells Số ô mỗi cạnh của node lá (số chẵn, bằng độ phân giải patch)
+     */
+    public LodQuadTree(HeightField heights, int leafCells) {
+        if (leafCells < 2 || (leafCells & 1) != 0) {
+            throw new IllegalArgumentException("leafCells phải là số chẵn >= 2: " + leafCells);
+        }
+        this.heights = heights;
+        this.leafCells = leafCells;
+        this.cellsX = heights.getWidth() - 1;
+        this.cellsZ = heights.getDepth() - 1;
+
+        int levelCount = 1;
+        while ((leafCells << (levelCount - 1)) < Math.max(cellsX, cellsZ)) {
+            levelCount++;
+        }
+        this.levels = levelCount;
+
+        // Min/max cấp lá lấy từ HeightField, các cấp trên gộp 4 node con
+        if (heights.getBlockSize() != leafCells) {
+            heights.computeBlockBounds(leafCells);
+        }
+        nodesX = new int[levels];
+        nodesZ = new int[levels];
+        nodeMin = new float[levels][];
+        nodeMax = new float[levels][];
+        for (int level = 0; level < levels; level++) {
+            int size = leafCells << level;
+            nodesX[level] = (cellsX + size - 1) / size;
+            nodesZ[level] = (cellsZ + size - 1) / size;
+            nodeMin[level] = new float[nodesX[level] * nodesZ[level]];
+            nodeMax[level] = new float[nodesX[level] * nodesZ[level]];
+        }
+        refreshBounds();
+
+        ranges = new float[levels];
+        morphStart = new float[levels];
+        float leafWorldSize = leafCells * heights.getScale();
+        float previous = 0;
+        for (int level = 0; level < levels; level++) {
+            ranges[level] = leafWorldSize * (1 << level) * LOD_DISTANCE_RATIO;
+            morphStart[level] = previous + (ranges[level] - previous) * MORPH_START_RATIO;
+            previous = ranges[level];
+        }
+        // Cấp thô nhất luôn được vẽ, không morph tiếp
+        ranges[levels - 1] = Float.MAX_VALUE;
+        morphStart[levels - 1] = Float.MAX_VALUE;
+    }
+
+    /**
+     * Cập nhật lại min/max của các node từ min/max khối của HeightField (sau khi sửa độ cao)
+     */
+    public void refreshBounds() {
+        refreshBounds(0, 0, cellsX, cellsZ);
+    }
+
+    /**
+     * Như {@link #refreshBounds()} nhưng chỉ cho các node chứa vùng đỉnh [x0, x1] x [z0, z1]
+     * (min/max khối của HeightField phải được cập nhật trước)
+     */
+    public void refreshBounds(int x0, int z0, int x1, int z1) {
+        // Đỉnh trên cạnh chung thuộc cả hai node
+        int nx0 = Math.max(0, (x0 - 1) / leafCells);
+        int nz0 = Math.max(0, (z0 - 1) / leafCells);
+        int nx1 = Math.min(nodesX[0] - 1, x1 / leafCells);
+        int nz1 = Math.min(nodesZ[0] - 1, z1 / leafCells);
+        for (int z = nz0; z <= nz1; z++) {
+            for (int x = nx0; x <= nx1; x++) {
+                nodeMin[0][z * nodesX[0] + x] = heights.getBlockMin(x, z);
+                nodeMax[0][z * nodesX[0] + x] = heights.getBlockMax(x, z);
+            }
+        }
+        for (int level = 1; level < levels; level++) {
+            int childNodesX = nodesX[level - 1];
+            int childNodesZ = nodesZ[level - 1];
+            nx0 >>= 1;
+            nz0 >>= 1;
+            nx1 >>= 1;
+            nz1 >>= 1;
+            for (int z = nz0; z <= nz1; z++) {
+                for (int x = nx0; x <= nx1; x++) {
+                    float min = Float.POSITIVE_INFINITY;
+                    float max = Float.NEGATIVE_INFINITY;
+                    for (int cz = z * 2; cz < Math.min(z * 2 + 2, childNodesZ); cz++) {
+                        for (int cx = x * 2; cx < Math.min(x * 2 + 2, childNodesX); cx++) {
+                            min = Math.min(min, nodeMin[level - 1][cz * childNodesX + cx]);
+                            max = Math.max(max, nodeMax[level - 1][cz * childNodesX + cx]);
+                        }
+                    }
+                    nodeMin[level][z * nodesX[level] + x] = min;
+                    nodeMax[level][z * nodesX[level] + x] = max;
+                }
+            }
+        }
+    }
+
+    /**
+     * Chọn các node cần vẽ cho vị trí camera hiện tại
+     * @return Số node đã chọn
+     */
+    public int select(Vector3f cameraPos) {
+        return select(cameraPos, null, null);
+    }
+
+    /**
+     * Chọn các node cần vẽ, bỏ qua node có AABB (min/max độ cao) nằm ngoài frustum
+     * hoặc bị che sau chân trời
+     * @param frustum Frustum của camera (null = không frustum culling)
+     * @param horizon Chân trời đã dựng cho frame này (null = không occlusion culling)
+     * @return Số node đã chọn
+     */
+    public int select(Vector3f cameraPos, FrustumIntersection frustum, HorizonCuller horizon) {
+        this.horizon = horizon;
+        selectedCount = 0;
+        culledCount = 0;
+        int top = levels - 1;
+        for (int z = 0; z < nodesZ[top]; z++) {
+            for (int x = 0; x < nodesX[top]; x++) {
+                selectNode(top, x, z, cameraPos, frustum);
+            }
+        }
+        return selectedCount;
+    }
+
+    /**
+     * @param frustum null nếu node cha đã nằm trọn trong frustum (không cần kiểm tra tiếp)
+     * @return false nếu node nằm ngoài bán kính của cấp này (cấp cha sẽ tự vẽ vùng đó)
+     */
+    private boolean selectNode(int level, int nodeX, int nodeZ, Vector3f cameraPos, FrustumIntersection frustum) {
+        if (nodeX >= nodesX[level] || nodeZ >= nodesZ[level]) {
+            return true;  // Nằm ngoài lưới, không có gì để vẽ
+        }
+        if (!intersectsSphere(level, nodeX, nodeZ, cameraPos, ranges[level])) {
+            return false;
+        }
+        if (frustum != null) {
+            int result = intersectsFrustum(level, nodeX, nodeZ, frustum);
+            if (result == FrustumIntersection.INSIDE) {
+                frustum = null;
+            } else if (result != FrustumIntersection.INTERSECT) {
+                culledCount++;
+                return true;  // Ngoài frustum: đã xử lý, không vẽ gì
+            }
+        }
+        if (horizon != null && isOccluded(level, nodeX, nodeZ)) {
+            culledCount++;
+            return true;  // Bị che sau chân trời
+        }
+
+        int size = leafCells << level;
+        if (level == 0 || !intersectsSphere(level, nodeX, nodeZ, cameraPos, ranges[level - 1])) {
+            add(nodeX * size, nodeZ * size, level, 0xF);
+            return true;
+        }
+
+        // Node con nào không nằm trong bán kính cấp dưới thì vẽ góc phần tư đó ở cấp này
+        int mask = 0;
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            int childX = nodeX * 2 + (quadrant & 1);
+            int childZ = nodeZ * 2 + (quadrant >> 1);
+            if (!selectNode(level - 1, childX, childZ, cameraPos, frustum)) {
+                mask |= 1 << quadrant;
+            }
+        }
+        if (mask != 0) {
+            add(nodeX * size, nodeZ * size, level, mask);
+        }
+        return true;
+    }
+
+    private boolean intersectsSphere(int level, int nodeX, int nodeZ, Vector3f center, float radius) {
+        if (radius == Float.MAX_VALUE) {
+            return true;
+        }
+        int size = leafCells << level;
+        float scale = heights.getScale();
+        float minX = heights.getOriginX() + nodeX * size * scale;
+        float minZ = heights.getOriginZ() + nodeZ * size * scale;
+        float maxX = minX + size * scale;
+        float maxZ = minZ + size * scale;
+        int index = nodeZ * nodesX[level] + nodeX;
+
+        float dx = Math.max(0, Math.max(minX - center.x, center.x - maxX));
+        float dy = Math.max(0, Math.max(nodeMin[level][index] - center.y, center.y - nodeMax[level][index]));
+        float dz = Math.max(0, Math.max(minZ - center.z, center.z - maxZ));
+        return dx * dx + dy * dy + dz * dz <= radius * radius;
+    }
+
+    private boolean isOccluded(int level, int nodeX, int nodeZ) {
+        int size = leafCells << level;
+        float scale = heights.getScale();
+        float minX = heights.getOriginX() + nodeX * size * scale;
+        float minZ = heights.getOriginZ() + nodeZ * size * scale;
+        float maxX = heights.getOriginX() + Math.min((nodeX + 1) * size, cellsX) * scale;
+        float maxZ = heights.getOriginZ() + Math.min((nodeZ + 1) * size, cellsZ) * scale;
+        int index = nodeZ * nodesX[level] + nodeX;
+        return horizon.isOccluded(minX, nodeMin[level][index], minZ, maxX, nodeMax[level][index], maxZ);
+    }
+
+    private int intersectsFrustum(int level, int nodeX, int nodeZ, FrustumIntersection frustum) {
+        int size = leafCells << level;
+        float scale = heights.getScale();
+        float minX = heights.getOriginX() + nodeX * size * scale;
+        float minZ = heights.getOriginZ() + nodeZ * size * scale;
+        float maxX = heights.getOriginX() + Math.min((nodeX + 1) * size, cellsX) * scale;
+        float maxZ = heights.getOriginZ() + Math.min((nodeZ + 1) * size, cellsZ) * scale;
+        int index = nodeZ * nodesX[level] + nodeX;
+        return frustum.intersectAab(minX, nodeMin[level][index], minZ, maxX, nodeMax[level][index], maxZ);
+    }
+
+    private void add(int cellX, int cellZ, int level, int mask) {
+        if (selectedCount == selectedX.length) {
+            int capacity = selectedCount * 2;
+            selectedX = Arrays.copyOf(selectedX, capacity);
+            selectedZ = Arrays.copyOf(selectedZ, capacity);
+            selectedLevel = Arrays.copyOf(selectedLevel, capacity);
+            selectedMask = Arrays.copyOf(selectedMask, capacity);
+        }
+        selectedX[selectedCount] = cellX;
+        selectedZ[selectedCount] = cellZ;
+        selectedLevel[selectedCount] = level;
+        selectedMask[selectedCount] = mask;
+        selectedCount++;
+    }
+
+    public int getSelectedCount() {
+        return selectedCount;
+    }
+
+    /**
+     * Số node bị loại (ngoài frustum hoặc bị che) ở lần chọn gần nhất
+     */
+    public int getCulledCount() {
+        return culledCount;
+    }
+
+    public int getSelectedCellX(int i) {
+        return selectedX[i];
+    }
+
+    public int getSelectedCellZ(int i) {
+        return selectedZ[i];
+    }
+
+    public int getSelectedLevel(int i) {
+        return selectedLevel[i];
+    }
+
+    public int getSelectedMask(int i) {
+        return selectedMask[i];
+    }
+
+    public int getNodeCells(int level) {
+        return leafCells << level;
+    }
+
+    public float getMorphStart(int level) {
+        return morphStart[level];
+    }
+
+    public float getMorphEnd(int level) {
+        return ranges[level];
+    }
+
+    public int getLeafCells() {
+        return leafCells;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    public HeightField getHeightField() {
+        return heights;
+    }
+}
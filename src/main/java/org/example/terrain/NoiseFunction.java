@@ -0,0 +1,18 @@
+package org.example.terrain;
+
+/**
+ * Hàm noise 2D đã được biên dịch từ một {@link NoiseGraph}
+ */
+public interface NoiseFunction {
+
+    /**
+     * Giá trị tại (x, z)
+     */
+    double sample(double x, double z);
+
+    /**
+     * Lấy mẫu cả một lưới đều: mẫu (i, j) = sample(x0 + i * step, z0 + j * step)
+     * @param out Mảng kết quả, kích thước ít nhất outOffset + width * height (theo hàng, X chạy nhanh)
+     */
+    void fill(float[] out, int outOffset, double x0, double z0, double step, int width, int height);
+}
@@ -0,0 +1,593 @@
+package org.example.terrain;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Graph noise khai báo: các tầng fractal (fBm, ridged, billow) kết hợp bằng cộng/nhân/clamp,
+ * remap theo đường cong và domain warp. Graph bất biến và dùng được với mọi {@link NoiseSource}.
+ *
+ * - {@link #evaluate}: duyệt cây trực tiếp (mỗi nút một lời gọi ảo) - dùng để đối chiếu
+ * - {@link #compile}: ghép cả cây thành một MethodHandle, nạp vào hidden class riêng để JIT inline
+ *   toàn bộ thành một kernel. Chuỗi cộng trái các tầng fractal trên cùng miền tọa độ
+ *   (vd. {@code fbm.add(ridged.mul(0.5))}) được gộp thành một vòng octave: mỗi octave chỉ lấy mẫu
+ *   noise một lần cho mọi tầng thay vì mỗi tầng hash lại. Các phép tính giữ đúng thứ tự như khi
+ *   duyệt cây nên hai cách cho kết quả giống nhau từng bit.
+ *
+ * Ví dụ: {@code NoiseGraph.fbm(6, 0.5).warp(NoiseGraph.fbm(2, 0.5), NoiseGraph.fbm(2, 0.5), 0.3)
+ * .add(NoiseGraph.ridged(4, 0.5).mul(0.5)).clamp(-1, 1).compile(noise)}
+ */
+public abstract class NoiseGraph {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType SAMPLE_TYPE = MethodType.methodType(double.class, double.class, double.class);
+
+    // Loại tầng fractal
+    private static final int FBM = 0;
+    private static final int RIDGED = 1;
+    private static final int BILLOW = 2;
+
+    // Số tầng fractal tối đa gộp chung một vòng octave (mỗi tầng một biến cục bộ trong kernel)
+    private static final int MAX_FUSED_LAYERS = 4;
+
+    private static final MethodHandle FRACTAL = find("fractal", NoiseSource.class, int.class, int.class, double.class,
+                                                     double.class, double.class);
+    private static final MethodHandle LAYERS = find("layers", NoiseSource.class, FusedLayers.class,
+                                                    double.class, double.class);
+    private static final MethodHandle ADD = find("add", double.class, double.class);
+    private static final MethodHandle MUL = find("mul", double.class, double.class);
+    private static final MethodHandle CLAMP = find("clamp", double.class, double.class, double.class);
+    private static final MethodHandle CURVE = find("curve", double.class, double[].class, double[].class);
+    private static final MethodHandle WARP = find("warp", double.class, double.class, double.class);
+
+    private NoiseGraph() {
+    }
+
+    // ---- Nút lá ----
+
+    public static NoiseGraph constant(double value) {
+        return new Constant(value);
+    }
+
+    /**
+     * fBm: {@link NoiseSource#fractalNoise}, khoảng -1 đến 1
+     */
+    public static NoiseGraph fbm(int octaves, double persistence) {
+        return new Fractal(FBM, octaves, persistence);
+    }
+
+    /**
+     * Ridged: tổng (1 - |n|)^2 theo octave, khoảng 0 đến 1 (đỉnh nhọn, thung lũng tròn)
+     */
+    public static NoiseGraph ridged(int octaves, double persistence) {
+        return new Fractal(RIDGED, octaves, persistence);
+    }
+
+    /**
+     * Billow: tổng 2|n| - 1 theo octave, khoảng -1 đến 1 (đồi tròn, rãnh nhọn)
+     */
+    public static NoiseGraph billow(int octaves, double persistence) {
+        return new Fractal(BILLOW, octaves, persistence);
+    }
+
+    // ---- Kết hợp ----
+
+    public NoiseGraph add(NoiseGraph other) {
+        return new Binary(Binary.OP_ADD, this, other);
+    }
+
+    public NoiseGraph add(double value) {
+        return add(constant(value));
+    }
+
+    public NoiseGraph mul(NoiseGraph other) {
+        return new Binary(Binary.OP_MUL, this, other);
+    }
+
+    public NoiseGraph mul(double value) {
+        return mul(constant(value));
+    }
+
+    public NoiseGraph clamp(double min, double max) {
+        if (min > max) {
+            throw new IllegalArgumentException("min > max: " + min + " > " + max);
+        }
+        return new Clamp(this, min, max);
+    }
+
+    /**
+     * Remap giá trị theo đường gấp khúc qua các điểm (inputs[i], outputs[i]), ngoài khoảng thì giữ giá trị đầu mút
+     * @param inputs Tăng dần, ít nhất 2 điểm
+     */
+    public NoiseGraph curve(double[] inputs, double[] outputs) {
+        if (inputs.length < 2 || inputs.length != outputs.length) {
+            throw new IllegalArgumentException("Đường cong cần >= 2 điểm và số input bằng số output");
+        }
+        for (int i = 1; i < inputs.length; i++) {
+            if (!(inputs[i] > inputs[i - 1])) {
+                throw new IllegalArgumentException("Input của đường cong phải tăng dần: " + Arrays.toString(inputs));
+            }
+        }
+        return new Curve(this, inputs.clone(), outputs.clone());
+    }
+
+    /**
+     * Nhân tọa độ đầu vào với {@code frequency} (kéo giãn/thu nhỏ theo không gian)
+     */
+    public NoiseGraph frequency(double frequency) {
+        return new Frequency(this, frequency);
+    }
+
+    /**
+     * Domain warp: lấy mẫu tại (x + amount * dx(x, z), z + amount * dz(x, z))
+     */
+    public NoiseGraph warp(NoiseGraph dx, NoiseGraph dz, double amount) {
+        return new Warp(this, dx, dz, amount);
+    }
+
+    // ---- Đánh giá ----
+
+    /**
+     * Đánh giá bằng cách duyệt cây (chậm, dùng để đối chiếu với bản biên dịch)
+     */
+    public abstract double evaluate(NoiseSource noise, double x, double z);
+
+    /**
+     * Biên dịch graph với một nguồn noise cố định thành một hàm duy nhất
+     */
+    public NoiseFunction compile(NoiseSource noise) {
+        MethodHandle handle = toHandle(noise);
+        try {
+            MethodHandles.Lookup hidden = LOOKUP.defineHiddenClassWithClassData(Template.BYTES, handle, true);
+            return (NoiseFunction) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class))
+                                         .invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Không biên dịch được noise graph", e);
+        }
+    }
+
+    /**
+     * MethodHandle kiểu (double x, double z) -> double của nút
+     */
+    abstract MethodHandle toHandle(NoiseSource noise);
+
+    // ---- Các hàm tính, dùng chung cho evaluate() và cây MethodHandle ----
+
+    /**
+     * Một tầng fractal: cộng octaveTerm qua các octave, chuẩn hóa theo tổng biên độ.
+     * Với FBM kết quả giống {@link NoiseSource#fractalNoise} của các nguồn có sẵn.
+     */
+    static double fractal(NoiseSource noise, int kind, int octaves, double persistence, double x, double z) {
+        double total = 0;
+        double frequency = 1;
+        double amplitude = 1;
+        double maxValue = 0;
+        for (int o = 0; o < octaves; o++) {
+            total += octaveTerm(kind, noise.octaveNoise(o, x * frequency, z * frequency)) * amplitude;
+            maxValue += amplitude;
+            amplitude *= persistence;
+            frequency *= 2;
+        }
+        return total / maxValue;
+    }
+
+    /**
+     * Giá trị của một octave theo loại tầng: fBm = n, ridged = (1 - |n|)^2, billow = 2|n| - 1
+     */
+    private static double octaveTerm(int kind, double n) {
+        if (kind == FBM) {
+            return n;
+        }
+        if (kind == RIDGED) {
+            double ridge = 1 - Math.abs(n);
+            return ridge * ridge;
+        }
+        return 2 * Math.abs(n) - 1;
+    }
+
+    /**
+     * Chuỗi tầng đã gộp: lấy mẫu noise một lần mỗi octave, cộng dồn cho từng tầng (tối đa
+     * MAX_FUSED_LAYERS, mỗi tầng một biến cục bộ), rồi gộp các số hạng từ trái sang như cây gốc
+     */
+    static double layers(NoiseSource noise, FusedLayers layers, double x, double z) {
+        double t0 = 0;
+        double t1 = 0;
+        double t2 = 0;
+        double t3 = 0;
+        double frequency = 1;
+        for (int o = 0; o < layers.maxOctaves; o++) {
+            double n = noise.octaveNoise(o, x * frequency, z * frequency);
+            t0 = layers.accumulate(0, o, n, t0);
+            t1 = layers.accumulate(1, o, n, t1);
+            t2 = layers.accumulate(2, o, n, t2);
+            t3 = layers.accumulate(3, o, n, t3);
+            frequency *= 2;
+        }
+
+        double result = 0;
+        for (int k = 0; k < layers.termLayer.length; k++) {
+            int layer = layers.termLayer[k];
+            double value;
+            if (layer < 0) {
+                value = layers.termValue[k];
+            } else {
+                double total = layer == 0 ? t0 : layer == 1 ? t1 : layer == 2 ? t2 : t3;
+                // Nhân với hệ số (1 nếu tầng không nhân hằng số - phép nhân với 1 là chính xác)
+                value = mul(total / layers.maxValue[layer], layers.termValue[k]);
+            }
+            result = k == 0 ? value : add(result, value);
+        }
+        return result;
+    }
+
+    static double add(double a, double b) {
+        return a + b;
+    }
+
+    static double mul(double a, double b) {
+        return a * b;
+    }
+
+    static double clamp(double value, double min, double max) {
+        return value < min ? min : value > max ? max : value;
+    }
+
+    static double curve(double value, double[] inputs, double[] outputs) {
+        if (value <= inputs[0]) {
+            return outputs[0];
+        }
+        int last = inputs.length - 1;
+        for (int i = 1; i <= last; i++) {
+            if (value < inputs[i]) {
+                double t = (value - inputs[i - 1]) / (inputs[i] - inputs[i - 1]);
+                return outputs[i - 1] + t * (outputs[i] - outputs[i - 1]);
+            }
+        }
+        return outputs[last];
+    }
+
+    static double warp(double coordinate, double offset, double amount) {
+        return coordinate + offset * amount;
+    }
+
+    // ---- Hỗ trợ cho CompiledNoiseFunction ----
+
+    static void checkFill(float[] out, int outOffset, int width, int height) {
+        if (out.length - outOffset < width * height) {
+            throw new IllegalArgumentException("Mảng kết quả quá nhỏ: " + (out.length - outOffset)
+                                               + " < " + width * height);
+        }
+    }
+
+    static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (e instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(e);
+    }
+
+    /**
+     * (x, z) -> op(a(x, z), b(x, z))
+     */
+    private static MethodHandle combine(MethodHandle op, MethodHandle a, MethodHandle b) {
+        MethodHandle spread = MethodHandles.collectArguments(MethodHandles.collectArguments(op, 0, a), 2, b);
+        return MethodHandles.permuteArguments(spread, SAMPLE_TYPE, 0, 1, 0, 1);
+    }
+
+    private static MethodHandle find(String name, Class<?>... parameters) {
+        try {
+            return LOOKUP.findStatic(NoiseGraph.class, name, MethodType.methodType(double.class, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Bytecode của lớp mẫu, đọc một lần khi biên dịch graph đầu tiên
+     */
+    private static final class Template {
+        static final byte[] BYTES = load();
+
+        private static byte[] load() {
+            try (InputStream in = NoiseGraph.class.getResourceAsStream("CompiledNoiseFunction.class")) {
+                if (in == null) {
+                    throw new IllegalStateException("Không tìm thấy CompiledNoiseFunction.class");
+                }
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new IllegalStateException("Không đọc được CompiledNoiseFunction.class", e);
+            }
+        }
+    }
+
+    // ---- Các loại nút ----
+
+    private static final class Constant extends NoiseGraph {
+        private final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double evaluate(NoiseSource noise, double x, double z) {
+            return value;
+        }
+
+        @Override
+        MethodHandle toHandle(NoiseSource noise) {
+            return MethodHandles.dropArguments(MethodHandles.constant(double.class, value), 0, double.class, double.class);
+        }
+    }
+
+    private static final class Fractal extends NoiseGraph {
+        private final int kind;
+        private final int octaves;
+        private final double persistence;
+
+        Fractal(int kind, int octaves, double persistence) {
+            if (octaves < 1) {
+                throw new IllegalArgumentException("octaves phải >= 1: " + octaves);
+            }
+            this.kind = kind;
+            this.octaves = octaves;
+            this.persistence = persistence;
+        }
+
+        @Override
+        public double evaluate(NoiseSource noise, double x, double z) {
+            return fractal(noise, kind, octaves, persistence, x, z);
+        }
+
+        @Override
+        MethodHandle toHandle(NoiseSource noise) {
+            return MethodHandles.insertArguments(FRACTAL, 0, noise, kind, octaves, persistence);
+        }
+    }
+
+    private static final class Binary extends NoiseGraph {
+        static final int OP_ADD = 0;
+        static final int OP_MUL = 1;
+
+        private final int op;
+        private final NoiseGraph a;
+        private final NoiseGraph b;
+
+        Binary(int op, NoiseGraph a, NoiseGraph b) {
+            this.op = op;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public double evaluate(NoiseSource noise, double x, double z) {
+            double va = a.evaluate(noise, x, z);
+            double vb = b.evaluate(noise, x, z);
+            return op == OP_ADD ? add(va, vb) : mul(va, vb);
+        }
+
+        @Override
+        MethodHandle toHandle(NoiseSource noise) {
+            FusedLayers fused = FusedLayers.of(this);
+            if (fused != null) {
+                return MethodHandles.insertArguments(LAYERS, 0, noise, fused);
+            }
+            return combine(op == OP_ADD ? ADD : MUL, a.toHandle(noise), b.toHandle(noise));
+        }
+    }
+
+    /**
+     * Mô tả một chuỗi cộng trái t0 + t1 + ... các số hạng, mỗi số hạng là hằng số, tầng fractal,
+     * hoặc tầng fractal nhân hằng số. Dùng cho kernel {@link #layers}.
+     */
+    static final class FusedLayers {
+        final int maxOctaves;
+        final int[] kind;              // Theo tầng fractal
+        final int[] octaves;
+        final double[][] amplitudes;   // Biên độ từng octave (cùng phép nhân liên tiếp như fractal())
+        final double[] maxValue;
+        final int[] termLayer;         // Theo số hạng: chỉ số tầng, -1 = hằng số
+        final double[] termValue;      // Giá trị hằng số, hoặc hệ số nhân của tầng
+
+        private FusedLayers(List<NoiseGraph> terms, int layerCount) {
+            kind = new int[layerCount];
+            octaves = new int[layerCount];
+            amplitudes = new double[layerCount][];
+            maxValue = new double[layerCount];
+            termLayer = new int[terms.size()];
+            termValue = new double[terms.size()];
+
+            int layer = 0;
+            int deepest = 0;
+            for (int k = 0; k < terms.size(); k++) {
+                NoiseGraph term = terms.get(k);
+                if (term instanceof Constant constant) {
+                    termLayer[k] = -1;
+                    termValue[k] = constant.value;
+                    continue;
+                }
+                Fractal fractal;
+                double weight = 1;
+                if (term instanceof Binary product) {
+                    boolean fractalFirst = product.a instanceof Fractal;
+                    fractal = (Fractal) (fractalFirst ? product.a : product.b);
+                    weight = ((Constant) (fractalFirst ? product.b : product.a)).value;
+                } else {
+                    fractal = (Fractal) term;
+                }
+
+                kind[layer] = fractal.kind;
+                octaves[layer] = fractal.octaves;
+                amplitudes[layer] = new double[fractal.octaves];
+                double amplitude = 1;
+                double max = 0;
+                for (int o = 0; o < fractal.octaves; o++) {
+                    amplitudes[layer][o] = amplitude;
+                    max += amplitude;
+                    amplitude *= fractal.persistence;
+                }
+                maxValue[layer] = max;
+                deepest = Math.max(deepest, fractal.octaves);
+                termLayer[k] = layer;
+                termValue[k] = weight;
+                layer++;
+            }
+            maxOctaves = deepest;
+        }
+
+        /**
+         * Gộp được nếu {@code root} là chuỗi cộng trái toàn số hạng và có 2..MAX_FUSED_LAYERS tầng fractal
+         * @return null nếu không gộp được
+         */
+        static FusedLayers of(NoiseGraph root) {
+            List<NoiseGraph> terms = new ArrayList<>();
+            NoiseGraph node = root;
+            while (node instanceof Binary sum && sum.op == Binary.OP_ADD && isTerm(sum.b)) {
+                terms.add(sum.b);
+                node = sum.a;
+            }
+            if (!isTerm(node)) {
+                return null;
+            }
+            terms.add(node);
+            Collections.reverse(terms);
+
+            int layerCount = 0;
+            for (NoiseGraph term : terms) {
+                if (!(term instanceof Constant)) {
+                    layerCount++;
+                }
+            }
+            if (layerCount < 2 || layerCount > MAX_FUSED_LAYERS) {
+                return null;
+            }
+            return new FusedLayers(terms, layerCount);
+        }
+
+        private static boolean isTerm(NoiseGraph node) {
+            if (node instanceof Fractal || node instanceof Constant) {
+                return true;
+            }
+            return node instanceof Binary product && product.op == Binary.OP_MUL
+                    && (product.a instanceof Fractal && product.b instanceof Constant
+                        || product.a instanceof Constant && product.b instanceof Fractal);
+        }
+
+        double accumulate(int layer, int octave, double n, double total) {
+            if (layer >= kind.length || octave >= octaves[layer]) {
+                return total;
+            }
+            return total + octaveTerm(kind[layer], n) * amplitudes[layer][octave];
+        }
+    }
+
+    private static final class Clamp extends NoiseGraph {
+        private final NoiseGraph source;
+        private final double min;
+        private final double max;
+
+        Clamp(NoiseGraph source, double min, double max) {
+            this.source = source;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public double evaluate(NoiseSource noise, double x, double z) {
+            return clamp(source.evaluate(noise, x, z), min, max);
+        }
+
+        @Override
+        MethodHandle toHandle(NoiseSource noise) {
+            return MethodHandles.filterReturnValue(source.toHandle(noise),
+                                                   MethodHandles.insertArguments(CLAMP, 1, min, max));
+        }
+    }
+
+    private static final class Curve extends NoiseGraph {
+        private final NoiseGraph source;
+        private final double[] inputs;
+        private final double[] outputs;
+
+        Curve(NoiseGraph source, double[] inputs, double[] outputs) {
+            this.source = source;
+            this.inputs = inputs;
+            this.outputs = outputs;
+        }
+
+        @Override
+        public double evaluate(NoiseSource noise, double x, double z) {
+            return curve(source.evaluate(noise, x, z), inputs, outputs);
+        }
+
+        @Override
+        MethodHandle toHandle(NoiseSource noise) {
+            return MethodHandles.filterReturnValue(source.toHandle(noise),
+                                                   MethodHandles.insertArguments(CURVE, 1, inputs, outputs));
+        }
+    }
+
+    private static final class Frequency extends NoiseGraph {
+        private final NoiseGraph source;
+        private final double frequency;
+
+        Frequency(NoiseGraph source, double frequency) {
+            this.source = source;
+            this.frequency = frequency;
+        }
+
+        @Override
+        public double evaluate(NoiseSource noise, double x, double z) {
+            return source.evaluate(noise, mul(x, frequency), mul(z, frequency));
+        }
+
+        @Override
+        MethodHandle toHandle(NoiseSource noise) {
+            MethodHandle scale = MethodHandles.insertArguments(MUL, 1, frequency);
+            return MethodHandles.filterArguments(source.toHandle(noise), 0, scale, scale);
+        }
+    }
+
+    private static final class Warp extends NoiseGraph {
+        private final NoiseGraph source;
+        private final NoiseGraph dx;
+        private final NoiseGraph dz;
+        private final double amount;
+
+        Warp(NoiseGraph source, NoiseGraph dx, NoiseGraph dz, double amount) {
+            this.source = source;
+            this.dx = dx;
+            this.dz = dz;
+            this.amount = amount;
+        }
+
+        @Override
+        public double evaluate(NoiseSource noise, double x, double z) {
+            double wx = warp(x, dx.evaluate(noise, x, z), amount);
+            double wz = warp(z, dz.evaluate(noise, x, z), amount);
+            return source.evaluate(noise, wx, wz);
+        }
+
+        @Override
+        MethodHandle toHandle(NoiseSource noise) {
+            MethodHandle offset = MethodHandles.insertArguments(WARP, 2, amount);  // (coordinate, offset)
+            // (x, z) -> warp(x, dx(x, z)) và (x, z) -> warp(z, dz(x, z))
+            MethodHandle wx = MethodHandles.permuteArguments(
+                    MethodHandles.collectArguments(offset, 1, dx.toHandle(noise)), SAMPLE_TYPE, 0, 0, 1);
+            MethodHandle wz = MethodHandles.permuteArguments(
+                    MethodHandles.collectArguments(offset, 1, dz.toHandle(noise)), SAMPLE_TYPE, 1, 0, 1);
+            MethodHandle warped = MethodHandles.collectArguments(
+                    MethodHandles.collectArguments(source.toHandle(noise), 0, wx), 2, wz);  // (x, z, x, z)
+            return MethodHandles.permuteArguments(warped, SAMPLE_TYPE, 0, 1, 0, 1);
+        }
+    }
+}
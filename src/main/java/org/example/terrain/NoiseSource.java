@@ -0,0 +1,99 @@
+package org.example.terrain;
+
+/**
+ * Nguồn noise 2D dùng để sinh độ cao địa hình
+ *
+ * Các cài đặt phải thuần (cùng seed và tọa độ luôn cho cùng kết quả) và an toàn khi gọi
+ * từ nhiều thread cùng lúc, vì các bộ sinh song song dùng chung một đối tượng.
+ */
+public interface NoiseSource {
+
+    /**
+     * Loại noise (chọn bằng -Dterrain.noise=simplex|perlin)
+     */
+    enum Type {
+        PERLIN,
+        SIMPLEX;
+
+        public NoiseSource create(long seed) {
+            return this == PERLIN ? new PerlinNoise(seed) : new SimplexNoise(seed);
+        }
+
+        /**
+         * Đọc tên loại noise (không phân biệt hoa thường)
+         */
+        public static Type parse(String name) {
+            for (Type type : values()) {
+                if (type.name().equalsIgnoreCase(name.trim())) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Loại noise không hợp lệ: " + name);
+        }
+    }
+
+    Type getType();
+
+    long getSeed();
+
+    /**
+     * Giá trị noise 2D tại (x, z), trong khoảng -1 đến 1
+     */
+    double noise(double x, double z);
+
+    /**
+     * Noise của tầng thứ {@code octave} trong một tổng fractal. Cài đặt có thể dùng seed riêng
+     * cho từng tầng để các tầng không tương quan; mặc định giống {@link #noise}.
+     */
+    default double octaveNoise(int octave, double x, double z) {
+        return noise(x, z);
+    }
+
+    /**
+     * Fractal noise: cộng {@code octaves} tầng noise, mỗi tầng tần số x2 và biên độ x persistence,
+     * chuẩn hóa về khoảng -1 đến 1
+     */
+    default double fractalNoise(double x, double z, int octaves, double persistence) {
+        double total = 0;
+        double frequency = 1;
+        double amplitude = 1;
+        double maxValue = 0;
+
+        for (int i = 0; i < octaves; i++) {
+            total += noise(x * frequency, z * frequency) * amplitude;
+            maxValue += amplitude;
+            amplitude *= persistence;
+            frequency *= 2;
+        }
+        return total / maxValue;
+    }
+
+    /**
+     * Sinh fractal noise cho cả một lưới đều, ghi từ vị trí {@code outOffset}.
+     * Mẫu (i, j) tương ứng với fractalNoise(x0 + i * step, z0 + j * step, octaves, persistence).
+     *
+     * @param out Mảng kết quả, kích thước ít nhất outOffset + width * height (theo hàng, X chạy nhanh)
+     */
+    default void fill(float[] out, int outOffset, double x0, double z0, double step, int width, int height,
+                      int octaves, double persistence) {
+        if (out.length - outOffset < width * height) {
+            throw new IllegalArgumentException("Mảng kết quả quá nhỏ: " + (out.length - outOffset)
+                                               + " < " + width * height);
+        }
+        for (int j = 0; j < height; j++) {
+            double z = z0 + j * step;
+            int offset = outOffset + j * width;
+            for (int i = 0; i < width; i++) {
+                out[offset + i] = (float) fractalNoise(x0 + i * step, z, octaves, persistence);
+            }
+        }
+    }
+
+    /**
+     * Như {@link #fill(float[], int, double, double, double, int, int, int, double)}, ghi từ đầu mảng
+     */
+    default void fill(float[] out, double x0, double z0, double step, int width, int height,
+                      int octaves, double persistence) {
+        fill(out, 0, x0, z0, step, width, height, octaves, persistence);
+    }
+}
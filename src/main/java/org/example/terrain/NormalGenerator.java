@@ -0,0 +1,93 @@
+package org.example.terrain;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tính normal (và tangent cho normal mapping) trực tiếp từ lưới độ cao
+ *
+ * Dùng sai phân trung tâm (central differences) với phép toán số nguyên thủy,
+ * không cấp phát object cho từng đỉnh và có thể chạy song song theo hàng.
+ * Normal hướng lên trên (y > 0); ở biên lưới dùng sai phân một phía.
+ */
+public final class NormalGenerator {
+    private static final int ROWS_PER_TASK = 16;
+
+    private NormalGenerator() {
+    }
+
+    /**
+     * @param heights Lưới độ cao có thêm {@code border} ô viền mỗi phía
+     * @param border Số ô viền (đỉnh viền chỉ dùng làm láng giềng, không xuất normal)
+     * @param gridSize Số đỉnh mỗi cạnh cần xuất (không tính viền)
+     * @param normals Kết quả nx, ny, nz (gridSize * gridSize * 3)
+     * @param tangents Kết quả tx, ty, tz theo hướng +X (gridSize * gridSize * 3), null nếu không cần
+     * @param pool Pool thực thi, null = tuần tự
+     */
+    public static void compute(HeightField heights, int border, int gridSize,
+                               float[] normals, float[] tangents, ForkJoinPool pool) {
+        ParallelRows.run(pool, gridSize, ROWS_PER_TASK, (rowFrom, rowTo) ->
+            computeRows(heights, border, gridSize, normals, tangents, rowFrom, rowTo));
+    }
+
+    /**
+     * Tính normal cho vùng đỉnh [x0, x1] x [z0, z1] của lưới (không viền), dùng khi sửa độ cao.
+     * Kết quả giống hệt {@link #compute} tại các đỉnh đó.
+     * @param normals Kết quả nx, ny, nz theo hàng của vùng ((x1 - x0 + 1) * (z1 - z0 + 1) * 3)
+     */
+    static void computeRegion(HeightField heights, int x0, int z0, int x1, int z1, float[] normals) {
+        computeRect(heights, x0, z0, x1 - x0 + 1, normals, null, 0, z1 - z0 + 1);
+    }
+
+    static void computeRows(HeightField heights, int border, int gridSize,
+                            float[] normals, float[] tangents, int rowFrom, int rowTo) {
+        computeRect(heights, border, border, gridSize, normals, tangents, rowFrom, rowTo);
+    }
+
+    /**
+     * Normal cho các hàng [rowFrom, rowTo) của hình chữ nhật rộng {@code columns} đỉnh,
+     * bắt đầu tại đỉnh (startX, startZ) của lưới
+     */
+    private static void computeRect(HeightField heights, int startX, int startZ, int columns,
+                                    float[] normals, float[] tangents, int rowFrom, int rowTo) {
+        float[] data = heights.getData();
+        int width = heights.getWidth();
+        int lastX = width - 1;
+        int lastZ = heights.getDepth() - 1;
+        float scale = heights.getScale();
+
+        for (int z = rowFrom; z < rowTo; z++) {
+            int pz = z + startZ;
+            int zUp = Math.max(pz - 1, 0);
+            int zDown = Math.min(pz + 1, lastZ);
+            int row = pz * width;
+            int rowUp = zUp * width;
+            int rowDown = zDown * width;
+            float invDz = 1.0f / ((zDown - zUp) * scale);
+
+            for (int x = 0; x < columns; x++) {
+                int px = x + startX;
+                int xLeft = Math.max(px - 1, 0);
+                int xRight = Math.min(px + 1, lastX);
+
+                // Độ dốc theo X và Z
+                float dx = (data[row + xRight] - data[row + xLeft]) / ((xRight - xLeft) * scale);
+                float dz = (data[rowDown + px] - data[rowUp + px]) * invDz;
+
+                // Normal = normalize(-dx, 1, -dz)
+                float invLength = (float) (1.0 / Math.sqrt(dx * dx + 1.0f + dz * dz));
+                int index = (z * columns + x) * 3;
+                normals[index] = -dx * invLength;
+                normals[index + 1] = invLength;
+                normals[index + 2] = -dz * invLength;
+
+                if (tangents != null) {
+                    // Tangent = normalize(1, dx, 0) (theo hướng +X của bề mặt)
+                    float invTangentLength = (float) (1.0 / Math.sqrt(1.0f + dx * dx));
+                    tangents[index] = invTangentLength;
+                    tangents[index + 1] = dx * invTangentLength;
+                    tangents[index + 2] = 0.0f;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package org.example.terrain;
+
+import org.example.engine.VertexCacheOptimizer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Mesh địa hình ở định dạng nén, xen kẽ (interleaved) 4 byte mỗi đỉnh:
+ * - 2 byte: độ cao lượng tử hóa u16 trong khoảng [heightMin, heightMin + heightRange]
+ * - 2 byte: normal mã hóa octahedral (2 x snorm8)
+ *
+ * Vị trí X/Z không được lưu mà tính lại trong shader từ gl_VertexID, UV cũng vậy.
+ * Lưới được chia thành các khối tối đa {@link TerrainMeshData#BLOCK_CELLS} ô để dùng index 16 bit;
+ * mỗi khối vẽ bằng glDrawElementsBaseVertex (đỉnh ở cạnh chung được lặp lại).
+ */
+final class PackedTerrainMesh {
+    static final int VERTEX_BYTES = 4;
+
+    final int originCellX;
+    final int originCellZ;
+    final float uvCells;
+    float heightMin;             // Có thể nới rộng khi sửa độ cao vượt khoảng cũ
+    float heightRange;
+
+    final short[] heights;       // u16 (lưu trong short), null nếu dựng lại từ cache
+    final byte[] normals;        // 2 byte mỗi đỉnh, null nếu dựng lại từ cache
+    final short[] indices;       // u16, cục bộ trong từng khối (null nếu dựng lại từ cache)
+    private final int vertexCount;
+    private final int indexCount;
+
+    // Thông tin từng khối
+    final int blockCount;
+    final int[] blockCellX;      // Ô bắt đầu (cục bộ trong mesh)
+    final int[] blockCellZ;
+    final int[] blockWidth;      // Số đỉnh mỗi hàng
+    final int[] blockBaseVertex;
+    final int[] blockIndexOffset;
+    final int[] blockIndexCount;
+
+    final float acmrBefore;
+    final float acmrAfter;
+
+    private PackedTerrainMesh(int originCellX, int originCellZ, float uvCells, float heightMin,
+                              float heightRange, short[] heights, byte[] normals, short[] indices,
+                              int vertexCount, int indexCount,
+                              int blockCount, int[] blockCellX, int[] blockCellZ, int[] blockWidth,
+                              int[] blockBaseVertex, int[] blockIndexOffset, int[] blockIndexCount,
+                              float acmrBefore, float acmrAfter) {
+        this.originCellX = originCellX;
+        this.originCellZ = originCellZ;
+        this.uvCells = uvCells;
+        this.heightMin = heightMin;
+        this.heightRange = heightRange;
+        this.heights = heights;
+        this.normals = normals;
+        this.indices = indices;
+        this.vertexCount = vertexCount;
+        this.indexCount = indexCount;
+        this.blockCount = blockCount;
+        this.blockCellX = blockCellX;
+        this.blockCellZ = blockCellZ;
+        this.blockWidth = blockWidth;
+        this.blockBaseVertex = blockBaseVertex;
+        this.blockIndexOffset = blockIndexOffset;
+        this.blockIndexCount = blockIndexCount;
+        this.acmrBefore = acmrBefore;
+        this.acmrAfter = acmrAfter;
+    }
+
+    /**
+     * @param heights Lưới độ cao gridSize x gridSize (không có viền)
+     * @param normals Normal đã tính (nx, ny, nz cho mỗi đỉnh)
+     * @param optimizeIndices Sắp xếp lại tam giác từng khối cho vertex cache
+     */
+    static PackedTerrainMesh pack(HeightField heights, float[] normals, int originCellX, int originCellZ,
+                                  float uvCells, boolean optimizeIndices) {
+        int gridSize = heights.getWidth();
+        float[] data = heights.getData();
+
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < gridSize * gridSize; i++) {
+            min = Math.min(min, data[i]);
+            max = Math.max(max, data[i]);
+        }
+        float range = max > min ? max - min : 1.0f;
+
+        int cells = gridSize - 1;
+        int blocksPerSide = (cells + TerrainMeshData.BLOCK_CELLS - 1) / TerrainMeshData.BLOCK_CELLS;
+        int blockCount = blocksPerSide * blocksPerSide;
+        int[] blockCellX = new int[blockCount];
+        int[] blockCellZ = new int[blockCount];
+        int[] blockWidth = new int[blockCount];
+        int[] blockDepth = new int[blockCount];
+        int[] blockBaseVertex = new int[blockCount];
+        int[] blockIndexOffset = new int[blockCount];
+        int[] blockIndexCount = new int[blockCount];
+
+        int vertexTotal = 0;
+        int indexTotal = 0;
+        for (int bz = 0; bz < blocksPerSide; bz++) {
+            for (int bx = 0; bx < blocksPerSide; bx++) {
+                int b = bz * blocksPerSide + bx;
+                blockCellX[b] = bx * TerrainMeshData.BLOCK_CELLS;
+                blockCellZ[b] = bz * TerrainMeshData.BLOCK_CELLS;
+                blockWidth[b] = Math.min(TerrainMeshData.BLOCK_CELLS, cells - blockCellX[b]) + 1;
+                blockDepth[b] = Math.min(TerrainMeshData.BLOCK_CELLS, cells - blockCellZ[b]) + 1;
+                blockBaseVertex[b] = vertexTotal;
+                blockIndexOffset[b] = indexTotal;
+                blockIndexCount[b] = (blockWidth[b] - 1) * (blockDepth[b] - 1) * 6;
+                vertexTotal += blockWidth[b] * blockDepth[b];
+                indexTotal += blockIndexCount[b];
+            }
+        }
+
+        short[] packedHeights = new short[vertexTotal];
+        byte[] packedNormals = new byte[vertexTotal * 2];
+        short[] indices = new short[indexTotal];
+        float[] octahedral = new float[2];
+        int missesBefore = 0;
+        int missesAfter = 0;
+
+        for (int b = 0; b < blockCount; b++) {
+            int width = blockWidth[b];
+            int vertex = blockBaseVertex[b];
+            for (int z = 0; z < blockDepth[b]; z++) {
+                for (int x = 0; x < width; x++) {
+                    int source = (blockCellZ[b] + z) * gridSize + blockCellX[b] + x;
+                    packedHeights[vertex] = quantizeHeight(data[source], min, range);
+
+                    encodeOctahedral(normals[source * 3], normals[source * 3 + 1], normals[source * 3 + 2],
+                                     octahedral);
+                    packedNormals[vertex * 2] = toSnorm8(octahedral[0]);
+                    packedNormals[vertex * 2 + 1] = toSnorm8(octahedral[1]);
+                    vertex++;
+                }
+            }
+
+            // Thứ tự tam giác giống TerrainMeshData
+            int pointer = blockIndexOffset[b];
+            for (int z = 0; z < blockDepth[b] - 1; z++) {
+                for (int x = 0; x < width - 1; x++) {
+                    int topLeft = z * width + x;
+                    int topRight = topLeft + 1;
+                    int bottomLeft = topLeft + width;
+                    int bottomRight = bottomLeft + 1;
+
+                    indices[pointer++] = (short) topLeft;
+                    indices[pointer++] = (short) bottomLeft;
+                    indices[pointer++] = (short) topRight;
+
+                    indices[pointer++] = (short) topRight;
+                    indices[pointer++] = (short) bottomLeft;
+                    indices[pointer++] = (short) bottomRight;
+                }
+            }
+
+            int blockVertices = width * blockDepth[b];
+            missesBefore += VertexCacheOptimizer.countCacheMisses(indices, blockIndexOffset[b], blockIndexCount[b],
+                                                                  blockVertices, VertexCacheOptimizer.DEFAULT_FIFO_SIZE);
+            if (optimizeIndices) {
+                VertexCacheOptimizer.optimize(indices, blockIndexOffset[b], blockIndexCount[b], blockVertices);
+            }
+            missesAfter += VertexCacheOptimizer.countCacheMisses(indices, blockIndexOffset[b], blockIndexCount[b],
+                                                                 blockVertices, VertexCacheOptimizer.DEFAULT_FIFO_SIZE);
+        }
+        float triangles = Math.max(1, indexTotal / 3);
+
+        return new PackedTerrainMesh(originCellX, originCellZ, uvCells, min, range, packedHeights,
+                                     packedNormals, indices, vertexTotal, indexTotal,
+                                     blockCount, blockCellX, blockCellZ,
+                                     blockWidth, blockBaseVertex, blockIndexOffset, blockIndexCount,
+                                     missesBefore / triangles, missesAfter / triangles);
+    }
+
+    /**
+     * Dựng lại thông tin khối (không có dữ liệu đỉnh/index, phần đó nằm sẵn trong buffer của cache)
+     */
+    static PackedTerrainMesh restore(int originCellX, int originCellZ, float uvCells, float heightMin,
+                                     float heightRange, int vertexCount, int indexCount,
+                                     int[] blockCellX, int[] blockCellZ, int[] blockWidth,
+                                     int[] blockBaseVertex, int[] blockIndexOffset, int[] blockIndexCount,
+                                     float acmrBefore, float acmrAfter) {
+        return new PackedTerrainMesh(originCellX, originCellZ, uvCells, heightMin, heightRange, null, null, null,
+                                     vertexCount, indexCount, blockCellX.length, blockCellX, blockCellZ,
+                                     blockWidth, blockBaseVertex, blockIndexOffset, blockIndexCount,
+                                     acmrBefore, acmrAfter);
+    }
+
+    /**
+     * Ghi một đỉnh (độ cao u16 + normal octahedral) vào {@code out} theo khoảng độ cao hiện tại
+     * @param octahedral Mảng tạm 2 phần tử
+     */
+    void putVertex(ByteBuffer out, float height, float nx, float ny, float nz, float[] octahedral) {
+        encodeOctahedral(nx, ny, nz, octahedral);
+        out.putShort(quantizeHeight(height, heightMin, heightRange));
+        out.put(toSnorm8(octahedral[0]));
+        out.put(toSnorm8(octahedral[1]));
+    }
+
+    static short quantizeHeight(float height, float min, float range) {
+        int quantized = Math.round((height - min) / range * 65535.0f);
+        return (short) Math.max(0, Math.min(65535, quantized));
+    }
+
+    static byte toSnorm8(float value) {
+        return (byte) Math.round(value * 127.0f);
+    }
+
+    /**
+     * Mã hóa octahedral với trục Y là trục chính (normal địa hình hầu hết hướng lên)
+     */
+    static void encodeOctahedral(float nx, float ny, float nz, float[] out) {
+        float invL1 = 1.0f / (Math.abs(nx) + Math.abs(ny) + Math.abs(nz));
+        float px = nx * invL1;
+        float pz = nz * invL1;
+        if (ny < 0) {
+            float foldX = (1.0f - Math.abs(pz)) * (px >= 0 ? 1.0f : -1.0f);
+            float foldZ = (1.0f - Math.abs(px)) * (pz >= 0 ? 1.0f : -1.0f);
+            px = foldX;
+            pz = foldZ;
+        }
+        out[0] = px;
+        out[1] = pz;
+    }
+
+    /**
+     * Số hàng đỉnh của khối
+     */
+    int blockDepth(int block) {
+        return blockIndexCount[block] / ((blockWidth[block] - 1) * 6) + 1;
+    }
+
+    int getVertexCount() {
+        return vertexCount;
+    }
+
+    int getIndexCount() {
+        return indexCount;
+    }
+
+    int getVertexBytes() {
+        return vertexCount * VERTEX_BYTES;
+    }
+
+    int getIndexBytes() {
+        return indexCount * Short.BYTES;
+    }
+}
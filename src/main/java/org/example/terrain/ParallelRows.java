@@ -0,0 +1,63 @@
+package org.example.terrain;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Chia một khoảng hàng [0, rows) thành các task fork-join (dùng cho sinh độ cao, normal...)
+ */
+final class ParallelRows {
+
+    /**
+     * Xử lý các hàng [rowFrom, rowTo)
+     */
+    @FunctionalInterface
+    interface RowRange {
+        void run(int rowFrom, int rowTo);
+    }
+
+    private ParallelRows() {
+    }
+
+    /**
+     * @param pool Pool thực thi, null = chạy tuần tự trên thread gọi
+     * @param rowsPerTask Số hàng tối thiểu của một task
+     */
+    static void run(ForkJoinPool pool, int rows, int rowsPerTask, RowRange body) {
+        if (pool == null || rows <= rowsPerTask) {
+            body.run(0, rows);
+        } else {
+            pool.invoke(new RowTask(body, rowsPerTask, 0, rows));
+        }
+    }
+
+    /**
+     * Task fork-join: chia đôi khoảng hàng cho tới khi đủ nhỏ
+     * (RecursiveAction là Serializable nhưng task không bao giờ được serialize)
+     */
+    @SuppressWarnings("serial")
+    private static class RowTask extends RecursiveAction {
+        private final RowRange body;
+        private final int rowsPerTask;
+        private final int rowFrom;
+        private final int rowTo;
+
+        RowTask(RowRange body, int rowsPerTask, int rowFrom, int rowTo) {
+            this.body = body;
+            this.rowsPerTask = rowsPerTask;
+            this.rowFrom = rowFrom;
+            this.rowTo = rowTo;
+        }
+
+        @Override
+        protected void compute() {
+            if (rowTo - rowFrom <= rowsPerTask) {
+                body.run(rowFrom, rowTo);
+                return;
+            }
+            int mid = (rowFrom + rowTo) >>> 1;
+            invokeAll(new RowTask(body, rowsPerTask, rowFrom, mid),
+                      new RowTask(body, rowsPerTask, mid, rowTo));
+        }
+    }
+}
@@ -5,13 +5,25 @@ import java.util.Random;
 /**
  * Bộ sinh Perlin Noise để tạo độ cao địa hình
  * Dựa trên thuật toán Perlin Noise cải tiến của Ken Perlin
+ *
+ * Bảng hoán vị chỉ có 256 phần tử nên noise lặp lại sau mỗi 256 đơn vị
+ * (xem {@link SimplexNoise} cho bản không lặp).
  */
-public class PerlinNoise {
+public class PerlinNoise implements NoiseSource {
     private static final int PERMUTATION_SIZE = 256;
+    
+    // Dùng Vector API nếu JVM được chạy với --add-modules jdk.incubator.vector
+    // (tắt bằng -Dnoise.vector=false)
+    static final boolean VECTOR_ENABLED =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && !"false".equals(System.getProperty("noise.vector"));
+    
+    private final long seed;
     private final int[] permutation;  // Bảng hoán vị
     private final int[] p;            // Bảng hoán vị mở rộng (x2)
 
     public PerlinNoise(long seed) {
+        this.seed = seed;
         permutation = new int[PERMUTATION_SIZE];
         p = new int[PERMUTATION_SIZE * 2];
         
@@ -36,12 +48,30 @@ public class PerlinNoise {
         }
     }
 
+    @Override
+    public Type getType() {
+        return Type.PERLIN;
+    }
+
+    @Override
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Bản sao bảng hoán vị 256 phần tử (dùng để sinh cùng noise trên GPU)
+     */
+    int[] getPermutation() {
+        return permutation.clone();
+    }
+
     /**
      * Tạo giá trị Perlin noise 2D
      * @param x Tọa độ X
      * @param z Tọa độ Z
      * @return Giá trị noise trong khoảng -1 đến 1
      */
+    @Override
     public double noise(double x, double z) {
         // Tìm ô lưới chứa điểm
         int X = (int) Math.floor(x) & 255;
@@ -80,6 +110,7 @@ public class PerlinNoise {
      * @param persistence Độ ảnh hưởng của mỗi tầng (thường 0.5)
      * @return Giá trị noise tổng hợp
      */
+    @Override
     public double fractalNoise(double x, double z, int octaves, double persistence) {
         double total = 0;
         double frequency = 1;      // Tần số (độ chi tiết)
@@ -98,6 +129,110 @@ public class PerlinNoise {
         return total / maxValue;
     }
 
+    /**
+     * Sinh fractal noise cho cả một lưới đều (theo từng hàng), nhanh hơn nhiều so với
+     * gọi {@link #fractalNoise} cho từng điểm: phần tính theo Z chỉ làm một lần mỗi hàng,
+     * và dùng Vector API (SIMD) khi có sẵn.
+     *
+     * Mẫu (i, j) tương ứng với fractalNoise(x0 + i * step, z0 + j * step, octaves, persistence).
+     * Cả nhánh vector và nhánh vô hướng thực hiện cùng thứ tự phép tính, nên sai khác so với
+     * gọi từng điểm không vượt quá 1e-6 (thực tế thường giống hệt từng bit sau khi ép về float).
+     *
+     * @param out Mảng kết quả, kích thước ít nhất width * height (theo hàng, X chạy nhanh)
+     * @param x0 Tọa độ X của mẫu đầu tiên
+     * @param z0 Tọa độ Z của mẫu đầu tiên
+     * @param step Khoảng cách giữa hai mẫu liền kề
+     */
+    @Override
+    public void fill(float[] out, double x0, double z0, double step, int width, int height,
+                     int octaves, double persistence) {
+        fill(out, 0, x0, z0, step, width, height, octaves, persistence);
+    }
+    
+    /**
+     * Giống {@link #fill(float[], double, double, double, int, int, int, double)},
+     * ghi kết quả bắt đầu từ vị trí {@code outOffset} của mảng
+     */
+    @Override
+    public void fill(float[] out, int outOffset, double x0, double z0, double step, int width, int height,
+                     int octaves, double persistence) {
+        if (out.length - outOffset < width * height) {
+            throw new IllegalArgumentException("Mảng kết quả quá nhỏ: " + (out.length - outOffset)
+                                               + " < " + width * height);
+        }
+        
+        // Các giá trị theo Z không đổi trên một hàng, tính trước cho từng octave
+        int[] rowHash = new int[octaves];
+        double[] rowZ = new double[octaves];
+        double[] rowFade = new double[octaves];
+        
+        double maxValue = 0;
+        double amplitude = 1;
+        for (int i = 0; i < octaves; i++) {
+            maxValue += amplitude;
+            amplitude *= persistence;
+        }
+        
+        for (int j = 0; j < height; j++) {
+            double z = z0 + j * step;
+            double frequency = 1;
+            for (int o = 0; o < octaves; o++) {
+                double zs = z * frequency;
+                double zFloor = Math.floor(zs);
+                rowHash[o] = (int) zFloor & 255;
+                rowZ[o] = zs - zFloor;
+                rowFade[o] = fade(rowZ[o]);
+                frequency *= 2;
+            }
+            
+            int offset = outOffset + j * width;
+            int start = 0;
+            if (VECTOR_ENABLED) {
+                start = VectorNoiseKernel.fillRow(p, out, offset, x0, step, width,
+                                                  octaves, persistence, maxValue, rowHash, rowZ, rowFade);
+            }
+            fillRowScalar(out, offset, start, x0, step, width, octaves, persistence, maxValue,
+                          rowHash, rowZ, rowFade);
+        }
+    }
+    
+    /**
+     * Nhánh vô hướng của {@link #fill} cho các mẫu [start, width) của một hàng
+     */
+    private void fillRowScalar(float[] out, int offset, int start, double x0, double step, int width,
+                               int octaves, double persistence, double maxValue,
+                               int[] rowHash, double[] rowZ, double[] rowFade) {
+        for (int i = start; i < width; i++) {
+            double x = x0 + i * step;
+            double total = 0;
+            double frequency = 1;
+            double amplitude = 1;
+            
+            for (int o = 0; o < octaves; o++) {
+                double xs = x * frequency;
+                double xFloor = Math.floor(xs);
+                int X = (int) xFloor & 255;
+                double xf = xs - xFloor;
+                double zf = rowZ[o];
+                double u = fade(xf);
+                
+                int A = p[X] + rowHash[o];
+                int B = p[X + 1] + rowHash[o];
+                
+                double result = lerp(rowFade[o],
+                    lerp(u, grad(p[p[A]], xf, zf), grad(p[p[B]], xf - 1, zf)),
+                    lerp(u, grad(p[p[A + 1]], xf, zf - 1), grad(p[p[B + 1]], xf - 1, zf - 1))
+                );
+                
+                total += result * amplitude;
+                amplitude *= persistence;
+                frequency *= 2;
+            }
+            
+            out[offset + i] = (float) (total / maxValue);
+        }
+    }
+
     private double fade(double t) {
         // Hàm fade: 6t^5 - 15t^4 + 10t^3 (làm mượt đường cong)
         return t * t * t * (t * (t * 6 - 15) + 10);
@@ -0,0 +1,153 @@
+package org.example.terrain;
+
+/**
+ * Simplex noise 2D với gradient chọn bằng hash 64-bit của tọa độ đỉnh lưới
+ *
+ * Không có bảng hoán vị: mỗi đỉnh (i, j) được hash cùng seed bằng phép nhân/xor 64-bit,
+ * nên noise không lặp lại trong toàn bộ phạm vi tọa độ long và khởi tạo gần như miễn phí.
+ * Mỗi mẫu chỉ cần 3 đỉnh (thay vì 4 như Perlin) và không cần hàm fade.
+ * Mỗi octave dùng seed riêng để các tầng không tương quan với nhau.
+ */
+public class SimplexNoise implements NoiseSource {
+    // Hệ số skew/unskew giữa lưới tam giác và lưới vuông
+    private static final double F2 = 0.5 * (Math.sqrt(3.0) - 1.0);
+    private static final double G2 = (3.0 - Math.sqrt(3.0)) / 6.0;
+
+    // Hệ số biên độ: với gradient độ dài 1, cực đại của tổng 3 đỉnh là ~1 / 100. Chọn 50 để phân bố
+    // giá trị (RMS ~0.27, |max| ~0.5) tương đương PerlinNoise, giữ nguyên ý nghĩa của heightScale/mực nước
+    private static final double SCALE = 50.0;
+
+    private static final long PRIME_X = 0x9E3779B97F4A7C15L;
+    private static final long PRIME_Z = 0xC2B2AE3D27D4EB4FL;
+
+    // 32 hướng gradient đơn vị chia đều trên vòng tròn
+    private static final int GRADIENT_BITS = 5;
+    private static final int GRADIENT_COUNT = 1 << GRADIENT_BITS;
+    private static final double[] GRADIENTS = new double[GRADIENT_COUNT * 2];
+
+    static {
+        for (int i = 0; i < GRADIENT_COUNT; i++) {
+            double angle = (i + 0.5) * 2 * Math.PI / GRADIENT_COUNT;
+            GRADIENTS[i * 2] = Math.cos(angle);
+            GRADIENTS[i * 2 + 1] = Math.sin(angle);
+        }
+    }
+
+    // Số octave có seed tính sẵn (octave cao hơn tính lại mỗi lần)
+    private static final int CACHED_OCTAVES = 16;
+
+    private final long seed;
+    private final long[] octaveSeeds;  // Seed đã trộn của từng octave
+
+    public SimplexNoise(long seed) {
+        this.seed = seed;
+        this.octaveSeeds = new long[CACHED_OCTAVES];
+        for (int i = 0; i < CACHED_OCTAVES; i++) {
+            octaveSeeds[i] = octaveSeed(seed, i);
+        }
+    }
+
+    @Override
+    public Type getType() {
+        return Type.SIMPLEX;
+    }
+
+    @Override
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public double noise(double x, double z) {
+        return noise(octaveSeeds[0], x, z);
+    }
+
+    @Override
+    public double octaveNoise(int octave, double x, double z) {
+        return noise(octave < CACHED_OCTAVES ? octaveSeeds[octave] : octaveSeed(seed, octave), x, z);
+    }
+
+    @Override
+    public double fractalNoise(double x, double z, int octaves, double persistence) {
+        double total = 0;
+        double frequency = 1;
+        double amplitude = 1;
+        double maxValue = 0;
+
+        for (int i = 0; i < octaves; i++) {
+            long octaveSeed = i < CACHED_OCTAVES ? octaveSeeds[i] : octaveSeed(seed, i);
+            total += noise(octaveSeed, x * frequency, z * frequency) * amplitude;
+            maxValue += amplitude;
+            amplitude *= persistence;
+            frequency *= 2;
+        }
+        return total / maxValue;
+    }
+
+    /**
+     * Seed của một octave (splitmix64), trộn đủ để các seed gần nhau cho gradient không tương quan
+     */
+    private static long octaveSeed(long seed, int octave) {
+        long h = seed + (octave + 1) * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Simplex noise 2D với seed đã trộn
+     */
+    private static double noise(long seed, double x, double z) {
+        // Tìm tam giác chứa điểm trên lưới đã skew
+        double s = (x + z) * F2;
+        long i = floor(x + s);
+        long j = floor(z + s);
+        double t = (i + j) * G2;
+        double x0 = x - (i - t);
+        double z0 = z - (j - t);
+
+        long hx = i * PRIME_X;
+        long hz = j * PRIME_Z;
+        double result = corner(seed, hx, hz, x0, z0)
+                      + corner(seed, hx + PRIME_X, hz + PRIME_Z, x0 - 1 + 2 * G2, z0 - 1 + 2 * G2);
+        // Đỉnh giữa: tam giác dưới (x0 > z0) hoặc tam giác trên
+        if (x0 > z0) {
+            result += corner(seed, hx + PRIME_X, hz, x0 - 1 + G2, z0 + G2);
+        } else {
+            result += corner(seed, hx, hz + PRIME_Z, x0 + G2, z0 - 1 + G2);
+        }
+        return result * SCALE;
+    }
+
+    /**
+     * Đóng góp của một đỉnh: (0.5 - d^2)^4 * dot(gradient, offset)
+     * @param hx Tọa độ X của đỉnh đã nhân PRIME_X
+     * @param hz Tọa độ Z của đỉnh đã nhân PRIME_Z
+     */
+    private static double corner(long seed, long hx, long hz, double x, double z) {
+        double t = 0.5 - x * x - z * z;
+        if (t <= 0) {
+            return 0;
+        }
+        int g = gradientIndex(seed, hx, hz);
+        t *= t;
+        return t * t * (GRADIENTS[g] * x + GRADIENTS[g + 1] * z);
+    }
+
+    /**
+     * Hash 64-bit của đỉnh lưới, trả về vị trí gradient trong GRADIENTS. Tọa độ đã được nhân với
+     * hai hằng số lẻ khác nhau; nhân thêm một lần rồi lấy các bit cao (phụ thuộc vào mọi bit đầu vào).
+     */
+    private static int gradientIndex(long seed, long hx, long hz) {
+        long h = (seed ^ hx ^ hz) * 0xD6E8FEB86659FD93L;
+        return (int) (h >>> (64 - GRADIENT_BITS)) << 1;
+    }
+
+    /**
+     * floor cho giá trị trong phạm vi long (nhanh hơn Math.floor + ép kiểu)
+     */
+    private static long floor(double v) {
+        long i = (long) v;
+        return v < i ? i - 1 : i;
+    }
+}
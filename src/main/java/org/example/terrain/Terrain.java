@@ -1,211 +1,247 @@
 package org.example.terrain;
 
-import org.joml.Vector3f;
+import org.example.engine.ShaderProgram;
+import org.example.engine.UploadRing;
+import org.joml.FrustumIntersection;
+import org.joml.Vector2f;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
 
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.glDrawElementsBaseVertex;
 import static org.lwjgl.system.MemoryUtil.*;
 
-public class Terrain {
+public class Terrain implements HeightProvider {
+    // Tham số noise mặc định (dùng chung cho địa hình một khối và các chunk streaming)
+    public static final double NOISE_FREQUENCY = 5.0;
+    public static final int NOISE_OCTAVES = 6;
+    public static final double NOISE_PERSISTENCE = 0.5;
+
+    // Định dạng đỉnh nén 4 byte (tắt bằng -Dterrain.packed=false để so sánh với định dạng float)
+    public static final boolean PACKED_VERTICES = !"false".equals(System.getProperty("terrain.packed"));
+    // Sắp xếp lại index cho vertex cache (tắt bằng -Dterrain.optimizeIndices=false)
+    public static final boolean OPTIMIZE_INDICES =
+            !"false".equals(System.getProperty("terrain.optimizeIndices"));
+
     private final int gridSize;
     private final float scale;
     private final float heightScale;
     
     private int vaoId;
     private int vertexVboId;
-    private int normalVboId;
-    private int texCoordVboId;
     private int indicesVboId;
-    private int vertexCount;
+    private PackedTerrainMesh packed;  // null = định dạng float
+    private int vertexBytes;
+    private int indexBytes;
+    private float acmrBefore;
+    private float acmrAfter;
+    private final Vector2f uniformValue = new Vector2f();
+    
+    // Các khối BLOCK_CELLS ô: đoạn index liên tục của từng khối, dùng để culling
+    private int[] blockIndexOffset;
+    private int[] blockIndexCount;
+    private int visibleBlocks;
+    private int culledBlocks;
+    
+    private HeightField heights;
+    private boolean loadedFromCache;
     
-    private float[][] heights;
+    // Sửa độ cao: vùng đỉnh cần upload lại từ lần flush trước
+    private final DirtyRegions dirtyRegions = new DirtyRegions();
+    private final int[] brushBounds = new int[4];
+    private TerrainRaycaster raycaster;  // Tạo khi cần (lần truy vấn tia đầu tiên)
+
+    public Terrain(int gridSize, float scale, float heightScale, NoiseSource noise) {
+        this(gridSize, scale, heightScale, noise, HeightGenerator.serial());
+    }
+
+    /**
+     * @param generator Bộ sinh độ cao (cho phép sinh song song trên nhiều core)
+     */
+    public Terrain(int gridSize, float scale, float heightScale, NoiseSource noise,
+                   HeightGenerator generator) {
+        this(gridSize, scale, heightScale, noise, generator, null);
+    }
 
-    public Terrain(int gridSize, float scale, float heightScale, PerlinNoise noise) {
+    /**
+     * @param cache Cache trên đĩa: có sẵn thì bỏ qua bước sinh, chưa có thì sinh rồi lưu (null = không dùng)
+     */
+    public Terrain(int gridSize, float scale, float heightScale, NoiseSource noise,
+                   HeightGenerator generator, TerrainCache cache) {
+        this(gridSize, scale, heightScale, noise, generator, cache, null);
+    }
+
+    /**
+     * @param uploadRing Ring upload dùng chung (null = vùng nhớ tạm cho mỗi lần upload)
+     */
+    public Terrain(int gridSize, float scale, float heightScale, NoiseSource noise,
+                   HeightGenerator generator, TerrainCache cache, UploadRing uploadRing) {
         this.gridSize = gridSize;
         this.scale = scale;
         this.heightScale = heightScale;
         
-        generateTerrain(noise);
+        generateTerrain(noise, generator, cache, uploadRing);
     }
 
-    private void generateTerrain(PerlinNoise noise) {
-        // Sinh độ cao sử dụng Perlin Noise
-        heights = new float[gridSize][gridSize];
-        
-        for (int z = 0; z < gridSize; z++) {
-            for (int x = 0; x < gridSize; x++) {
-                double nx = (double) x / gridSize;
-                double nz = (double) z / gridSize;
-                
-                // Sử dụng fractal noise để tạo địa hình tự nhiên hơn
-                double height = noise.fractalNoise(nx * 5, nz * 5, 6, 0.5);
-                heights[z][x] = (float) height * heightScale;
-            }
-        }
-        
-        // Tạo dữ liệu mesh
-        int verticesPerRow = gridSize;
-        int totalVertices = verticesPerRow * verticesPerRow;
-        
-        float[] vertices = new float[totalVertices * 3];   // x, y, z
-        float[] normals = new float[totalVertices * 3];    // nx, ny, nz
-        float[] texCoords = new float[totalVertices * 2];  // u, v
-        
-        int vertexPointer = 0;
-        int normalPointer = 0;
-        int texPointer = 0;
-        
-        for (int z = 0; z < gridSize; z++) {
-            for (int x = 0; x < gridSize; x++) {
-                // Vị trí vertex
-                vertices[vertexPointer++] = x * scale;
-                vertices[vertexPointer++] = heights[z][x];
-                vertices[vertexPointer++] = z * scale;
-                
-                // Tọa độ texture (UV mapping)
-                texCoords[texPointer++] = (float) x / (gridSize - 1);
-                texCoords[texPointer++] = (float) z / (gridSize - 1);
-                
-                // Normal vector (sẽ được tính sau)
-                normalPointer += 3;
+    /**
+     * Tạo một chunk địa hình từ dữ liệu đã sinh sẵn (thường trên worker thread).
+     * Chưa upload lên GPU - gọi {@link #uploadToGPU(TerrainMeshData, UploadRing)} ở GL thread.
+     */
+    Terrain(int gridSize, float scale, float heightScale, TerrainMeshData data) {
+        this.gridSize = gridSize;
+        this.scale = scale;
+        this.heightScale = heightScale;
+        this.heights = data.heights;
+    }
+
+    private void generateTerrain(NoiseSource noise, HeightGenerator generator, TerrainCache cache,
+                                 UploadRing uploadRing) {
+        if (cache != null) {
+            TerrainMeshData cached = cache.loadMesh(noise, gridSize, scale, heightScale, PACKED_VERTICES);
+            if (cached != null) {
+                heights = cached.heights;
+                loadedFromCache = true;
+                uploadToGPU(cached, uploadRing);
+                return;
             }
         }
         
-        // Tính normal vectors cho ánh sáng
-        calculateNormals(normals, vertices);
+        // Sinh độ cao từ nguồn noise
+        heights = generator.generate(noise, 0, 0, gridSize, gridSize, heightScale, scale);
         
-        // Tạo indices cho tam giác (mỗi ô vuông = 2 tam giác)
-        int indicesCount = (gridSize - 1) * (gridSize - 1) * 6;
-        int[] indices = new int[indicesCount];
-        int indicePointer = 0;
-        
-        for (int z = 0; z < gridSize - 1; z++) {
-            for (int x = 0; x < gridSize - 1; x++) {
-                int topLeft = z * gridSize + x;
-                int topRight = topLeft + 1;
-                int bottomLeft = (z + 1) * gridSize + x;
-                int bottomRight = bottomLeft + 1;
-                
-                // Tam giác 1 (trên trái)
-                indices[indicePointer++] = topLeft;
-                indices[indicePointer++] = bottomLeft;
-                indices[indicePointer++] = topRight;
-                
-                // Tam giác 2 (dưới phải)
-                indices[indicePointer++] = topRight;
-                indices[indicePointer++] = bottomLeft;
-                indices[indicePointer++] = bottomRight;
-            }
+        // Tạo dữ liệu mesh (vertices, normals, UV, indices)
+        TerrainMeshData data = TerrainMeshData.build(heights, 0, gridSize, 0, 0, gridSize - 1,
+                                                     PACKED_VERTICES, generator.getPool());
+        if (cache != null) {
+            cache.storeMesh(noise, heightScale, data);
         }
         
-        vertexCount = indicesCount;
-        
         // Upload dữ liệu lên GPU
-        uploadToGPU(vertices, normals, texCoords, indices);
-    }
-
-    private void calculateNormals(float[] normals, float[] vertices) {
-        // Tính normal vectors sử dụng tích có hướng (cross product) của các cạnh tam giác
-        for (int z = 0; z < gridSize; z++) {
-            for (int x = 0; x < gridSize; x++) {
-                Vector3f normal = new Vector3f(0, 0, 0);
-                
-                // Lấy vị trí vertex hiện tại
-                int index = (z * gridSize + x) * 3;
-                Vector3f v0 = new Vector3f(vertices[index], vertices[index + 1], vertices[index + 2]);
-                
-                // Tính normal từ các tam giác xung quanh
-                if (x > 0 && z > 0) {
-                    int leftIndex = (z * gridSize + (x - 1)) * 3;
-                    int topIndex = ((z - 1) * gridSize + x) * 3;
-                    
-                    Vector3f v1 = new Vector3f(vertices[leftIndex], vertices[leftIndex + 1], vertices[leftIndex + 2]);
-                    Vector3f v2 = new Vector3f(vertices[topIndex], vertices[topIndex + 1], vertices[topIndex + 2]);
-                    
-                    Vector3f edge1 = new Vector3f(v1).sub(v0);
-                    Vector3f edge2 = new Vector3f(v2).sub(v0);
-                    Vector3f cross = new Vector3f(edge1).cross(edge2);
-                    normal.add(cross);
-                }
-                
-                if (x < gridSize - 1 && z < gridSize - 1) {
-                    int rightIndex = (z * gridSize + (x + 1)) * 3;
-                    int bottomIndex = ((z + 1) * gridSize + x) * 3;
-                    
-                    Vector3f v1 = new Vector3f(vertices[rightIndex], vertices[rightIndex + 1], vertices[rightIndex + 2]);
-                    Vector3f v2 = new Vector3f(vertices[bottomIndex], vertices[bottomIndex + 1], vertices[bottomIndex + 2]);
-                    
-                    Vector3f edge1 = new Vector3f(v1).sub(v0);
-                    Vector3f edge2 = new Vector3f(v2).sub(v0);
-                    Vector3f cross = new Vector3f(edge1).cross(edge2);
-                    normal.add(cross);
-                }
-                
-                // Chuẩn hóa vector
-                normal.normalize();
-                
-                normals[index] = normal.x;
-                normals[index + 1] = normal.y;
-                normals[index + 2] = normal.z;
-            }
+        uploadToGPU(data, uploadRing);
+    }
+
+    /**
+     * @param uploadRing Ring upload (null = vùng nhớ tạm). Dữ liệu đã ghi sẵn vào ring trên worker
+     *                   ({@link TerrainMeshData#stage}) chỉ còn lệnh copy.
+     */
+    final void uploadToGPU(TerrainMeshData data, UploadRing uploadRing) {
+        acmrBefore = data.acmrBefore;
+        acmrAfter = data.acmrAfter;
+        blockIndexOffset = data.blockIndexOffset;
+        blockIndexCount = data.blockIndexCount;
+        packed = data.packed;
+        vertexBytes = data.getVertexDataBytes();
+        indexBytes = data.getIndexDataBytes();
+        int meshVertexCount = data.getVertexCount();
+
+        if (data.mappedVertexData != null) {
+            // Dữ liệu từ cache đã đúng định dạng GPU: đưa thẳng buffer đã map cho driver
+            ByteBuffer vertexData = data.mappedVertexData.duplicate();
+            ByteBuffer indexData = data.mappedIndexData.duplicate();
+            uploadBuffers(meshVertexCount, () -> glBufferData(GL_ARRAY_BUFFER, vertexData, GL_STATIC_DRAW),
+                          () -> glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexData, GL_STATIC_DRAW));
+            return;
         }
+
+        UploadRing.Allocation staged = data.staged;
+        if (staged != null) {
+            int indexOffset = data.getStagedIndexOffset();
+            uploadBuffers(meshVertexCount,
+                          () -> staged.uploadNew(GL_ARRAY_BUFFER, GL_STATIC_DRAW, 0, vertexBytes),
+                          () -> staged.uploadNew(GL_ELEMENT_ARRAY_BUFFER, GL_STATIC_DRAW, indexOffset, indexBytes));
+            data.discardStaged();
+            return;
+        }
+
+        uploadBuffers(meshVertexCount,
+                      () -> UploadRing.bufferData(uploadRing, GL_ARRAY_BUFFER, vertexBytes, GL_STATIC_DRAW,
+                                                  data::writeVertexData),
+                      () -> UploadRing.bufferData(uploadRing, GL_ELEMENT_ARRAY_BUFFER, indexBytes, GL_STATIC_DRAW,
+                                                  data::writeIndexData));
     }
 
-    private void uploadToGPU(float[] vertices, float[] normals, float[] texCoords, int[] indices) {
+    /**
+     * Tạo VAO, VBO đỉnh và index buffer; dữ liệu (đã ở định dạng GPU) được đưa lên bởi
+     * {@code uploadVertices} / {@code uploadIndices} khi buffer tương ứng đang bind
+     * - Nén: một VBO xen kẽ (u16 độ cao + 2 x i8 normal), index 16 bit
+     * - Float: vị trí, normal, UV nối tiếp nhau trong một VBO, index 32 bit
+     */
+    private void uploadBuffers(int meshVertexCount, Runnable uploadVertices, Runnable uploadIndices) {
         // Tạo VAO (Vertex Array Object)
         vaoId = glGenVertexArrays();
         glBindVertexArray(vaoId);
         
-        // Upload vertices (vị trí đỉnh)
-        FloatBuffer verticesBuffer = memAllocFloat(vertices.length);
-        verticesBuffer.put(vertices).flip();
         vertexVboId = glGenBuffers();
         glBindBuffer(GL_ARRAY_BUFFER, vertexVboId);
-        glBufferData(GL_ARRAY_BUFFER, verticesBuffer, GL_STATIC_DRAW);
-        glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-        memFree(verticesBuffer);
-        
-        // Upload normals (vector pháp tuyến)
-        FloatBuffer normalsBuffer = memAllocFloat(normals.length);
-        normalsBuffer.put(normals).flip();
-        normalVboId = glGenBuffers();
-        glBindBuffer(GL_ARRAY_BUFFER, normalVboId);
-        glBufferData(GL_ARRAY_BUFFER, normalsBuffer, GL_STATIC_DRAW);
-        glVertexAttribPointer(1, 3, GL_FLOAT, false, 0, 0);
-        memFree(normalsBuffer);
-        
-        // Upload texture coordinates (tọa độ UV)
-        FloatBuffer texCoordsBuffer = memAllocFloat(texCoords.length);
-        texCoordsBuffer.put(texCoords).flip();
-        texCoordVboId = glGenBuffers();
-        glBindBuffer(GL_ARRAY_BUFFER, texCoordVboId);
-        glBufferData(GL_ARRAY_BUFFER, texCoordsBuffer, GL_STATIC_DRAW);
-        glVertexAttribPointer(2, 2, GL_FLOAT, false, 0, 0);
-        memFree(texCoordsBuffer);
+        uploadVertices.run();
+        if (packed != null) {
+            // Không chuẩn hóa: shader tự chia cho 65535 / 127
+            glVertexAttribPointer(3, 1, GL_UNSIGNED_SHORT, false, PackedTerrainMesh.VERTEX_BYTES, 0);
+            glVertexAttribPointer(4, 2, GL_BYTE, false, PackedTerrainMesh.VERTEX_BYTES, 2);
+        } else {
+            glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+            glVertexAttribPointer(1, 3, GL_FLOAT, false, 0, (long) meshVertexCount * 3 * Float.BYTES);
+            glVertexAttribPointer(2, 2, GL_FLOAT, false, 0, (long) meshVertexCount * 6 * Float.BYTES);
+        }
         
         // Upload indices (chỉ số đỉnh)
-        IntBuffer indicesBuffer = memAllocInt(indices.length);
-        indicesBuffer.put(indices).flip();
         indicesVboId = glGenBuffers();
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indicesVboId);
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
-        memFree(indicesBuffer);
+        uploadIndices.run();
         
         glBindBuffer(GL_ARRAY_BUFFER, 0);
         glBindVertexArray(0);
     }
 
-    public void render() {
+    /**
+     * Vẽ địa hình (shader địa hình phải đang được bind)
+     */
+    public void render(ShaderProgram shader) {
+        render(shader, null, null);
+    }
+
+    /**
+     * Vẽ địa hình, bỏ qua các khối nằm ngoài frustum hoặc bị che sau chân trời
+     * @param frustum Frustum của camera (null = không frustum culling)
+     * @param horizon Chân trời đã dựng cho frame này (null = không occlusion culling)
+     */
+    public void render(ShaderProgram shader, FrustumIntersection frustum, HorizonCuller horizon) {
+        visibleBlocks = 0;
+        culledBlocks = 0;
+        if (packed != null) {
+            renderPacked(shader, frustum, horizon);
+            return;
+        }
         glBindVertexArray(vaoId);
         glEnableVertexAttribArray(0);
         glEnableVertexAttribArray(1);
         glEnableVertexAttribArray(2);
         
-        glDrawElements(GL_TRIANGLES, vertexCount, GL_UNSIGNED_INT, 0);
+        // Các khối thấy được liền nhau trong index buffer được gộp thành một lệnh vẽ
+        int runStart = -1;
+        int runCount = 0;
+        for (int b = 0; b < blockIndexOffset.length; b++) {
+            if (!isBlockVisible(b, frustum, horizon)) {
+                culledBlocks++;
+                continue;
+            }
+            visibleBlocks++;
+            if (runStart >= 0 && runStart + runCount == blockIndexOffset[b]) {
+                runCount += blockIndexCount[b];
+                continue;
+            }
+            if (runCount > 0) {
+                glDrawElements(GL_TRIANGLES, runCount, GL_UNSIGNED_INT, (long) runStart * Integer.BYTES);
+            }
+            runStart = blockIndexOffset[b];
+            runCount = blockIndexCount[b];
+        }
+        if (runCount > 0) {
+            glDrawElements(GL_TRIANGLES, runCount, GL_UNSIGNED_INT, (long) runStart * Integer.BYTES);
+        }
         
         glDisableVertexAttribArray(0);
         glDisableVertexAttribArray(1);
@@ -213,29 +249,345 @@ public class Terrain {
         glBindVertexArray(0);
     }
 
+    private void renderPacked(ShaderProgram shader, FrustumIntersection frustum, HorizonCuller horizon) {
+        shader.setUniform("lodMode", 3);
+        shader.setUniform("packedHeightRange", uniformValue.set(packed.heightMin, packed.heightRange));
+        shader.setUniform("terrainScale", scale);
+        shader.setUniform("uvCells", packed.uvCells);
+
+        glBindVertexArray(vaoId);
+        glEnableVertexAttribArray(3);
+        glEnableVertexAttribArray(4);
+
+        for (int b = 0; b < packed.blockCount; b++) {
+            if (!isBlockVisible(b, frustum, horizon)) {
+                culledBlocks++;
+                continue;
+            }
+            visibleBlocks++;
+            shader.setUniform("packedBlockOrigin", uniformValue.set(packed.originCellX + packed.blockCellX[b],
+                                                                    packed.originCellZ + packed.blockCellZ[b]));
+            shader.setUniform("packedBlockWidth", packed.blockWidth[b]);
+            shader.setUniform("packedBaseVertex", packed.blockBaseVertex[b]);
+            glDrawElementsBaseVertex(GL_TRIANGLES, packed.blockIndexCount[b], GL_UNSIGNED_SHORT,
+                                     (long) packed.blockIndexOffset[b] * Short.BYTES, packed.blockBaseVertex[b]);
+        }
+
+        glDisableVertexAttribArray(3);
+        glDisableVertexAttribArray(4);
+        glBindVertexArray(0);
+        shader.setUniform("lodMode", 0);
+    }
+
+    /**
+     * Kiểm tra AABB của khối (min/max độ cao từ HeightField) với frustum và chân trời
+     */
+    private boolean isBlockVisible(int block, FrustumIntersection frustum, HorizonCuller horizon) {
+        if (frustum == null && horizon == null) {
+            return true;
+        }
+        int blocksX = heights.getBlocksX();
+        int bx = block % blocksX;
+        int bz = block / blocksX;
+        int blockSize = heights.getBlockSize();
+        float minX = heights.getOriginX() + bx * blockSize * scale;
+        float minZ = heights.getOriginZ() + bz * blockSize * scale;
+        float maxX = heights.getOriginX() + Math.min((bx + 1) * blockSize, heights.getWidth() - 1) * scale;
+        float maxZ = heights.getOriginZ() + Math.min((bz + 1) * blockSize, heights.getDepth() - 1) * scale;
+        float minY = heights.getBlockMin(bx, bz);
+        float maxY = heights.getBlockMax(bx, bz);
+        if (frustum != null && !frustum.testAab(minX, minY, minZ, maxX, maxY, maxZ)) {
+            return false;
+        }
+        return horizon == null || !horizon.isOccluded(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * Sửa độ cao bằng brush. Chỉ đổi dữ liệu CPU, GPU được cập nhật ở {@link #flushEdits}.
+     * @see TerrainBrush#apply
+     * @return false nếu brush nằm ngoài địa hình
+     */
+    public boolean applyBrush(TerrainBrush.Mode mode, float x, float z, float radius, float strength) {
+        if (!TerrainBrush.apply(heights, mode, x, z, radius, strength, brushBounds)) {
+            return false;
+        }
+        if (raycaster != null) {
+            raycaster.updateBounds(brushBounds[0], brushBounds[1], brushBounds[2], brushBounds[3]);
+        }
+        // Normal của đỉnh lân cận cũng đổi theo: thêm một ô viền
+        dirtyRegions.add(Math.max(0, brushBounds[0] - 1), Math.max(0, brushBounds[1] - 1),
+                         Math.min(heights.getWidth() - 1, brushBounds[2] + 1),
+                         Math.min(heights.getDepth() - 1, brushBounds[3] + 1));
+        return true;
+    }
+
+    /**
+     * Đưa các vùng đã sửa lên GPU (GL thread, gọi một lần mỗi frame): gộp các vùng chồng nhau,
+     * tính lại normal trong vùng và chỉ upload các đoạn byte thay đổi bằng glBufferSubData
+     * @param horizon Chân trời cần cập nhật min độ cao theo vùng (null = bỏ qua)
+     * @return Số byte đã upload
+     */
+    public int flushEdits(HorizonCuller horizon) {
+        if (dirtyRegions.isEmpty()) {
+            return 0;
+        }
+        dirtyRegions.merge();
+        
+        // Độ cao mới vượt khoảng lượng tử hóa: nới khoảng và mã hóa lại toàn bộ (hiếm gặp)
+        boolean reencode = packed != null && widenPackedRange();
+        
+        glBindBuffer(GL_ARRAY_BUFFER, vertexVboId);
+        int uploaded = 0;
+        if (reencode) {
+            uploaded += uploadPackedRegion(0, 0, heights.getWidth() - 1, heights.getDepth() - 1);
+        }
+        for (int i = 0; i < dirtyRegions.size(); i++) {
+            int x0 = dirtyRegions.x0(i);
+            int z0 = dirtyRegions.z0(i);
+            int x1 = dirtyRegions.x1(i);
+            int z1 = dirtyRegions.z1(i);
+            heights.updateBlockBounds(x0, z0, x1, z1);
+            if (horizon != null) {
+                horizon.invalidate(heights, x0, z0, x1, z1);
+            }
+            if (!reencode) {
+                uploaded += packed != null ? uploadPackedRegion(x0, z0, x1, z1) : uploadFloatRegion(x0, z0, x1, z1);
+            }
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        dirtyRegions.clear();
+        return uploaded;
+    }
+
+    /**
+     * Nới khoảng độ cao của định dạng nén nếu vùng đã sửa vượt ra ngoài (thêm 25% để lần sau không phải nới tiếp)
+     * @return true nếu khoảng đã đổi
+     */
+    private boolean widenPackedRange() {
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < dirtyRegions.size(); i++) {
+            for (int z = dirtyRegions.z0(i); z <= dirtyRegions.z1(i); z++) {
+                for (int x = dirtyRegions.x0(i); x <= dirtyRegions.x1(i); x++) {
+                    float h = heights.get(x, z);
+                    min = Math.min(min, h);
+                    max = Math.max(max, h);
+                }
+            }
+        }
+        float low = packed.heightMin;
+        float high = packed.heightMin + packed.heightRange;
+        if (min >= low && max <= high) {
+            return false;
+        }
+        float margin = packed.heightRange * 0.25f;
+        low = min < low ? min - margin : low;
+        high = max > high ? max + margin : high;
+        packed.heightMin = low;
+        packed.heightRange = high - low;
+        return true;
+    }
+
+    /**
+     * Upload vị trí + normal của vùng đỉnh [x0, x1] x [z0, z1] (định dạng float, VBO đang bind).
+     * Mỗi hàng là một đoạn byte liên tục; vùng phủ hết chiều rộng lưới gửi một lần.
+     */
+    private int uploadFloatRegion(int x0, int z0, int x1, int z1) {
+        int width = heights.getWidth();
+        int columns = x1 - x0 + 1;
+        int rows = z1 - z0 + 1;
+        float[] data = heights.getData();
+        float[] normals = new float[columns * rows * 3];
+        NormalGenerator.computeRegion(heights, x0, z0, x1, z1, normals);
+
+        // Vị trí giống TerrainMeshData: (ô gốc + x) * scale
+        int originCellX = Math.round(heights.getOriginX() / scale);
+        int originCellZ = Math.round(heights.getOriginZ() / scale);
+        FloatBuffer positions = memAllocFloat(columns * rows * 3);
+        for (int z = z0; z <= z1; z++) {
+            for (int x = x0; x <= x1; x++) {
+                positions.put((originCellX + x) * scale).put(data[z * width + x]).put((originCellZ + z) * scale);
+            }
+        }
+        positions.flip();
+        FloatBuffer normalData = memAllocFloat(normals.length).put(normals).flip();
+
+        long normalBase = (long) width * heights.getDepth() * 3 * Float.BYTES;
+        int spans = columns == width ? 1 : rows;
+        int spanFloats = columns == width ? columns * rows * 3 : columns * 3;
+        for (int span = 0; span < spans; span++) {
+            long offset = ((long) (z0 + span) * width + x0) * 3 * Float.BYTES;
+            positions.limit((span + 1) * spanFloats).position(span * spanFloats);
+            normalData.limit((span + 1) * spanFloats).position(span * spanFloats);
+            glBufferSubData(GL_ARRAY_BUFFER, offset, positions);
+            glBufferSubData(GL_ARRAY_BUFFER, normalBase + offset, normalData);
+        }
+        memFree(positions);
+        memFree(normalData);
+        return normals.length * 2 * Float.BYTES;
+    }
+
+    /**
+     * Upload đỉnh nén của vùng [x0, x1] x [z0, z1] (VBO đang bind). Đỉnh trên cạnh khối được lặp lại
+     * trong từng khối nên mỗi khối chạm vùng được ghi riêng, mỗi hàng một đoạn byte
+     * (hoặc một đoạn cho cả khối nếu vùng phủ hết chiều rộng khối).
+     */
+    private int uploadPackedRegion(int x0, int z0, int x1, int z1) {
+        int columns = x1 - x0 + 1;
+        int rows = z1 - z0 + 1;
+        float[] data = heights.getData();
+        int width = heights.getWidth();
+        float[] normals = new float[columns * rows * 3];
+        NormalGenerator.computeRegion(heights, x0, z0, x1, z1, normals);
+
+        // Một đỉnh thuộc tối đa 4 khối (góc chung)
+        ByteBuffer staging = memAlloc(columns * rows * PackedTerrainMesh.VERTEX_BYTES * 4);
+        float[] octahedral = new float[2];
+        int blocksPerSide = (gridSize - 1 + TerrainMeshData.BLOCK_CELLS - 1) / TerrainMeshData.BLOCK_CELLS;
+        int bx0 = Math.max(0, (x0 - 1) / TerrainMeshData.BLOCK_CELLS);
+        int bz0 = Math.max(0, (z0 - 1) / TerrainMeshData.BLOCK_CELLS);
+        int bx1 = Math.min(blocksPerSide - 1, x1 / TerrainMeshData.BLOCK_CELLS);
+        int bz1 = Math.min(blocksPerSide - 1, z1 / TerrainMeshData.BLOCK_CELLS);
+
+        for (int bz = bz0; bz <= bz1; bz++) {
+            for (int bx = bx0; bx <= bx1; bx++) {
+                int b = bz * blocksPerSide + bx;
+                int cellX = packed.blockCellX[b];
+                int cellZ = packed.blockCellZ[b];
+                int blockWidth = packed.blockWidth[b];
+                int fromX = Math.max(x0, cellX);
+                int toX = Math.min(x1, cellX + blockWidth - 1);
+                int fromZ = Math.max(z0, cellZ);
+                int toZ = Math.min(z1, cellZ + packed.blockDepth(b) - 1);
+                if (fromX > toX || fromZ > toZ) {
+                    continue;
+                }
+                boolean fullRows = fromX == cellX && toX == cellX + blockWidth - 1;
+                int spanStart = staging.position();
+                long spanOffset = -1;
+                for (int z = fromZ; z <= toZ; z++) {
+                    if (spanOffset < 0 || !fullRows) {
+                        spanStart = staging.position();
+                        int vertex = packed.blockBaseVertex[b] + (z - cellZ) * blockWidth + (fromX - cellX);
+                        spanOffset = (long) vertex * PackedTerrainMesh.VERTEX_BYTES;
+                    }
+                    for (int x = fromX; x <= toX; x++) {
+                        int n = ((z - z0) * columns + (x - x0)) * 3;
+                        packed.putVertex(staging, data[z * width + x], normals[n], normals[n + 1], normals[n + 2],
+                                         octahedral);
+                    }
+                    if (!fullRows || z == toZ) {
+                        glBufferSubData(GL_ARRAY_BUFFER, spanOffset,
+                                        staging.duplicate().position(spanStart).limit(staging.position()));
+                    }
+                }
+            }
+        }
+        int uploaded = staging.position();
+        memFree(staging);
+        return uploaded;
+    }
+
+    /**
+     * Số khối được vẽ / bị loại ở lần render gần nhất
+     */
+    public int getVisibleBlockCount() {
+        return visibleBlocks;
+    }
+
+    public int getCulledBlockCount() {
+        return culledBlocks;
+    }
+
+    /**
+     * Kiểm tra AABB world của toàn bộ mesh (dùng để culling cả chunk)
+     */
+    boolean isVisible(FrustumIntersection frustum, HorizonCuller horizon) {
+        float minY = Float.POSITIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        for (int bz = 0; bz < heights.getBlocksZ(); bz++) {
+            for (int bx = 0; bx < heights.getBlocksX(); bx++) {
+                minY = Math.min(minY, heights.getBlockMin(bx, bz));
+                maxY = Math.max(maxY, heights.getBlockMax(bx, bz));
+            }
+        }
+        float minX = heights.getOriginX();
+        float minZ = heights.getOriginZ();
+        float maxX = minX + (heights.getWidth() - 1) * scale;
+        float maxZ = minZ + (heights.getDepth() - 1) * scale;
+        if (frustum != null && !frustum.testAab(minX, minY, minZ, maxX, maxY, maxZ)) {
+            return false;
+        }
+        return horizon == null || !horizon.isOccluded(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * true nếu mesh được đọc từ cache thay vì sinh mới
+     */
+    public boolean isLoadedFromCache() {
+        return loadedFromCache;
+    }
+
+    /**
+     * Dung lượng vertex buffer trên GPU (byte)
+     */
+    public int getVertexBytes() {
+        return vertexBytes;
+    }
+
+    /**
+     * Dung lượng index buffer trên GPU (byte)
+     */
+    public int getIndexBytes() {
+        return indexBytes;
+    }
+
+    /**
+     * ACMR của mesh theo thứ tự hàng ban đầu
+     */
+    public float getAcmrBefore() {
+        return acmrBefore;
+    }
+
+    /**
+     * ACMR của mesh đã upload (sau khi tối ưu nếu bật {@link #OPTIMIZE_INDICES})
+     */
+    public float getAcmrAfter() {
+        return acmrAfter;
+    }
+
     public void cleanup() {
         glDisableVertexAttribArray(0);
         
         glBindBuffer(GL_ARRAY_BUFFER, 0);
         glDeleteBuffers(vertexVboId);
-        glDeleteBuffers(normalVboId);
-        glDeleteBuffers(texCoordVboId);
         glDeleteBuffers(indicesVboId);
         
         glBindVertexArray(0);
         glDeleteVertexArrays(vaoId);
     }
 
+    @Override
     public float getHeightAt(float x, float z) {
-        // Lấy độ cao tại vị trí (x, z)
-        int gridX = (int) (x / scale);
-        int gridZ = (int) (z / scale);
-        
-        if (gridX < 0 || gridX >= gridSize - 1 || gridZ < 0 || gridZ >= gridSize - 1) {
-            return 0;
+        // Lấy độ cao tại vị trí (x, z), nội suy giữa 4 đỉnh lưới xung quanh
+        return heights.sample(x, z);
+    }
+
+    /**
+     * Lưới độ cao của địa hình (truy vấn bilinear, theo lô, min/max theo khối)
+     */
+    public HeightField getHeightField() {
+        return heights;
+    }
+
+    /**
+     * Truy vấn giao điểm tia với địa hình (dựng cây min/max ở lần gọi đầu, tự cập nhật khi sửa bằng brush)
+     */
+    public TerrainRaycaster getRaycaster() {
+        if (raycaster == null) {
+            raycaster = new TerrainRaycaster(heights);
         }
-        
-        return heights[gridZ][gridX];
+        return raycaster;
     }
 
     public int getGridSize() {
@@ -0,0 +1,103 @@
+package org.example.terrain;
+
+/**
+ * Brush sửa độ cao trực tiếp trên {@link HeightField}
+ *
+ * Chỉ duyệt các đỉnh trong hình vuông bao bán kính brush nên chi phí tỉ lệ với
+ * kích thước brush, không phụ thuộc kích thước bản đồ. Ảnh hưởng giảm dần
+ * từ tâm ra mép theo (1 - d²/r²)².
+ */
+public final class TerrainBrush {
+    public enum Mode {
+        RAISE,    // Nâng lên
+        LOWER,    // Hạ xuống
+        FLATTEN,  // Kéo về độ cao tại tâm brush
+        SMOOTH    // Kéo về trung bình 3x3 lân cận
+    }
+
+    private TerrainBrush() {
+    }
+
+    /**
+     * Áp dụng brush quanh vị trí world (centerX, centerZ)
+     * @param radius Bán kính brush (world)
+     * @param strength RAISE/LOWER: độ cao thay đổi ở tâm (world); FLATTEN/SMOOTH: hệ số trộn ở tâm (0..1)
+     * @param bounds Vùng đỉnh đã sửa {x0, z0, x1, z1} (cả hai đầu), chỉ ghi khi trả về true
+     * @return false nếu brush không chạm đỉnh nào của lưới
+     */
+    public static boolean apply(HeightField heights, Mode mode, float centerX, float centerZ,
+                                float radius, float strength, int[] bounds) {
+        float scale = heights.getScale();
+        float gx = (centerX - heights.getOriginX()) / scale;
+        float gz = (centerZ - heights.getOriginZ()) / scale;
+        float cells = radius / scale;
+        int width = heights.getWidth();
+        int x0 = Math.max(0, (int) Math.ceil(gx - cells));
+        int z0 = Math.max(0, (int) Math.ceil(gz - cells));
+        int x1 = Math.min(width - 1, (int) Math.floor(gx + cells));
+        int z1 = Math.min(heights.getDepth() - 1, (int) Math.floor(gz + cells));
+        if (!(cells > 0) || x0 > x1 || z0 > z1) {
+            return false;
+        }
+
+        float[] data = heights.getData();
+        float target = heights.sample(centerX, centerZ);
+        float[] source = mode == Mode.SMOOTH ? copyRegion(heights, x0 - 1, z0 - 1, x1 + 1, z1 + 1) : null;
+        int sourceWidth = x1 - x0 + 3;
+        float invRadiusSq = 1.0f / (cells * cells);
+
+        for (int z = z0; z <= z1; z++) {
+            float dz = z - gz;
+            for (int x = x0; x <= x1; x++) {
+                float dx = x - gx;
+                float t = (dx * dx + dz * dz) * invRadiusSq;
+                if (t >= 1.0f) {
+                    continue;
+                }
+                float falloff = (1.0f - t) * (1.0f - t);
+                int index = z * width + x;
+                float h = data[index];
+                switch (mode) {
+                    case RAISE -> h += strength * falloff;
+                    case LOWER -> h -= strength * falloff;
+                    case FLATTEN -> h += (target - h) * Math.min(1.0f, strength * falloff);
+                    case SMOOTH -> {
+                        // Trung bình 3x3 trên bản sao (không đọc giá trị vừa sửa trong cùng lần áp dụng)
+                        int center = (z - z0 + 1) * sourceWidth + (x - x0 + 1);
+                        float sum = 0;
+                        for (int oz = -1; oz <= 1; oz++) {
+                            for (int ox = -1; ox <= 1; ox++) {
+                                sum += source[center + oz * sourceWidth + ox];
+                            }
+                        }
+                        h += (sum / 9.0f - h) * Math.min(1.0f, strength * falloff);
+                    }
+                }
+                data[index] = h;
+            }
+        }
+
+        bounds[0] = x0;
+        bounds[1] = z0;
+        bounds[2] = x1;
+        bounds[3] = z1;
+        return true;
+    }
+
+    /**
+     * Sao chép vùng đỉnh [x0, x1] x [z0, z1], đỉnh ngoài lưới lấy đỉnh biên gần nhất
+     */
+    private static float[] copyRegion(HeightField heights, int x0, int z0, int x1, int z1) {
+        int columns = x1 - x0 + 1;
+        float[] copy = new float[columns * (z1 - z0 + 1)];
+        int lastX = heights.getWidth() - 1;
+        int lastZ = heights.getDepth() - 1;
+        for (int z = z0; z <= z1; z++) {
+            int sz = Math.max(0, Math.min(lastZ, z));
+            for (int x = x0; x <= x1; x++) {
+                copy[(z - z0) * columns + x - x0] = heights.get(Math.max(0, Math.min(lastX, x)), sz);
+            }
+        }
+        return copy;
+    }
+}
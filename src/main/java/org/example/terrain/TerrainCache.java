@@ -0,0 +1,344 @@
+package org.example.terrain;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+/**
+ * Cache địa hình đã sinh trên đĩa, đọc lại bằng {@link FileChannel#map}
+ *
+ * Mỗi file ứng với một khóa (loại noise, seed, kích thước lưới, scale, heightScale, tham số noise,
+ * định dạng mesh). Dữ liệu đỉnh/index được lưu đúng định dạng GPU nên khi khởi động lại
+ * có thể đưa thẳng buffer đã map cho glBufferData, bỏ qua toàn bộ bước sinh.
+ *
+ * Cấu trúc file (thứ tự byte của máy ghi):
+ * - Header: magic, phiên bản, khóa, thông tin khối và vị trí các đoạn dữ liệu
+ * - Độ cao (float, width x depth)
+ * - Dữ liệu đỉnh, dữ liệu index (có thể rỗng nếu chỉ lưu độ cao)
+ * Các đoạn được căn 16 byte. File không khớp magic/phiên bản/khóa bị bỏ qua và ghi lại.
+ * Magic/phiên bản/khóa được đọc và kiểm tra trước khi map, nên file không khớp không bao giờ bị map
+ * (trên Windows file đang map không thay thế được). File lớn hơn 2 GB không được cache.
+ */
+public class TerrainCache {
+    private static final int MAGIC = 0x54524E43;  // "TRNC"
+    private static final int VERSION = 2;
+    private static final int ALIGNMENT = 16;
+    private static final int PREFIX_BYTES = 64;             // magic + phiên bản + khóa (kiểm tra trước khi map)
+    private static final long MAX_FILE_BYTES = Integer.MAX_VALUE;  // ByteBuffer chỉ đánh chỉ số bằng int
+
+    // Loại dữ liệu trong file
+    private static final int KIND_HEIGHTS = 0;
+    private static final int KIND_FLOAT_MESH = 1;
+    private static final int KIND_PACKED_MESH = 2;
+
+    private final Path directory;
+
+    public TerrainCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Khóa cache: mọi tham số ảnh hưởng tới dữ liệu được sinh
+     */
+    private static final class Key {
+        final int kind;
+        final int noiseType;
+        final long seed;
+        final int gridSize;
+        final float scale;
+        final float heightScale;
+        final int optimizeIndices;
+
+        Key(int kind, NoiseSource noise, int gridSize, float scale, float heightScale) {
+            this.kind = kind;
+            this.noiseType = noise.getType().ordinal();
+            this.seed = noise.getSeed();
+            this.gridSize = gridSize;
+            this.scale = scale;
+            this.heightScale = heightScale;
+            this.optimizeIndices = kind != KIND_HEIGHTS && Terrain.OPTIMIZE_INDICES ? 1 : 0;
+        }
+
+        void write(ByteBuffer out) {
+            out.putInt(kind);
+            out.putInt(noiseType);
+            out.putLong(seed);
+            out.putInt(gridSize);
+            out.putFloat(scale);
+            out.putFloat(heightScale);
+            out.putDouble(Terrain.NOISE_FREQUENCY);
+            out.putInt(Terrain.NOISE_OCTAVES);
+            out.putDouble(Terrain.NOISE_PERSISTENCE);
+            out.putInt(optimizeIndices);
+            out.putInt(TerrainMeshData.BLOCK_CELLS);
+        }
+
+        boolean matches(ByteBuffer in) {
+            return in.getInt() == kind
+                    && in.getInt() == noiseType
+                    && in.getLong() == seed
+                    && in.getInt() == gridSize
+                    && in.getFloat() == scale
+                    && in.getFloat() == heightScale
+                    && in.getDouble() == Terrain.NOISE_FREQUENCY
+                    && in.getInt() == Terrain.NOISE_OCTAVES
+                    && in.getDouble() == Terrain.NOISE_PERSISTENCE
+                    && in.getInt() == optimizeIndices
+                    && in.getInt() == TerrainMeshData.BLOCK_CELLS;
+        }
+
+        String fileName() {
+            long hash = seed;
+            hash = hash * 31 + kind;
+            hash = hash * 31 + noiseType;
+            hash = hash * 31 + gridSize;
+            hash = hash * 31 + Float.floatToIntBits(scale);
+            hash = hash * 31 + Float.floatToIntBits(heightScale);
+            hash = hash * 31 + Double.hashCode(Terrain.NOISE_FREQUENCY);
+            hash = hash * 31 + Terrain.NOISE_OCTAVES;
+            hash = hash * 31 + Double.hashCode(Terrain.NOISE_PERSISTENCE);
+            hash = hash * 31 + optimizeIndices;
+            return "terrain-" + Long.toHexString(hash) + ".bin";
+        }
+    }
+
+    /**
+     * Đọc lưới độ cao đã lưu
+     * @return null nếu chưa có trong cache
+     */
+    public HeightField loadHeights(NoiseSource noise, int gridSize, float scale, float heightScale) {
+        TerrainMeshData data = load(new Key(KIND_HEIGHTS, noise, gridSize, scale, heightScale));
+        return data != null ? data.heights : null;
+    }
+
+    /**
+     * Lưu lưới độ cao (dùng cho chế độ CDLOD, mesh được dựng trên GPU)
+     */
+    public void storeHeights(NoiseSource noise, float heightScale, HeightField heights) {
+        store(new Key(KIND_HEIGHTS, noise, heights.getWidth(), heights.getScale(), heightScale), heights, null);
+    }
+
+    /**
+     * Đọc mesh đã lưu (độ cao đọc vào mảng, đỉnh/index giữ trong buffer đã map)
+     * @return null nếu chưa có trong cache
+     */
+    TerrainMeshData loadMesh(NoiseSource noise, int gridSize, float scale, float heightScale, boolean packed) {
+        return load(new Key(packed ? KIND_PACKED_MESH : KIND_FLOAT_MESH, noise, gridSize, scale, heightScale));
+    }
+
+    void storeMesh(NoiseSource noise, float heightScale, TerrainMeshData data) {
+        Key key = new Key(data.packed != null ? KIND_PACKED_MESH : KIND_FLOAT_MESH, noise,
+                          data.heights.getWidth(), data.heights.getScale(), heightScale);
+        store(key, data.heights, data);
+    }
+
+    private TerrainMeshData load(Key key) {
+        Path file = directory.resolve(key.fileName());
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAX_FILE_BYTES) {
+                System.err.println("→ Cache địa hình quá lớn (" + size + " byte > 2 GB), bỏ qua: " + file);
+                return null;
+            }
+            // Đọc phần đầu vào heap để kiểm tra, chỉ map khi khớp
+            ByteBuffer prefix = ByteBuffer.allocate(PREFIX_BYTES).order(ByteOrder.nativeOrder());
+            while (prefix.hasRemaining() && channel.read(prefix, prefix.position()) > 0) {
+                // Đọc tới khi đủ hoặc hết file
+            }
+            prefix.flip();
+            if (prefix.remaining() < PREFIX_BYTES
+                    || prefix.getInt() != MAGIC || prefix.getInt() != VERSION || !key.matches(prefix)) {
+                return null;  // Ngắn / khác phiên bản / khóa (trùng hash) / thứ tự byte: sinh lại
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+            System.err.println("→ Không đọc được cache địa hình " + file + ": " + e.getMessage());
+            return null;
+        }
+
+        try {
+            ByteBuffer in = mapped.duplicate().order(ByteOrder.nativeOrder());
+            in.position(PREFIX_BYTES);
+
+            float acmrBefore = in.getFloat();
+            float acmrAfter = in.getFloat();
+            float heightMin = in.getFloat();
+            float heightRange = in.getFloat();
+            float uvCells = in.getFloat();
+            int originCellX = in.getInt();
+            int originCellZ = in.getInt();
+            int vertexCount = in.getInt();
+            int indexCount = in.getInt();
+            int blockCount = in.getInt();
+            int[] blockIndexOffset = readInts(in, blockCount);
+            int[] blockIndexCount = readInts(in, blockCount);
+            int[] blockCellX = readInts(in, blockCount);
+            int[] blockCellZ = readInts(in, blockCount);
+            int[] blockWidth = readInts(in, blockCount);
+            int[] blockBaseVertex = readInts(in, blockCount);
+
+            int width = in.getInt();
+            int depth = in.getInt();
+            float originX = in.getFloat();
+            float originZ = in.getFloat();
+            long heightsOffset = in.getLong();
+            long vertexOffset = in.getLong();
+            long vertexBytes = in.getLong();
+            long indexOffset = in.getLong();
+            long indexBytes = in.getLong();
+
+            float[] heightData = new float[Math.multiplyExact(width, depth)];
+            mapped.slice(Math.toIntExact(heightsOffset), Math.multiplyExact(heightData.length, Float.BYTES))
+                  .order(ByteOrder.nativeOrder()).asFloatBuffer().get(heightData);
+            HeightField heights = new HeightField(width, depth, key.scale, originX, originZ, heightData);
+            if (key.kind == KIND_HEIGHTS) {
+                return TerrainMeshData.restore(heights, null, 0, 0, null, null, null, null);
+            }
+
+            ByteBuffer vertexData = mapped.slice(Math.toIntExact(vertexOffset), Math.toIntExact(vertexBytes));
+            ByteBuffer indexData = mapped.slice(Math.toIntExact(indexOffset), Math.toIntExact(indexBytes));
+            PackedTerrainMesh packed = null;
+            if (key.kind == KIND_PACKED_MESH) {
+                packed = PackedTerrainMesh.restore(originCellX, originCellZ, uvCells, heightMin, heightRange,
+                                                   vertexCount, indexCount, blockCellX, blockCellZ, blockWidth,
+                                                   blockBaseVertex, blockIndexOffset, blockIndexCount,
+                                                   acmrBefore, acmrAfter);
+            }
+            return TerrainMeshData.restore(heights, packed, acmrBefore, acmrAfter, blockIndexOffset,
+                                           blockIndexCount, vertexData, indexData);
+        } catch (RuntimeException e) {
+            // File bị cắt ngắn / hỏng: coi như chưa có
+            System.err.println("→ Cache địa hình hỏng, sinh lại: " + file);
+            return null;
+        }
+    }
+
+    /**
+     * Ghi file tạm rồi đổi tên để không để lại file dở dang khi bị ngắt giữa chừng
+     * @param mesh null = chỉ lưu độ cao
+     */
+    private void store(Key key, HeightField heights, TerrainMeshData mesh) {
+        PackedTerrainMesh packed = mesh != null ? mesh.packed : null;
+        int blockCount = mesh != null ? mesh.blockIndexOffset.length : 0;
+        int headerBytes = 256 + blockCount * 6 * Integer.BYTES;
+        long heightsOffset = align(headerBytes);
+        long heightsBytes = (long) heights.getWidth() * heights.getDepth() * Float.BYTES;
+        long vertexOffset = align(heightsOffset + heightsBytes);
+        long vertexBytes = mesh != null ? mesh.getVertexDataBytes() : 0;
+        long indexOffset = align(vertexOffset + vertexBytes);
+        long indexBytes = mesh != null ? mesh.getIndexDataBytes() : 0;
+        if (indexOffset + indexBytes > MAX_FILE_BYTES) {
+            System.err.println("→ Địa hình quá lớn để cache (" + (indexOffset + indexBytes) + " byte > 2 GB)");
+            return;
+        }
+
+        ByteBuffer header = memAlloc(headerBytes).order(ByteOrder.nativeOrder());
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        key.write(header);
+        header.putFloat(mesh != null ? mesh.acmrBefore : 0);
+        header.putFloat(mesh != null ? mesh.acmrAfter : 0);
+        header.putFloat(packed != null ? packed.heightMin : 0);
+        header.putFloat(packed != null ? packed.heightRange : 0);
+        header.putFloat(packed != null ? packed.uvCells : 0);
+        header.putInt(packed != null ? packed.originCellX : 0);
+        header.putInt(packed != null ? packed.originCellZ : 0);
+        header.putInt(mesh != null ? mesh.getVertexCount() : 0);
+        header.putInt(mesh != null ? mesh.getIndexCount() : 0);
+        header.putInt(blockCount);
+        if (mesh != null) {
+            writeInts(header, mesh.blockIndexOffset);
+            writeInts(header, mesh.blockIndexCount);
+            writeInts(header, packed != null ? packed.blockCellX : new int[blockCount]);
+            writeInts(header, packed != null ? packed.blockCellZ : new int[blockCount]);
+            writeInts(header, packed != null ? packed.blockWidth : new int[blockCount]);
+            writeInts(header, packed != null ? packed.blockBaseVertex : new int[blockCount]);
+        }
+        header.putInt(heights.getWidth());
+        header.putInt(heights.getDepth());
+        header.putFloat(heights.getOriginX());
+        header.putFloat(heights.getOriginZ());
+        header.putLong(heightsOffset);
+        header.putLong(vertexOffset);
+        header.putLong(vertexBytes);
+        header.putLong(indexOffset);
+        header.putLong(indexBytes);
+        header.flip();
+
+        // Tổng kích thước đã kiểm tra ở trên nên các phép ép về int không tràn
+        ByteBuffer heightBuffer = memAlloc(Math.toIntExact(heightsBytes)).order(ByteOrder.nativeOrder());
+        heightBuffer.asFloatBuffer().put(heights.getData(), 0, heights.getWidth() * heights.getDepth());
+        ByteBuffer vertexBuffer = memAlloc(Math.toIntExact(Math.max(1, vertexBytes)));
+        ByteBuffer indexBuffer = memAlloc(Math.toIntExact(Math.max(1, indexBytes)));
+        if (mesh != null) {
+            mesh.writeVertexData(vertexBuffer);
+            mesh.writeIndexData(indexBuffer);
+        }
+        vertexBuffer.flip();
+        indexBuffer.flip();
+
+        Path file = directory.resolve(key.fileName());
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, "terrain-", ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                writeFully(channel, header, 0);
+                writeFully(channel, heightBuffer, heightsOffset);
+                writeFully(channel, vertexBuffer, vertexOffset);
+                writeFully(channel, indexBuffer, indexOffset);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("→ Không ghi được cache địa hình " + file + ": " + e.getMessage());
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // Bỏ qua, file tạm sẽ bị ghi đè ở lần sau
+                }
+            }
+        } finally {
+            memFree(header);
+            memFree(heightBuffer);
+            memFree(vertexBuffer);
+            memFree(indexBuffer);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static int[] readInts(ByteBuffer in, int count) {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    private static void writeInts(ByteBuffer out, int[] values) {
+        out.asIntBuffer().put(values);
+        out.position(out.position() + values.length * Integer.BYTES);
+    }
+}
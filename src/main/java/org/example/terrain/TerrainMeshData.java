@@ -0,0 +1,286 @@
+package org.example.terrain;
+
+import org.example.engine.MeshBuilder;
+import org.example.engine.UploadRing;
+import org.example.engine.VertexCacheOptimizer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Dữ liệu mesh địa hình phía CPU (độ cao, vertices, normals, UV, indices)
+ * Có thể tạo trên worker thread, sau đó upload lên GPU ở GL thread
+ */
+public class TerrainMeshData {
+    static final int BLOCK_CELLS = 64;  // Kích thước khối (ô) dùng cho culling và index 16 bit
+    // Thuộc tính của định dạng float trong MeshBuilder
+    static final int POSITION = 0;      // x, y, z
+    static final int NORMAL = 1;        // nx, ny, nz
+    static final int TEX_COORD = 2;     // u, v
+
+    final HeightField heights; // Độ cao của các đỉnh (gridSize x gridSize)
+    final MeshBuilder mesh;    // Định dạng float: vị trí, normal, UV và index u32
+    final PackedTerrainMesh packed;  // Định dạng nén (khi đó mesh là null)
+    final float acmrBefore;          // ACMR theo thứ tự hàng
+    final float acmrAfter;           // ACMR sau khi tối ưu thứ tự (bằng acmrBefore nếu không tối ưu)
+    final int[] blockIndexOffset;    // Đoạn index của từng khối (định dạng float)
+    final int[] blockIndexCount;
+    // Dữ liệu đỉnh/index đúng định dạng GPU đọc từ cache (map từ file), null nếu vừa sinh
+    final ByteBuffer mappedVertexData;
+    final ByteBuffer mappedIndexData;
+    // Đỉnh rồi index (căn 16 byte) đã ghi sẵn vào ring upload trên worker thread, null nếu chưa ghi
+    UploadRing.Allocation staged;
+
+    private TerrainMeshData(HeightField heights, MeshBuilder mesh, PackedTerrainMesh packed,
+                            float acmrBefore, float acmrAfter, int[] blockIndexOffset, int[] blockIndexCount) {
+        this(heights, mesh, packed, acmrBefore, acmrAfter, blockIndexOffset, blockIndexCount, null, null);
+    }
+
+    private TerrainMeshData(HeightField heights, MeshBuilder mesh, PackedTerrainMesh packed,
+                            float acmrBefore, float acmrAfter, int[] blockIndexOffset, int[] blockIndexCount,
+                            ByteBuffer mappedVertexData, ByteBuffer mappedIndexData) {
+        this.heights = heights;
+        this.mesh = mesh;
+        this.packed = packed;
+        this.acmrBefore = acmrBefore;
+        this.acmrAfter = acmrAfter;
+        this.blockIndexOffset = blockIndexOffset;
+        this.blockIndexCount = blockIndexCount;
+        this.mappedVertexData = mappedVertexData;
+        this.mappedIndexData = mappedIndexData;
+    }
+
+    /**
+     * Dựng lại mesh từ dữ liệu đã lưu (cache): đỉnh/index giữ nguyên trong buffer đã map
+     * @param packed Thông tin khối của định dạng nén, null = định dạng float
+     */
+    static TerrainMeshData restore(HeightField heights, PackedTerrainMesh packed, float acmrBefore, float acmrAfter,
+                                   int[] blockIndexOffset, int[] blockIndexCount,
+                                   ByteBuffer vertexData, ByteBuffer indexData) {
+        heights.computeBlockBounds(BLOCK_CELLS);
+        return new TerrainMeshData(heights, null, packed, acmrBefore, acmrAfter,
+                                   blockIndexOffset, blockIndexCount, vertexData, indexData);
+    }
+
+    /**
+     * Số đỉnh của mesh
+     */
+    int getVertexCount() {
+        return packed != null ? packed.getVertexCount() : heights.getWidth() * heights.getDepth();
+    }
+
+    /**
+     * Số index của mesh
+     */
+    int getIndexCount() {
+        return packed != null ? packed.getIndexCount() : getIndexDataBytes() / Integer.BYTES;
+    }
+
+    /**
+     * Dung lượng dữ liệu đỉnh theo định dạng GPU (byte)
+     * - Nén: 4 byte/đỉnh xen kẽ
+     * - Float: vị trí, normal, UV nối tiếp nhau (3 đoạn trong một buffer)
+     */
+    int getVertexDataBytes() {
+        if (mappedVertexData != null) {
+            return mappedVertexData.remaining();
+        }
+        if (packed != null) {
+            return packed.getVertexBytes();
+        }
+        return mesh.getVertexBytes();
+    }
+
+    /**
+     * Dung lượng index theo định dạng GPU (byte): u16 cho định dạng nén, u32 cho float
+     */
+    int getIndexDataBytes() {
+        if (mappedIndexData != null) {
+            return mappedIndexData.remaining();
+        }
+        return packed != null ? packed.getIndexBytes() : mesh.getIndexBytes();
+    }
+
+    /**
+     * Ghi dữ liệu đỉnh theo định dạng GPU vào {@code out} (thứ tự byte của máy), tăng position
+     */
+    void writeVertexData(ByteBuffer out) {
+        ByteBuffer target = out.duplicate().order(ByteOrder.nativeOrder());
+        if (mappedVertexData != null) {
+            target.put(mappedVertexData.duplicate());
+        } else if (packed != null) {
+            for (int i = 0; i < packed.getVertexCount(); i++) {
+                target.putShort(packed.heights[i]);
+                target.put(packed.normals[i * 2]);
+                target.put(packed.normals[i * 2 + 1]);
+            }
+        } else {
+            mesh.writeVertices(target);
+        }
+        out.position(target.position());
+    }
+
+    /**
+     * Ghi index theo định dạng GPU vào {@code out} (thứ tự byte của máy), tăng position
+     */
+    void writeIndexData(ByteBuffer out) {
+        ByteBuffer target = out.duplicate().order(ByteOrder.nativeOrder());
+        if (mappedIndexData != null) {
+            target.put(mappedIndexData.duplicate());
+        } else if (packed != null) {
+            target.asShortBuffer().put(packed.indices);
+            target.position(target.position() + getIndexDataBytes());
+        } else {
+            mesh.writeIndices(target);
+        }
+        out.position(target.position());
+    }
+
+    /**
+     * Ghi sẵn đỉnh và index vào ring upload (worker thread) để GL thread chỉ còn lệnh copy.
+     * Cả hai nằm trong một vùng để worker không giữ một nửa vùng trong lúc chờ ring trống.
+     * Không làm gì nếu ring không cấp được (mesh quá lớn, thread bị ngắt).
+     */
+    void stage(UploadRing ring) {
+        UploadRing.Allocation allocation = ring.allocate(getStagedIndexOffset() + getIndexDataBytes());
+        if (allocation == null) {
+            return;
+        }
+        ByteBuffer target = allocation.data();
+        writeVertexData(target);
+        writeIndexData(target.position(getStagedIndexOffset()));
+        staged = allocation;
+    }
+
+    /**
+     * Vị trí index trong vùng đã ghi sẵn
+     */
+    int getStagedIndexOffset() {
+        return (getVertexDataBytes() + 15) & -16;
+    }
+
+    /**
+     * Trả lại vùng ring nếu mesh bị bỏ trước khi upload (GL thread)
+     */
+    void discardStaged() {
+        if (staged != null) {
+            staged.release();
+            staged = null;
+        }
+    }
+
+    /**
+     * Tạo mesh từ lưới độ cao
+     * @param paddedHeights Lưới độ cao, có thêm {@code border} ô viền mỗi phía (chỉ dùng để tính normal)
+     * @param border Số ô viền (0 = không có viền)
+     * @param gridSize Số đỉnh mỗi cạnh của mesh (không tính viền)
+     * @param originCellX Chỉ số ô lưới toàn cục của đỉnh đầu tiên theo X
+     * @param originCellZ Chỉ số ô lưới toàn cục của đỉnh đầu tiên theo Z
+     * @param uvCells Số ô lưới ứng với một chu kỳ UV (0 -> 1)
+     * @param packed true = dựng định dạng nén {@link PackedTerrainMesh}, false = 3 mảng float riêng
+     * @param pool Pool để tính normal song song, null = tuần tự
+     */
+    static TerrainMeshData build(HeightField paddedHeights, int border, int gridSize,
+                                 int originCellX, int originCellZ, float uvCells, boolean packed,
+                                 ForkJoinPool pool) {
+        float scale = paddedHeights.getScale();
+
+        // Cắt bỏ phần viền
+        HeightField heights = border == 0 ? paddedHeights : paddedHeights.crop(border);
+        float[] heightData = heights.getData();
+        heights.computeBlockBounds(BLOCK_CELLS);  // Min/max từng khối cho frustum culling
+
+        int vertexCount = gridSize * gridSize;
+        int cells = gridSize - 1;
+
+        // Tính normal vectors cho ánh sáng (dùng cả viền để liền mạch giữa các chunk);
+        // định dạng float ghi thẳng vào luồng normal của mesh
+        MeshBuilder mesh = packed ? null : new MeshBuilder(vertexCount, cells * cells * 6, 3, 3, 2);
+        float[] normals = packed ? new float[vertexCount * 3] : mesh.attribute(NORMAL).append(vertexCount);
+        NormalGenerator.compute(paddedHeights, border, gridSize, normals, null, pool);
+
+        if (packed) {
+            PackedTerrainMesh packedMesh = PackedTerrainMesh.pack(heights, normals, originCellX, originCellZ,
+                                                                  uvCells, Terrain.OPTIMIZE_INDICES);
+            return new TerrainMeshData(heights, null, packedMesh, packedMesh.acmrBefore, packedMesh.acmrAfter,
+                                       packedMesh.blockIndexOffset, packedMesh.blockIndexCount);
+        }
+
+        // Vị trí vertex và tọa độ texture (UV mapping) theo ô lưới toàn cục
+        MeshBuilder.Attribute positions = mesh.attribute(POSITION);
+        MeshBuilder.Attribute texCoords = mesh.attribute(TEX_COORD);
+        for (int z = 0; z < gridSize; z++) {
+            for (int x = 0; x < gridSize; x++) {
+                positions.put((originCellX + x) * scale, heightData[z * gridSize + x], (originCellZ + z) * scale);
+                texCoords.put((float) (originCellX + x) / uvCells, (float) (originCellZ + z) / uvCells);
+            }
+        }
+
+        // Tạo indices cho tam giác (mỗi ô vuông = 2 tam giác), xếp theo từng khối BLOCK_CELLS ô
+        // để mỗi khối là một đoạn liên tục (vẽ/culling riêng từng khối)
+        int blocksPerSide = (cells + BLOCK_CELLS - 1) / BLOCK_CELLS;
+        int[] blockIndexOffset = new int[blocksPerSide * blocksPerSide];
+        int[] blockIndexCount = new int[blocksPerSide * blocksPerSide];
+        int missesBefore = 0;
+        int missesAfter = 0;
+
+        for (int bz = 0; bz < blocksPerSide; bz++) {
+            for (int bx = 0; bx < blocksPerSide; bx++) {
+                int b = bz * blocksPerSide + bx;
+                int cellX = bx * BLOCK_CELLS;
+                int cellZ = bz * BLOCK_CELLS;
+                int width = Math.min(BLOCK_CELLS, cells - cellX) + 1;
+                int depth = Math.min(BLOCK_CELLS, cells - cellZ) + 1;
+
+                // Index cục bộ trong khối, sắp xếp lại cho vertex cache (thứ tự theo hàng bỏ phí cache)
+                int[] local = buildGridIndices(width, depth);
+                missesBefore += VertexCacheOptimizer.countCacheMisses(local, 0, local.length, width * depth,
+                                                                      VertexCacheOptimizer.DEFAULT_FIFO_SIZE);
+                if (Terrain.OPTIMIZE_INDICES) {
+                    VertexCacheOptimizer.optimize(local, width * depth);
+                }
+                missesAfter += VertexCacheOptimizer.countCacheMisses(local, 0, local.length, width * depth,
+                                                                     VertexCacheOptimizer.DEFAULT_FIFO_SIZE);
+
+                blockIndexOffset[b] = mesh.getIndexCount();
+                blockIndexCount[b] = local.length;
+                for (int index : local) {
+                    mesh.index((cellZ + index / width) * gridSize + cellX + index % width);
+                }
+            }
+        }
+        float triangles = Math.max(1, mesh.getIndexCount() / 3);
+        float acmrBefore = missesBefore / triangles;
+        float acmrAfter = missesAfter / triangles;
+
+        return new TerrainMeshData(heights, mesh, null, acmrBefore, acmrAfter, blockIndexOffset, blockIndexCount);
+    }
+
+    /**
+     * Index theo thứ tự hàng cho lưới width x depth đỉnh
+     */
+    static int[] buildGridIndices(int width, int depth) {
+        int[] indices = new int[(width - 1) * (depth - 1) * 6];
+        int pointer = 0;
+        for (int z = 0; z < depth - 1; z++) {
+            for (int x = 0; x < width - 1; x++) {
+                int topLeft = z * width + x;
+                int topRight = topLeft + 1;
+                int bottomLeft = topLeft + width;
+                int bottomRight = bottomLeft + 1;
+
+                // Tam giác 1 (trên trái)
+                indices[pointer++] = topLeft;
+                indices[pointer++] = bottomLeft;
+                indices[pointer++] = topRight;
+
+                // Tam giác 2 (dưới phải)
+                indices[pointer++] = topRight;
+                indices[pointer++] = bottomLeft;
+                indices[pointer++] = bottomRight;
+            }
+        }
+        return indices;
+    }
+}
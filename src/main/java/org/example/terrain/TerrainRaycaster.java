@@ -0,0 +1,426 @@
+package org.example.terrain;
+
+import org.joml.Vector3f;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Giao điểm tia với mặt địa hình (chọn điểm bằng chuột, kiểm tra tầm nhìn, dự đoán va chạm camera...)
+ *
+ * Dựng cây tứ phân min/max trên lưới độ cao: node lá phủ LEAF_CELLS x LEAF_CELLS ô, mỗi cấp trên gộp 4 node.
+ * Tia được cắt với hộp bao (x, z, min..max độ cao) của từng node, duyệt node con từ gần tới xa nên bỏ qua
+ * nhanh vùng trống phía trên địa hình. Trong node lá tia đi qua từng ô (DDA) và giao chính xác với 2 tam giác
+ * của ô, chia theo cùng đường chéo với mesh ({@link Terrain}, {@link CdlodTerrain}).
+ *
+ * Tọa độ tia là world space; hướng không cần chuẩn hóa, khoảng cách trả về tính theo độ dài của hướng
+ * (t: điểm chạm = origin + direction * t).
+ */
+public final class TerrainRaycaster {
+    private static final int LEAF_CELLS = 16;        // Số ô mỗi cạnh của node lá
+    private static final int RAYS_PER_TASK = 256;   // Số tia tối thiểu của một task khi chạy theo lô song song
+    private static final double MIN_DIRECTION = 1e-20;
+    private static final double EPSILON = 1e-7;
+
+    private final HeightField heights;
+    private final int cellsX;
+    private final int cellsZ;
+    private final int levels;
+    private final int[] nodesX;
+    private final int[] nodesZ;
+    private final float[][] nodeBounds;  // Theo cấp: min, max xen kẽ của từng node (cùng cache line)
+
+    // Tia dùng lại cho các truy vấn đơn (GL thread)
+    private final Ray scratch;
+
+    /**
+     * Trạng thái một tia trong không gian lưới (x, z tính theo ô, y là độ cao world)
+     * và ngăn xếp các node chờ duyệt (node gần nằm trên cùng)
+     */
+    private static final class Ray {
+        double ox, oy, oz;
+        double dx, dy, dz;
+        double invDx, invDy, invDz;
+        double maxT;
+        int nearX, nearZ;  // Node con phía gốc tia theo X/Z (0 = nửa thấp, 1 = nửa cao)
+
+        final int[] stackLevel;
+        final int[] stackX;
+        final int[] stackZ;
+        final double[] stackEnter;
+        final double[] stackExit;
+        int top;
+
+        Ray(int capacity) {
+            stackLevel = new int[capacity];
+            stackX = new int[capacity];
+            stackZ = new int[capacity];
+            stackEnter = new double[capacity];
+            stackExit = new double[capacity];
+        }
+
+        void push(int level, int x, int z, double tEnter, double tExit) {
+            stackLevel[top] = level;
+            stackX[top] = x;
+            stackZ[top] = z;
+            stackEnter[top] = tEnter;
+            stackExit[top] = tExit;
+            top++;
+        }
+    }
+
+    public TerrainRaycaster(HeightField heights) {
+        if (heights.getWidth() < 2 || heights.getDepth() < 2) {
+            throw new IllegalArgumentException("Lưới độ cao phải có ít nhất 2 x 2 đỉnh");
+        }
+        this.heights = heights;
+        this.cellsX = heights.getWidth() - 1;
+        this.cellsZ = heights.getDepth() - 1;
+
+        // Cấp trên cùng chỉ còn một node
+        int levelCount = 1;
+        while ((LEAF_CELLS << (levelCount - 1)) < Math.max(cellsX, cellsZ)) {
+            levelCount++;
+        }
+        this.levels = levelCount;
+        nodesX = new int[levels];
+        nodesZ = new int[levels];
+        nodeBounds = new float[levels][];
+        for (int level = 0; level < levels; level++) {
+            int size = LEAF_CELLS << level;
+            nodesX[level] = (cellsX + size - 1) / size;
+            nodesZ[level] = (cellsZ + size - 1) / size;
+            nodeBounds[level] = new float[nodesX[level] * nodesZ[level] * 2];
+        }
+        updateBounds(0, 0, cellsX, cellsZ);
+        scratch = newRay();
+    }
+
+    /**
+     * Cập nhật min/max của các node chứa vùng đỉnh [x0, x1] x [z0, z1] (sau khi sửa độ cao)
+     */
+    public void updateBounds(int x0, int z0, int x1, int z1) {
+        // Đỉnh trên cạnh chung thuộc cả hai node lá
+        int nx0 = Math.max(0, (x0 - 1) / LEAF_CELLS);
+        int nz0 = Math.max(0, (z0 - 1) / LEAF_CELLS);
+        int nx1 = Math.min(nodesX[0] - 1, x1 / LEAF_CELLS);
+        int nz1 = Math.min(nodesZ[0] - 1, z1 / LEAF_CELLS);
+
+        float[] data = heights.getData();
+        int width = heights.getWidth();
+        for (int nz = nz0; nz <= nz1; nz++) {
+            for (int nx = nx0; nx <= nx1; nx++) {
+                int startX = nx * LEAF_CELLS;
+                int startZ = nz * LEAF_CELLS;
+                int endX = Math.min(startX + LEAF_CELLS, cellsX);
+                int endZ = Math.min(startZ + LEAF_CELLS, cellsZ);
+                float min = Float.POSITIVE_INFINITY;
+                float max = Float.NEGATIVE_INFINITY;
+                for (int z = startZ; z <= endZ; z++) {
+                    int row = z * width;
+                    for (int x = startX; x <= endX; x++) {
+                        float h = data[row + x];
+                        min = Math.min(min, h);
+                        max = Math.max(max, h);
+                    }
+                }
+                int index = (nz * nodesX[0] + nx) * 2;
+                nodeBounds[0][index] = min;
+                nodeBounds[0][index + 1] = max;
+            }
+        }
+
+        for (int level = 1; level < levels; level++) {
+            int childNodesX = nodesX[level - 1];
+            int childNodesZ = nodesZ[level - 1];
+            float[] childBounds = nodeBounds[level - 1];
+            nx0 >>= 1;
+            nz0 >>= 1;
+            nx1 >>= 1;
+            nz1 >>= 1;
+            for (int nz = nz0; nz <= nz1; nz++) {
+                for (int nx = nx0; nx <= nx1; nx++) {
+                    float min = Float.POSITIVE_INFINITY;
+                    float max = Float.NEGATIVE_INFINITY;
+                    for (int cz = nz * 2; cz < Math.min(nz * 2 + 2, childNodesZ); cz++) {
+                        for (int cx = nx * 2; cx < Math.min(nx * 2 + 2, childNodesX); cx++) {
+                            int child = (cz * childNodesX + cx) * 2;
+                            min = Math.min(min, childBounds[child]);
+                            max = Math.max(max, childBounds[child + 1]);
+                        }
+                    }
+                    int index = (nz * nodesX[level] + nx) * 2;
+                    nodeBounds[level][index] = min;
+                    nodeBounds[level][index + 1] = max;
+                }
+            }
+        }
+    }
+
+    /**
+     * Khoảng cách tới điểm chạm đầu tiên (không an toàn đa luồng, dùng bản theo lô cho nhiều thread)
+     * @param maxDistance Khoảng cách tối đa (theo độ dài của direction)
+     * @return t >= 0, hoặc -1 nếu tia không chạm địa hình trong maxDistance
+     */
+    public float raycast(Vector3f origin, Vector3f direction, float maxDistance) {
+        return raycast(scratch, origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, maxDistance);
+    }
+
+    /**
+     * Như {@link #raycast(Vector3f, Vector3f, float)}, ghi điểm chạm vào {@code dest}
+     * @return false nếu không chạm ({@code dest} giữ nguyên)
+     */
+    public boolean raycast(Vector3f origin, Vector3f direction, float maxDistance, Vector3f dest) {
+        float t = raycast(origin, direction, maxDistance);
+        if (t < 0) {
+            return false;
+        }
+        dest.set(direction).mul(t).add(origin);
+        return true;
+    }
+
+    /**
+     * Truy vấn theo lô trên thread gọi
+     * @see #raycast(float[], float[], float, float[], ForkJoinPool)
+     */
+    public int raycast(float[] origins, float[] directions, float maxDistance, float[] outDistances) {
+        return raycast(origins, directions, maxDistance, outDistances, null);
+    }
+
+    /**
+     * Truy vấn theo lô: tia i có gốc (origins[3i], origins[3i + 1], origins[3i + 2]) và hướng tương tự trong
+     * directions; outDistances[i] = khoảng cách chạm hoặc -1. Số tia = outDistances.length.
+     * @param pool Pool chia các đoạn tia cho nhiều thread (null = tuần tự)
+     * @return Số tia chạm địa hình
+     */
+    public int raycast(float[] origins, float[] directions, float maxDistance, float[] outDistances,
+                       ForkJoinPool pool) {
+        int count = outDistances.length;
+        if (origins.length < count * 3 || directions.length < count * 3) {
+            throw new IllegalArgumentException("Mảng gốc/hướng phải có ít nhất " + count * 3 + " phần tử");
+        }
+        ParallelRows.run(pool, count, RAYS_PER_TASK, (from, to) -> {
+            Ray ray = newRay();
+            for (int i = from; i < to; i++) {
+                int j = i * 3;
+                outDistances[i] = raycast(ray, origins[j], origins[j + 1], origins[j + 2],
+                                          directions[j], directions[j + 1], directions[j + 2], maxDistance);
+            }
+        });
+        int hits = 0;
+        for (int i = 0; i < count; i++) {
+            if (outDistances[i] >= 0) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    private float raycast(Ray ray, float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+        float scale = heights.getScale();
+        ray.ox = (ox - heights.getOriginX()) / (double) scale;
+        ray.oy = oy;
+        ray.oz = (oz - heights.getOriginZ()) / (double) scale;
+        // Thành phần 0 thay bằng số rất nhỏ để phép cắt hộp không sinh NaN (0 * vô cùng)
+        ray.dx = nonZero(dx / (double) scale);
+        ray.dy = nonZero(dy);
+        ray.dz = nonZero(dz / (double) scale);
+        ray.invDx = 1 / ray.dx;
+        ray.invDy = 1 / ray.dy;
+        ray.invDz = 1 / ray.dz;
+        ray.maxT = maxDistance;
+        ray.nearX = ray.dx > 0 ? 0 : 1;
+        ray.nearZ = ray.dz > 0 ? 0 : 1;
+        return (float) traverse(ray);
+    }
+
+    private Ray newRay() {
+        // Mỗi cấp đẩy tối đa 3 node con
+        return new Ray(levels * 3 + 1);
+    }
+
+    // So sánh thường thay cho Math.min/max (không cần xử lý NaN/-0, gọi rất nhiều lần mỗi tia)
+    private static double min(double a, double b) {
+        return a < b ? a : b;
+    }
+
+    private static double max(double a, double b) {
+        return a > b ? a : b;
+    }
+
+    private static double nonZero(double value) {
+        return Math.abs(value) < MIN_DIRECTION ? MIN_DIRECTION : value;
+    }
+
+    /**
+     * Duyệt cây từ gốc theo chiều sâu, node gần trước: điểm chạm đầu tiên tìm được là điểm gần nhất
+     * @return t của điểm chạm, -1 nếu không chạm
+     */
+    private double traverse(Ray ray) {
+        // Cắt tia với hộp bao của cả lưới
+        double tx0 = -ray.ox * ray.invDx;
+        double tx1 = (cellsX - ray.ox) * ray.invDx;
+        double tz0 = -ray.oz * ray.invDz;
+        double tz1 = (cellsZ - ray.oz) * ray.invDz;
+        double tEnter = max(max(min(tx0, tx1), min(tz0, tz1)), 0);
+        double tExit = min(min(max(tx0, tx1), max(tz0, tz1)), ray.maxT);
+        ray.top = 0;
+        pushNode(ray, levels - 1, 0, 0, tEnter, tExit);
+
+        while (ray.top > 0) {
+            int top = --ray.top;
+            int level = ray.stackLevel[top];
+            int nx = ray.stackX[top];
+            int nz = ray.stackZ[top];
+            tEnter = ray.stackEnter[top];
+            tExit = ray.stackExit[top];
+
+            int size = LEAF_CELLS << level;
+            int x0 = nx * size;
+            int z0 = nz * size;
+            if (level == 0) {
+                double hit = intersectLeaf(ray, x0, z0, Math.min(x0 + size, cellsX), Math.min(z0 + size, cellsZ),
+                                           tEnter, tExit);
+                if (hit >= 0) {
+                    return hit;
+                }
+                continue;
+            }
+
+            // Tia cắt mặt phẳng giữa node theo X tại tMidX, theo Z tại tMidZ: đi qua node con gần,
+            // rồi node con bên kia mặt phẳng cắt trước, rồi node con đối diện (tối đa 3 node).
+            // Đẩy theo thứ tự xa → gần để node gần được lấy ra trước.
+            int half = size >> 1;
+            double tMidX = (x0 + half - ray.ox) * ray.invDx;
+            double tMidZ = (z0 + half - ray.oz) * ray.invDz;
+            int childLevel = level - 1;
+            int nearX = nx * 2 + ray.nearX;
+            int nearZ = nz * 2 + ray.nearZ;
+            int farX = nx * 2 + (ray.nearX ^ 1);
+            int farZ = nz * 2 + (ray.nearZ ^ 1);
+            pushNode(ray, childLevel, farX, farZ, max(tEnter, max(tMidX, tMidZ)), tExit);
+            if (tMidX < tMidZ) {
+                pushNode(ray, childLevel, farX, nearZ, max(tEnter, tMidX), min(tExit, tMidZ));
+            } else {
+                pushNode(ray, childLevel, nearX, farZ, max(tEnter, tMidZ), min(tExit, tMidX));
+            }
+            pushNode(ray, childLevel, nearX, nearZ, tEnter, min(tExit, min(tMidX, tMidZ)));
+        }
+        return -1;
+    }
+
+    /**
+     * Đẩy node vào ngăn xếp nếu tia đi qua nó trong đoạn [tEnter, tExit] (đã cắt theo X, Z)
+     * và đoạn đó giao với khoảng độ cao min..max của node
+     */
+    private void pushNode(Ray ray, int level, int nx, int nz, double tEnter, double tExit) {
+        if (tEnter > tExit || nx >= nodesX[level] || nz >= nodesZ[level]) {
+            return;
+        }
+        float[] bounds = nodeBounds[level];
+        int index = (nz * nodesX[level] + nx) * 2;
+        double ty0 = (bounds[index] - ray.oy) * ray.invDy;
+        double ty1 = (bounds[index + 1] - ray.oy) * ray.invDy;
+        tEnter = max(tEnter, min(ty0, ty1));
+        tExit = min(tExit, max(ty0, ty1));
+        if (tEnter <= tExit) {
+            ray.push(level, nx, nz, tEnter, tExit);
+        }
+    }
+
+    /**
+     * Đi qua từng ô của node lá [x0, x1) x [z0, z1) trong đoạn [tEnter, tExit] (DDA), giao với 2 tam giác mỗi ô
+     */
+    private double intersectLeaf(Ray ray, int x0, int z0, int x1, int z1, double tEnter, double tExit) {
+        int cellX = Math.max(x0, Math.min(x1 - 1, (int) Math.floor(ray.ox + ray.dx * tEnter)));
+        int cellZ = Math.max(z0, Math.min(z1 - 1, (int) Math.floor(ray.oz + ray.dz * tEnter)));
+        int stepX = ray.dx > 0 ? 1 : -1;
+        int stepZ = ray.dz > 0 ? 1 : -1;
+        double nextX = (cellX + (stepX > 0 ? 1 : 0) - ray.ox) * ray.invDx;
+        double nextZ = (cellZ + (stepZ > 0 ? 1 : 0) - ray.oz) * ray.invDz;
+        double deltaX = Math.abs(ray.invDx);
+        double deltaZ = Math.abs(ray.invDz);
+
+        float[] data = heights.getData();
+        int width = heights.getWidth();
+        double t = tEnter;
+        double y = ray.oy + ray.dy * t;
+        while (true) {
+            double tNext = min(min(nextX, nextZ), tExit);
+            double yNext = ray.oy + ray.dy * tNext;
+            // Tia nằm trên cả 4 đỉnh của ô trong suốt đoạn: bỏ qua phép giao tam giác (phần lớn các ô)
+            int index = cellZ * width + cellX;
+            double cellMax = max(max(data[index], data[index + 1]), max(data[index + width], data[index + width + 1]));
+            if (min(y, yNext) <= cellMax) {
+                double hit = intersectCell(ray, cellX, cellZ, t, tNext);
+                if (hit >= 0) {
+                    return hit;
+                }
+            }
+            if (tNext >= tExit) {
+                return -1;
+            }
+            t = tNext;
+            y = yNext;
+            if (nextX < nextZ) {
+                cellX += stepX;
+                nextX += deltaX;
+                if (cellX < x0 || cellX >= x1) {
+                    return -1;
+                }
+            } else {
+                cellZ += stepZ;
+                nextZ += deltaZ;
+                if (cellZ < z0 || cellZ >= z1) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Giao tia với 2 tam giác của ô (cellX, cellZ) trong đoạn [tFrom, tTo]: tam giác (0,0)-(0,1)-(1,0)
+     * (u + v <= 1) và (1,0)-(0,1)-(1,1) (u + v >= 1), với u, v là tọa độ trong ô
+     */
+    private double intersectCell(Ray ray, int cellX, int cellZ, double tFrom, double tTo) {
+        float[] data = heights.getData();
+        int width = heights.getWidth();
+        int index = cellZ * width + cellX;
+        double h00 = data[index];
+        double h10 = data[index + 1];
+        double h01 = data[index + width];
+        double h11 = data[index + width + 1];
+
+        double u0 = ray.ox - cellX;
+        double v0 = ray.oz - cellZ;
+        double lo = tFrom - EPSILON;
+        double hi = tTo + EPSILON;
+        double best = -1;
+
+        // Mặt phẳng tam giác h(u, v) = a + b * u + c * v; tia cắt khi oy + dy * t = h(u0 + dx * t, v0 + dz * t)
+        double b = h10 - h00;
+        double c = h01 - h00;
+        double denominator = ray.dy - b * ray.dx - c * ray.dz;
+        if (denominator != 0) {
+            double t = (h00 + b * u0 + c * v0 - ray.oy) / denominator;
+            if (t >= lo && t <= hi && (u0 + ray.dx * t) + (v0 + ray.dz * t) <= 1 + EPSILON) {
+                best = t;
+            }
+        }
+
+        b = h11 - h01;
+        c = h11 - h10;
+        denominator = ray.dy - b * ray.dx - c * ray.dz;
+        if (denominator != 0) {
+            double t = (h11 - b * (1 - u0) - c * (1 - v0) - ray.oy) / denominator;
+            if (t >= lo && t <= hi && (u0 + ray.dx * t) + (v0 + ray.dz * t) >= 1 - EPSILON
+                    && (best < 0 || t < best)) {
+                best = t;
+            }
+        }
+        return best < 0 ? -1 : Math.max(0, Math.min(best, ray.maxT));
+    }
+
+    public HeightField getHeightField() {
+        return heights;
+    }
+}
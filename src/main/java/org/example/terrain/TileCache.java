@@ -0,0 +1,221 @@
+package org.example.terrain;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Cache tile (noise, lưới độ cao...) trong bộ nhớ, giới hạn theo số byte, loại bỏ theo LRU
+ *
+ * - Khóa: (seed, tileX, tileZ, lod)
+ * - Single-flight: nhiều thread cùng yêu cầu một tile chưa có thì chỉ một thread tính,
+ *   các thread còn lại chờ đúng kết quả đó
+ * - Số liệu: hit, miss (= số lần tính), số lần chờ tile đang tính, số tile bị loại, số byte đang giữ
+ *
+ * An toàn khi gọi từ nhiều thread. Giá trị được dùng chung nên người gọi không được sửa.
+ */
+public class TileCache<V> {
+    private final long budgetBytes;
+    private final ToLongFunction<? super V> weigher;
+
+    // Truy cập trong synchronized (this). Thứ tự truy cập: đầu = lâu nhất chưa dùng
+    private final LinkedHashMap<Key, Entry<V>> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long sharedLoads;
+    private long evictions;
+
+    private static final class Key {
+        final long seed;
+        final int tileX;
+        final int tileZ;
+        final int lod;
+
+        Key(long seed, int tileX, int tileZ, int lod) {
+            this.seed = seed;
+            this.tileX = tileX;
+            this.tileZ = tileZ;
+            this.lod = lod;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && key.seed == seed && key.tileX == tileX
+                    && key.tileZ == tileZ && key.lod == lod;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = Long.hashCode(seed);
+            hash = hash * 31 + tileX;
+            hash = hash * 31 + tileZ;
+            return hash * 31 + lod;
+        }
+    }
+
+    /**
+     * Tile đang tính (weight < 0) hoặc đã có giá trị
+     */
+    private static final class Entry<V> {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        V value;
+        long weight = -1;
+    }
+
+    /**
+     * @param budgetBytes Tổng số byte tối đa của các tile được giữ
+     * @param weigher Số byte của một tile
+     */
+    public TileCache(long budgetBytes, ToLongFunction<? super V> weigher) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("budgetBytes phải > 0: " + budgetBytes);
+        }
+        this.budgetBytes = budgetBytes;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Lấy tile, tính bằng {@code loader} trên thread gọi nếu chưa có. Nếu thread khác đang tính
+     * cùng tile thì chờ kết quả của thread đó. Lỗi của loader được ném lại cho mọi thread đang chờ,
+     * tile không được lưu (lần gọi sau sẽ tính lại).
+     */
+    public V get(long seed, int tileX, int tileZ, int lod, Supplier<? extends V> loader) {
+        Key key = new Key(seed, tileX, tileZ, lod);
+        Entry<V> entry;
+        boolean owner = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry<>();
+                entries.put(key, entry);
+                misses++;
+                owner = true;
+            } else if (entry.weight >= 0) {
+                hits++;
+                return entry.value;
+            } else {
+                sharedLoads++;
+            }
+        }
+        return owner ? load(key, entry, loader) : await(entry);
+    }
+
+    /**
+     * Bỏ một tile khỏi cache (vd. khi dữ liệu nguồn thay đổi). Thread đang tính tile đó vẫn nhận kết quả,
+     * nhưng kết quả không được lưu.
+     */
+    public synchronized void invalidate(long seed, int tileX, int tileZ, int lod) {
+        Entry<V> entry = entries.remove(new Key(seed, tileX, tileZ, lod));
+        if (entry != null && entry.weight >= 0) {
+            bytes -= entry.weight;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Số lần yêu cầu trúng tile đang được thread khác tính (không tính lại)
+     */
+    public synchronized long getSharedLoadCount() {
+        return sharedLoads;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Tỉ lệ yêu cầu không phải tính (hit + chờ chung) trên tổng số yêu cầu
+     */
+    public synchronized double getHitRate() {
+        long requests = hits + sharedLoads + misses;
+        return requests == 0 ? 0 : (double) (hits + sharedLoads) / requests;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Tính tile (thread đã tạo entry), lưu lại nếu entry vẫn còn trong cache, rồi loại bớt tile cũ
+     */
+    private V load(Key key, Entry<V> entry, Supplier<? extends V> loader) {
+        V value;
+        try {
+            value = loader.get();
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                entries.remove(key, entry);
+            }
+            entry.future.completeExceptionally(e);
+            throw e;
+        }
+
+        long weight = weigher.applyAsLong(value);
+        synchronized (this) {
+            if (entries.get(key) == entry) {
+                entry.value = value;
+                entry.weight = weight;
+                bytes += weight;
+                evict();
+            }
+        }
+        entry.future.complete(value);
+        return value;
+    }
+
+    private static <V> V await(Entry<V> entry) {
+        try {
+            return entry.future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Loại tile lâu nhất chưa dùng tới khi tổng số byte không vượt ngân sách (bỏ qua tile đang tính)
+     */
+    private void evict() {
+        Iterator<Map.Entry<Key, Entry<V>>> it = entries.entrySet().iterator();
+        while (bytes > budgetBytes && it.hasNext()) {
+            Entry<V> entry = it.next().getValue();
+            if (entry.weight < 0) {
+                continue;
+            }
+            it.remove();
+            bytes -= entry.weight;
+            evictions++;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.example.terrain;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernel SIMD (JDK Vector API) cho {@link PerlinNoise#fill}
+ *
+ * Chỉ được nạp khi module jdk.incubator.vector có mặt lúc chạy.
+ * Thứ tự phép tính giống hệt nhánh vô hướng để kết quả khớp với fractalNoise.
+ */
+final class VectorNoiseKernel {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // Cùng số lane với DOUBLES (int/float chỉ cần nửa số bit)
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+    private static final VectorSpecies<Float> FLOATS =
+            VectorSpecies.of(float.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+    private static final int LANES = DOUBLES.length();
+
+    private VectorNoiseKernel() {
+    }
+
+    /**
+     * Tính các mẫu [0, n) của một hàng với n là bội số của số lane
+     * @return Số mẫu đã tính (phần còn lại do nhánh vô hướng xử lý)
+     */
+    static int fillRow(int[] p, float[] out, int offset, double x0, double step, int width,
+                       int octaves, double persistence, double maxValue,
+                       int[] rowHash, double[] rowZ, double[] rowFade) {
+        int bound = width - width % LANES;
+        if (bound == 0) {
+            return 0;
+        }
+
+        double[] laneIndex = new double[LANES];
+        for (int lane = 0; lane < LANES; lane++) {
+            laneIndex[lane] = lane;
+        }
+        DoubleVector iota = DoubleVector.fromArray(DOUBLES, laneIndex, 0);
+
+        int[] index = new int[LANES];
+        int[] hashA = new int[LANES];
+        int[] hashB = new int[LANES];
+        int[] scratch = new int[LANES];
+
+        for (int i = 0; i < bound; i += LANES) {
+            // x = x0 + i * step (cùng thứ tự phép tính với nhánh vô hướng)
+            DoubleVector x = iota.add(i).mul(step).add(x0);
+            DoubleVector total = DoubleVector.zero(DOUBLES);
+            double frequency = 1;
+            double amplitude = 1;
+
+            for (int o = 0; o < octaves; o++) {
+                DoubleVector xs = x.mul(frequency);
+
+                // floor: cắt phần thập phân rồi trừ 1 với số âm không nguyên
+                IntVector xi = (IntVector) xs.convertShape(VectorOperators.D2I, INTS, 0);
+                DoubleVector xt = (DoubleVector) xi.convertShape(VectorOperators.I2D, DOUBLES, 0);
+                VectorMask<Double> negative = xt.compare(VectorOperators.GT, xs);
+                DoubleVector xFloor = xt.sub(1.0, negative);
+                xi = xi.sub(1, negative.cast(INTS));
+
+                IntVector X = xi.and(255);
+                DoubleVector xf = xs.sub(xFloor);
+                DoubleVector u = fade(xf);
+
+                // Hash các góc (gather qua bảng hoán vị)
+                int Z = rowHash[o];
+                X.intoArray(index, 0);
+                IntVector A = IntVector.fromArray(INTS, p, 0, index, 0).add(Z);
+                IntVector B = IntVector.fromArray(INTS, p, 1, index, 0).add(Z);
+                A.intoArray(hashA, 0);
+                B.intoArray(hashB, 0);
+
+                double zf = rowZ[o];
+                double zf1 = zf - 1;
+                DoubleVector xf1 = xf.sub(1);
+
+                DoubleVector gAA = grad(gather(p, hashA, 0, scratch), xf, zf);
+                DoubleVector gBA = grad(gather(p, hashB, 0, scratch), xf1, zf);
+                DoubleVector gAB = grad(gather(p, hashA, 1, scratch), xf, zf1);
+                DoubleVector gBB = grad(gather(p, hashB, 1, scratch), xf1, zf1);
+
+                DoubleVector noise = lerp(rowFade[o], lerp(u, gAA, gBA), lerp(u, gAB, gBB));
+
+                total = total.add(noise.mul(amplitude));
+                amplitude *= persistence;
+                frequency *= 2;
+            }
+
+            // Ép về float (làm tròn giống phép ép kiểu (float) vô hướng)
+            FloatVector normalized = (FloatVector) total.div(maxValue)
+                    .convertShape(VectorOperators.D2F, FLOATS, 0);
+            normalized.intoArray(out, offset + i);
+        }
+
+        return bound;
+    }
+
+    /**
+     * p[p[hash + delta]] cho từng lane
+     */
+    private static IntVector gather(int[] p, int[] hash, int delta, int[] scratch) {
+        IntVector.fromArray(INTS, p, delta, hash, 0).intoArray(scratch, 0);
+        return IntVector.fromArray(INTS, p, 0, scratch, 0);
+    }
+
+    private static DoubleVector fade(DoubleVector t) {
+        // 6t^5 - 15t^4 + 10t^3, cùng thứ tự với PerlinNoise.fade
+        return t.mul(t).mul(t).mul(t.mul(t.mul(6).sub(15)).add(10));
+    }
+
+    private static DoubleVector lerp(DoubleVector t, DoubleVector a, DoubleVector b) {
+        return a.add(t.mul(b.sub(a)));
+    }
+
+    private static DoubleVector lerp(double t, DoubleVector a, DoubleVector b) {
+        return a.add(b.sub(a).mul(t));
+    }
+
+    /**
+     * Gradient theo 2 bit thấp của hash:
+     * 0 -> x + z, 1 và 2 -> z - x, 3 -> -(x + z) (khớp với PerlinNoise.grad)
+     */
+    private static DoubleVector grad(IntVector hash, DoubleVector x, double z) {
+        return grad(hash, x, DoubleVector.broadcast(DOUBLES, z));
+    }
+
+    private static DoubleVector grad(IntVector hash, DoubleVector x, DoubleVector z) {
+        IntVector h = hash.and(3);
+        VectorMask<Double> h0 = h.compare(VectorOperators.EQ, 0).cast(DOUBLES);
+        VectorMask<Double> h3 = h.compare(VectorOperators.EQ, 3).cast(DOUBLES);
+
+        DoubleVector sum = x.add(z);
+        DoubleVector diff = z.sub(x);
+        return diff.blend(sum, h0).blend(sum.neg(), h3);
+    }
+}
@@ -0,0 +1,75 @@
+#version 330 core
+
+// Fractal Perlin noise giống PerlinNoise.fractalNoise (CPU), mỗi texel là một đỉnh lưới
+out float height;
+
+uniform int perm[256];        // Bảng hoán vị của PerlinNoise (cùng seed)
+uniform ivec2 origin;         // Ô lưới toàn cục của texel (0, 0)
+uniform int noiseFrequency;   // Terrain.NOISE_FREQUENCY (số nguyên)
+uniform int noiseSpan;        // Số ô lưới ứng với noiseFrequency đơn vị noise
+uniform int octaves;
+uniform float persistence;
+uniform float heightScale;
+
+int hash(int i)
+{
+    return perm[i & 255];
+}
+
+float fade(float t)
+{
+    // 6t^5 - 15t^4 + 10t^3
+    return t * t * t * (t * (t * 6.0 - 15.0) + 10.0);
+}
+
+float lerpNoise(float t, float a, float b)
+{
+    // Cùng thứ tự phép tính với PerlinNoise.lerp
+    return a + t * (b - a);
+}
+
+float grad(int h, float x, float z)
+{
+    h &= 3;
+    float u = h < 2 ? x : z;
+    float v = h < 2 ? z : x;
+    return ((h & 1) == 0 ? u : -u) + ((h & 2) == 0 ? v : -v);
+}
+
+float noise(int cellX, int cellZ, float x, float z)
+{
+    int X = cellX & 255;
+    int Z = cellZ & 255;
+    float u = fade(x);
+    float v = fade(z);
+
+    int A = hash(X) + Z;
+    int AA = hash(A);
+    int AB = hash(A + 1);
+    int B = hash(X + 1) + Z;
+    int BA = hash(B);
+    int BB = hash(B + 1);
+
+    return lerpNoise(v,
+        lerpNoise(u, grad(hash(AA), x, z), grad(hash(BA), x - 1.0, z)),
+        lerpNoise(u, grad(hash(AB), x, z - 1.0), grad(hash(BB), x - 1.0, z - 1.0)));
+}
+
+void main()
+{
+    // Tọa độ noise ở octave o là g * F * 2^o / span: tách phần nguyên và phần lẻ bằng số nguyên
+    // (chính xác với mọi kích thước lưới, float chỉ dùng cho phần lẻ trong [0, 1))
+    ivec2 grid = origin + ivec2(gl_FragCoord.xy);
+    float total = 0.0;
+    float amplitude = 1.0;
+    float maxValue = 0.0;
+    for (int o = 0; o < octaves; o++) {
+        ivec2 num = (grid * noiseFrequency) << o;
+        ivec2 cell = num / noiseSpan;
+        vec2 frac = vec2(num - cell * noiseSpan) / float(noiseSpan);
+        total += noise(cell.x, cell.y, frac.x, frac.y) * amplitude;
+        maxValue += amplitude;
+        amplitude *= persistence;
+    }
+    height = total / maxValue * heightScale;
+}
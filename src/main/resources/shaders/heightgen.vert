@@ -0,0 +1,8 @@
+#version 330 core
+
+// Pass sinh heightmap: một tam giác phủ kín viewport, sinh từ gl_VertexID (không cần vertex buffer)
+void main()
+{
+    vec2 pos = vec2((gl_VertexID << 1) & 2, gl_VertexID & 2);
+    gl_Position = vec4(pos * 2.0 - 1.0, 0.0, 1.0);
+}
@@ -0,0 +1,51 @@
+#version 330 core
+
+// Input
+in vec2 TexCoord;
+in vec3 FragPos;
+flat in float Tint;
+flat in vec2 Fade;
+
+// Output
+out vec4 Color;
+
+// Uniforms
+uniform sampler2D atlas;  // Màu gốc của cây (RGB nhân sẵn alpha), alpha = độ phủ
+uniform vec3 viewPos;
+uniform vec3 lightPos;
+uniform vec3 fogColor;
+uniform float fogDensity;
+uniform float fogGradient;
+
+// Ngưỡng dither Bayer 4x4 trong (0, 1), giống tree.frag
+float bayer4(vec2 fragCoord) {
+    ivec2 p = ivec2(fragCoord) & 3;
+    int index = p.x + p.y * 4;
+    int bayer[16] = int[16](0, 8, 2, 10, 12, 4, 14, 6, 3, 11, 1, 9, 15, 7, 13, 5);
+    return (float(bayer[index]) + 0.5) / 16.0;
+}
+
+void main() {
+    vec4 texel = texture(atlas, TexCoord);
+    if (texel.a < 0.5) {
+        discard;
+    }
+    if (Fade.x < 1.0 || Fade.y < 1.0) {
+        float threshold = bayer4(gl_FragCoord.xy);
+        if (threshold < 1.0 - Fade.x || threshold >= Fade.y) {
+            discard;
+        }
+    }
+
+    // Cùng ánh sáng và fog với tree.frag
+    vec3 lightDir = normalize(lightPos - FragPos);
+    float ambient = 0.4;
+    float diffuse = max(lightDir.y, 0.0) * 0.6;
+    vec3 result = (ambient + diffuse) * texel.rgb / texel.a * Tint;
+
+    float distance = length(viewPos - FragPos);
+    float fogAmount = clamp(1.0 - exp(-pow(distance * fogDensity, fogGradient)), 0.0, 1.0);
+    result = mix(result, fogColor, fogAmount);
+
+    Color = vec4(result, 1.0);
+}
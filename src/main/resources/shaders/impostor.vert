@@ -0,0 +1,56 @@
+#version 330 core
+
+// Input
+layout (location = 0) in vec3 position;           // Góc quad (x, y trong [-1, 1])
+layout (location = 2) in vec4 instancePosHeight;  // Vị trí gốc cây (xyz), chiều cao (w)
+layout (location = 3) in vec2 instanceWidthTint;  // Độ rộng, hệ số màu
+
+// Output
+out vec2 TexCoord;   // Tọa độ trong atlas
+out vec3 FragPos;
+flat out float Tint;
+flat out vec2 Fade;  // Như tree.vert: (đang hiện dần, đang mờ dần)
+
+// Uniforms
+uniform mat4 view;
+uniform mat4 projection;
+uniform vec3 viewPos;
+uniform vec2 lodRange;
+uniform float lodFade;
+uniform ivec2 atlasFrames;     // Số khung theo góc phương vị (cột) và góc ngẩng (hàng)
+uniform float elevationStep;   // Góc ngẩng giữa hai hàng khung (radian)
+uniform vec3 impostorShape;    // Bán kính khung, độ rộng và chiều cao của cây mẫu đã nướng
+
+const float TWO_PI = 6.28318530718;
+
+void main() {
+    float distance = length(viewPos - instancePosHeight.xyz);
+    Fade.x = lodRange.x > 0.0 ? clamp((distance - lodRange.x) / lodFade + 0.5, 0.0, 1.0) : 1.0;
+    Fade.y = clamp((lodRange.y - distance) / lodFade + 0.5, 0.0, 1.0);
+    Tint = instanceWidthTint.y;
+    if (min(Fade.x, Fade.y) <= 0.0) {
+        gl_Position = vec4(2.0, 2.0, 2.0, 1.0);
+        TexCoord = vec2(0.0);
+        FragPos = instancePosHeight.xyz;
+        return;
+    }
+
+    // Khung gần nhất với hướng từ tâm cây tới camera
+    float height = instancePosHeight.w;
+    vec3 center = instancePosHeight.xyz + vec3(0.0, height * 0.5, 0.0);
+    vec3 toCamera = normalize(viewPos - center);
+    float azimuth = atan(toCamera.x, toCamera.z);
+    int column = int(mod(floor(azimuth / TWO_PI * float(atlasFrames.x) + 0.5), float(atlasFrames.x)));
+    float elevation = asin(clamp(toCamera.y, 0.0, 1.0));
+    int row = clamp(int(floor(elevation / elevationStep + 0.5)), 0, atlasFrames.y - 1);
+
+    // Quad song song mặt phẳng nhìn, co giãn theo tỉ lệ cây này / cây mẫu
+    vec3 right = vec3(view[0][0], view[1][0], view[2][0]);
+    vec3 up = vec3(view[0][1], view[1][1], view[2][1]);
+    vec2 scale = impostorShape.x * vec2(instanceWidthTint.x / impostorShape.y, height / impostorShape.z);
+    vec3 worldPos = center + right * position.x * scale.x + up * position.y * scale.y;
+
+    TexCoord = (vec2(column, row) + position.xy * 0.5 + 0.5) / vec2(atlasFrames);
+    FragPos = worldPos;
+    gl_Position = projection * view * vec4(worldPos, 1.0);
+}
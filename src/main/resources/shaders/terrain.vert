@@ -1,9 +1,11 @@
 #version 330 core
 
 // Input từ vertex buffer
-layout (location = 0) in vec3 position;  // Vị trí đỉnh (x, y, z)
+layout (location = 0) in vec3 position;  // Vị trí đỉnh (x, y, z) - chế độ LOD: chỉ số ô trong patch (x, 0, z)
 layout (location = 1) in vec3 normal;    // Vector pháp tuyến
 layout (location = 2) in vec2 texCoord;  // Tọa độ texture (u, v)
+layout (location = 3) in float packedHeight;  // Định dạng nén: độ cao u16 (0..65535)
+layout (location = 4) in vec2 packedNormal;   // Định dạng nén: normal octahedral (2 x i8)
 
 // Output cho fragment shader
 out vec3 FragPos;    // Vị trí fragment trong world space
@@ -16,19 +18,138 @@ uniform mat4 model;       // Model matrix (local -> world)
 uniform mat4 view;        // View matrix (world -> camera)
 uniform mat4 projection;  // Projection matrix (camera -> screen)
 
+// CDLOD (lodMode = 1): độ cao đọc từ heightmap, đỉnh morph theo khoảng cách tới camera
+uniform int lodMode;
+uniform vec3 viewPos;          // Vị trí camera
+uniform sampler2D heightMap;   // Độ cao (R32F), mỗi texel = một đỉnh lưới
+uniform vec2 terrainOrigin;    // Vị trí world của đỉnh (0, 0)
+uniform vec2 terrainCells;     // Số ô lưới theo X, Z
+uniform float terrainScale;    // Khoảng cách giữa các đỉnh
+uniform float uvCells;         // Số ô ứng với một chu kỳ UV
+uniform float patchCells;      // Số ô mỗi cạnh của patch
+uniform vec2 nodeOffset;       // Ô bắt đầu của node
+uniform float nodeCells;       // Số ô mỗi cạnh của node
+uniform vec2 morphRange;       // Khoảng cách bắt đầu/kết thúc morph của cấp hiện tại
+
+// Geometry clipmap (lodMode = 2): mỗi cấp một lớp heightmap, địa chỉ toroidal (wrap REPEAT)
+uniform sampler2DArray clipHeightMap;
+uniform float clipTextureSize; // Số texel mỗi cạnh của một lớp
+uniform float clipCells;       // Số ô mỗi cạnh của một cấp
+uniform int clipLevels;        // Số cấp
+uniform int clipLevel;         // Cấp đang vẽ
+uniform vec2 clipOrigin;       // Ô bắt đầu của cấp (đơn vị ô của cấp)
+
+// Mesh nén (lodMode = 3): vị trí X/Z và UV tính từ gl_VertexID
+uniform vec2 packedHeightRange; // (min, khoảng) độ cao lượng tử hóa
+uniform vec2 packedBlockOrigin; // Ô toàn cục của đỉnh đầu tiên trong khối
+uniform int packedBlockWidth;   // Số đỉnh mỗi hàng của khối
+uniform int packedBaseVertex;   // basevertex của khối (gl_VertexID đã cộng sẵn giá trị này)
+
+vec3 decodeOctahedral(vec2 p) {
+    vec3 n = vec3(p.x, 1.0 - abs(p.x) - abs(p.y), p.y);
+    if (n.y < 0.0) {
+        n.xz = (1.0 - abs(n.zx)) * vec2(n.x >= 0.0 ? 1.0 : -1.0, n.z >= 0.0 ? 1.0 : -1.0);
+    }
+    return normalize(n);
+}
+
+void packedVertex() {
+    int local = gl_VertexID - packedBaseVertex;
+    vec2 cell = packedBlockOrigin + vec2(local % packedBlockWidth, local / packedBlockWidth);
+    float height = packedHeightRange.x + packedHeight / 65535.0 * packedHeightRange.y;
+
+    FragPos = vec3(cell.x * terrainScale, height, cell.y * terrainScale);
+    Normal = decodeOctahedral(packedNormal / 127.0);
+    TexCoord = cell / uvCells;
+    Height = height;
+}
+
+float sampleClipHeight(vec2 sampleCoord, int level) {
+    return texture(clipHeightMap, vec3((sampleCoord + 0.5) / clipTextureSize, float(level))).r;
+}
+
+vec3 clipNormal(vec2 sampleCoord, int level, float spacing) {
+    float dx = sampleClipHeight(sampleCoord + vec2(1.0, 0.0), level) - sampleClipHeight(sampleCoord - vec2(1.0, 0.0), level);
+    float dz = sampleClipHeight(sampleCoord + vec2(0.0, 1.0), level) - sampleClipHeight(sampleCoord - vec2(0.0, 1.0), level);
+    return normalize(vec3(-dx, 2.0 * spacing, -dz));
+}
+
+void clipmapVertex() {
+    float cellSize = exp2(float(clipLevel));
+    vec2 sampleCoord = clipOrigin + position.xz;
+    float height = sampleClipHeight(sampleCoord, clipLevel);
+    vec3 norm = clipNormal(sampleCoord, clipLevel, cellSize * terrainScale);
+
+    // Gần biên ngoài, trộn dần sang độ cao của cấp thô hơn để khớp cạnh (không nứt, không popping)
+    if (clipLevel < clipLevels - 1) {
+        float halfCells = clipCells * 0.5;
+        vec2 fromCenter = abs(position.xz - halfCells);
+        float transition = clipCells * 0.1;
+        float alpha = clamp((max(fromCenter.x, fromCenter.y) - (halfCells - transition)) / transition, 0.0, 1.0);
+        vec2 coarseCoord = sampleCoord * 0.5;
+        height = mix(height, sampleClipHeight(coarseCoord, clipLevel + 1), alpha);
+        norm = normalize(mix(norm, clipNormal(coarseCoord, clipLevel + 1, cellSize * 2.0 * terrainScale), alpha));
+    }
+
+    vec2 cell = sampleCoord * cellSize;
+    FragPos = vec3(cell.x * terrainScale, height, cell.y * terrainScale);
+    Normal = norm;
+    TexCoord = cell / uvCells;
+    Height = height;
+}
+
+float sampleHeight(vec2 cell) {
+    return texture(heightMap, (cell + 0.5) / vec2(textureSize(heightMap, 0))).r;
+}
+
+void lodVertex() {
+    float cellsPerVertex = nodeCells / patchCells;
+    vec2 cell = min(nodeOffset + position.xz * cellsPerVertex, terrainCells);
+
+    // Hệ số morph theo khoảng cách 3D tới camera
+    vec3 worldPos = vec3(terrainOrigin.x + cell.x * terrainScale, sampleHeight(cell),
+                         terrainOrigin.y + cell.y * terrainScale);
+    float distance = length(viewPos - worldPos);
+    float morph = clamp((distance - morphRange.x) / max(morphRange.y - morphRange.x, 1e-4), 0.0, 1.0);
+
+    // Đỉnh lẻ trượt dần về đỉnh chẵn (lưới của cấp thô hơn)
+    vec2 odd = fract(position.xz * 0.5) * 2.0;
+    cell = min(nodeOffset + (position.xz - odd * morph) * cellsPerVertex, terrainCells);
+
+    float height = sampleHeight(cell);
+    FragPos = vec3(terrainOrigin.x + cell.x * terrainScale, height,
+                   terrainOrigin.y + cell.y * terrainScale);
+
+    // Normal từ sai phân trung tâm trên heightmap
+    float dx = sampleHeight(cell + vec2(1.0, 0.0)) - sampleHeight(cell - vec2(1.0, 0.0));
+    float dz = sampleHeight(cell + vec2(0.0, 1.0)) - sampleHeight(cell - vec2(0.0, 1.0));
+    Normal = normalize(vec3(-dx, 2.0 * terrainScale, -dz));
+
+    TexCoord = cell / uvCells;
+    Height = height;
+}
+
 void main() {
-    // Tính vị trí trong world space
-    FragPos = vec3(model * vec4(position, 1.0));
-    
-    // Biến đổi normal vector (loại bỏ ảnh hưởng scale/rotation)
-    Normal = mat3(transpose(inverse(model))) * normal;
-    
-    // Truyền texture coordinate
-    TexCoord = texCoord;
-    
-    // Lưu độ cao để blend texture
-    Height = position.y;
-    
+    if (lodMode == 1) {
+        lodVertex();
+    } else if (lodMode == 2) {
+        clipmapVertex();
+    } else if (lodMode == 3) {
+        packedVertex();
+    } else {
+        // Tính vị trí trong world space
+        FragPos = vec3(model * vec4(position, 1.0));
+
+        // Biến đổi normal vector (loại bỏ ảnh hưởng scale/rotation)
+        Normal = mat3(transpose(inverse(model))) * normal;
+
+        // Truyền texture coordinate
+        TexCoord = texCoord;
+
+        // Lưu độ cao để blend texture
+        Height = position.y;
+    }
+
     // Tính vị trí cuối cùng trên màn hình
     gl_Position = projection * view * vec4(FragPos, 1.0);
 }
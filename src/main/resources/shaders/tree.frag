@@ -3,6 +3,7 @@
 // Input
 in vec3 FragColor;
 in vec3 FragPos;
+flat in vec2 Fade;
 
 // Output
 out vec4 Color;
@@ -14,7 +15,23 @@ uniform vec3 fogColor;
 uniform float fogDensity;
 uniform float fogGradient;
 
+// Ngưỡng dither Bayer 4x4 trong (0, 1)
+float bayer4(vec2 fragCoord) {
+    ivec2 p = ivec2(fragCoord) & 3;
+    int index = p.x + p.y * 4;
+    int bayer[16] = int[16](0, 8, 2, 10, 12, 4, 14, 6, 3, 11, 1, 9, 15, 7, 13, 5);
+    return (float(bayer[index]) + 0.5) / 16.0;
+}
+
 void main() {
+    // Chuyển cấp LOD: cấp đang hiện dần giữ ngưỡng cao, cấp đang mờ dần giữ ngưỡng thấp -> không trùng, không hở
+    if (Fade.x < 1.0 || Fade.y < 1.0) {
+        float threshold = bayer4(gl_FragCoord.xy);
+        if (threshold < 1.0 - Fade.x || threshold >= Fade.y) {
+            discard;
+        }
+    }
+
     // Ánh sáng đơn giản
     vec3 lightDir = normalize(lightPos - FragPos);
     vec3 norm = vec3(0.0, 1.0, 0.0); // Normal đơn giản
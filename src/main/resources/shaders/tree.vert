@@ -1,20 +1,46 @@
 #version 330 core
 
 // Input
-layout (location = 0) in vec3 position;
+layout (location = 0) in vec3 position;           // Mesh nướng: vị trí world; instancing: đỉnh mesh mẫu (rộng 1, cao 1)
 layout (location = 1) in vec3 color;
+layout (location = 2) in vec4 instancePosHeight;  // Instancing: vị trí gốc cây (xyz), chiều cao (w)
+layout (location = 3) in vec2 instanceWidthTint;  // Instancing: độ rộng, hệ số màu
 
 // Output
 out vec3 FragColor;
 out vec3 FragPos;
+flat out vec2 Fade;  // Tỉ lệ giữ fragment khi chuyển cấp LOD: (đang hiện dần, đang mờ dần), 1 = giữ hết
 
 // Uniforms
 uniform mat4 model;
 uniform mat4 view;
 uniform mat4 projection;
+uniform int instanced;  // 1 = mỗi instance là một cây
+uniform vec3 viewPos;
+uniform vec2 lodRange;  // Instancing: khoảng cách [gần, xa) của cấp LOD đang vẽ (gần = 0: cấp đầu tiên)
+uniform float lodFade;  // Độ rộng dải chuyển cấp quanh mỗi biên (world)
 
 void main() {
-    FragPos = vec3(model * vec4(position, 1.0));
-    FragColor = color;
+    vec3 worldPos = position;
+    vec3 tint = color;
+    Fade = vec2(1.0);
+    if (instanced == 1) {
+        // Hai cấp kề nhau tính cùng khoảng cách tới gốc cây nên tỉ lệ giữ của chúng bù nhau trong dải chuyển
+        float distance = length(viewPos - instancePosHeight.xyz);
+        Fade.x = lodRange.x > 0.0 ? clamp((distance - lodRange.x) / lodFade + 0.5, 0.0, 1.0) : 1.0;
+        Fade.y = clamp((lodRange.y - distance) / lodFade + 0.5, 0.0, 1.0);
+        if (min(Fade.x, Fade.y) <= 0.0) {
+            // Cây thuộc cấp khác (ô vắt ngang biên): đưa ra ngoài clip space, tam giác suy biến bị bỏ
+            gl_Position = vec4(2.0, 2.0, 2.0, 1.0);
+            FragColor = color;
+            FragPos = position;
+            return;
+        }
+        float width = instanceWidthTint.x;
+        worldPos = instancePosHeight.xyz + position * vec3(width, instancePosHeight.w, width);
+        tint = color * instanceWidthTint.y;
+    }
+    FragPos = vec3(model * vec4(worldPos, 1.0));
+    FragColor = tint;
     gl_Position = projection * view * vec4(FragPos, 1.0);
 }
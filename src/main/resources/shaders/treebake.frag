@@ -0,0 +1,13 @@
+#version 330 core
+
+// Nướng atlas impostor: chỉ ghi màu gốc của mesh cây (ánh sáng và fog tính khi vẽ impostor)
+
+// Input
+in vec3 FragColor;
+
+// Output
+out vec4 Color;
+
+void main() {
+    Color = vec4(FragColor, 1.0);
+}
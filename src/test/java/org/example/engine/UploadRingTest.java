@@ -0,0 +1,178 @@
+package org.example.engine;
+
+import org.junit.jupiter.api.Test;
+import org.lwjgl.glfw.GLFWErrorCallback;
+import org.lwjgl.opengl.GL;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * Quay vòng, dùng lại vùng nhớ và chờ fence của UploadRing
+ *
+ * Các test trên ring thường chạy không cần OpenGL; test fence cần context OpenGL có
+ * ARB_buffer_storage và bị bỏ qua (skip) khi không có.
+ */
+class UploadRingTest {
+    private static final int CAPACITY = 256;
+
+    @Test
+    void wrapsToStartWhenTailDoesNotFit() {
+        UploadRing ring = new UploadRing(CAPACITY, false);
+        try {
+            UploadRing.Allocation first = ring.allocate(96);
+            UploadRing.Allocation second = ring.allocate(96);
+            assertEquals(0, first.offset());
+            assertEquals(96, second.offset());
+
+            first.release();
+            ring.endFrame();
+            // 192 + 96 > 256: bỏ 64 byte cuối, cấp từ đầu (chỗ của vùng đầu tiên đã trả)
+            UploadRing.Allocation third = ring.allocate(96);
+            assertNotNull(third);
+            assertEquals(0, third.offset());
+            assertEquals(0, ring.getWaitCount());
+        } finally {
+            ring.cleanup();
+        }
+    }
+
+    @Test
+    void glThreadReusesReleasedRegionsWhenFull() {
+        UploadRing ring = new UploadRing(CAPACITY, false);
+        try {
+            UploadRing.Allocation[] regions = new UploadRing.Allocation[CAPACITY / 64];
+            for (int i = 0; i < regions.length; i++) {
+                regions[i] = ring.allocate(64);
+                regions[i].data().putInt(0, i);
+            }
+            regions[0].release();
+            regions[1].release();
+
+            // Ring đầy: GL thread trả lại vùng cũ nhất thay vì chờ
+            UploadRing.Allocation reused = ring.allocate(64);
+            assertNotNull(reused);
+            assertEquals(0, reused.offset());
+            assertEquals(1, ring.getWaitCount());
+            assertEquals(3, regions[3].data().getInt(0), "Vùng còn đang dùng bị ghi đè");
+
+            // Vùng cũ nhất chưa trả lại (worker chưa ghi xong): GL thread không chờ chính nó
+            assertNull(ring.allocate(128));
+        } finally {
+            ring.cleanup();
+        }
+    }
+
+    @Test
+    void allocationLargerThanHalfFitsOnceRingDrains() throws Exception {
+        UploadRing ring = new UploadRing(CAPACITY, false);
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        try {
+            UploadRing.Allocation small = ring.allocate(64);
+            // Worker cần 224 byte > 256 - 64: chờ tới khi ring rỗng rồi cấp từ đầu
+            Future<UploadRing.Allocation> large = worker.submit(() -> ring.allocate(224));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (ring.getWaitCount() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(1, ring.getWaitCount(), "Worker phải chờ khi ring chưa đủ chỗ");
+            assertFalse(large.isDone());
+
+            small.release();
+            ring.endFrame();
+            UploadRing.Allocation allocation = large.get(5, TimeUnit.SECONDS);
+            assertNotNull(allocation);
+            assertEquals(0, allocation.offset());
+            assertEquals(224, allocation.size());
+
+            // Tương tự trên GL thread
+            allocation.release();
+            ring.endFrame();
+            UploadRing.Allocation again = ring.allocate(200);
+            assertNotNull(again);
+            assertEquals(0, again.offset());
+        } finally {
+            worker.shutdownNow();
+            ring.cleanup();
+        }
+    }
+
+    @Test
+    void fenceGatesReuseOfCopiedRegions() {
+        GLFWErrorCallback errorCallback = GLFWErrorCallback.createPrint(System.err).set();
+        long window = NULL;
+        try {
+            window = openHiddenWindow();
+            assumeTrue(window != NULL || Boolean.getBoolean("test.requireGl"), "Bỏ qua test GPU: không có context OpenGL");
+            assertNotEquals(NULL, window, "Không tạo được context OpenGL");
+            glfwMakeContextCurrent(window);
+            GL.createCapabilities();
+
+            UploadRing ring = new UploadRing(CAPACITY);
+            int target = glGenBuffers();
+            try {
+                assumeTrue(ring.isPersistent(), "Bỏ qua: driver không có ARB_buffer_storage");
+                glBindBuffer(GL_ARRAY_BUFFER, target);
+
+                UploadRing.Allocation first = ring.allocate(128);
+                first.data().putInt(0, 0x1234_5678);
+                first.uploadNew(GL_ARRAY_BUFFER, GL_STATIC_DRAW, 0, 128);
+                first.release();
+                UploadRing.Allocation second = ring.allocate(128);
+                second.release();
+
+                // Ring đầy: vùng đầu đã copy nên phải qua fence rồi mới được ghi đè
+                UploadRing.Allocation reused = ring.allocate(128);
+                assertNotNull(reused);
+                assertEquals(0, reused.offset());
+                reused.data().putInt(0, 0);
+
+                int[] copied = new int[1];
+                glGetBufferSubData(GL_ARRAY_BUFFER, 0, copied);
+                assertEquals(0x1234_5678, copied[0], "Buffer đích nhận dữ liệu sau khi vùng đã bị ghi đè");
+                reused.release();
+                ring.endFrame();
+            } finally {
+                glBindBuffer(GL_ARRAY_BUFFER, 0);
+                glDeleteBuffers(target);
+                ring.cleanup();
+            }
+        } finally {
+            if (window != NULL) {
+                GL.setCapabilities(null);
+                glfwDestroyWindow(window);
+            }
+            glfwTerminate();
+            errorCallback.free();
+        }
+    }
+
+    /**
+     * Cửa sổ ẩn với context OpenGL 3.3 core (giống Window), NULL nếu không tạo được
+     */
+    private static long openHiddenWindow() {
+        try {
+            if (!glfwInit()) {
+                return NULL;
+            }
+            glfwDefaultWindowHints();
+            glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+            glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 3);
+            glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 3);
+            glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE);
+            glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GLFW_TRUE);
+            return glfwCreateWindow(64, 64, "UploadRingTest", NULL, NULL);
+        } catch (Throwable e) {
+            // Thiếu native GLFW, sai thread (macOS)...
+            return NULL;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.example.graphics;
+
+import org.example.terrain.HeightProvider;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Khoảng cách tối thiểu giữa mọi cặp điểm (kể cả hai bên biên tile) và kết quả chỉ phụ thuộc seed
+ *
+ * Vùng 230 x 170 với radius 1.5 chia thành 5 x 4 tile (tile cuối lẻ), mỗi bản ghi gồm x, y, z
+ * và một số ngẫu nhiên lấy từ bộ sinh của tile.
+ */
+class PoissonDiskSamplerTest {
+    private static final float MIN_X = -100.0f;
+    private static final float MAX_X = 130.0f;
+    private static final float MIN_Z = -20.0f;
+    private static final float MAX_Z = 150.0f;
+    private static final float RADIUS = 1.5f;
+    private static final int STRIDE = 4;
+
+    // Địa hình dạng sóng: độ cao và độ dốc thay đổi để bộ lọc có tác dụng
+    private static final HeightProvider TERRAIN = (x, z) -> (float) (5 * Math.sin(x * 0.05) * Math.cos(z * 0.07));
+    private static final PoissonDiskSampler.InstanceWriter WRITER = (data, offset, x, y, z, random) -> {
+        data[offset] = x;
+        data[offset + 1] = y;
+        data[offset + 2] = z;
+        data[offset + 3] = random.nextFloat();
+    };
+
+    @Test
+    void minimumDistanceHoldsAcrossTileBorders() {
+        PoissonDiskSampler.Result result = sampler(42).sample(TERRAIN, (height, slope) -> true, STRIDE, WRITER,
+                                                                 new ForkJoinPool(4));
+        float[] data = result.getData();
+        int count = result.getCount();
+        assertEquals(result.getCandidateCount(), count, "Bộ lọc nhận hết thì không được bỏ điểm nào");
+        assertTrue(count > 1000, "Quá ít điểm: " + count);
+
+        // Băm điểm vào ô cạnh RADIUS: cặp gần hơn RADIUS chỉ có thể nằm trong 3 x 3 ô lân cận
+        int cellsX = (int) Math.ceil((MAX_X - MIN_X) / RADIUS);
+        int cellsZ = (int) Math.ceil((MAX_Z - MIN_Z) / RADIUS);
+        int[][] buckets = new int[cellsX * cellsZ][];
+        for (int i = 0; i < count; i++) {
+            float x = data[i * STRIDE];
+            float z = data[i * STRIDE + 2];
+            assertTrue(x >= MIN_X && x < MAX_X && z >= MIN_Z && z < MAX_Z, "Điểm ngoài vùng: " + x + ", " + z);
+            int cell = cell(z, MIN_Z) * cellsX + cell(x, MIN_X);
+            int[] bucket = buckets[cell] == null ? new int[0] : buckets[cell];
+            bucket = Arrays.copyOf(bucket, bucket.length + 1);
+            bucket[bucket.length - 1] = i;
+            buckets[cell] = bucket;
+        }
+
+        int closePairsChecked = 0;
+        for (int i = 0; i < count; i++) {
+            float x = data[i * STRIDE];
+            float z = data[i * STRIDE + 2];
+            int cx = cell(x, MIN_X);
+            int cz = cell(z, MIN_Z);
+            for (int gz = Math.max(0, cz - 1); gz <= Math.min(cellsZ - 1, cz + 1); gz++) {
+                for (int gx = Math.max(0, cx - 1); gx <= Math.min(cellsX - 1, cx + 1); gx++) {
+                    int[] bucket = buckets[gz * cellsX + gx];
+                    if (bucket == null) {
+                        continue;
+                    }
+                    for (int j : bucket) {
+                        if (j <= i) {
+                            continue;
+                        }
+                        float dx = data[j * STRIDE] - x;
+                        float dz = data[j * STRIDE + 2] - z;
+                        float distanceSquared = dx * dx + dz * dz;
+                        assertTrue(distanceSquared >= RADIUS * RADIUS,
+                                   "Điểm " + i + " và " + j + " cách nhau " + Math.sqrt(distanceSquared));
+                        if (distanceSquared < 4 * RADIUS * RADIUS) {
+                            closePairsChecked++;
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue(closePairsChecked > count, "Phân bố phải dày (đa số điểm có láng giềng trong 2 * radius)");
+    }
+
+    @Test
+    void tileBordersAreCovered() {
+        // Không có khe dọc biên tile: hầu như mọi vị trí đều có điểm trong vòng 2 * radius
+        PoissonDiskSampler.Result result = sampler(7).sample(TERRAIN, (height, slope) -> true, STRIDE, WRITER, null);
+        float[] data = result.getData();
+        int cellsX = (int) Math.ceil((MAX_X - MIN_X) / RADIUS);
+        int cellsZ = (int) Math.ceil((MAX_Z - MIN_Z) / RADIUS);
+        boolean[] covered = new boolean[cellsX * cellsZ];
+        for (int i = 0; i < result.getCount(); i++) {
+            // Đánh dấu các ô có tâm nằm trong 2 * radius của điểm
+            float x = data[i * STRIDE];
+            float z = data[i * STRIDE + 2];
+            for (int gz = Math.max(0, cell(z, MIN_Z) - 2); gz <= Math.min(cellsZ - 1, cell(z, MIN_Z) + 2); gz++) {
+                for (int gx = Math.max(0, cell(x, MIN_X) - 2); gx <= Math.min(cellsX - 1, cell(x, MIN_X) + 2); gx++) {
+                    float dx = MIN_X + (gx + 0.5f) * RADIUS - x;
+                    float dz = MIN_Z + (gz + 0.5f) * RADIUS - z;
+                    if (dx * dx + dz * dz <= 4 * RADIUS * RADIUS) {
+                        covered[gz * cellsX + gx] = true;
+                    }
+                }
+            }
+        }
+        int uncovered = 0;
+        for (boolean cell : covered) {
+            if (!cell) {
+                uncovered++;
+            }
+        }
+        assertTrue(uncovered <= covered.length / 1000, "Số ô không có điểm trong 2 * radius: " + uncovered);
+    }
+
+    @Test
+    void resultDependsOnlyOnSeed() {
+        PoissonDiskSampler.Filter filter = (height, slope) -> height > -2.0f && slope < 0.3f;
+        PoissonDiskSampler.Result serial = sampler(1234).sample(TERRAIN, filter, STRIDE, WRITER, null);
+        assertTrue(serial.getCount() < serial.getCandidateCount(), "Bộ lọc phải loại bớt điểm");
+
+        for (int threads : new int[] {1, 2, 3, 8}) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                PoissonDiskSampler.Result parallel = sampler(1234).sample(TERRAIN, filter, STRIDE, WRITER, pool);
+                assertEquals(serial.getCount(), parallel.getCount(), threads + " thread");
+                assertEquals(serial.getCandidateCount(), parallel.getCandidateCount(), threads + " thread");
+                assertArrayEquals(serial.getData(), parallel.getData(), threads + " thread");
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        PoissonDiskSampler.Result other = sampler(1235).sample(TERRAIN, filter, STRIDE, WRITER, null);
+        assertFalse(Arrays.equals(serial.getData(), other.getData()), "Seed khác phải cho kết quả khác");
+    }
+
+    private static PoissonDiskSampler sampler(long seed) {
+        return new PoissonDiskSampler(MIN_X, MAX_X, MIN_Z, MAX_Z, RADIUS, seed);
+    }
+
+    private static int cell(float coordinate, float min) {
+        return (int) ((coordinate - min) / RADIUS);
+    }
+}
@@ -0,0 +1,144 @@
+package org.example.terrain;
+
+import org.example.engine.ShaderProgram;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.glfw.GLFWErrorCallback;
+import org.lwjgl.opengl.GL;
+
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.glDeleteTextures;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * So sánh độ cao sinh trên GPU (heightgen.frag) với CPU (HeightGenerator) trong một context OpenGL ẩn
+ *
+ * Bỏ qua (skip) khi không tạo được context OpenGL 3.3 core, ví dụ máy không có display/driver.
+ * Chạy với -Dtest.requireGl=true để coi trường hợp đó là lỗi (CI chạy bằng Mesa llvmpipe qua Xvfb).
+ */
+class GpuHeightGeneratorTest {
+    private static final float HEIGHT_SCALE = 30.0f;
+    private static final float SCALE = 2.0f;
+    private static final int NOISE_SPAN = 200;
+    private static final int SAMPLES = 4096;
+    private static final float TOLERANCE = 1e-3f * HEIGHT_SCALE;  // Cùng ngưỡng với Main
+
+    private static String unavailable;  // Lý do không có context OpenGL (null = có)
+    private static long window = NULL;
+    private static GLFWErrorCallback errorCallback;
+    private static ShaderProgram shader;
+    private static GpuHeightGenerator generator;
+
+    @BeforeAll
+    static void createContext() throws Exception {
+        unavailable = openHiddenContext();
+        if (unavailable != null) {
+            if (Boolean.getBoolean("test.requireGl")) {
+                throw new IllegalStateException("Không tạo được context OpenGL: " + unavailable);
+            }
+            return;
+        }
+
+        shader = new ShaderProgram();
+        shader.createVertexShader(loadResource("/shaders/heightgen.vert"));
+        shader.createFragmentShader(loadResource("/shaders/heightgen.frag"));
+        shader.link();
+        generator = new GpuHeightGenerator(shader);
+    }
+
+    /**
+     * Tạo cửa sổ ẩn với context OpenGL 3.3 core (giống Window)
+     * @return null nếu thành công, lý do nếu không tạo được
+     */
+    private static String openHiddenContext() {
+        try {
+            errorCallback = GLFWErrorCallback.createPrint(System.err).set();
+            if (!glfwInit()) {
+                return "glfwInit thất bại";
+            }
+            glfwDefaultWindowHints();
+            glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+            glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 3);
+            glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 3);
+            glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE);
+            glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GLFW_TRUE);
+            window = glfwCreateWindow(64, 64, "GpuHeightGeneratorTest", NULL, NULL);
+            if (window == NULL) {
+                return "không tạo được cửa sổ OpenGL 3.3 core";
+            }
+            glfwMakeContextCurrent(window);
+            GL.createCapabilities();
+            return null;
+        } catch (Throwable e) {
+            // Thiếu native GLFW, sai thread (macOS)...
+            return e.toString();
+        }
+    }
+
+    @BeforeEach
+    void requireContext() {
+        assumeTrue(unavailable == null, () -> "Bỏ qua test GPU: " + unavailable);
+    }
+
+    @AfterAll
+    static void destroyContext() {
+        if (generator != null) {
+            generator.cleanup();
+        }
+        if (shader != null) {
+            shader.cleanup();
+        }
+        if (window != NULL) {
+            GL.setCapabilities(null);
+            glfwDestroyWindow(window);
+            window = NULL;
+        }
+        if (errorCallback != null) {
+            glfwTerminate();
+            errorCallback.free();
+            errorCallback = null;
+        }
+    }
+
+    @Test
+    void matchesCpuFromOrigin() {
+        assertGpuMatchesCpu(new PerlinNoise(42), 0, 0, 200);
+    }
+
+    @Test
+    void matchesCpuWithOffsetAcrossReadbackBands() {
+        // Hơn 256 hàng: đọc về bằng 2 dải qua 2 PBO
+        assertGpuMatchesCpu(new PerlinNoise(7), 40, 17, 300);
+    }
+
+    private static void assertGpuMatchesCpu(NoiseSource noise, int startX, int startZ, int size) {
+        GpuHeightGenerator.Result result = generator.generate(noise, startX, startZ, size, NOISE_SPAN,
+                                                              HEIGHT_SCALE, SCALE);
+        try {
+            HeightField heights = result.getHeights();
+            assertEquals(size, heights.getWidth());
+            assertEquals(size, heights.getDepth());
+            float error = GpuHeightGenerator.verify(noise, heights, startX, startZ, NOISE_SPAN, HEIGHT_SCALE,
+                                                    SAMPLES, 1234);
+            assertTrue(error <= TOLERANCE, "GPU lệch " + error + " > " + TOLERANCE);
+        } finally {
+            glDeleteTextures(result.getTextureId());
+        }
+    }
+
+    private static String loadResource(String path) throws Exception {
+        try (InputStream is = GpuHeightGeneratorTest.class.getResourceAsStream(path)) {
+            if (is == null) {
+                throw new Exception("Không tìm thấy file: " + path);
+            }
+            return new String(is.readAllBytes());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.example.terrain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Sinh song song phải giống hệt từng bit với sinh tuần tự, và sampleHeight giống hệt mẫu tương ứng của lưới
+ */
+class HeightGeneratorTest {
+    private static final int SIZE = 257;
+    private static final int NOISE_SPAN = 200;
+    private static final float HEIGHT_SCALE = 30.0f;
+    private static final float SCALE = 2.0f;
+
+    @Test
+    void parallelMatchesSerialBitForBit() {
+        HeightGenerator parallel = new HeightGenerator(8);
+        try {
+            for (NoiseSource.Type type : NoiseSource.Type.values()) {
+                NoiseSource noise = type.create(42);
+                float[] expected = HeightGenerator.serial()
+                        .generate(noise, -37, 113, SIZE, NOISE_SPAN, HEIGHT_SCALE, SCALE).getData();
+                float[] actual = parallel
+                        .generate(noise, -37, 113, SIZE, NOISE_SPAN, HEIGHT_SCALE, SCALE).getData();
+                assertArrayEquals(expected, actual, "Noise " + type);
+            }
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    void sampleHeightMatchesGeneratedGrid() {
+        for (NoiseSource.Type type : NoiseSource.Type.values()) {
+            NoiseSource noise = type.create(7);
+            int startX = -1001;
+            int startZ = 64;
+            float[] data = HeightGenerator.serial()
+                    .generate(noise, startX, startZ, SIZE, NOISE_SPAN, HEIGHT_SCALE, SCALE).getData();
+            for (int z = 0; z < SIZE; z += 3) {
+                for (int x = 0; x < SIZE; x++) {
+                    float expected = data[z * SIZE + x];
+                    float actual = HeightGenerator.sampleHeight(noise, startX, startZ, x, z, NOISE_SPAN, HEIGHT_SCALE);
+                    assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(actual),
+                                 "Noise " + type + " tại (" + x + ", " + z + ")");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.terrain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * fill (nhánh SIMD của PerlinNoise và nhánh vô hướng mặc định) phải khớp với fractalNoise tại từng mẫu
+ *
+ * Surefire chạy test với --add-modules jdk.incubator.vector nên PerlinNoise.fill đi qua VectorNoiseKernel.
+ */
+class NoiseFillTest {
+    private static final double TOLERANCE = 1e-6;  // Như javadoc của PerlinNoise.fill
+
+    @Test
+    void vectorKernelIsEnabledUnderSurefire() {
+        assertTrue(PerlinNoise.VECTOR_ENABLED,
+                   "Cần chạy test với --add-modules jdk.incubator.vector (argLine của Surefire)");
+    }
+
+    @Test
+    void perlinFillMatchesFractalNoise() {
+        assertFillMatches(new PerlinNoise(42));
+    }
+
+    @Test
+    void simplexFillMatchesFractalNoise() {
+        assertFillMatches(new SimplexNoise(42));
+    }
+
+    private static void assertFillMatches(NoiseSource noise) {
+        // Độ rộng không chia hết cho số lane để đi qua cả phần dư vô hướng; tọa độ âm và qua biên bảng 256
+        int width = 67;
+        int height = 9;
+        double[][] grids = {
+            {0.0, 0.0, 5.0 / 200},
+            {-13.37, 250.5, 0.0731},
+            {1234.5, -987.25, 1.0 / 3},
+        };
+        for (double[] grid : grids) {
+            for (int octaves : new int[] {1, Terrain.NOISE_OCTAVES}) {
+                float[] out = new float[3 + width * height];
+                noise.fill(out, 3, grid[0], grid[1], grid[2], width, height, octaves, Terrain.NOISE_PERSISTENCE);
+                for (int j = 0; j < height; j++) {
+                    for (int i = 0; i < width; i++) {
+                        double expected = noise.fractalNoise(grid[0] + i * grid[2], grid[1] + j * grid[2],
+                                                             octaves, Terrain.NOISE_PERSISTENCE);
+                        assertEquals(expected, out[3 + j * width + i], TOLERANCE,
+                                     noise.getType() + " mẫu (" + i + ", " + j + ") của lưới x0 = " + grid[0]);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.terrain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Graph đã biên dịch (MethodHandle + hidden class, kể cả nhánh gộp tầng) phải cho kết quả giống hệt
+ * từng bit với duyệt cây bằng evaluate()
+ */
+class NoiseGraphTest {
+    private static final int GRID = 48;
+    private static final double X0 = -37.3;
+    private static final double Z0 = 11.9;
+    private static final double STEP = 0.731;
+
+    private static NoiseGraph[] graphs() {
+        return new NoiseGraph[] {
+            NoiseGraph.constant(0.25),
+            NoiseGraph.fbm(6, 0.5),
+            NoiseGraph.ridged(4, 0.6).frequency(1.7),
+            NoiseGraph.billow(3, 0.45).add(-0.1).mul(1.5),
+            // Chuỗi cộng các tầng: nhánh gộp octave (2, 3 và 4 tầng, có hằng số và hệ số nhân)
+            NoiseGraph.fbm(4, 0.5).add(NoiseGraph.ridged(3, 0.5).mul(0.5)),
+            NoiseGraph.constant(0.2).add(NoiseGraph.fbm(5, 0.55)).add(NoiseGraph.billow(2, 0.5).mul(0.3))
+                    .add(NoiseGraph.ridged(6, 0.4)),
+            NoiseGraph.fbm(1, 0.5).add(NoiseGraph.fbm(2, 0.5)).add(NoiseGraph.ridged(3, 0.5))
+                    .add(NoiseGraph.billow(4, 0.5).mul(0.25)),
+            // 5 tầng: vượt MAX_FUSED_LAYERS, quay về cây thường
+            NoiseGraph.fbm(2, 0.5).add(NoiseGraph.fbm(2, 0.5)).add(NoiseGraph.fbm(2, 0.5))
+                    .add(NoiseGraph.fbm(2, 0.5)).add(NoiseGraph.fbm(2, 0.5)),
+            NoiseGraph.billow(3, 0.5).mul(NoiseGraph.fbm(2, 0.5)).frequency(2),
+            NoiseGraph.ridged(2, 0.5).curve(new double[] {0, 1}, new double[] {1, 0}).clamp(0, 0.8),
+            NoiseGraph.constant(0.2).add(NoiseGraph.fbm(3, 0.5).warp(NoiseGraph.constant(0.1),
+                                                                      NoiseGraph.ridged(1, 0.5), 1)),
+            NoiseGraph.fbm(4, 0.5)
+                    .add(NoiseGraph.ridged(3, 0.5).mul(0.5))
+                    .warp(NoiseGraph.fbm(2, 0.5).frequency(0.5), NoiseGraph.billow(2, 0.5).frequency(0.5), 0.4)
+                    .clamp(-1, 1)
+                    .curve(new double[] {-1, 0, 0.5, 1}, new double[] {-1, -0.2, 0.3, 1}),
+        };
+    }
+
+    @Test
+    void compiledSampleMatchesInterpreted() {
+        for (NoiseSource.Type type : NoiseSource.Type.values()) {
+            NoiseSource noise = type.create(42);
+            NoiseGraph[] graphs = graphs();
+            for (int g = 0; g < graphs.length; g++) {
+                NoiseFunction compiled = graphs[g].compile(noise);
+                for (int j = 0; j < GRID; j++) {
+                    for (int i = 0; i < GRID; i++) {
+                        double x = X0 + i * STEP;
+                        double z = Z0 + j * STEP;
+                        double expected = graphs[g].evaluate(noise, x, z);
+                        double actual = compiled.sample(x, z);
+                        assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(actual),
+                                     "Noise " + type + ", graph " + g + " tại (" + x + ", " + z + "): "
+                                     + expected + " != " + actual);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void compiledFillMatchesInterpreted() {
+        int offset = 5;
+        for (NoiseSource.Type type : NoiseSource.Type.values()) {
+            NoiseSource noise = type.create(7);
+            NoiseGraph[] graphs = graphs();
+            for (int g = 0; g < graphs.length; g++) {
+                float[] out = new float[offset + GRID * GRID];
+                graphs[g].compile(noise).fill(out, offset, X0, Z0, STEP, GRID, GRID);
+                for (int j = 0; j < GRID; j++) {
+                    for (int i = 0; i < GRID; i++) {
+                        float expected = (float) graphs[g].evaluate(noise, X0 + i * STEP, Z0 + j * STEP);
+                        assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(out[offset + j * GRID + i]),
+                                     "Noise " + type + ", graph " + g + " tại ô (" + i + ", " + j + ")");
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.example.terrain;
+
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * So sánh NormalGenerator với cách tính normal cũ (tích có hướng của các cạnh tam giác)
+ * trên các lưới độ cao trơn
+ *
+ * Normal cũ hướng xuống đất (y < 0) nên được đảo dấu trước khi so sánh; chỉ so các đỉnh
+ * bên trong, vì ở biên cách cũ thiếu tam giác (và cho NaN ở hai góc).
+ */
+class NormalGeneratorTest {
+    private static final int GRID_SIZE = 129;
+    private static final float SCALE = 2.0f;
+    private static final double MAX_ANGLE = Math.toRadians(0.1);  // Sai lệch góc cho phép
+
+    @Test
+    void planeMatchesCrossProductNormals() {
+        HeightField heights = createHeights((x, z) -> 0.3f * x - 0.2f * z + 5.0f);
+        assertMatchesReference(heights);
+    }
+
+    @Test
+    void lowFrequencySineMatchesCrossProductNormals() {
+        // Bước sóng 64 ô lưới theo X, 80 ô theo Z
+        HeightField heights = createHeights((x, z) ->
+            (float) (12.0 * Math.sin(x * 2 * Math.PI / (64 * SCALE)) * Math.cos(z * 2 * Math.PI / (80 * SCALE))));
+        assertMatchesReference(heights);
+    }
+
+    @Test
+    void tangentsAreUnitAndOrthogonalToNormals() {
+        HeightField heights = createHeights((x, z) ->
+            (float) (12.0 * Math.sin(x * 2 * Math.PI / (64 * SCALE)) * Math.cos(z * 2 * Math.PI / (80 * SCALE))));
+        float[] normals = new float[GRID_SIZE * GRID_SIZE * 3];
+        float[] tangents = new float[GRID_SIZE * GRID_SIZE * 3];
+        NormalGenerator.compute(heights, 0, GRID_SIZE, normals, tangents, null);
+
+        for (int i = 0; i < normals.length; i += 3) {
+            float length = (float) Math.sqrt(tangents[i] * tangents[i] + tangents[i + 1] * tangents[i + 1]
+                                             + tangents[i + 2] * tangents[i + 2]);
+            float dot = normals[i] * tangents[i] + normals[i + 1] * tangents[i + 1] + normals[i + 2] * tangents[i + 2];
+            assertEquals(1.0f, length, 1e-5f, "Tangent không đơn vị tại đỉnh " + i / 3);
+            assertEquals(0.0f, dot, 1e-5f, "Tangent không vuông góc với normal tại đỉnh " + i / 3);
+        }
+    }
+
+    private interface HeightFunction {
+        float height(float x, float z);
+    }
+
+    private static HeightField createHeights(HeightFunction function) {
+        HeightField heights = new HeightField(GRID_SIZE, GRID_SIZE, SCALE, 0, 0);
+        float[] data = heights.getData();
+        for (int z = 0; z < GRID_SIZE; z++) {
+            for (int x = 0; x < GRID_SIZE; x++) {
+                data[z * GRID_SIZE + x] = function.height(x * SCALE, z * SCALE);
+            }
+        }
+        return heights;
+    }
+
+    private static void assertMatchesReference(HeightField heights) {
+        float[] normals = new float[GRID_SIZE * GRID_SIZE * 3];
+        NormalGenerator.compute(heights, 0, GRID_SIZE, normals, null, null);
+        float[] expected = crossProductNormals(heights);
+
+        for (int z = 1; z < GRID_SIZE - 1; z++) {
+            for (int x = 1; x < GRID_SIZE - 1; x++) {
+                int index = (z * GRID_SIZE + x) * 3;
+                assertTrue(normals[index + 1] > 0, "Normal phải hướng lên tại (" + x + ", " + z + ")");
+                double dot = -(normals[index] * expected[index] + normals[index + 1] * expected[index + 1]
+                               + normals[index + 2] * expected[index + 2]);
+                double angle = Math.acos(Math.min(dot, 1.0));
+                assertTrue(angle <= MAX_ANGLE, "Lệch " + Math.toDegrees(angle) + " độ tại (" + x + ", " + z + ")");
+            }
+        }
+    }
+
+    /**
+     * Cách tính cũ của TerrainMeshData.calculateNormals: cộng tích có hướng của
+     * tam giác (trái, trên) và (phải, dưới) quanh mỗi đỉnh
+     */
+    private static float[] crossProductNormals(HeightField heights) {
+        float[] data = heights.getData();
+        float scale = heights.getScale();
+        float[] normals = new float[GRID_SIZE * GRID_SIZE * 3];
+        for (int z = 0; z < GRID_SIZE; z++) {
+            for (int x = 0; x < GRID_SIZE; x++) {
+                Vector3f normal = new Vector3f();
+                Vector3f v0 = vertex(data, scale, x, z);
+
+                if (x > 0 && z > 0) {
+                    Vector3f edge1 = vertex(data, scale, x - 1, z).sub(v0);
+                    Vector3f edge2 = vertex(data, scale, x, z - 1).sub(v0);
+                    normal.add(edge1.cross(edge2));
+                }
+
+                if (x < GRID_SIZE - 1 && z < GRID_SIZE - 1) {
+                    Vector3f edge1 = vertex(data, scale, x + 1, z).sub(v0);
+                    Vector3f edge2 = vertex(data, scale, x, z + 1).sub(v0);
+                    normal.add(edge1.cross(edge2));
+                }
+
+                normal.normalize();
+                int index = (z * GRID_SIZE + x) * 3;
+                normals[index] = normal.x;
+                normals[index + 1] = normal.y;
+                normals[index + 2] = normal.z;
+            }
+        }
+        return normals;
+    }
+
+    private static Vector3f vertex(float[] data, float scale, int x, int z) {
+        return new Vector3f(x * scale, data[z * GRID_SIZE + x], z * scale);
+    }
+}
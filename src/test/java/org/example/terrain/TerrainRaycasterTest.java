@@ -0,0 +1,176 @@
+package org.example.terrain;
+
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * So sánh TerrainRaycaster (cây min/max + DDA) với cách vét cạn: giao tia với mọi tam giác của lưới
+ *
+ * Lưới 150 x 130 đỉnh không chia hết cho kích thước node lá nên có cả node lẻ ở biên.
+ */
+class TerrainRaycasterTest {
+    private static final int NOISE_SPAN = 60;
+    private static final float HEIGHT_SCALE = 30.0f;
+    private static final float SCALE = 2.0f;
+    private static final int RAYS = 2000;
+    private static final float MAX_DISTANCE = 1000.0f;
+    private static final double TOLERANCE = 1e-3;  // Sai lệch t cho phép (tương đối theo độ dài tia)
+
+    @Test
+    void matchesBruteForceOverAllTriangles() {
+        HeightField heights = createHeights();
+        TerrainRaycaster raycaster = new TerrainRaycaster(heights);
+        Random random = new Random(1234);
+
+        int hits = 0;
+        for (int i = 0; i < RAYS; i++) {
+            Vector3f origin = new Vector3f();
+            Vector3f direction = new Vector3f();
+            randomRay(heights, random, i, origin, direction);
+
+            double expected = bruteForce(heights, origin, direction, MAX_DISTANCE);
+            float actual = raycaster.raycast(origin, direction, MAX_DISTANCE);
+            String ray = "tia " + i + " gốc " + origin + " hướng " + direction;
+            if (expected < 0) {
+                assertEquals(-1.0f, actual, ray + ": không được chạm, nhận t = " + actual);
+            } else {
+                hits++;
+                assertTrue(actual >= 0, ray + ": phải chạm tại t = " + expected);
+                assertEquals(expected, actual, TOLERANCE * Math.max(1, expected), ray);
+            }
+        }
+        // Kịch bản phải có đủ cả tia chạm và tia trượt
+        assertTrue(hits > RAYS / 4 && hits < RAYS * 3 / 4, "Số tia chạm: " + hits);
+    }
+
+    @Test
+    void batchMatchesSingleQueries() {
+        HeightField heights = createHeights();
+        TerrainRaycaster raycaster = new TerrainRaycaster(heights);
+        Random random = new Random(99);
+        float[] origins = new float[RAYS * 3];
+        float[] directions = new float[RAYS * 3];
+        float[] expected = new float[RAYS];
+        Vector3f origin = new Vector3f();
+        Vector3f direction = new Vector3f();
+        for (int i = 0; i < RAYS; i++) {
+            randomRay(heights, random, i, origin, direction);
+            origins[i * 3] = origin.x;
+            origins[i * 3 + 1] = origin.y;
+            origins[i * 3 + 2] = origin.z;
+            directions[i * 3] = direction.x;
+            directions[i * 3 + 1] = direction.y;
+            directions[i * 3 + 2] = direction.z;
+            expected[i] = raycaster.raycast(origin, direction, MAX_DISTANCE);
+        }
+
+        float[] serial = new float[RAYS];
+        float[] parallel = new float[RAYS];
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            int serialHits = raycaster.raycast(origins, directions, MAX_DISTANCE, serial);
+            int parallelHits = raycaster.raycast(origins, directions, MAX_DISTANCE, parallel, pool);
+            assertArrayEquals(expected, serial);
+            assertArrayEquals(expected, parallel);
+            assertEquals(serialHits, parallelHits);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static HeightField createHeights() {
+        // Lưới vuông từ HeightGenerator, cắt thành 150 x 130 và dời gốc để kiểm tra cả originX/originZ
+        HeightField square = HeightGenerator.serial()
+                .generate(new PerlinNoise(42), -40, 25, 150, NOISE_SPAN, HEIGHT_SCALE, SCALE);
+        int width = 150;
+        int depth = 130;
+        float[] data = new float[width * depth];
+        System.arraycopy(square.getData(), 0, data, 0, data.length);
+        return new HeightField(width, depth, SCALE, square.getOriginX(), square.getOriginZ(), data);
+    }
+
+    /**
+     * Tia ngẫu nhiên: gốc phía trên địa hình (có khi ngoài lưới), hướng chủ yếu đi xuống;
+     * một số tia song song trục X/Z hoặc thẳng đứng
+     */
+    private static void randomRay(HeightField heights, Random random, int i, Vector3f origin, Vector3f direction) {
+        float extentX = (heights.getWidth() - 1) * heights.getScale();
+        float extentZ = (heights.getDepth() - 1) * heights.getScale();
+        origin.set(heights.getOriginX() + (random.nextFloat() * 1.4f - 0.2f) * extentX,
+                   HEIGHT_SCALE * (0.2f + random.nextFloat() * 1.5f),
+                   heights.getOriginZ() + (random.nextFloat() * 1.4f - 0.2f) * extentZ);
+        direction.set(random.nextFloat() * 2 - 1, -random.nextFloat() * 0.6f + 0.05f, random.nextFloat() * 2 - 1);
+        switch (i % 8) {
+            case 0 -> direction.x = 0;
+            case 1 -> direction.z = 0;
+            case 2 -> direction.set(0, -1, 0);
+            default -> { }
+        }
+    }
+
+    /**
+     * Khoảng cách chạm gần nhất với mọi tam giác của lưới (Möller-Trumbore, hai mặt),
+     * chia ô theo cùng đường chéo với mesh: (0,0)-(0,1)-(1,0) và (1,0)-(0,1)-(1,1)
+     * @return t trong [0, maxDistance], -1 nếu không chạm
+     */
+    private static double bruteForce(HeightField heights, Vector3f origin, Vector3f direction, float maxDistance) {
+        int width = heights.getWidth();
+        float[] data = heights.getData();
+        double best = -1;
+        for (int z = 0; z < heights.getDepth() - 1; z++) {
+            for (int x = 0; x < width - 1; x++) {
+                double[] p00 = vertex(heights, data, x, z);
+                double[] p10 = vertex(heights, data, x + 1, z);
+                double[] p01 = vertex(heights, data, x, z + 1);
+                double[] p11 = vertex(heights, data, x + 1, z + 1);
+                double t = intersectTriangle(origin, direction, p00, p01, p10);
+                if (t >= 0 && t <= maxDistance && (best < 0 || t < best)) {
+                    best = t;
+                }
+                t = intersectTriangle(origin, direction, p10, p01, p11);
+                if (t >= 0 && t <= maxDistance && (best < 0 || t < best)) {
+                    best = t;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static double[] vertex(HeightField heights, float[] data, int x, int z) {
+        return new double[] {heights.getOriginX() + x * (double) heights.getScale(), data[z * heights.getWidth() + x],
+                             heights.getOriginZ() + z * (double) heights.getScale()};
+    }
+
+    private static double intersectTriangle(Vector3f origin, Vector3f direction, double[] a, double[] b, double[] c) {
+        double e1x = b[0] - a[0], e1y = b[1] - a[1], e1z = b[2] - a[2];
+        double e2x = c[0] - a[0], e2y = c[1] - a[1], e2z = c[2] - a[2];
+        double px = direction.y * e2z - direction.z * e2y;
+        double py = direction.z * e2x - direction.x * e2z;
+        double pz = direction.x * e2y - direction.y * e2x;
+        double det = e1x * px + e1y * py + e1z * pz;
+        if (Math.abs(det) < 1e-12) {
+            return -1;
+        }
+        double inv = 1 / det;
+        double sx = origin.x - a[0], sy = origin.y - a[1], sz = origin.z - a[2];
+        double u = (sx * px + sy * py + sz * pz) * inv;
+        if (u < 0 || u > 1) {
+            return -1;
+        }
+        double qx = sy * e1z - sz * e1y;
+        double qy = sz * e1x - sx * e1z;
+        double qz = sx * e1y - sy * e1x;
+        double v = (direction.x * qx + direction.y * qy + direction.z * qz) * inv;
+        if (v < 0 || u + v > 1) {
+            return -1;
+        }
+        return (e2x * qx + e2y * qy + e2z * qz) * inv;
+    }
+}
@@ -0,0 +1,177 @@
+package org.example.terrain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TileCache khi nhiều thread dùng chung: single-flight, giới hạn số byte, không trả tile cũ sau khi tính lại
+ *
+ * Giá trị tile là int[] {khóa, thế hệ}: mỗi lần tính lại cùng một khóa cho thế hệ mới hơn.
+ */
+class TileCacheTest {
+    private static final long SEED = 42;
+    private static final long TILE_BYTES = 100;
+    private static final int THREADS = 8;
+
+    @Test
+    void concurrentRequestsForSameTileLoadOnce() throws Exception {
+        TileCache<int[]> cache = new TileCache<>(10 * TILE_BYTES, tile -> TILE_BYTES);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return cache.get(SEED, 3, -5, 0, () -> {
+                        loads.incrementAndGet();
+                        // Giữ tile ở trạng thái đang tính tới khi mọi thread khác đã vào chờ
+                        awaitUntil(() -> cache.getSharedLoadCount() == THREADS - 1);
+                        return new int[] {0, 1};
+                    });
+                }));
+            }
+            start.countDown();
+
+            int[] first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<int[]> result : results) {
+                assertSame(first, result.get(10, TimeUnit.SECONDS), "Mọi thread phải nhận cùng một tile");
+            }
+            assertEquals(1, loads.get(), "Tile chỉ được tính một lần");
+            assertEquals(1, cache.getMissCount());
+            assertEquals(THREADS - 1, cache.getSharedLoadCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void loaderFailureIsSharedAndNotCached() throws Exception {
+        TileCache<int[]> cache = new TileCache<>(10 * TILE_BYTES, tile -> TILE_BYTES);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        CountDownLatch loading = new CountDownLatch(1);
+        try {
+            Future<int[]> owner = pool.submit(() -> cache.get(SEED, 0, 0, 0, () -> {
+                loading.countDown();
+                awaitUntil(() -> cache.getSharedLoadCount() == 1);
+                throw new IllegalStateException("lỗi tính tile");
+            }));
+            loading.await();
+            IllegalStateException shared = assertThrows(IllegalStateException.class,
+                                                        () -> cache.get(SEED, 0, 0, 0, () -> new int[] {0, 0}));
+            assertEquals("lỗi tính tile", shared.getMessage());
+            assertThrows(Exception.class, () -> owner.get(10, TimeUnit.SECONDS));
+
+            int[] reloaded = cache.get(SEED, 0, 0, 0, () -> new int[] {0, 2});
+            assertEquals(2, reloaded[1], "Lỗi không được lưu: lần gọi sau phải tính lại");
+            assertEquals(TILE_BYTES, cache.getBytes());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedAndReloadsFreshTile() {
+        TileCache<int[]> cache = new TileCache<>(2 * TILE_BYTES, tile -> TILE_BYTES);
+        int[] a = cache.get(SEED, 0, 0, 0, () -> new int[] {0, 1});
+        cache.get(SEED, 1, 0, 0, () -> new int[] {1, 1});
+        assertSame(a, cache.get(SEED, 0, 0, 0, () -> new int[] {0, 99}));  // A mới dùng: B là LRU
+        cache.get(SEED, 2, 0, 0, () -> new int[] {2, 1});
+
+        assertEquals(2, cache.size());
+        assertEquals(2 * TILE_BYTES, cache.getBytes());
+        assertEquals(1, cache.getEvictionCount());
+        assertSame(a, cache.get(SEED, 0, 0, 0, () -> new int[] {0, 99}), "A không được bị loại");
+        int[] b = cache.get(SEED, 1, 0, 0, () -> new int[] {1, 2});
+        assertEquals(2, b[1], "B đã bị loại phải được tính lại");
+
+        // Bỏ tile trong lúc đang tính: kết quả trả cho người gọi nhưng không được lưu
+        int[] stale = cache.get(SEED, 3, 0, 0, () -> {
+            cache.invalidate(SEED, 3, 0, 0);
+            return new int[] {3, 1};
+        });
+        assertEquals(1, stale[1]);
+        assertEquals(2, cache.get(SEED, 3, 0, 0, () -> new int[] {3, 2})[1]);
+        assertTrue(cache.getBytes() <= cache.getBudgetBytes());
+    }
+
+    @Test
+    void concurrentChurnStaysWithinBudgetAndNeverReturnsStaleTiles() throws Exception {
+        int keys = 16;
+        int capacity = 5;
+        int requestsPerThread = 20_000;
+        TileCache<int[]> cache = new TileCache<>(capacity * TILE_BYTES, tile -> TILE_BYTES);
+        AtomicIntegerArray generations = new AtomicIntegerArray(keys);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                workers.add(pool.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int[] lastSeen = new int[keys];
+                    for (int i = 0; i < requestsPerThread; i++) {
+                        // Phân bố lệch để vừa có hit vừa có loại bỏ/tính lại
+                        int key = Math.min(random.nextInt(keys), random.nextInt(keys));
+                        int[] tile = cache.get(SEED, key, 0, 0,
+                                               () -> new int[] {key, generations.incrementAndGet(key)});
+                        assertEquals(key, tile[0], "Tile của khóa khác");
+                        // Tile đã bị loại và tính lại: mọi lần lấy sau phải thấy thế hệ mới
+                        assertTrue(tile[1] >= lastSeen[key], "Tile cũ (thế hệ " + tile[1] + ") trả về sau thế hệ "
+                                                             + lastSeen[key] + " của khóa " + key);
+                        lastSeen[key] = tile[1];
+                        long bytes = cache.getBytes();
+                        assertTrue(bytes <= cache.getBudgetBytes(), "Vượt ngân sách: " + bytes);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertTrue(cache.getEvictionCount() > 0, "Kịch bản phải có loại bỏ");
+        assertTrue(cache.size() <= capacity);
+        assertEquals(cache.size() * TILE_BYTES, cache.getBytes());
+        long loads = 0;
+        for (int k = 0; k < keys; k++) {
+            loads += generations.get(k);
+        }
+        assertEquals(loads, cache.getMissCount(), "Mỗi lần tính ứng với đúng một miss");
+        assertEquals((long) THREADS * requestsPerThread,
+                     cache.getHitCount() + cache.getMissCount() + cache.getSharedLoadCount());
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    /**
+     * Chờ (tối đa 10 giây) tới khi điều kiện đúng
+     */
+    private static void awaitUntil(Condition condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.holds()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Hết thời gian chờ");
+            }
+            Thread.onSpinWait();
+            Thread.yield();
+        }
+    }
+}